@@ -0,0 +1,42 @@
+package com.ai.rag.loadtest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** --key=value 형태의 단순 인자 파서 */
+final class Args {
+
+    private final Map<String, String> values = new HashMap<>();
+
+    Args(String[] args) {
+        for (String a : args) {
+            if (!a.startsWith("--")) {
+                throw new IllegalArgumentException("인자는 --key=value 형식이어야 합니다: " + a);
+            }
+            int eq = a.indexOf('=');
+            if (eq == -1) {
+                values.put(a.substring(2), "true");
+            } else {
+                values.put(a.substring(2, eq), a.substring(eq + 1));
+            }
+        }
+    }
+
+    String get(String key, String def) {
+        return values.getOrDefault(key, def);
+    }
+
+    int getInt(String key, int def) {
+        String v = values.get(key);
+        return v == null ? def : Integer.parseInt(v);
+    }
+
+    double getDouble(String key, double def) {
+        String v = values.get(key);
+        return v == null ? def : Double.parseDouble(v);
+    }
+
+    boolean has(String key) {
+        return values.containsKey(key);
+    }
+}
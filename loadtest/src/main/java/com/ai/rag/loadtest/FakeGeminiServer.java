@@ -0,0 +1,356 @@
+package com.ai.rag.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Gemini generateContent / streamGenerateContent / cachedContents 를 흉내내는 로컬 서버 (쿼터 소모 없이 부하 테스트용)
+ *
+ * 옵션
+ * --port=18080
+ * --latency=lognormal:800:0.5      (LatencyModel 참고)
+ * --error-rate=0.01               (이 확률로 429/503 반환)
+ * --templates=answers.txt         ("---" 줄로 구분된 답변 템플릿, {evidence} 는 프롬프트의 첫 근거 앞부분, [1] 은 그 근거 번호로 치환)
+ * --stream-chunks=8               (streamGenerateContent 시 SSE 조각 수)
+ * --cache-max-ttl=3600            (cachedContents ttl 상한(초), 작게 주면 만료 → 앱의 inline fallback 확인용)
+ * --cache-min-chars=0             (이보다 짧은 prefix 는 cachedContents 생성을 400 으로 거절, 최소 토큰 수 흉내)
+ *
+ * cachedContents: POST /v1beta/cachedContents, GET/PATCH(ttl)/DELETE /v1beta/cachedContents/{id}
+ * generateContent 의 cachedContent 가 없거나 만료면 404 NOT_FOUND
+ *
+ * 앱은 --spring.profiles.active=loadtest 로 띄우면 gemini.baseUrl 이 이 서버를 가리킨다.
+ */
+public final class FakeGeminiServer {
+
+    private static final List<String> DEFAULT_TEMPLATES = List.of(
+            """
+            - 답변:
+            문서 근거에 따르면 다음과 같이 정리할 수 있습니다. {evidence} [1]
+            - 근거:
+            [1]
+            """,
+            """
+            - 답변:
+            * 핵심 내용: {evidence} [1]
+            * 위 내용은 제공된 문서 근거 범위 안에서만 요약했습니다.
+            - 근거:
+            [1]
+            """
+    );
+
+    // "[n] (doc=..)" 헤더 다음 줄부터 빈 줄 전까지가 근거 하나
+    private static final Pattern FIRST_EVIDENCE = Pattern.compile("\\[(\\d+)] \\([^)]*\\)\\s*\\n(.+?)(?:\\n\\s*\\n|$)", Pattern.DOTALL);
+    private static final Pattern TEXT_FIELD = Pattern.compile("\"text\"\\s*:\\s*\"((?:[^\"\\\\]|\\\\.)*)\"");
+    private static final Pattern TTL_FIELD = Pattern.compile("\"ttl\"\\s*:\\s*\"(\\d+)(?:\\.\\d+)?s\"");
+    private static final Pattern CACHED_CONTENT_FIELD = Pattern.compile("\"cachedContent\"\\s*:\\s*\"(cachedContents/[^\"]+)\"");
+    private static final String CACHES_PATH = "/v1beta/cachedContents";
+
+    /** 등록된 prefix: text 파트들과 만료 시각 */
+    private record CachedContent(String name, List<String> texts, long chars, Instant expireTime) {}
+
+    private final LatencyModel latency;
+    private final double errorRate;
+    private final List<String> templates;
+    private final int streamChunks;
+    private final long cacheMaxTtlSeconds;
+    private final long cacheMinChars;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final Map<String, CachedContent> caches = new ConcurrentHashMap<>();
+    private final AtomicLong cacheCreates = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    FakeGeminiServer(LatencyModel latency, double errorRate, List<String> templates, int streamChunks,
+                     long cacheMaxTtlSeconds, long cacheMinChars) {
+        this.latency = latency;
+        this.errorRate = errorRate;
+        this.templates = templates;
+        this.streamChunks = streamChunks;
+        this.cacheMaxTtlSeconds = cacheMaxTtlSeconds;
+        this.cacheMinChars = cacheMinChars;
+    }
+
+    public static void main(String[] argv) throws IOException {
+        Args args = new Args(argv);
+        int port = args.getInt("port", 18080);
+
+        FakeGeminiServer fake = new FakeGeminiServer(
+                LatencyModel.parse(args.get("latency", "lognormal:800:0.5")),
+                args.getDouble("error-rate", 0.0),
+                loadTemplates(args.get("templates", null)),
+                args.getInt("stream-chunks", 8),
+                args.getInt("cache-max-ttl", 3600),
+                args.getInt("cache-min-chars", 0)
+        );
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 1024);
+        // 지연을 sleep 으로 흉내내므로 스레드 수가 동시성 상한이 되지 않도록 virtual thread 사용
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/v1beta/models/", fake::handleModels);
+        server.createContext(CACHES_PATH, fake::handleCachedContents);
+        server.createContext("/stats", fake::handleStats);
+        server.start();
+
+        System.out.printf("fake gemini listening on :%d (latency=%s, error-rate=%.3f, templates=%d)%n",
+                port, fake.latency, fake.errorRate, fake.templates.size());
+    }
+
+    private void handleModels(HttpExchange ex) throws IOException {
+        try (ex) {
+            String path = ex.getRequestURI().getPath();
+            if ("GET".equals(ex.getRequestMethod())) {
+                // models.get (앱 기동 warm-up)
+                String name = path.substring("/v1beta/".length());
+                send(ex, 200, "application/json", "{\"name\":" + Json.quote(name) + ",\"displayName\":\"fake\"}");
+                return;
+            }
+            if (!"POST".equals(ex.getRequestMethod())) {
+                send(ex, 405, "application/json", error(405, "method not allowed"));
+                return;
+            }
+            requests.incrementAndGet();
+            String body = new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+
+            if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+                errors.incrementAndGet();
+                int status = ThreadLocalRandom.current().nextBoolean() ? 429 : 503;
+                sleep(latency.sampleMillis() / 4);
+                send(ex, status, "application/json", error(status, "fake injected error"));
+                return;
+            }
+
+            List<String> texts = texts(body);
+            Matcher cached = CACHED_CONTENT_FIELD.matcher(body);
+            if (cached.find()) {
+                CachedContent c = live(cached.group(1));
+                if (c == null) {
+                    cacheMisses.incrementAndGet();
+                    send(ex, 404, "application/json", error(404, "CachedContent not found (or permission denied)"));
+                    return;
+                }
+                cacheHits.incrementAndGet();
+                List<String> all = new ArrayList<>(c.texts());
+                all.addAll(texts);
+                texts = all;
+            }
+
+            String answer = renderAnswer(texts);
+            if (path.endsWith(":streamGenerateContent")) {
+                stream(ex, answer);
+            } else if (path.endsWith(":generateContent")) {
+                sleep(latency.sampleMillis());
+                send(ex, 200, "application/json", candidate(answer));
+            } else {
+                send(ex, 404, "application/json", error(404, "unknown method: " + path));
+            }
+        }
+    }
+
+    private void stream(HttpExchange ex, String answer) throws IOException {
+        long total = latency.sampleMillis();
+        int n = Math.max(1, streamChunks);
+        int step = (int) Math.ceil(answer.length() / (double) n);
+
+        ex.getResponseHeaders().set("Content-Type", "text/event-stream");
+        ex.sendResponseHeaders(200, 0);
+        OutputStream out = ex.getResponseBody();
+        for (int i = 0; i < answer.length(); i += step) {
+            sleep(total / n);
+            String part = answer.substring(i, Math.min(answer.length(), i + step));
+            out.write(("data: " + candidate(part) + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+    }
+
+    /** POST 생성, {id} 에 GET / PATCH(ttl 연장) / DELETE */
+    private void handleCachedContents(HttpExchange ex) throws IOException {
+        try (ex) {
+            String id = ex.getRequestURI().getPath().substring(CACHES_PATH.length()).replaceFirst("^/", "");
+            String method = ex.getRequestMethod();
+            String body = new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+
+            if (id.isEmpty()) {
+                if (!"POST".equals(method)) {
+                    send(ex, 405, "application/json", error(405, "method not allowed"));
+                    return;
+                }
+                List<String> texts = texts(body);
+                long chars = texts.stream().mapToLong(String::length).sum();
+                if (chars < cacheMinChars) {
+                    send(ex, 400, "application/json", error(400, "Cached content is too small. chars=" + chars
+                            + ", min=" + cacheMinChars));
+                    return;
+                }
+                String name = "cachedContents/" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+                CachedContent c = new CachedContent(name, texts, chars, expireTime(body));
+                caches.put(name, c);
+                cacheCreates.incrementAndGet();
+                send(ex, 200, "application/json", describe(c));
+                return;
+            }
+
+            String name = "cachedContents/" + id;
+            CachedContent c = live(name);
+            if (c == null) {
+                send(ex, 404, "application/json", error(404, "CachedContent not found: " + name));
+                return;
+            }
+            switch (method) {
+                case "GET" -> send(ex, 200, "application/json", describe(c));
+                case "PATCH" -> {
+                    CachedContent extended = new CachedContent(name, c.texts(), c.chars(), expireTime(body));
+                    caches.put(name, extended);
+                    send(ex, 200, "application/json", describe(extended));
+                }
+                case "DELETE" -> {
+                    caches.remove(name);
+                    send(ex, 200, "application/json", "{}");
+                }
+                default -> send(ex, 405, "application/json", error(405, "method not allowed"));
+            }
+        }
+    }
+
+    /** 만료된 건 지우고 null */
+    private CachedContent live(String name) {
+        CachedContent c = caches.get(name);
+        if (c != null && c.expireTime().isBefore(Instant.now())) {
+            caches.remove(name, c);
+            return null;
+        }
+        return c;
+    }
+
+    /** 요청 ttl (없으면 1시간) 을 --cache-max-ttl 로 자름 */
+    private Instant expireTime(String body) {
+        Matcher m = TTL_FIELD.matcher(body);
+        long ttl = m.find() ? Long.parseLong(m.group(1)) : 3600;
+        return Instant.now().plusSeconds(Math.min(ttl, cacheMaxTtlSeconds));
+    }
+
+    private static String describe(CachedContent c) {
+        return "{\"name\":" + Json.quote(c.name()) + ",\"expireTime\":" + Json.quote(c.expireTime().toString())
+                + ",\"usageMetadata\":{\"totalTokenCount\":" + Math.max(1, c.chars() / 2) + "}}";
+    }
+
+    private void handleStats(HttpExchange ex) throws IOException {
+        try (ex) {
+            send(ex, 200, "application/json",
+                    "{\"requests\":" + requests.get() + ",\"errors\":" + errors.get()
+                            + ",\"cache\":{\"creates\":" + cacheCreates.get() + ",\"hits\":" + cacheHits.get()
+                            + ",\"misses\":" + cacheMisses.get() + ",\"entries\":" + caches.size() + "}}");
+        }
+    }
+
+    private String renderAnswer(List<String> texts) {
+        String template = templates.get(ThreadLocalRandom.current().nextInt(templates.size()));
+        Matcher m = firstEvidence(texts);
+        if (m == null) {
+            return template.replace("{evidence}", "문서 근거가 부족합니다").trim();
+        }
+        String evidence = m.group(2).replaceAll("\\s+", " ").trim();
+        return template.replace("{evidence}", evidence.length() > 200 ? evidence.substring(0, 200) : evidence)
+                .replace("[1]", "[" + m.group(1) + "]")
+                .trim();
+    }
+
+    /**
+     * 근거 블록이 있는 가장 마지막 text 파트(= 최신 사용자 메시지)의 첫 근거
+     * 멀티턴 후속 질문은 새 근거만 싣거나 아예 없을 수 있어서 앞선 턴까지 거슬러 찾음
+     * (cachedContent 를 참조한 요청은 캐시된 text 파트가 앞에 붙어서 들어옴)
+     */
+    private static Matcher firstEvidence(List<String> texts) {
+        Matcher found = null;
+        for (String text : texts) {
+            Matcher m = FIRST_EVIDENCE.matcher(text);
+            if (m.find()) found = m;
+        }
+        return found;
+    }
+
+    private static List<String> texts(String body) {
+        List<String> out = new ArrayList<>();
+        Matcher t = TEXT_FIELD.matcher(body);
+        while (t.find()) out.add(unescape(t.group(1)));
+        return out;
+    }
+
+    private static String candidate(String text) {
+        return "{\"candidates\":[{\"content\":{\"role\":\"model\",\"parts\":[{\"text\":" + Json.quote(text)
+                + "}]},\"finishReason\":\"STOP\"}]}";
+    }
+
+    private static String error(int code, String message) {
+        return "{\"error\":{\"code\":" + code + ",\"message\":" + Json.quote(message) + "}}";
+    }
+
+    private static void send(HttpExchange ex, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", contentType);
+        ex.sendResponseHeaders(status, bytes.length);
+        ex.getResponseBody().write(bytes);
+    }
+
+    private static List<String> loadTemplates(String file) throws IOException {
+        if (file == null) return DEFAULT_TEMPLATES;
+        String all = Files.readString(Path.of(file), StandardCharsets.UTF_8);
+        List<String> out = new ArrayList<>(Arrays.stream(all.split("(?m)^---\\s*$"))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .toList());
+        if (out.isEmpty()) throw new IllegalArgumentException("템플릿이 비어있습니다: " + file);
+        return out;
+    }
+
+    private static String unescape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c != '\\' || i + 1 == s.length()) {
+                sb.append(c);
+                continue;
+            }
+            char n = s.charAt(++i);
+            switch (n) {
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                case 't' -> sb.append('\t');
+                case 'u' -> {
+                    sb.append((char) Integer.parseInt(s.substring(i + 1, i + 5), 16));
+                    i += 4;
+                }
+                default -> sb.append(n);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void sleep(long ms) {
+        if (ms <= 0) return;
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
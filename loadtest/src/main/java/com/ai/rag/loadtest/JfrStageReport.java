@@ -0,0 +1,156 @@
+package com.ai.rag.loadtest;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 앱이 남긴 .jfr 에서 RAG 단계별 지연 요약 (com.ai.rag.* 이벤트, jfr/rag.jfc 참고)
+ *
+ * 옵션
+ * --file=rag.jfr    (필수)
+ * --top=10          총 소요가 긴 trace 상위 N개와 단계별 합계
+ * --trace=1a2b3c4d  해당 trace 의 이벤트를 시간순으로
+ *
+ * 단계 키: Parse 는 형식, Embed 는 source, Decision 은 decision:outcome, Search 는 partial, Generate 는 실패/cached 여부로 나눔
+ */
+public final class JfrStageReport {
+
+    private static final String PREFIX = "com.ai.rag.";
+
+    private record Sample(String stage, String traceId, Instant start, Duration duration, String detail) {}
+
+    public static void main(String[] argv) throws IOException {
+        Args args = new Args(argv);
+        if (!args.has("file")) {
+            throw new IllegalArgumentException("--file=<recording.jfr> 가 필요합니다.");
+        }
+        List<Sample> samples = read(Path.of(args.get("file", null)));
+        if (samples.isEmpty()) {
+            System.out.println("com.ai.rag.* 이벤트가 없습니다. jfr/rag.jfc 설정으로 기록했는지 확인하세요.");
+            return;
+        }
+
+        printStages(samples);
+        printTopTraces(samples, args.getInt("top", 10));
+        if (args.has("trace")) {
+            printTrace(samples, args.get("trace", null));
+        }
+    }
+
+    private static List<Sample> read(Path file) throws IOException {
+        List<Sample> out = new ArrayList<>();
+        try (RecordingFile recording = new RecordingFile(file)) {
+            while (recording.hasMoreEvents()) {
+                RecordedEvent e = recording.readEvent();
+                String type = e.getEventType().getName();
+                if (!type.startsWith(PREFIX)) continue;
+                String name = type.substring(PREFIX.length());
+                out.add(new Sample(name + key(name, e), e.getString("traceId"), e.getStartTime(), e.getDuration(), detail(name, e)));
+            }
+        }
+        return out;
+    }
+
+    private static String key(String name, RecordedEvent e) {
+        return switch (name) {
+            case "Parse" -> "[" + e.getString("format") + (e.getBoolean("failed") ? ",failed" : "") + "]";
+            case "Embed" -> "[" + e.getString("source") + "]";
+            case "Decision" -> "[" + e.getString("decision") + ":" + e.getString("outcome") + "]";
+            case "Search" -> e.getBoolean("partial") ? "[partial]" : "";
+            case "Generate" -> e.getBoolean("failed") ? "[failed]" : e.getLong("cachedChars") > 0 ? "[cached]" : "";
+            default -> "";
+        };
+    }
+
+    private static String detail(String name, RecordedEvent e) {
+        return switch (name) {
+            case "Parse" -> "bytes=" + e.getLong("bytes") + " chars=" + e.getLong("chars");
+            case "Chunk" -> "chars=" + e.getLong("chars") + " chunks=" + e.getInt("chunks");
+            case "Embed" -> "version=" + e.getString("version") + " texts=" + e.getInt("texts") + " chars=" + e.getLong("chars");
+            case "Search" -> "tenant=" + e.getString("tenant") + " k=" + e.getInt("k") + " shards=" + e.getInt("shards")
+                    + " hits=" + e.getInt("hits") + (e.getBoolean("filtered") ? " filtered" : "");
+            case "Generate" -> "model=" + e.getString("model") + " prompt=" + e.getLong("promptChars")
+                    + " cached=" + e.getLong("cachedChars") + " answer=" + e.getLong("answerChars");
+            default -> "";
+        };
+    }
+
+    private static void printStages(List<Sample> samples) {
+        Map<String, List<Duration>> byStage = new TreeMap<>();
+        for (Sample s : samples) byStage.computeIfAbsent(s.stage(), k -> new ArrayList<>()).add(s.duration());
+
+        System.out.println("=== stage latency (ms) ===");
+        System.out.printf(Locale.ROOT, "%-32s %8s %9s %9s %9s %9s %11s%n", "stage", "count", "p50", "p95", "p99", "max", "total");
+        for (Map.Entry<String, List<Duration>> e : byStage.entrySet()) {
+            long[] nanos = e.getValue().stream().mapToLong(Duration::toNanos).sorted().toArray();
+            long total = 0;
+            for (long n : nanos) total += n;
+            System.out.printf(Locale.ROOT, "%-32s %8d %9.2f %9.2f %9.2f %9.2f %11.1f%n",
+                    e.getKey(), nanos.length, pct(nanos, 0.50), pct(nanos, 0.95), pct(nanos, 0.99),
+                    nanos[nanos.length - 1] / 1e6, total / 1e6);
+        }
+    }
+
+    /** trace 의 첫 이벤트 시작 ~ 마지막 이벤트 끝 (요청 전체가 아니라 기록된 단계 구간) */
+    private static void printTopTraces(List<Sample> samples, int top) {
+        if (top <= 0) return;
+        Map<String, List<Sample>> byTrace = new HashMap<>();
+        for (Sample s : samples) {
+            if (s.traceId() != null) byTrace.computeIfAbsent(s.traceId(), k -> new ArrayList<>()).add(s);
+        }
+        if (byTrace.isEmpty()) return;
+
+        record Span(String traceId, long nanos, Map<String, Long> stages) {}
+        List<Span> spans = new ArrayList<>();
+        for (Map.Entry<String, List<Sample>> e : byTrace.entrySet()) {
+            Instant first = Instant.MAX, last = Instant.MIN;
+            Map<String, Long> stages = new TreeMap<>();
+            for (Sample s : e.getValue()) {
+                Instant end = s.start().plus(s.duration());
+                if (s.start().isBefore(first)) first = s.start();
+                if (end.isAfter(last)) last = end;
+                stages.merge(s.stage().replaceAll("\\[.*", ""), s.duration().toNanos(), Long::sum);
+            }
+            spans.add(new Span(e.getKey(), Duration.between(first, last).toNanos(), stages));
+        }
+        spans.sort(Comparator.comparingLong(Span::nanos).reversed());
+
+        System.out.printf("%n=== slowest %d traces (ms, of %d) ===%n", Math.min(top, spans.size()), spans.size());
+        for (Span s : spans.subList(0, Math.min(top, spans.size()))) {
+            StringBuilder sb = new StringBuilder();
+            s.stages().forEach((stage, nanos) -> sb.append(String.format(Locale.ROOT, " %s=%.1f", stage, nanos / 1e6)));
+            System.out.printf(Locale.ROOT, "%-10s %9.1f %s%n", s.traceId(), s.nanos() / 1e6, sb);
+        }
+    }
+
+    private static void printTrace(List<Sample> samples, String traceId) {
+        List<Sample> events = samples.stream()
+                .filter(s -> traceId.equals(s.traceId()))
+                .sorted(Comparator.comparing(Sample::start))
+                .toList();
+        System.out.printf("%n=== trace %s (%d events) ===%n", traceId, events.size());
+        if (events.isEmpty()) return;
+        Instant t0 = events.get(0).start();
+        for (Sample s : events) {
+            System.out.printf(Locale.ROOT, "+%8.2fms %9.2fms  %-28s %s%n",
+                    Duration.between(t0, s.start()).toNanos() / 1e6, s.duration().toNanos() / 1e6, s.stage(), s.detail());
+        }
+    }
+
+    private static double pct(long[] sorted, double p) {
+        int idx = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, idx))] / 1e6;
+    }
+}
@@ -0,0 +1,32 @@
+package com.ai.rag.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 가짜 Gemini 응답 지연 분포
+ * - fixed:800            : 항상 800ms
+ * - uniform:300:1500     : 300~1500ms 균등
+ * - lognormal:800:0.5    : 중앙값 800ms, sigma 0.5 (꼬리가 긴 실제 LLM 지연과 비슷)
+ */
+record LatencyModel(String kind, double a, double b) {
+
+    static LatencyModel parse(String spec) {
+        String[] p = spec.split(":");
+        return switch (p[0]) {
+            case "fixed" -> new LatencyModel("fixed", Double.parseDouble(p[1]), 0);
+            case "uniform" -> new LatencyModel("uniform", Double.parseDouble(p[1]), Double.parseDouble(p[2]));
+            case "lognormal" -> new LatencyModel("lognormal", Double.parseDouble(p[1]), Double.parseDouble(p[2]));
+            default -> throw new IllegalArgumentException("알 수 없는 latency 분포: " + spec);
+        };
+    }
+
+    long sampleMillis() {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        double ms = switch (kind) {
+            case "uniform" -> a + r.nextDouble() * (b - a);
+            case "lognormal" -> a * Math.exp(b * r.nextGaussian());
+            default -> a;
+        };
+        return Math.max(0, Math.round(ms));
+    }
+}
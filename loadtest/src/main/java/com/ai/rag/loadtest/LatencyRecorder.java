@@ -0,0 +1,54 @@
+package com.ai.rag.loadtest;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** 연산별 지연(마이크로초) 기록 + percentile 리포트 */
+final class LatencyRecorder {
+
+    private final String name;
+    private final AtomicLong errors = new AtomicLong();
+    private long[] samples = new long[1 << 12];
+    private int size;
+
+    LatencyRecorder(String name) {
+        this.name = name;
+    }
+
+    synchronized void record(long micros) {
+        if (size == samples.length) {
+            samples = Arrays.copyOf(samples, size * 2);
+        }
+        samples[size++] = micros;
+    }
+
+    void error() {
+        errors.incrementAndGet();
+    }
+
+    synchronized String report(double seconds) {
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        return String.format(Locale.ROOT,
+                "%-7s ok=%-7d err=%-5d thr=%8.2f/s  p50=%8.1fms  p95=%8.1fms  p99=%8.1fms  max=%8.1fms",
+                name, size, errors.get(), size / seconds,
+                pct(sorted, 0.50), pct(sorted, 0.95), pct(sorted, 0.99),
+                sorted.length == 0 ? 0.0 : sorted[sorted.length - 1] / 1000.0);
+    }
+
+    synchronized Summary summary(double seconds) {
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        return new Summary(size / seconds, pct(sorted, 0.50), pct(sorted, 0.95), pct(sorted, 0.99), errors.get());
+    }
+
+    /** 지연은 ms */
+    record Summary(double throughput, double p50, double p95, double p99, long errors) {}
+
+    private static double pct(long[] sorted, double p) {
+        if (sorted.length == 0) return 0.0;
+        int idx = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, idx))] / 1000.0;
+    }
+}
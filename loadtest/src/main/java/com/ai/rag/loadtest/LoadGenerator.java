@@ -0,0 +1,235 @@
+package com.ai.rag.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * /api/ingest, /api/ask 부하 생성기
+ *
+ * 옵션
+ * --target=http://localhost:8080
+ * --mode=closed|open|sweep  closed: 동시 사용자 N명이 응답을 받으면 바로 다음 요청
+ *                           open  : 응답과 무관하게 고정 도착률(--rate)로 요청 (coordinated omission 보정: 예정 시각 기준 측정)
+ *                           sweep : closed-loop 를 --levels 의 동시성마다 (--warmup + --duration) 씩 돌려 확장성 표 출력
+ * --levels=8,16,32,64,128,256,512  (sweep)
+ * --label=platform          (sweep, 결과 줄 앞에 붙는 이름. spring.threads.virtual.enabled 를 바꿔 두 번 돌려 비교)
+ * --out=sweep.csv           (sweep, 결과를 CSV 로 이어 씀)
+ * --concurrency=16          (closed)
+ * --rate=20                 (open, req/s)
+ * --duration=60 --warmup=10 (초, warmup 구간 결과는 버림)
+ * --ask-ratio=0.9           (나머지는 ingest)
+ * --batch-ratio=0           (ask 중 X-Request-Priority: batch 로 보낼 비율, 입장 제어에서 429 로 먼저 밀려남)
+ *                           (앱이 헤더를 따르는 건 rag.admission.trust-priority-header=true 일 때만, loadtest 프로필은 켜 둠)
+ * --seed-docs=50            (시작 전 미리 넣을 문서 수, pgvector 가 비어있으면 ask 가 전부 부족응답이 되므로)
+ * --questions=q.txt         (한 줄에 질문 하나, 없으면 합성 질문)
+ *
+ * 앱은 --spring.profiles.active=loadtest 로, 가짜 Gemini 는 FakeGeminiServer 로 띄운다.
+ */
+public final class LoadGenerator {
+
+    private static final String[] TOPICS = {"연차", "출장비", "재택근무", "보안 교육", "구매 승인", "퇴직금", "복리후생", "개인정보"};
+    private static final String[] VERBS = {"신청 절차", "한도", "예외 조건", "승인권자", "처리 기간", "증빙 서류"};
+
+    private final HttpClient http;
+    private final String target;
+    private final List<String> questions;
+    private final double askRatio;
+    private final double batchRatio;
+
+    private final LatencyRecorder ask = new LatencyRecorder("ask");
+    private final LatencyRecorder ingest = new LatencyRecorder("ingest");
+
+    private volatile long measureFromNanos;
+
+    LoadGenerator(String target, List<String> questions, double askRatio, double batchRatio) {
+        this.http = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        this.target = target;
+        this.questions = questions;
+        this.askRatio = askRatio;
+        this.batchRatio = batchRatio;
+    }
+
+    public static void main(String[] argv) throws Exception {
+        Args args = new Args(argv);
+        LoadGenerator gen = new LoadGenerator(
+                args.get("target", "http://localhost:8080"),
+                loadQuestions(args.get("questions", null)),
+                args.getDouble("ask-ratio", 0.9),
+                args.getDouble("batch-ratio", 0)
+        );
+
+        int seedDocs = args.getInt("seed-docs", 50);
+        if (seedDocs > 0) {
+            System.out.printf("seeding %d documents...%n", seedDocs);
+            for (int i = 0; i < seedDocs; i++) gen.ingestOnce();
+        }
+
+        String mode = args.get("mode", "closed");
+        int duration = args.getInt("duration", 60);
+        int warmup = args.getInt("warmup", 10);
+
+        if (mode.equals("sweep")) {
+            sweep(args, gen, warmup, duration);
+            return;
+        }
+
+        long start = System.nanoTime();
+        gen.measureFromNanos = start + TimeUnit.SECONDS.toNanos(warmup);
+        long end = start + TimeUnit.SECONDS.toNanos(warmup + duration);
+
+        switch (mode) {
+            case "closed" -> gen.runClosed(args.getInt("concurrency", 16), end);
+            case "open" -> gen.runOpen(args.getDouble("rate", 20), end);
+            default -> throw new IllegalArgumentException("mode 는 closed|open|sweep: " + mode);
+        }
+
+        double seconds = (System.nanoTime() - gen.measureFromNanos) / 1e9;
+        System.out.printf("%n=== %s-loop, measured %.1fs ===%n", mode, seconds);
+        System.out.println(gen.ask.report(seconds));
+        System.out.println(gen.ingest.report(seconds));
+    }
+
+    /**
+     * 동시성 단계별 closed-loop. 단계마다 새 recorder 로 측정해서 처리량/지연이 어디서 꺾이는지 보여줌
+     * platform thread 모드는 동시성이 Tomcat 스레드 수(기본 200)를 넘으면 처리량은 그대로, 대기열 지연만 늘어남
+     */
+    private static void sweep(Args args, LoadGenerator seeded, int warmup, int duration) throws Exception {
+        String label = args.get("label", "run");
+        String out = args.get("out", null);
+        List<String> rows = new ArrayList<>();
+        System.out.printf("%n=== sweep (%s), %ds warmup + %ds per level ===%n", label, warmup, duration);
+        System.out.println("label      conc      thr/s     p50ms     p95ms     p99ms   errors");
+        for (String level : args.get("levels", "8,16,32,64,128,256,512").split(",")) {
+            int concurrency = Integer.parseInt(level.trim());
+            LoadGenerator gen = new LoadGenerator(seeded.target, seeded.questions, seeded.askRatio, seeded.batchRatio);
+            long start = System.nanoTime();
+            gen.measureFromNanos = start + TimeUnit.SECONDS.toNanos(warmup);
+            gen.runClosed(concurrency, gen.measureFromNanos + TimeUnit.SECONDS.toNanos(duration));
+
+            double seconds = (System.nanoTime() - gen.measureFromNanos) / 1e9;
+            LatencyRecorder.Summary s = gen.ask.summary(seconds);
+            System.out.printf(Locale.ROOT, "%-9s %5d %10.2f %9.1f %9.1f %9.1f %8d%n",
+                    label, concurrency, s.throughput(), s.p50(), s.p95(), s.p99(), s.errors());
+            rows.add(String.format(Locale.ROOT, "%s,%d,%.2f,%.1f,%.1f,%.1f,%d",
+                    label, concurrency, s.throughput(), s.p50(), s.p95(), s.p99(), s.errors()));
+        }
+        if (out != null) {
+            Path path = Path.of(out);
+            if (!Files.exists(path)) {
+                Files.writeString(path, "label,concurrency,throughput,p50_ms,p95_ms,p99_ms,errors\n", StandardCharsets.UTF_8);
+            }
+            Files.write(path, rows, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        }
+    }
+
+    private void runClosed(int concurrency, long endNanos) throws InterruptedException {
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                workers.submit(() -> {
+                    while (System.nanoTime() < endNanos) {
+                        fire(System.nanoTime());
+                    }
+                });
+            }
+        }
+    }
+
+    private void runOpen(double ratePerSec, long endNanos) {
+        long interval = (long) (1e9 / ratePerSec);
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            long next = System.nanoTime();
+            while (next < endNanos) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+                long intended = next;
+                workers.submit(() -> fire(intended));
+                next += interval;
+            }
+        }
+    }
+
+    /** intendedNanos 부터 응답 완료까지를 지연으로 기록 */
+    private void fire(long intendedNanos) {
+        boolean isAsk = ThreadLocalRandom.current().nextDouble() < askRatio;
+        LatencyRecorder rec = isAsk ? ask : ingest;
+        try {
+            int status = isAsk ? askOnce() : ingestOnce();
+            if (intendedNanos < measureFromNanos) return;
+            if (status / 100 == 2) {
+                rec.record((System.nanoTime() - intendedNanos) / 1000);
+            } else {
+                rec.error();
+            }
+        } catch (IOException e) {
+            if (intendedNanos >= measureFromNanos) rec.error();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int askOnce() throws IOException, InterruptedException {
+        String q = questions.isEmpty() ? syntheticQuestion() : questions.get(ThreadLocalRandom.current().nextInt(questions.size()));
+        String priority = ThreadLocalRandom.current().nextDouble() < batchRatio ? "batch" : "interactive";
+        return post("/api/ask", "{\"question\":" + Json.quote(q) + ",\"topK\":5}", priority);
+    }
+
+    private int ingestOnce() throws IOException, InterruptedException {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        String topic = TOPICS[r.nextInt(TOPICS.length)];
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            text.append(topic).append(' ').append(VERBS[r.nextInt(VERBS.length)])
+                    .append("은 ").append(r.nextInt(1, 90)).append("일 이내에 처리하며, 한도는 ")
+                    .append(r.nextInt(10, 500)).append("만원이다. ");
+        }
+        return post("/api/ingest", "{\"title\":" + Json.quote(topic + " 규정 " + r.nextInt(100_000))
+                + ",\"text\":" + Json.quote(text.toString()) + "}");
+    }
+
+    private String syntheticQuestion() {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        return TOPICS[r.nextInt(TOPICS.length)] + " " + VERBS[r.nextInt(VERBS.length)] + "은 어떻게 되나요?";
+    }
+
+    private int post(String path, String json) throws IOException, InterruptedException {
+        return post(path, json, "interactive");
+    }
+
+    private int post(String path, String json, String priority) throws IOException, InterruptedException {
+        HttpRequest req = HttpRequest.newBuilder(URI.create(target + path))
+                .timeout(Duration.ofSeconds(60))
+                .header("Content-Type", "application/json")
+                .header("X-Request-Priority", priority)
+                .POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8))
+                .build();
+        return http.send(req, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static List<String> loadQuestions(String file) throws IOException {
+        if (file == null) return List.of();
+        List<String> out = new ArrayList<>();
+        for (String line : Files.readAllLines(Path.of(file), StandardCharsets.UTF_8)) {
+            if (!line.isBlank()) out.add(line.trim());
+        }
+        return out;
+    }
+}
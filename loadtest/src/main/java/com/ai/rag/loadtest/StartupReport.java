@@ -0,0 +1,160 @@
+package com.ai.rag.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 기동 모드별 time-to-first-successful-ask 측정 (jvm / jvm+CDS / native)
+ * 프로세스 시작 → readiness UP → 첫 /api/ask 2xx 까지를 --runs 번 재고 중앙값 출력
+ *
+ * 옵션
+ * --cmd="java -jar build/libs/rag-0.0.1-SNAPSHOT.jar --spring.profiles.active=loadtest"  (필수, 공백으로 나눔)
+ * --label=jvm               (결과 줄 앞에 붙는 이름)
+ * --runs=5
+ * --target=http://localhost:8080
+ * --timeout=180             (초, 한 번의 기동을 포기하는 시간)
+ * --question="연차 신청 절차는 어떻게 되나요?"
+ * --log=startup.log         (앱 출력, 없으면 버림)
+ * --out=startup.csv         (결과를 CSV 로 이어 씀)
+ *
+ * 예: 같은 DB/fake Gemini 를 띄워둔 채로
+ *   --label=jvm    --cmd="java -jar build/libs/rag-0.0.1-SNAPSHOT.jar ..."
+ *   --label=cds    --cmd="java -XX:SharedArchiveFile=build/cds/application.jsa -jar build/cds/rag-0.0.1-SNAPSHOT.jar ..."
+ *   --label=native --cmd="build/native/nativeCompile/rag ..."
+ * 첫 ask 가 Gemini 까지 가려면 DB 에 문서가 있어야 함 (LoadGenerator --seed-docs 로 미리 채움)
+ */
+public final class StartupReport {
+
+    private record Run(long readyMs, long firstAskMs, long askLatencyMs) {}
+
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+    private final String target;
+    private final String question;
+
+    private StartupReport(String target, String question) {
+        this.target = target;
+        this.question = question;
+    }
+
+    public static void main(String[] argv) throws Exception {
+        Args args = new Args(argv);
+        if (!args.has("cmd")) {
+            throw new IllegalArgumentException("--cmd=<앱 실행 명령> 이 필요합니다.");
+        }
+        List<String> cmd = Arrays.asList(args.get("cmd", null).trim().split("\\s+"));
+        String label = args.get("label", "app");
+        int runs = args.getInt("runs", 5);
+        long timeoutNanos = TimeUnit.SECONDS.toNanos(args.getInt("timeout", 180));
+        StartupReport report = new StartupReport(args.get("target", "http://localhost:8080"),
+                args.get("question", "연차 신청 절차는 어떻게 되나요?"));
+
+        List<Run> results = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            Run r = report.measure(cmd, args.get("log", null), timeoutNanos);
+            System.out.printf("%-8s run %d: ready %6d ms, first ask %6d ms (ask itself %d ms)%n",
+                    label, i + 1, r.readyMs(), r.firstAskMs(), r.askLatencyMs());
+            results.add(r);
+        }
+
+        long ready = median(results.stream().mapToLong(Run::readyMs).toArray());
+        long firstAsk = median(results.stream().mapToLong(Run::firstAskMs).toArray());
+        long askLatency = median(results.stream().mapToLong(Run::askLatencyMs).toArray());
+        System.out.println("label      runs   ready_ms  first_ask_ms  ask_ms");
+        System.out.printf(Locale.ROOT, "%-8s %6d %10d %13d %7d%n", label, runs, ready, firstAsk, askLatency);
+
+        if (args.has("out")) {
+            Path path = Path.of(args.get("out", null));
+            if (!Files.exists(path)) {
+                Files.writeString(path, "label,runs,ready_ms,first_ask_ms,ask_ms\n", StandardCharsets.UTF_8);
+            }
+            Files.writeString(path, String.format(Locale.ROOT, "%s,%d,%d,%d,%d%n", label, runs, ready, firstAsk, askLatency),
+                    StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        }
+    }
+
+    /** 한 번 기동: readiness UP 까지 polling, 그다음 ask 가 2xx 일 때까지 재시도, 끝나면 종료 */
+    private Run measure(List<String> cmd, String log, long timeoutNanos) throws IOException, InterruptedException {
+        ProcessBuilder pb = new ProcessBuilder(cmd).redirectErrorStream(true);
+        pb.redirectOutput(log == null ? ProcessBuilder.Redirect.DISCARD : ProcessBuilder.Redirect.appendTo(Path.of(log).toFile()));
+        long start = System.nanoTime();
+        long deadline = start + timeoutNanos;
+        Process app = pb.start();
+        try {
+            while (status(get("/actuator/health/readiness")) != 200) {
+                check(app, deadline, "readiness");
+                Thread.sleep(20);
+            }
+            long ready = System.nanoTime();
+
+            long askStart;
+            int status;
+            do {
+                check(app, deadline, "첫 ask");
+                askStart = System.nanoTime();
+                status = status(ask());
+                if (status / 100 != 2) Thread.sleep(20);
+            } while (status / 100 != 2);
+            long done = System.nanoTime();
+            return new Run(millis(ready - start), millis(done - start), millis(done - askStart));
+        } finally {
+            app.destroy();
+            if (!app.waitFor(30, TimeUnit.SECONDS)) {
+                app.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private void check(Process app, long deadline, String phase) {
+        if (!app.isAlive()) {
+            throw new IllegalStateException(phase + " 전에 앱이 종료됐습니다. exit: " + app.exitValue() + " (--log 로 출력 확인)");
+        }
+        if (System.nanoTime() > deadline) {
+            throw new IllegalStateException(phase + " 를 기다리다 timeout");
+        }
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(target + path)).timeout(Duration.ofSeconds(5)).GET().build();
+    }
+
+    private HttpRequest ask() {
+        return HttpRequest.newBuilder(URI.create(target + "/api/ask"))
+                .timeout(Duration.ofSeconds(60))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"question\":" + Json.quote(question) + ",\"topK\":5}",
+                        StandardCharsets.UTF_8))
+                .build();
+    }
+
+    /** 연결 실패/timeout 은 -1 (아직 안 떴음) */
+    private int status(HttpRequest req) throws InterruptedException {
+        try {
+            return http.send(req, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -1,9 +1,12 @@
 package com.ai.rag;
 
+import com.ai.rag.common.NativeHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
 
 @SpringBootApplication
+@ImportRuntimeHints(NativeHints.class)
 public class RagApplication {
 
     public static void main(String[] args) {
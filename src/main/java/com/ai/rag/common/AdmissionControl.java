@@ -0,0 +1,300 @@
+package com.ai.rag.common;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * /api/ask 입장 제어 (rag.admission.*, AdmissionFilter 가 호출)
+ * - 등급은 서버가 정함: batch-tenants 의 tenant 는 batch, 나머지는 interactive
+ *   X-Request-Priority 헤더는 trust-priority-header 일 때만 (게이트웨이가 헤더를 검증/설정하는 배포)
+ * - 동시에 처리하는 ask 를 max-in-flight 개로 제한, 나머지는 우선순위 대기열 (interactive 가 항상 batch 보다 먼저 시작)
+ * - batch 는 batch-max-in-flight 까지만 동시에 처리 (남는 자리는 interactive 몫)
+ * - 도착 시 예상 대기 = max(앞선 대기 수 / 자리 수 × 처리시간 EWMA, 최근 대기시간 EWMA)
+ *   Gemini 동시 호출이 llm-max-in-flight 를 넘으면 처리시간을 그 비율만큼 늘려 잡음 (응답이 느려지기 전에 먼저 반영)
+ *   예상 대기 + 처리시간이 등급별 deadline 을 넘으면 기다리지 않고 바로 거절
+ * - 대기 중에도 (deadline - 처리시간) 까지 시작하지 못하면 거절 → 늦게 끝나 버려질 요청에 자리를 쓰지 않음
+ * - 대기열이 가득 차면 interactive 는 가장 최근에 들어온 batch 를 밀어내고 들어감, batch 는 거절
+ * - 메트릭: rag.admission.admitted{priority}, rag.admission.shed{priority,reason},
+ *   rag.admission.completed{priority,outcome=goodput|late|error}, rag.admission.queue{priority},
+ *   rag.admission.in-flight / queued / llm-in-flight
+ */
+@Component
+public class AdmissionControl {
+
+    /** X-Request-Priority: batch | evaluation | eval → BATCH, 그 외(없음 포함) → INTERACTIVE (신뢰하는 헤더일 때만) */
+    public enum Priority {
+        INTERACTIVE, BATCH;
+
+        public static Priority parse(String header) {
+            if (header == null) return INTERACTIVE;
+            return switch (header.trim().toLowerCase(Locale.ROOT)) {
+                case "batch", "evaluation", "eval" -> BATCH;
+                default -> INTERACTIVE;
+            };
+        }
+
+        String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /** 입장한 요청 (release 에 그대로 넘김) */
+    public record Ticket(Priority priority, long arrivedAt, long startedAt, long deadlineAt) {}
+
+    /** ticket 이 null 이면 거절: status (interactive 503, batch 429), reason, Retry-After 초 */
+    public record Decision(Ticket ticket, int status, String reason, long retryAfterSeconds) {
+        public boolean admitted() {
+            return ticket != null;
+        }
+    }
+
+    private static final class Waiter {
+        final Priority priority;
+        final long arrived;
+        final Condition ready;
+        boolean admitted;
+        String shedReason;
+
+        Waiter(Priority priority, long arrived, Condition ready) {
+            this.priority = priority;
+            this.arrived = arrived;
+            this.ready = ready;
+        }
+    }
+
+    private final boolean enabled;
+    private final int maxInFlight;
+    private final int batchMaxInFlight;
+    private final int maxQueue;
+    private final long interactiveDeadlineNanos;
+    private final long batchDeadlineNanos;
+    private final int llmMaxInFlight;
+    private final double alpha;
+    private final Set<String> batchTenants;
+    private final boolean trustPriorityHeader;
+    private final LlmLoad llm;
+    private final MeterRegistry registry;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<Waiter> interactive = new ArrayDeque<>();
+    private final Deque<Waiter> batch = new ArrayDeque<>();
+    private int inFlight;
+    private int batchInFlight;
+    /** 0 = 아직 표본 없음 (예측으로는 거절하지 않고 대기 timeout 만 적용) */
+    private double serviceEwma;
+    private final double[] queueEwma = new double[Priority.values().length];
+
+    public AdmissionControl(@Value("${rag.admission.enabled:true}") boolean enabled,
+                            @Value("${rag.admission.max-in-flight:64}") int maxInFlight,
+                            @Value("${rag.admission.batch-max-in-flight:16}") int batchMaxInFlight,
+                            @Value("${rag.admission.max-queue:256}") int maxQueue,
+                            @Value("${rag.admission.interactive-deadline-ms:15000}") long interactiveDeadlineMs,
+                            @Value("${rag.admission.batch-deadline-ms:120000}") long batchDeadlineMs,
+                            @Value("${rag.admission.llm-max-in-flight:32}") int llmMaxInFlight,
+                            @Value("${rag.admission.ewma-alpha:0.2}") double alpha,
+                            @Value("${rag.admission.batch-tenants:}") List<String> batchTenants,
+                            @Value("${rag.admission.trust-priority-header:false}") boolean trustPriorityHeader,
+                            LlmLoad llm,
+                            MeterRegistry registry) {
+        if (maxInFlight < 1 || batchMaxInFlight < 1 || batchMaxInFlight > maxInFlight || maxQueue < 0) {
+            throw new IllegalArgumentException("rag.admission.max-in-flight >= batch-max-in-flight >= 1, max-queue >= 0 이어야 합니다.");
+        }
+        if (alpha <= 0 || alpha > 1) {
+            throw new IllegalArgumentException("rag.admission.ewma-alpha 는 (0, 1] 범위여야 합니다: " + alpha);
+        }
+        this.enabled = enabled;
+        this.maxInFlight = maxInFlight;
+        this.batchMaxInFlight = batchMaxInFlight;
+        this.maxQueue = maxQueue;
+        this.interactiveDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(interactiveDeadlineMs);
+        this.batchDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(batchDeadlineMs);
+        this.llmMaxInFlight = llmMaxInFlight;
+        this.alpha = alpha;
+        this.batchTenants = batchTenants.stream()
+                .map(t -> t.trim().toLowerCase(Locale.ROOT))
+                .filter(t -> !t.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+        this.trustPriorityHeader = trustPriorityHeader;
+        this.llm = llm;
+        this.registry = registry;
+
+        Gauge.builder("rag.admission.in-flight", this, c -> c.read(() -> c.inFlight))
+                .description("처리 중인 ask 수").register(registry);
+        Gauge.builder("rag.admission.queued", this, c -> c.read(() -> c.interactive.size() + c.batch.size()))
+                .description("입장 대기 중인 ask 수").register(registry);
+        Gauge.builder("rag.admission.llm-in-flight", llm, LlmLoad::inFlight)
+                .description("진행 중인 Gemini generateContent 호출 수").register(registry);
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /** 요청 등급: batch-tenants 면 batch, 아니면 헤더를 신뢰하는 설정일 때만 헤더, 그 외 interactive */
+    public Priority priority(String tenantId, String header) {
+        if (tenantId != null && batchTenants.contains(tenantId)) return Priority.BATCH;
+        return trustPriorityHeader ? Priority.parse(header) : Priority.INTERACTIVE;
+    }
+
+    /** 바로 입장, 대기 후 입장, 또는 거절 */
+    public Decision acquire(Priority p) throws InterruptedException {
+        long now = System.nanoTime();
+        long deadline = now + deadlineNanos(p);
+        Waiter w;
+        lock.lock();
+        try {
+            if (canStart(p) && ahead(p) == 0) {
+                start(p);
+                return admit(p, now, now, deadline);
+            }
+            long estimate = estimateWait(p);
+            if (serviceEwma > 0 && estimate + serviceEwma > deadlineNanos(p)) {
+                return shed(p, "deadline", estimate);
+            }
+            if (interactive.size() + batch.size() >= maxQueue) {
+                if (p == Priority.BATCH || batch.isEmpty()) {
+                    return shed(p, "queue-full", estimate);
+                }
+                Waiter victim = batch.pollLast();
+                victim.shedReason = "preempted";
+                victim.ready.signal();
+            }
+            w = new Waiter(p, now, lock.newCondition());
+            (p == Priority.INTERACTIVE ? interactive : batch).addLast(w);
+
+            // 처리시간만큼 남겨두고 시작해야 deadline 안에 끝남
+            long startBy = deadline - (long) serviceEwma;
+            try {
+                while (!w.admitted && w.shedReason == null) {
+                    long left = startBy - System.nanoTime();
+                    if (left <= 0) {
+                        (p == Priority.INTERACTIVE ? interactive : batch).remove(w);
+                        w.shedReason = "timeout";
+                        break;
+                    }
+                    w.ready.awaitNanos(left);
+                }
+            } catch (InterruptedException e) {
+                if (w.admitted) {
+                    finish(p);
+                } else {
+                    (p == Priority.INTERACTIVE ? interactive : batch).remove(w);
+                }
+                throw e;
+            }
+            if (w.shedReason != null) {
+                return shed(p, w.shedReason, estimateWait(p));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return admit(p, w.arrived, System.nanoTime(), deadline);
+    }
+
+    /** 입장한 요청 종료 (ok = 5xx/예외 없이 끝남). deadline 안에 성공한 요청이 goodput */
+    public void release(Ticket t, boolean ok) {
+        long now = System.nanoTime();
+        long service = now - t.startedAt();
+        lock.lock();
+        try {
+            finish(t.priority());
+            if (ok) {
+                serviceEwma = serviceEwma == 0 ? service : alpha * service + (1 - alpha) * serviceEwma;
+            }
+        } finally {
+            lock.unlock();
+        }
+        String outcome = !ok ? "error" : now > t.deadlineAt() ? "late" : "goodput";
+        registry.counter("rag.admission.completed", "priority", t.priority().tag(), "outcome", outcome).increment();
+    }
+
+    private Decision admit(Priority p, long arrived, long started, long deadline) {
+        long queued = started - arrived;
+        lock.lock();
+        try {
+            queueEwma[p.ordinal()] = alpha * queued + (1 - alpha) * queueEwma[p.ordinal()];
+        } finally {
+            lock.unlock();
+        }
+        Timer.builder("rag.admission.queue").tag("priority", p.tag())
+                .description("ask 입장 대기 시간").register(registry)
+                .record(queued, TimeUnit.NANOSECONDS);
+        registry.counter("rag.admission.admitted", "priority", p.tag()).increment();
+        return new Decision(new Ticket(p, arrived, started, deadline), 200, null, 0);
+    }
+
+    private Decision shed(Priority p, String reason, long estimateNanos) {
+        registry.counter("rag.admission.shed", "priority", p.tag(), "reason", reason).increment();
+        long retryAfter = Math.max(1, Math.min(60, TimeUnit.NANOSECONDS.toSeconds(estimateNanos) + 1));
+        return new Decision(null, p == Priority.INTERACTIVE ? 503 : 429, reason, retryAfter);
+    }
+
+    /** lock 안에서 */
+    private boolean canStart(Priority p) {
+        return inFlight < maxInFlight && (p == Priority.INTERACTIVE || batchInFlight < batchMaxInFlight);
+    }
+
+    /** lock 안에서: 이 등급보다 먼저 시작할 대기 수 */
+    private int ahead(Priority p) {
+        return interactive.size() + (p == Priority.BATCH ? batch.size() : 0);
+    }
+
+    /** lock 안에서 */
+    private long estimateWait(Priority p) {
+        int slots = p == Priority.INTERACTIVE ? maxInFlight : batchMaxInFlight;
+        double predicted = (ahead(p) + 1) * serviceEwma * llmPressure() / slots;
+        return (long) Math.max(predicted, queueEwma[p.ordinal()]);
+    }
+
+    private double llmPressure() {
+        int calls = llm.inFlight();
+        return llmMaxInFlight > 0 && calls > llmMaxInFlight ? (double) calls / llmMaxInFlight : 1.0;
+    }
+
+    /** lock 안에서 */
+    private void start(Priority p) {
+        inFlight++;
+        if (p == Priority.BATCH) batchInFlight++;
+    }
+
+    /** lock 안에서: 자리 반납 후 대기열에서 시작할 수 있는 만큼 깨움 */
+    private void finish(Priority p) {
+        inFlight--;
+        if (p == Priority.BATCH) batchInFlight--;
+        while (inFlight < maxInFlight) {
+            Waiter next = interactive.pollFirst();
+            if (next == null && batchInFlight < batchMaxInFlight) next = batch.pollFirst();
+            if (next == null) return;
+            start(next.priority);
+            next.admitted = true;
+            next.ready.signal();
+        }
+    }
+
+    private long deadlineNanos(Priority p) {
+        return p == Priority.INTERACTIVE ? interactiveDeadlineNanos : batchDeadlineNanos;
+    }
+
+    private int read(IntSupplier s) {
+        lock.lock();
+        try {
+            return s.getAsInt();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
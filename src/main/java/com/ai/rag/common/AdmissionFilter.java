@@ -0,0 +1,84 @@
+package com.ai.rag.common;
+
+import com.ai.rag.observability.ServerTiming;
+import jakarta.servlet.*;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * POST /api/ask 앞단 입장 제어 (AdmissionControl)
+ * - 등급은 AdmissionControl.priority (tenant 설정, 신뢰하는 배포에서만 X-Request-Priority 헤더)
+ *   tenant 헤더가 잘못됐으면 입장 제어 없이 넘김 (컨트롤러가 바로 400)
+ * - 거절 시 컨트롤러까지 가지 않고 503(interactive) / 429(batch) + Retry-After + JSON 본문
+ * - TraceIdFilter 뒤에서 실행 → 대기시간이 Server-Timing 의 admission 으로 보임
+ */
+public class AdmissionFilter implements Filter {
+
+    public static final String PRIORITY_HEADER = "X-Request-Priority";
+
+    private final AdmissionControl control;
+    private final TenantResolver tenants;
+
+    public AdmissionFilter(AdmissionControl control, TenantResolver tenants) {
+        this.control = control;
+        this.tenants = tenants;
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        HttpServletRequest req = (HttpServletRequest) request;
+        HttpServletResponse res = (HttpServletResponse) response;
+        if (!control.enabled() || !"POST".equals(req.getMethod())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String tenantId;
+        try {
+            tenantId = tenants.resolve(req.getHeader(TenantResolver.HEADER));
+        } catch (ResponseStatusException e) {
+            chain.doFilter(request, response);
+            return;
+        }
+        AdmissionControl.Priority priority = control.priority(tenantId, req.getHeader(PRIORITY_HEADER));
+        AdmissionControl.Decision decision;
+        try {
+            decision = control.acquire(priority);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            res.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        if (!decision.admitted()) {
+            reject(res, decision);
+            return;
+        }
+
+        AdmissionControl.Ticket ticket = decision.ticket();
+        ServerTiming.record("admission", ticket.startedAt() - ticket.arrivedAt());
+        boolean ok = false;
+        try {
+            chain.doFilter(request, response);
+            ok = res.getStatus() < 500;
+        } finally {
+            control.release(ticket, ok);
+        }
+    }
+
+    private static void reject(HttpServletResponse res, AdmissionControl.Decision d) throws IOException {
+        res.setStatus(d.status());
+        res.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(d.retryAfterSeconds()));
+        res.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        res.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        res.getWriter().write("{\"error\":\"overloaded\",\"reason\":\"" + d.reason()
+                + "\",\"retryAfterSeconds\":" + d.retryAfterSeconds() + "}");
+    }
+}
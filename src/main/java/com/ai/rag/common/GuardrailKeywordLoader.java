@@ -0,0 +1,74 @@
+package com.ai.rag.common;
+
+import com.ai.rag.utils.GuardrailKeywords;
+import com.ai.rag.utils.InputGuardrail;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * guardrail.keywords-file (UTF-8 properties) 을 주기적으로 확인해서 바뀌면 InputGuardrail 에 반영
+ * - 키: injection, self-harm, violence, sexual, hate (쉼표 구분)
+ * - 없는 키는 기본 목록 유지
+ * - 파싱 실패 시 기존 목록 유지
+ */
+@Slf4j
+@Component
+public class GuardrailKeywordLoader {
+
+    private final String keywordsFile;
+    private volatile long lastModified = -1;
+
+    public GuardrailKeywordLoader(@Value("${guardrail.keywords-file:}") String keywordsFile) {
+        this.keywordsFile = keywordsFile;
+    }
+
+    @Scheduled(fixedDelayString = "${guardrail.reload-interval-ms:5000}")
+    public void reloadIfChanged() {
+        if (keywordsFile == null || keywordsFile.isBlank()) return;
+
+        Path path = Path.of(keywordsFile);
+        try {
+            if (!Files.exists(path)) return;
+            long modified = Files.getLastModifiedTime(path).toMillis();
+            if (modified == lastModified) return;
+
+            Properties props = new Properties();
+            try (Reader r = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                props.load(r);
+            }
+
+            GuardrailKeywords defaults = GuardrailKeywords.defaults();
+            InputGuardrail.reload(new GuardrailKeywords(
+                    list(props, "injection", defaults.injection()),
+                    list(props, "self-harm", defaults.selfHarm()),
+                    list(props, "violence", defaults.violence()),
+                    list(props, "sexual", defaults.sexual()),
+                    list(props, "hate", defaults.hate())
+            ));
+            lastModified = modified;
+            log.info("guardrail 키워드를 다시 읽었습니다. file: {}", path);
+        } catch (IOException | RuntimeException e) {
+            log.warn("guardrail 키워드 파일을 읽지 못해 기존 목록을 유지합니다. file: {}", path, e);
+        }
+    }
+
+    private List<String> list(Properties props, String key, List<String> fallback) {
+        String v = props.getProperty(key);
+        if (v == null) return fallback;
+        return Arrays.stream(v.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .toList();
+    }
+}
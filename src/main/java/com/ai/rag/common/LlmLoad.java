@@ -0,0 +1,10 @@
+package com.ai.rag.common;
+
+/**
+ * LLM 호출 부하 신호 (AdmissionControl 이 처리시간 예측에 사용, 구현은 model.GeminiClient)
+ */
+public interface LlmLoad {
+
+    /** 진행 중인 생성 호출 수 */
+    int inFlight();
+}
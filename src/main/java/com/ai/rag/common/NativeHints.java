@@ -0,0 +1,86 @@
+package com.ai.rag.common;
+
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * native image 용 reachability metadata (./gradlew nativeCompile, RagApplication 의 @ImportRuntimeHints)
+ * - PDFBox: 글리프 목록/AFM/CMap 리소스, 암호화 PDF 의 security handler (생성자 reflection)
+ * - POI(XWPF): XMLBeans 스키마(.xsb) 리소스 + 스키마 타입 구현 클래스 (이름으로 Class.forName → 생성자 호출)
+ *   타입이 수천 개라 빌드 시점에 클래스패스에서 패키지 단위로 찾아서 등록
+ * - extractHwpx 의 JDK DOM 파서: 오류 메시지 resource bundle (깨진 XML 에서 예외 생성 시 필요)
+ * - POI 가 쓰는 log4j-api 의 provider 설정
+ */
+public class NativeHints implements RuntimeHintsRegistrar {
+
+    private static final List<String> XMLBEANS_PACKAGES = List.of(
+            "org/apache/poi/schemas/ooxml/system/ooxml",
+            "org/openxmlformats/schemas/wordprocessingml/x2006/main",
+            "org/openxmlformats/schemas/officeDocument/x2006",
+            "org/openxmlformats/schemas/drawingml/x2006",
+            "org/openxmlformats/schemas/schemaLibrary/x2006",
+            "com/microsoft/schemas"
+    );
+
+    private static final List<String> XML_BUNDLES = List.of(
+            "com.sun.org.apache.xerces.internal.impl.msg.XMLMessages",
+            "com.sun.org.apache.xerces.internal.impl.msg.DOMMessages",
+            "com.sun.org.apache.xerces.internal.impl.msg.SAXMessages",
+            "com.sun.org.apache.xerces.internal.impl.msg.XMLSchemaMessages",
+            "com.sun.org.apache.xml.internal.res.XMLErrorResources"
+    );
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        hints.resources()
+                .registerPattern("org/apache/pdfbox/resources/**")
+                .registerPattern("org/apache/fontbox/cmap/*")
+                .registerPattern("org/apache/fontbox/unicode/*")
+                .registerPattern("org/apache/poi/schemas/**/*.xsb")
+                .registerPattern("META-INF/log4j-provider.properties");
+        hints.reflection()
+                .registerType(TypeReference.of("org.apache.pdfbox.pdmodel.encryption.StandardSecurityHandler"),
+                        MemberCategory.INVOKE_DECLARED_CONSTRUCTORS)
+                .registerType(TypeReference.of("org.apache.pdfbox.pdmodel.encryption.PublicKeySecurityHandler"),
+                        MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+        XML_BUNDLES.forEach(hints.resources()::registerResourceBundle);
+
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver(classLoader);
+        for (String pkg : XMLBEANS_PACKAGES) {
+            for (String type : classesUnder(resolver, pkg)) {
+                // TypeSystemHolder 는 static typeSystem 필드를 reflection 으로 읽음
+                hints.reflection().registerType(TypeReference.of(type),
+                        MemberCategory.INVOKE_DECLARED_CONSTRUCTORS, MemberCategory.DECLARED_FIELDS);
+            }
+        }
+    }
+
+    /** pkg 아래(하위 패키지 포함) 클래스 이름, 클래스는 로딩하지 않음 */
+    private static List<String> classesUnder(PathMatchingResourcePatternResolver resolver, String pkg) {
+        try {
+            Resource[] found = resolver.getResources("classpath*:" + pkg + "/**/*.class");
+            return Arrays.stream(found)
+                    .map(r -> {
+                        try {
+                            String url = r.getURL().toString();
+                            return url.substring(url.lastIndexOf(pkg), url.length() - ".class".length()).replace('/', '.');
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .filter(name -> !name.endsWith("package-info"))
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.ai.rag.common;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * @Scheduled 작업 (임베딩 버전/centroid refresh, replica health check, 캐시/세션 sweep, 키워드 reload)
+ * rag.scheduling.enabled=false 면 끔: contextLoads 처럼 DB 없이 뜨는 실행, migrate 처럼 한 번 돌고 끝나는 실행
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "rag.scheduling.enabled", matchIfMissing = true)
+public class SchedulingConfig {
+}
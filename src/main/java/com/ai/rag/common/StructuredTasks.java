@@ -0,0 +1,101 @@
+package com.ai.rag.common;
+
+import com.ai.rag.observability.ServerTiming;
+import org.slf4j.MDC;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 요청 안에서 독립적인 단계를 동시에 돌리는 structured concurrency 범위 (RagService 의 원 질의 검색 + 질문 확장 leg)
+ * - fork 한 작업은 각자 virtual thread 에서 실행
+ * - await 한 작업이 실패하면 나머지를 취소하고 그 예외를 그대로 던짐 (fail-fast)
+ *   실패해도 되는 작업은 Future.get(timeout) 으로 직접 받고, 필요 없어진 작업은 close 에 맡김
+ * - close 시 남은 작업을 취소하고 끝날 때까지 기다림 → 범위를 벗어난 작업이 남지 않음
+ * - 부모 스레드의 MDC(traceId) 와 Server-Timing 수집 맵을 하위 작업에 넘김
+ * JDK 21 의 StructuredTaskScope 는 preview 라 같은 규칙을 ExecutorService 로 구현
+ *
+ * <pre>
+ * try (StructuredTasks scope = StructuredTasks.open("expand")) {
+ *     Future&lt;A&gt; main = scope.fork(() -> ...);
+ *     Future&lt;B&gt; optional = scope.fork(() -> ...);
+ *     A a = scope.await(main);
+ *     B b = optional.get(budget, NANOSECONDS);   // 늦으면 버리고 close 가 취소/대기
+ * }
+ * </pre>
+ */
+public final class StructuredTasks implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final List<Future<?>> forks = new ArrayList<>();
+
+    private StructuredTasks(String name) {
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+    }
+
+    public static StructuredTasks open(String name) {
+        return new StructuredTasks(name);
+    }
+
+    public <T> Future<T> fork(Callable<T> task) {
+        Future<T> f = executor.submit(propagate(task));
+        forks.add(f);
+        return f;
+    }
+
+    /**
+     * fork 하나의 결과를 기다림 (나머지는 계속 실행), 실패하면 나머지를 취소하고 예외 전파
+     * 결과를 보고 다른 작업이 필요 없어지면 범위를 닫으면 취소됨
+     */
+    public <T> T await(Future<T> fork) {
+        try {
+            return fork.get();
+        } catch (ExecutionException e) {
+            cancelAll();
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error err) throw err;
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelAll();
+            throw new IllegalStateException("동시 작업 대기 중 인터럽트되었습니다.", e);
+        }
+    }
+
+    private void cancelAll() {
+        forks.forEach(f -> f.cancel(true));
+    }
+
+    @Override
+    public void close() {
+        cancelAll();
+        executor.close();
+    }
+
+    /** 다른 스레드에서 실행될 작업에 현재 요청의 MDC / Server-Timing 을 붙임 */
+    public static <T> Callable<T> propagate(Callable<T> task) {
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        Map<String, Long> timings = ServerTiming.current();
+        return () -> {
+            Map<String, String> previousMdc = MDC.getCopyOfContextMap();
+            Map<String, Long> previousTimings = ServerTiming.current();
+            if (mdc == null) MDC.clear();
+            else MDC.setContextMap(mdc);
+            ServerTiming.attach(timings);
+            try {
+                return task.call();
+            } finally {
+                if (previousMdc == null) MDC.clear();
+                else MDC.setContextMap(previousMdc);
+                ServerTiming.attach(previousTimings);
+            }
+        };
+    }
+}
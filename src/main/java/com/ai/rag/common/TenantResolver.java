@@ -0,0 +1,46 @@
+package com.ai.rag.common;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * 요청 헤더(X-Tenant-Id) → tenant id
+ * - 없으면 rag.tenant.default
+ * - 파티션 이름/SQL 리터럴로 쓰이므로 소문자 영숫자와 '_' 만 허용
+ * - 헤더 값이 규칙에 맞지 않으면 400 (클라이언트 입력 오류)
+ */
+@Component
+public class TenantResolver {
+
+    public static final String HEADER = "X-Tenant-Id";
+    public static final String DEFAULT_TENANT = "default";
+
+    private static final Pattern VALID = Pattern.compile("[a-z0-9_]{1,48}");
+
+    private final String defaultTenant;
+
+    public TenantResolver(@Value("${rag.tenant.default:" + DEFAULT_TENANT + "}") String defaultTenant) {
+        this.defaultTenant = validate(defaultTenant);
+    }
+
+    public String resolve(String header) {
+        if (header == null || header.isBlank()) return defaultTenant;
+        String tenantId = header.trim().toLowerCase(Locale.ROOT);
+        if (!VALID.matcher(tenantId).matches()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "잘못된 tenant id 입니다: " + header);
+        }
+        return tenantId;
+    }
+
+    public static String validate(String tenantId) {
+        if (tenantId == null || !VALID.matcher(tenantId).matches()) {
+            throw new IllegalArgumentException("잘못된 tenant id 입니다: " + tenantId);
+        }
+        return tenantId;
+    }
+}
@@ -16,4 +16,13 @@ public class WebConfig {
         bean.setOrder(1); // 가장 앞단에서 실행되도록
         return bean;
     }
+
+    @Bean
+    public FilterRegistrationBean<AdmissionFilter> admissionFilter(AdmissionControl control, TenantResolver tenants) {
+        FilterRegistrationBean<AdmissionFilter> bean = new FilterRegistrationBean<>();
+        bean.setFilter(new AdmissionFilter(control, tenants));
+        bean.addUrlPatterns("/api/ask");
+        bean.setOrder(2); // traceId/Server-Timing 이 열린 뒤
+        return bean;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,73 @@
+package com.ai.rag.controller;
+
+import com.ai.rag.repository.NearDuplicateIndex;
+import com.ai.rag.service.ReembedService;
+import com.ai.rag.service.SnapshotService;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+
+    private final ReembedService reembed;
+    private final NearDuplicateIndex duplicates;
+    private final SnapshotService snapshots;
+
+    public AdminController(ReembedService reembed, NearDuplicateIndex duplicates, SnapshotService snapshots) {
+        this.reembed = reembed;
+        this.duplicates = duplicates;
+        this.snapshots = snapshots;
+    }
+
+    /** shard 별 near-duplicate chunk 수/비율과 판별용 인덱스 크기 (저장 절감은 없음) */
+    @GetMapping("/dedup")
+    public List<NearDuplicateIndex.Report> dedup() {
+        return duplicates.report();
+    }
+
+    @GetMapping("/embeddings")
+    public ReembedService.Status embeddings() {
+        return reembed.status();
+    }
+
+    @PostMapping("/embeddings/reembed")
+    public ReembedService.Status startReembed(@RequestBody ReembedReq req) {
+        return reembed.start(
+                req.version(),
+                req.batchSize() == null ? 500 : req.batchSize(),
+                req.maxPerSec() == null ? 2000 : req.maxPerSec()
+        );
+    }
+
+    @PostMapping("/embeddings/reembed/cancel")
+    public ReembedService.Status cancelReembed() {
+        reembed.cancel();
+        return reembed.status();
+    }
+
+    @PostMapping("/embeddings/reembed/abandon")
+    public ReembedService.Status abandonReembed() {
+        reembed.abandon();
+        return reembed.status();
+    }
+
+    /** base 를 주면 그 스냅샷 이후 delta */
+    @PostMapping("/snapshot/export")
+    public SnapshotService.ExportReport exportSnapshot(@RequestBody SnapshotExportReq req) {
+        return snapshots.export(req.name(), req.base());
+    }
+
+    /** full 스냅샷 + delta 들을 순서대로 */
+    @PostMapping("/snapshot/import")
+    public SnapshotService.ImportReport importSnapshot(@RequestBody SnapshotImportReq req) {
+        return snapshots.importSnapshots(req.names());
+    }
+
+    record ReembedReq(String version, Integer batchSize, Double maxPerSec) {}
+
+    record SnapshotExportReq(String name, String base) {}
+
+    record SnapshotImportReq(List<String> names) {}
+}
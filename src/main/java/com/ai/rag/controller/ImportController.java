@@ -0,0 +1,55 @@
+package com.ai.rag.controller;
+
+import com.ai.rag.common.TenantResolver;
+import com.ai.rag.service.BulkImportService;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * 대량 import (파일 하나씩은 /api/upload)
+ * - 응답은 처리 요약 + 실패 파일 목록 (일부 파일이 실패해도 200)
+ */
+@RestController
+@RequestMapping("/api/import")
+public class ImportController {
+
+    private final BulkImportService importService;
+    private final TenantResolver tenants;
+
+    public ImportController(BulkImportService importService, TenantResolver tenants) {
+        this.importService = importService;
+        this.tenants = tenants;
+    }
+
+    @PostMapping(value = "/zip", consumes = "multipart/form-data")
+    public BulkImportService.ImportReport zip(@RequestHeader(value = TenantResolver.HEADER, required = false) String tenant,
+                                              @RequestPart("file") MultipartFile file,
+                                              @RequestParam(value = "tags", required = false) List<String> tags,
+                                              @RequestParam(value = "owner", required = false) String owner) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return importService.importZip(tenants.resolve(tenant), in, tags, owner);
+        }
+    }
+
+    @PostMapping("/directory")
+    public BulkImportService.ImportReport directory(@RequestHeader(value = TenantResolver.HEADER, required = false) String tenant,
+                                                    @RequestBody DirectoryReq req) {
+        return importService.importDirectory(tenants.resolve(tenant), req.path(), req.tags(), req.owner());
+    }
+
+    /** 한 줄에 문서 하나: {"title": "...", "text": "...", "tags": [...], "owner": "...", "sourceType": "..."} */
+    @PostMapping(value = "/ndjson", consumes = {"application/x-ndjson", "application/jsonl", "text/plain"})
+    public BulkImportService.ImportReport ndjson(@RequestHeader(value = TenantResolver.HEADER, required = false) String tenant,
+                                                 @RequestParam(value = "tags", required = false) List<String> tags,
+                                                 @RequestParam(value = "owner", required = false) String owner,
+                                                 InputStream body) {
+        return importService.importNdjson(tenants.resolve(tenant), body, tags, owner);
+    }
+
+    /** path: rag.import.allowed-root 기준 상대 경로 */
+    record DirectoryReq(String path, List<String> tags, String owner) {}
+}
@@ -1,36 +1,109 @@
 package com.ai.rag.controller;
 
+import com.ai.rag.common.TenantResolver;
+import com.ai.rag.dto.AskView;
+import com.ai.rag.repository.RagRepository;
 import com.ai.rag.service.RagService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @RestController
 @RequestMapping("/api")
 public class RagController {
 
+    private static final Pattern CHUNK_REF = Pattern.compile("(\\d{1,18})-(\\d{1,9})");
+    // tenant 별 데이터라 공유 캐시(CDN/프록시)에는 두지 않음, 문서 삭제가 반영되도록 짧게 두고 이후엔 ETag 로 재검증
+    private static final CacheControl CHUNK_CACHE = CacheControl.maxAge(10, TimeUnit.MINUTES).cachePrivate();
+
     private final RagService service;
+    private final TenantResolver tenants;
 
-    public RagController(RagService service) {
+    public RagController(RagService service, TenantResolver tenants) {
         this.service = service;
+        this.tenants = tenants;
     }
 
     @PostMapping(value = "/upload", consumes = "multipart/form-data")
-    public RagController.IngestRes upload(@RequestPart("file") MultipartFile file) {
-        long docId = service.ingestFile(file);
+    public RagController.IngestRes upload(@RequestHeader(value = TenantResolver.HEADER, required = false) String tenant,
+                                          @RequestPart("file") MultipartFile file,
+                                          @RequestParam(value = "tags", required = false) List<String> tags,
+                                          @RequestParam(value = "owner", required = false) String owner) {
+        long docId = service.ingestFile(tenants.resolve(tenant), file, tags, owner);
         return new RagController.IngestRes(docId);
     }
 
     @PostMapping("/ingest")
-    public IngestRes ingest(@RequestBody IngestReq req) {
-        return new IngestRes(service.ingest(req.title(), req.text()));
+    public IngestRes ingest(@RequestHeader(value = TenantResolver.HEADER, required = false) String tenant,
+                            @RequestBody IngestReq req) {
+        RagRepository.DocumentMeta meta = new RagRepository.DocumentMeta(req.tags(), req.owner(), req.sourceType());
+        return new IngestRes(service.ingest(tenants.resolve(tenant), req.title(), req.text(), meta));
     }
 
+    /**
+     * view=answer|refs|full (기본 full), refs 면 근거 본문은 /api/chunks 로 따로
+     * sessionId: 대화 세션 (첫 질문은 "" 등 아무 값, 응답의 sessionId 로 후속 질문), 없으면 단발 질문
+     */
     @PostMapping("/ask")
-    public RagService.AskResponse ask(@RequestBody AskReq req) {
-        return service.ask(req.question(), req.topK() == null ? 5 : req.topK(), req.maxDistance());
+    public AskView ask(@RequestHeader(value = TenantResolver.HEADER, required = false) String tenant,
+                       @RequestParam(value = "view", required = false) String view,
+                       @RequestBody AskReq req) {
+        AskView.Mode mode = parseView(view);
+        RagService.AskResponse res = service.ask(tenants.resolve(tenant), req.question(),
+                req.topK() == null ? 5 : req.topK(), req.maxDistance(), req.filter(), req.sessionId());
+        return AskView.of(res, mode);
+    }
+
+    /**
+     * 근거 chunk 본문, ref = {documentId}-{chunkIndex}
+     * chunk 는 저장 후 바뀌지 않고 문서 id 는 재사용되지 않으므로 tenant + ref 를 ETag 로 사용
+     * → 삭제된 문서면 404 가 되도록 조회는 항상 하고, If-None-Match 가 맞으면 본문 없이 304
+     */
+    @GetMapping("/chunks/{ref}")
+    public ResponseEntity<ChunkRes> chunk(@RequestHeader(value = TenantResolver.HEADER, required = false) String tenant,
+                                          @PathVariable("ref") String ref,
+                                          WebRequest request) {
+        Matcher m = CHUNK_REF.matcher(ref);
+        if (!m.matches()) {
+            return ResponseEntity.badRequest().build();
+        }
+        String tenantId = tenants.resolve(tenant);
+        String etag = "\"" + tenantId + ":" + ref + "\"";
+        return service.chunk(tenantId, Long.parseLong(m.group(1)), Integer.parseInt(m.group(2)))
+                .map(c -> request.checkNotModified(etag)
+                        ? ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CHUNK_CACHE)
+                                .varyBy(TenantResolver.HEADER).<ChunkRes>build()
+                        : ResponseEntity.ok().eTag(etag).cacheControl(CHUNK_CACHE).varyBy(TenantResolver.HEADER)
+                                .body(new ChunkRes(ref, c.documentId(), c.chunkIndex(), c.title(), c.content())))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    private static AskView.Mode parseView(String view) {
+        try {
+            return AskView.Mode.parse(view);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/documents/{id}")
+    public DeleteRes delete(@RequestHeader(value = TenantResolver.HEADER, required = false) String tenant,
+                            @PathVariable("id") long id) {
+        return new DeleteRes(id, service.deleteDocument(tenants.resolve(tenant), id));
     }
 
-    record IngestReq(String title, String text) {}
+    record IngestReq(String title, String text, List<String> tags, String owner, String sourceType) {}
     record IngestRes(long documentId) {}
-    record AskReq(String question, Integer topK, Double maxDistance) {}
+    record DeleteRes(long documentId, boolean deleted) {}
+    record ChunkRes(String id, long documentId, int chunkIndex, String title, String content) {}
+    record AskReq(String question, Integer topK, Double maxDistance, RagRepository.SearchFilter filter, String sessionId) {}
 }
@@ -0,0 +1,59 @@
+package com.ai.rag.dto;
+
+import com.ai.rag.repository.RagRepository;
+import com.ai.rag.service.RagService;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * /api/ask 응답 projection (view 파라미터)
+ * - answer: 답변만
+ * - refs  : 답변 + 근거 참조 (본문은 /api/chunks/{documentId}-{chunkIndex} 로 필요할 때만)
+ * - full  : 기존 응답 그대로 (context + sources 본문 포함, 기본값)
+ * 근거 번호 [n] 은 refs/sources 의 n 번째와 같음 (대화 세션이면 세션 전체 근거 기준)
+ * sessionId/turns 는 대화 세션일 때만
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record AskView(
+        String answer,
+        String context,
+        List<RagRepository.ChunkHit> sources,
+        List<SourceRef> refs,
+        boolean partial,
+        String sessionId,
+        Integer turns
+) {
+
+    public enum Mode {
+        ANSWER, REFS, FULL;
+
+        public static Mode parse(String s) {
+            if (s == null || s.isBlank()) return FULL;
+            try {
+                return valueOf(s.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("view 는 answer|refs|full 중 하나여야 합니다: " + s);
+            }
+        }
+    }
+
+    public record SourceRef(String id, long documentId, int chunkIndex, double distance, double similarity, String href) {
+        static SourceRef of(RagRepository.ChunkHit h) {
+            String id = h.documentId() + "-" + h.chunkIndex();
+            return new SourceRef(id, h.documentId(), h.chunkIndex(), h.distance(), h.similarity(), "/api/chunks/" + id);
+        }
+    }
+
+    public static AskView of(RagService.AskResponse res, Mode mode) {
+        String sessionId = res.sessionId();
+        Integer turns = sessionId == null ? null : res.turns();
+        return switch (mode) {
+            case ANSWER -> new AskView(res.answer(), null, null, null, res.partial(), sessionId, turns);
+            case REFS -> new AskView(res.answer(), null, null,
+                    res.sources().stream().map(SourceRef::of).toList(), res.partial(), sessionId, turns);
+            case FULL -> new AskView(res.answer(), res.context(), res.sources(), null, res.partial(), sessionId, turns);
+        };
+    }
+}
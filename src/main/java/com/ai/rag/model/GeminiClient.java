@@ -1,54 +1,217 @@
 package com.ai.rag.model;
 
+import com.ai.rag.common.LlmLoad;
+import com.ai.rag.observability.RagEvents;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestClient;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
-public class GeminiClient {
+public class GeminiClient implements LlmLoad {
 
     private final RestClient client;
     private final String apiKey;
     private final String model;
+    private final GeminiContextCache cache;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private static final Map<String, Object> GENERATION_CONFIG = Map.of(
+            "temperature", 0.2,
+            "maxOutputTokens", 700
+    );
 
     public GeminiClient(
             @Value("${gemini.apiKey}") String apiKey,
-            @Value("${gemini.model}") String model
+            @Value("${gemini.model}") String model,
+            @Value("${gemini.baseUrl:https://generativelanguage.googleapis.com}") String baseUrl,
+            GeminiContextCache cache
     ) {
-        this.client = RestClient.create("https://generativelanguage.googleapis.com");
+        // baseUrl: 부하 테스트 시 loadtest 모듈의 FakeGeminiServer 로 교체
+        this.client = RestClient.create(baseUrl);
         this.apiKey = apiKey;
         this.model = model;
+        this.cache = cache;
     }
 
-    public String generateAnswer(String systemInstruction, String prompt) {
-        // 공식 스키마(GenerateContent): contents(parts(text)) :contentReference[oaicite:2]{index=2}
-        Map<String, Object> body = Map.of(
-                "systemInstruction", Map.of(
-                        "parts", List.of(Map.of("text", systemInstruction))
-                ),
-                "contents", List.of(
-                        Map.of("role", "user",
-                                "parts", List.of(Map.of("text", prompt)))
-                ),
-                "generationConfig", Map.of(
-                        "temperature", 0.2,
-                        "maxOutputTokens", 700
-                )
-        );
-
-        @SuppressWarnings("unchecked")
-        Map<String, Object> res = client.post()
-                .uri("/v1beta/models/{model}:generateContent?key={key}", model, apiKey)
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(body)
+    /** 진행 중인 generateContent 호출 수 (AdmissionControl 이 Gemini 포화 신호로 사용) */
+    @Override
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    /** 기동 warm-up: 모델 메타데이터 조회(models.get, 과금 없음)로 연결/TLS/JSON 경로를 미리 태움 */
+    public void warmUp() {
+        client.get()
+                .uri("/v1beta/models/{model}?key={key}", model, apiKey)
                 .retrieve()
                 .body(Map.class);
+    }
+
+    /** 이전 대화 한 턴 (user 메시지 + model 답변) */
+    public record Turn(String user, String model) {}
+
+    public String generateAnswer(String systemInstruction, String prompt) {
+        return generateAnswer(systemInstruction, List.of(), null, prompt);
+    }
+
+    /**
+     * systemInstruction + history + context 가 캐시 가능한 prefix, prompt 는 이번 요청에만 쓰는 메시지
+     * - prefix 가 cachedContents 로 등록돼 있으면 핸들만 참조하고 prompt 만 보냄 (GeminiContextCache)
+     * - 아니면 기존처럼 전부 inline (context 와 prompt 는 user 메시지 하나로)
+     * - 핸들로 보낸 요청이 캐시를 못 찾으면 (먼저 만료됨) 핸들을 버리고 inline 으로 1회 재시도
+     */
+    public String generateAnswer(String systemInstruction, List<Turn> history, String context, String prompt) {
+        return generateAnswer(systemInstruction, history, context, prompt, true);
+    }
+
+    /** firstAttempt=false: 같은 질문의 품질 재시도 (캐시 생성 횟수에 세지 않음) */
+    public String generateAnswer(String systemInstruction, List<Turn> history, String context, String prompt,
+                                 boolean firstAttempt) {
+        List<Map<String, Object>> prefix = new ArrayList<>(history.size() * 2 + 1);
+        long prefixChars = systemInstruction.length();
+        for (Turn t : history) {
+            prefix.add(content("user", t.user()));
+            prefix.add(content("model", t.model()));
+            prefixChars += t.user().length() + t.model().length();
+        }
+        long totalChars = prefixChars + (context == null ? 0 : context.length()) + prompt.length();
+
+        RagEvents.Generate event = new RagEvents.Generate();
+        event.begin();
+        String answer = null;
+        long cachedChars = 0;
+        try {
+            if (context != null && cache.enabled()) {
+                prefix.add(content("user", context));
+                prefixChars += context.length();
+                String key = cacheKey(systemInstruction, history, context);
+                String name = cache.acquire(key, prefixChars, firstAttempt, remote(systemInstruction, prefix));
+                if (name != null) {
+                    try {
+                        answer = generate(Map.of(
+                                "cachedContent", name,
+                                "contents", List.of(content("user", prompt)),
+                                "generationConfig", GENERATION_CONFIG
+                        ));
+                        cachedChars = prefixChars;
+                        return answer;
+                    } catch (HttpClientErrorException e) {
+                        if (!GeminiContextCache.isMissing(e.getStatusCode(), e.getResponseBodyAsString())) throw e;
+                        cache.invalidate(key, name);
+                    }
+                }
+                prefix.remove(prefix.size() - 1);
+            }
+
+            List<Map<String, Object>> contents = new ArrayList<>(prefix);
+            contents.add(content("user", context == null ? prompt : context + "\n\n" + prompt));
+            // 공식 스키마(GenerateContent): contents(parts(text)) :contentReference[oaicite:2]{index=2}
+            answer = generate(Map.of(
+                    "systemInstruction", Map.of(
+                            "parts", List.of(Map.of("text", systemInstruction))
+                    ),
+                    "contents", contents,
+                    "generationConfig", GENERATION_CONFIG
+            ));
+            return answer;
+        } finally {
+            if (event.shouldCommit()) {
+                event.model = model;
+                event.promptChars = totalChars;
+                event.cachedChars = cachedChars;
+                event.answerChars = answer == null ? 0 : answer.length();
+                event.failed = answer == null;
+                event.commit();
+            }
+        }
+    }
+
+    private String generate(Map<String, Object> body) {
+        inFlight.incrementAndGet();
+        try {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> res = client.post()
+                    .uri("/v1beta/models/{model}:generateContent?key={key}", model, apiKey)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(body)
+                    .retrieve()
+                    .body(Map.class);
+            return extractText(res);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private String cacheKey(String systemInstruction, List<Turn> history, String context) {
+        List<String> parts = new ArrayList<>(history.size() * 2 + 3);
+        parts.add(model);
+        parts.add(systemInstruction);
+        for (Turn t : history) {
+            parts.add(t.user());
+            parts.add(t.model());
+        }
+        parts.add(context);
+        return GeminiContextCache.key(parts.toArray(String[]::new));
+    }
+
+    /** cachedContents 생성 (POST) / ttl 연장 (PATCH updateMask=ttl) */
+    private GeminiContextCache.Remote remote(String systemInstruction, List<Map<String, Object>> prefix) {
+        List<Map<String, Object>> contents = List.copyOf(prefix);
+        return new GeminiContextCache.Remote() {
+            @Override
+            public GeminiContextCache.Handle create(Duration ttl) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> res = client.post()
+                        .uri("/v1beta/cachedContents?key={key}", apiKey)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(Map.of(
+                                "model", "models/" + model,
+                                "systemInstruction", Map.of("parts", List.of(Map.of("text", systemInstruction))),
+                                "contents", contents,
+                                "ttl", ttl.toSeconds() + "s"
+                        ))
+                        .retrieve()
+                        .body(Map.class);
+                return handle(res, ttl);
+            }
+
+            @Override
+            public GeminiContextCache.Handle extend(String name, Duration ttl) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> res = client.patch()
+                        .uri("/v1beta/cachedContents/{id}?updateMask=ttl&key={key}",
+                                name.substring(name.lastIndexOf('/') + 1), apiKey)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(Map.of("ttl", ttl.toSeconds() + "s"))
+                        .retrieve()
+                        .body(Map.class);
+                return handle(res, ttl);
+            }
+        };
+    }
+
+    /** expireTime 이 없으면 요청한 ttl 로 계산 */
+    private static GeminiContextCache.Handle handle(Map<String, Object> res, Duration ttl) {
+        Object name = res == null ? null : res.get("name");
+        if (name == null) {
+            throw new IllegalStateException("cachedContents 응답에 name 이 없습니다.");
+        }
+        Object expire = res.get("expireTime");
+        Instant expireTime = expire == null ? Instant.now().plus(ttl) : Instant.parse(String.valueOf(expire));
+        return new GeminiContextCache.Handle(String.valueOf(name), expireTime);
+    }
 
-        return extractText(res);
+    private static Map<String, Object> content(String role, String text) {
+        return Map.of("role", role, "parts", List.of(Map.of("text", text)));
     }
 
     private String extractText(Map<String, Object> res) {
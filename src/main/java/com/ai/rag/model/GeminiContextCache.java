@@ -0,0 +1,196 @@
+package com.ai.rag.model;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Gemini cachedContents (명시적 context caching) 핸들 관리
+ * - key = model + systemInstruction + 앞쪽 contents(history, 근거 메시지) 의 SHA-256
+ * - 같은 prefix 가 min-uses 번째 질문에 쓰일 때 생성 (같은 근거 조합의 반복 질문, 같은 세션의 후속 질문)
+ *   품질 재시도는 기본으로 횟수에 넣지 않음 (첫 시도 + 재시도만으로 만들면 두 번 쓰고 버리는 캐시에 생성 왕복/저장 비용을 씀)
+ *   count-retries=true 면 재시도도 세서, min-uses=2 에서 첫 시도와 재시도가 공유하는 근거 prefix 를 재시도 때 등록
+ *   이미 있는 핸들은 재시도도 사용
+ * - 만료 refresh-margin 이내면 PATCH 로 ttl 연장, 생성/연장이 실패하거나 다른 요청이 만드는 중이면 null → inline
+ * - 생성 API 가 최소 토큰 수 미만을 거절하므로 min-chars 보다 짧은 prefix 는 시도하지 않음
+ * - 노드 로컬, max-entries 를 넘으면 새로 만들지 않음 (원격 캐시는 ttl 로 스스로 만료)
+ * - gemini.cache{result}: hit | created | extended | skipped | failed | expired
+ */
+@Slf4j
+@Component
+public class GeminiContextCache {
+
+    /** 생성/연장 결과 (name = cachedContents/{id}) */
+    public record Handle(String name, Instant expireTime) {}
+
+    /** 실제 HTTP 호출은 GeminiClient 가 */
+    interface Remote {
+        Handle create(Duration ttl);
+
+        Handle extend(String name, Duration ttl);
+    }
+
+    private static final class Entry {
+        final ReentrantLock lock = new ReentrantLock();
+        final Instant firstSeen = Instant.now();
+        volatile Handle handle;
+        int uses;
+    }
+
+    private final boolean enabled;
+    private final Duration ttl;
+    private final int minChars;
+    private final int minUses;
+    private final boolean countRetries;
+    private final Duration refreshMargin;
+    private final int maxEntries;
+    private final MeterRegistry registry;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public GeminiContextCache(@Value("${gemini.cache.enabled:true}") boolean enabled,
+                              @Value("${gemini.cache.ttl-seconds:300}") long ttlSeconds,
+                              @Value("${gemini.cache.min-chars:4000}") int minChars,
+                              @Value("${gemini.cache.min-uses:2}") int minUses,
+                              @Value("${gemini.cache.count-retries:false}") boolean countRetries,
+                              @Value("${gemini.cache.refresh-margin-seconds:30}") long refreshMarginSeconds,
+                              @Value("${gemini.cache.max-entries:1000}") int maxEntries,
+                              MeterRegistry registry) {
+        if (ttlSeconds <= refreshMarginSeconds) {
+            throw new IllegalArgumentException("gemini.cache.ttl-seconds 는 refresh-margin-seconds 보다 커야 합니다.");
+        }
+        this.enabled = enabled;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.minChars = minChars;
+        this.minUses = Math.max(1, minUses);
+        this.countRetries = countRetries;
+        this.refreshMargin = Duration.ofSeconds(refreshMarginSeconds);
+        this.maxEntries = maxEntries;
+        this.registry = registry;
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public static String key(String... parts) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            for (String p : parts) {
+                sha.update(p.getBytes(StandardCharsets.UTF_8));
+                sha.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(sha.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** 쓸 수 있는 cachedContents 이름, 없으면 null (inline 으로 보냄), firstAttempt=false(재시도)는 count-retries 일 때만 min-uses 에 셈 */
+    String acquire(String key, long chars, boolean firstAttempt, Remote remote) {
+        if (!enabled || chars < minChars) {
+            count("skipped");
+            return null;
+        }
+        Entry e = entries.get(key);
+        if (e == null) {
+            if (entries.size() >= maxEntries) {
+                count("skipped");
+                return null;
+            }
+            e = entries.computeIfAbsent(key, k -> new Entry());
+        }
+        // 같은 prefix 를 다른 요청이 만들거나 연장하는 중이면 기다리지 않고 inline
+        if (!e.lock.tryLock()) {
+            count("skipped");
+            return null;
+        }
+        try {
+            Instant now = Instant.now();
+            Handle h = e.handle;
+            if (h != null && h.expireTime().isAfter(now.plus(refreshMargin))) {
+                count("hit");
+                return h.name();
+            }
+            if (h != null && h.expireTime().isAfter(now)) {
+                try {
+                    e.handle = remote.extend(h.name(), ttl);
+                    count("extended");
+                    return e.handle.name();
+                } catch (RuntimeException ex) {
+                    log.warn("cachedContents ttl 연장 실패로 inline 으로 보냅니다. name: {}, error: {}", h.name(), ex.toString());
+                    e.handle = null;
+                    count("failed");
+                    return null;
+                }
+            }
+            e.handle = null;
+            if ((!firstAttempt && !countRetries) || ++e.uses < minUses) {
+                count("skipped");
+                return null;
+            }
+            try {
+                e.handle = remote.create(ttl);
+                count("created");
+                return e.handle.name();
+            } catch (RuntimeException ex) {
+                // 최소 토큰 수 미달 등: sweep 으로 정리될 때까지 같은 prefix 로 다시 시도하지 않음
+                log.warn("cachedContents 생성 실패로 inline 으로 보냅니다. chars: {}, error: {}", chars, ex.toString());
+                e.uses = Integer.MIN_VALUE;
+                count("failed");
+                return null;
+            }
+        } finally {
+            e.lock.unlock();
+        }
+    }
+
+    /** generateContent 가 캐시를 못 찾았을 때 (원격에서 먼저 만료/삭제) */
+    void invalidate(String key, String name) {
+        Entry e = entries.get(key);
+        if (e != null && e.handle != null && e.handle.name().equals(name)) {
+            e.handle = null;
+        }
+        count("expired");
+    }
+
+    /**
+     * cachedContent 를 참조한 요청의 실패가 캐시가 없어진 것인지 (→ inline 재시도)
+     * 404, 또는 본문이 cachedContent 를 가리키는 400 만 (다른 400/403 은 inline 으로 보내도 같은 오류라 그대로 던짐)
+     */
+    static boolean isMissing(HttpStatusCode status, String body) {
+        int s = status.value();
+        if (s == 404) return true;
+        if (s != 400 || body == null) return false;
+        String b = body.toLowerCase(Locale.ROOT);
+        return b.contains("cachedcontent") || b.contains("cached content");
+    }
+
+    /** 만료된 핸들, ttl 동안 min-uses 에 못 미친 prefix 정리 */
+    @Scheduled(fixedDelayString = "${gemini.cache.sweep-ms:60000}")
+    public void sweep() {
+        Instant now = Instant.now();
+        entries.values().removeIf(e -> {
+            Handle h = e.handle;
+            return h == null ? e.firstSeen.plus(ttl).isBefore(now) : h.expireTime().isBefore(now);
+        });
+    }
+
+    private void count(String result) {
+        registry.counter("gemini.cache", "result", result).increment();
+    }
+}
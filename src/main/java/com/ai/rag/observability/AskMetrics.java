@@ -0,0 +1,75 @@
+package com.ai.rag.observability;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * /api/ask 파이프라인 stage 별 Micrometer 타이머
+ * - rag.ask.stage{stage, outcome} : guardrail / embedding / search / generate / retry / consistency
+ * - rag.ask{outcome, reason, retried} : 요청 전체
+ * - rag.ask.prompt.chars{turn} : LLM 에 새로 보낸 메시지 길이 (first | followup, history 제외)
+ * 둘 다 percentile histogram 을 publish 하므로 Prometheus 에서 p99 계산 가능
+ */
+@Component
+public class AskMetrics {
+
+    public static final String ASK = "rag.ask";
+    public static final String STAGE = "rag.ask.stage";
+    public static final String PROMPT_CHARS = "rag.ask.prompt.chars";
+
+    private final MeterRegistry registry;
+
+    public AskMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public Stage stage(String name) {
+        return new Stage(name, System.nanoTime());
+    }
+
+    public void recordAsk(long startNanos, String outcome, String reason, boolean retried) {
+        Timer.builder(ASK)
+                .description("/api/ask 전체 처리 시간")
+                .tag("outcome", outcome)
+                .tag("reason", reason)
+                .tag("retried", String.valueOf(retried))
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordPrompt(int chars, boolean followUp) {
+        DistributionSummary.builder(PROMPT_CHARS)
+                .description("LLM 에 새로 보낸 user 메시지 길이 (대화 history 제외)")
+                .baseUnit("chars")
+                .tag("turn", followUp ? "followup" : "first")
+                .register(registry)
+                .record(chars);
+    }
+
+    public final class Stage {
+        private final String name;
+        private final long startNanos;
+
+        private Stage(String name, long startNanos) {
+            this.name = name;
+            this.startNanos = startNanos;
+        }
+
+        public void stop(String outcome) {
+            long elapsed = System.nanoTime() - startNanos;
+            Timer.builder(STAGE)
+                    .description("/api/ask stage 별 처리 시간")
+                    .tag("stage", name)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+            ServerTiming.record(name, elapsed);
+        }
+    }
+}
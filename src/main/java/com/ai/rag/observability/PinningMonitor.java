@@ -0,0 +1,96 @@
+package com.ai.rag.observability;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * virtual thread pinning 감지 (JFR jdk.VirtualThreadPinned 이벤트 스트림)
+ * - synchronized 블록/메서드 안에서 I/O·락 대기로 carrier thread 를 threshold 이상 붙잡으면 이벤트 발생
+ * - 메트릭 rag.vthread.pinned{site}: site 는 스택에서 처음 나오는 com.ai.rag 프레임 (없으면 최상단 프레임)
+ * - site 별로 처음 한 번은 스택을 WARN 으로 남김 → 해당 synchronized 를 ReentrantLock 으로 바꾸는 근거
+ * - spring.threads.virtual.enabled=false 면 요청이 platform thread 라 RecordingStream 을 띄우지 않음
+ * JFR 없이 보려면 -Djdk.tracePinnedThreads=short
+ */
+@Slf4j
+@Component
+public class PinningMonitor implements InitializingBean, DisposableBean {
+
+    private static final String EVENT = "jdk.VirtualThreadPinned";
+    private static final String APP_PACKAGE = "com.ai.rag.";
+    private static final int LOGGED_FRAMES = 12;
+
+    private final MeterRegistry registry;
+    private final boolean enabled;
+    private final Duration threshold;
+    private final Set<String> reported = ConcurrentHashMap.newKeySet();
+    private RecordingStream stream;
+
+    public PinningMonitor(MeterRegistry registry,
+                          @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                          @Value("${rag.threads.pinning.enabled:true}") boolean enabled,
+                          @Value("${rag.threads.pinning.threshold-ms:20}") long thresholdMs) {
+        this.registry = registry;
+        this.enabled = virtualThreads && enabled;
+        this.threshold = Duration.ofMillis(thresholdMs);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!enabled) return;
+        stream = new RecordingStream();
+        stream.enable(EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(EVENT, this::onPinned);
+        stream.startAsync();
+        log.info("virtual thread pinning 감지 시작. thresholdMs: {}", threshold.toMillis());
+    }
+
+    private void onPinned(RecordedEvent e) {
+        RecordedStackTrace stack = e.getStackTrace();
+        List<RecordedFrame> frames = stack == null ? List.of() : stack.getFrames();
+        String site = site(frames);
+
+        Counter.builder("rag.vthread.pinned")
+                .description("carrier thread 에 pin 된 virtual thread 수 (threshold 이상)")
+                .tag("site", site)
+                .register(registry)
+                .increment();
+
+        if (reported.add(site)) {
+            String trace = frames.stream().limit(LOGGED_FRAMES).map(PinningMonitor::frame)
+                    .collect(Collectors.joining("\n    at ", "    at ", ""));
+            log.warn("virtual thread 가 pin 되었습니다. site: {}, durationMs: {}\n{}",
+                    site, e.getDuration().toMillis(), trace);
+        }
+    }
+
+    private static String site(List<RecordedFrame> frames) {
+        for (RecordedFrame f : frames) {
+            if (f.getMethod().getType().getName().startsWith(APP_PACKAGE)) return frame(f);
+        }
+        return frames.isEmpty() ? "unknown" : frame(frames.get(0));
+    }
+
+    private static String frame(RecordedFrame f) {
+        return f.getMethod().getType().getName() + "." + f.getMethod().getName();
+    }
+
+    @Override
+    public void destroy() {
+        if (stream != null) stream.close();
+    }
+}
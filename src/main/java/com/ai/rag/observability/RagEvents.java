@@ -0,0 +1,145 @@
+package com.ai.rag.observability;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.slf4j.MDC;
+
+/**
+ * ingest / ask 단계별 JDK Flight Recorder 이벤트
+ * - 모든 이벤트에 traceId (TraceIdFilter, 로그/Server-Timing 과 같은 값) → 느린 요청 하나를 JFR 에서 그대로 추적
+ * - 설정: jfr/rag.jfc (threshold 로 짧은 이벤트는 기록 자체를 안 함), 분석: loadtest 의 JfrStageReport
+ * - 기록이 꺼져 있으면 begin/commit 은 거의 비용이 없음, 값 계산이 드는 필드는 shouldCommit() 뒤에서 채움
+ *
+ * <pre>
+ * RagEvents.Search e = new RagEvents.Search();
+ * e.begin();
+ * ... 작업 ...
+ * if (e.shouldCommit()) { e.hits = ...; e.commit(); }
+ * </pre>
+ */
+public final class RagEvents {
+
+    private RagEvents() {}
+
+    public static final String PREFIX = "com.ai.rag.";
+
+    /** 이벤트 공통: 요청 trace id (요청 밖이면 null) */
+    @StackTrace(false)
+    public abstract static class RagEvent extends Event {
+        @Label("Trace Id")
+        public String traceId = MDC.get(TraceIdFilter.TRACE_ID);
+    }
+
+    @Name(PREFIX + "Parse")
+    @Label("Document Parse")
+    @Category({"RAG", "Ingest"})
+    @Description("DocumentParser 텍스트 추출")
+    public static final class Parse extends RagEvent {
+        @Label("Format")
+        public String format;
+
+        @Label("Input Size")
+        @DataAmount
+        public long bytes;
+
+        @Label("Extracted Chars")
+        public long chars;
+
+        @Label("Failed")
+        public boolean failed;
+    }
+
+    @Name(PREFIX + "Chunk")
+    @Label("Chunking")
+    @Category({"RAG", "Ingest"})
+    public static final class Chunk extends RagEvent {
+        @Label("Input Chars")
+        public long chars;
+
+        @Label("Chunks")
+        public int chunks;
+    }
+
+    @Name(PREFIX + "Embed")
+    @Label("Embedding Batch")
+    @Category({"RAG", "Embedding"})
+    @Description("임베딩 묶음 (ingest 문서 하나의 chunk 들 / bulk import 문서 하나 / 질문 하나)")
+    public static final class Embed extends RagEvent {
+        @Label("Embedding Version")
+        public String version;
+
+        @Label("Source")
+        @Description("ingest | import | ask")
+        public String source;
+
+        @Label("Texts")
+        public int texts;
+
+        @Label("Chars")
+        public long chars;
+    }
+
+    @Name(PREFIX + "Search")
+    @Label("Search TopK")
+    @Category({"RAG", "Ask"})
+    public static final class Search extends RagEvent {
+        @Label("Tenant")
+        public String tenant;
+
+        @Label("K")
+        public int k;
+
+        @Label("Shards")
+        public int shards;
+
+        @Label("Filtered")
+        public boolean filtered;
+
+        @Label("Hits")
+        public int hits;
+
+        @Label("Partial")
+        public boolean partial;
+    }
+
+    @Name(PREFIX + "Generate")
+    @Label("Gemini Generate")
+    @Category({"RAG", "Ask"})
+    public static final class Generate extends RagEvent {
+        @Label("Model")
+        public String model;
+
+        @Label("Prompt Chars")
+        @Description("system + history + 근거 + 질문 (캐시로 참조한 부분 포함)")
+        public long promptChars;
+
+        @Label("Cached Chars")
+        @Description("cachedContents 핸들로 참조해 보내지 않은 prefix 길이 (0 = inline)")
+        public long cachedChars;
+
+        @Label("Answer Chars")
+        public long answerChars;
+
+        @Label("Failed")
+        public boolean failed;
+    }
+
+    @Name(PREFIX + "Decision")
+    @Label("Ask Decision")
+    @Category({"RAG", "Ask"})
+    @Description("품질 재시도 / consistency 판정 (duration 은 판정에 걸린 시간)")
+    public static final class Decision extends RagEvent {
+        @Label("Decision")
+        @Description("retry | consistency")
+        public String decision;
+
+        @Label("Outcome")
+        @Description("retry: retry | skip, consistency: pass | fail")
+        public String outcome;
+    }
+}
@@ -0,0 +1,67 @@
+package com.ai.rag.observability;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 요청 단위 stage 소요시간 수집기 (Server-Timing 헤더용)
+ * - TraceIdFilter 가 요청 시작 시 open, 종료 시 close
+ * - 같은 stage 가 여러 번 기록되면 합산
+ * - 하위 작업 스레드(StructuredTasks)에서도 같은 맵에 기록되도록 current/attach 로 넘김
+ */
+public final class ServerTiming {
+    private ServerTiming() {}
+
+    public static final String HEADER = "Server-Timing";
+
+    private static final ThreadLocal<Map<String, Long>> CURRENT = new ThreadLocal<>();
+
+    static void open() {
+        CURRENT.set(Collections.synchronizedMap(new LinkedHashMap<>()));
+    }
+
+    /** 현재 요청의 수집 맵 (요청 밖이면 null) */
+    public static Map<String, Long> current() {
+        return CURRENT.get();
+    }
+
+    /** 다른 스레드에서 같은 요청의 맵에 기록 (null 이면 해제) */
+    public static void attach(Map<String, Long> timings) {
+        if (timings == null) CURRENT.remove();
+        else CURRENT.set(timings);
+    }
+
+    static void close() {
+        CURRENT.remove();
+    }
+
+    public static void record(String stage, long nanos) {
+        Map<String, Long> timings = CURRENT.get();
+        if (timings != null) {
+            timings.merge(stage, nanos, Long::sum);
+        }
+    }
+
+    /** 예: guardrail;dur=0.42, search;dur=3.10, trace;desc="1a2b3c4d" */
+    public static String header(String traceId) {
+        Map<String, Long> timings = CURRENT.get();
+        if (timings == null) return null;
+
+        StringBuilder sb = new StringBuilder();
+        synchronized (timings) {
+            for (Map.Entry<String, Long> e : timings.entrySet()) {
+                if (!sb.isEmpty()) sb.append(", ");
+                sb.append(e.getKey())
+                        .append(";dur=")
+                        .append(String.format(Locale.ROOT, "%.2f", e.getValue() / 1_000_000.0));
+            }
+        }
+        if (traceId != null) {
+            if (!sb.isEmpty()) sb.append(", ");
+            sb.append("trace;desc=\"").append(traceId).append('"');
+        }
+        return sb.isEmpty() ? null : sb.toString();
+    }
+}
@@ -0,0 +1,37 @@
+package com.ai.rag.observability;
+
+import org.slf4j.MDC;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * 응답 body 가 쓰이기 직전(= 헤더 커밋 전)에 Server-Timing 헤더를 붙인다.
+ * Filter 에서는 chain 이후 이미 응답이 커밋되어 헤더를 추가할 수 없기 때문.
+ */
+@RestControllerAdvice
+public class ServerTimingAdvice implements ResponseBodyAdvice<Object> {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body,
+                                  MethodParameter returnType,
+                                  MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request,
+                                  ServerHttpResponse response) {
+        String header = ServerTiming.header(MDC.get(TraceIdFilter.TRACE_ID));
+        if (header != null) {
+            response.getHeaders().add(ServerTiming.HEADER, header);
+        }
+        return body;
+    }
+}
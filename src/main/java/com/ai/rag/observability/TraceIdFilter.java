@@ -16,10 +16,12 @@ public class TraceIdFilter implements Filter {
 
         String traceId = UUID.randomUUID().toString().substring(0, 8);
         MDC.put(TRACE_ID, traceId);
+        ServerTiming.open();
 
         try {
             chain.doFilter(request, response);
         } finally {
+            ServerTiming.close();
             MDC.remove(TRACE_ID);
         }
     }
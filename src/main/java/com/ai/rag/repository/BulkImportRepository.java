@@ -0,0 +1,173 @@
+package com.ai.rag.repository;
+
+import com.ai.rag.utils.EmbeddingSpec;
+import com.ai.rag.utils.VectorUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 대량 import 용 쓰기 (RagRepository.insertDocument / insertChunk 의 배치 버전)
+ * - 문서 id 는 준비 단계에서 shard 0 시퀀스로 발급 (중복 chunk 참조에 필요), 쓰기는 shard 별로 묶어서 한 트랜잭션에
+ * - documents 는 batch insert (centroid 포함), chunk 는 COPY FROM STDIN 으로
+ * - 재임베딩 중이면 shadow 컬럼도 같이 채움 (dual-write)
+ *   dual-read 중 이미 cutover 된 shard 면 (shadow 컬럼 없음) 새 버전 벡터를 embedding 컬럼에
+ */
+@Slf4j
+@Repository
+public class BulkImportRepository {
+
+    private final ShardRouter shards;
+    private final ReadYourWrites readYourWrites;
+    private final CentroidIndex centroids;
+    private final EmbeddingVersions embeddings;
+
+    public BulkImportRepository(ShardRouter shards, ReadYourWrites readYourWrites, CentroidIndex centroids,
+                                EmbeddingVersions embeddings) {
+        this.shards = shards;
+        this.readYourWrites = readYourWrites;
+        this.centroids = centroids;
+        this.embeddings = embeddings;
+    }
+
+    public long nextDocumentId() {
+        return shards.primary().jdbc().queryForObject("SELECT nextval('documents_id_seq')", Long.class);
+    }
+
+    /**
+     * shard 별 트랜잭션이라 일부 shard 만 커밋될 수 있음 → 커밋되지 않은 문서와 원인을 돌려줌 (전부 저장됐으면 빈 목록)
+     * 돌려받은 문서만 다시 써야 함 (커밋된 문서를 다시 쓰면 id 중복으로 실패)
+     */
+    public List<Failed> write(String tenantId, EmbeddingSpec spec, List<NewDocument> docs) {
+        if (docs.isEmpty()) return List.of();
+
+        List<Long> ids = docs.stream().map(NewDocument::id).toList();
+        Map<ShardRouter.Shard, List<Integer>> byShard = new LinkedHashMap<>();
+        for (int i = 0; i < docs.size(); i++) {
+            byShard.computeIfAbsent(shards.forDocument(ids.get(i)), s -> new ArrayList<>()).add(i);
+        }
+
+        readYourWrites.markWrite(tenantId);
+        List<NewDocument> stored = new ArrayList<>(docs);
+        EmbeddingSpec[] storedSpec = new EmbeddingSpec[docs.size()];
+        List<Failed> failed = new ArrayList<>();
+        for (Map.Entry<ShardRouter.Shard, List<Integer>> e : byShard.entrySet()) {
+            ShardRouter.Shard shard = e.getKey();
+            EmbeddingSpec used;
+            try {
+                used = commitShard(shard, tenantId, spec, docs, stored, ids, e.getValue());
+            } catch (RuntimeException ex) {
+                log.warn("shard 저장 실패. shard: {}, documents: {}, error: {}", shard.index(), e.getValue().size(), ex.toString());
+                for (int p : e.getValue()) failed.add(new Failed(docs.get(p), ex));
+                continue;
+            }
+            for (int p : e.getValue()) storedSpec[p] = used;
+        }
+
+        for (int i = 0; i < stored.size(); i++) {
+            if (storedSpec[i] != null && stored.get(i).centroid() != null) {
+                centroids.put(tenantId, storedSpec[i], ids.get(i), stored.get(i).centroid());
+            }
+        }
+        return failed;
+    }
+
+    /** 한 shard 의 문서를 한 트랜잭션에, 저장에 쓴 버전을 반환 */
+    private EmbeddingSpec commitShard(ShardRouter.Shard shard, String tenantId, EmbeddingSpec spec,
+                                      List<NewDocument> docs, List<NewDocument> stored, List<Long> ids, List<Integer> positions) {
+        shard.partitions().ensure(tenantId);
+        try {
+            shard.tx().executeWithoutResult(status -> writeShard(shard.jdbc(), tenantId, spec, docs, ids, positions));
+            return spec;
+        } catch (BadSqlGrammarException ex) {
+            EmbeddingSpec next = docs.get(positions.get(0)).nextSpec();
+            if (!embeddings.dualRead() || next == null) throw ex;
+            log.info("cutover 된 shard 라 새 버전 벡터만 저장합니다. shard: {}, documents: {}", shard.index(), positions.size());
+            for (int p : positions) stored.set(p, docs.get(p).cutOver());
+            shard.tx().executeWithoutResult(status -> writeShard(shard.jdbc(), tenantId, next, stored, ids, positions));
+            return next;
+        }
+    }
+
+    private void writeShard(JdbcTemplate jdbc, String tenantId, EmbeddingSpec spec,
+                            List<NewDocument> docs, List<Long> ids, List<Integer> positions) {
+        List<Object[]> docArgs = new ArrayList<>(positions.size());
+        boolean dualWrite = false;
+        for (int p : positions) {
+            NewDocument d = docs.get(p);
+            docArgs.add(new Object[]{
+                    ids.get(p), tenantId, d.title(), d.meta().tags().toArray(String[]::new), d.meta().owner(), d.meta().sourceType(),
+                    d.centroid() == null ? null : VectorUtils.toPgVectorLiteral(d.centroid()),
+                    d.centroid() == null ? null : spec.version()
+            });
+            dualWrite |= d.chunks().stream().anyMatch(c -> c.next() != null);
+        }
+        jdbc.batchUpdate("""
+            INSERT INTO documents(id, tenant_id, title, tags, owner, source_type, centroid, centroid_version)
+            VALUES (?, ?, ?, ?, ?, ?, ?::vector, ?)
+        """, docArgs);
+
+        // created_at 은 같은 트랜잭션의 now() 라 documents 와 같은 값
+        StringBuilder copy = new StringBuilder(1 << 16);
+        for (int p : positions) {
+            NewDocument d = docs.get(p);
+            String tags = CopyText.array(d.meta().tags());
+            String owner = CopyText.escape(d.meta().owner());
+            for (int c = 0; c < d.chunks().size(); c++) {
+                NewChunk chunk = d.chunks().get(c);
+                copy.append(CopyText.escape(tenantId)).append('\t')
+                        .append(ids.get(p)).append('\t')
+                        .append(c).append('\t')
+                        .append(CopyText.escape(chunk.content())).append('\t')
+                        .append(chunk.current() == null ? CopyText.NULL : chunk.current().vec()).append('\t')
+                        .append(chunk.current() == null ? CopyText.NULL : CopyText.escape(chunk.current().version())).append('\t')
+                        .append(chunk.simhash() == null ? CopyText.NULL : chunk.simhash()).append('\t')
+                        .append(chunk.canonical() == null ? CopyText.NULL : chunk.canonical().documentId()).append('\t')
+                        .append(chunk.canonical() == null ? CopyText.NULL : chunk.canonical().chunkIndex()).append('\t')
+                        .append(tags).append('\t')
+                        .append(owner).append('\t')
+                        .append(CopyText.escape(d.meta().sourceType()));
+                if (dualWrite) {
+                    copy.append('\t').append(chunk.next() == null ? CopyText.NULL : chunk.next().vec())
+                            .append('\t').append(chunk.next() == null ? CopyText.NULL : CopyText.escape(chunk.next().version()));
+                }
+                copy.append('\n');
+            }
+        }
+
+        String columns = "tenant_id, document_id, chunk_index, content, embedding, embedding_version,"
+                + " simhash, canonical_document_id, canonical_chunk_index, tags, owner, source_type"
+                + (dualWrite ? ", embedding_next, embedding_next_version" : "");
+        String sql = "COPY document_chunks(" + columns + ") FROM STDIN";
+        CopyText.copyIn(jdbc, sql, copy);
+    }
+
+    /**
+     * centroid: chunk 들의 active 버전 벡터 평균
+     * nextSpec / nextCentroid: 재임베딩 중이면 새 버전과 그 버전 기준 centroid (아니면 null)
+     */
+    public record NewDocument(long id, String title, RagRepository.DocumentMeta meta, List<NewChunk> chunks, double[] centroid,
+                              EmbeddingSpec nextSpec, double[] nextCentroid) {
+
+        /** cutover 된 shard 용: 새 버전 벡터를 current 로 */
+        NewDocument cutOver() {
+            List<NewChunk> moved = chunks.stream()
+                    .map(c -> c.next() == null ? c : new NewChunk(c.content(), c.next(), null, c.simhash(), c.canonical()))
+                    .toList();
+            return new NewDocument(id, title, meta, moved, nextCentroid, null, null);
+        }
+    }
+
+    /** 커밋되지 않은 shard 의 문서와 그 shard 의 실패 원인 */
+    public record Failed(NewDocument doc, RuntimeException error) {}
+
+    /** canonical: near-duplicate 면 먼저 저장된 canonical chunk (벡터는 자기 것을 그대로 가짐) */
+    public record NewChunk(String content, RagRepository.Embedded current, RagRepository.Embedded next,
+                           Long simhash, NearDuplicateIndex.ChunkRef canonical) {}
+}
@@ -0,0 +1,275 @@
+package com.ai.rag.repository;
+
+import com.ai.rag.utils.EmbeddingSpec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 문서 단위 centroid(chunk 임베딩 평균) 를 tenant 별 in-memory 행렬로 유지 → 2단계 검색의 1단계
+ * - 질문과 가까운 top-M 문서를 먼저 고르고, chunk 검색은 그 문서들 안에서만 (RagService)
+ * - 원본은 documents.centroid, 메모리에는 int8 로 양자화해서 문서당 dim 바이트만 사용
+ * - 이 노드의 ingest/삭제는 바로 반영, 다른 노드가 넣은/지운 문서는 refresh 때 지난 읽기 이후 커밋된 변경분만 읽어
+ *   documents 는 추가, document_tombstones 는 제거 (CommitOrder: id 순서가 아니라 커밋 순서 기준이라 늦게 커밋된 변경도 빠지지 않음)
+ * - active 임베딩 버전이 바뀌면 (재임베딩 cutover) 전체를 다시 읽음
+ */
+@Slf4j
+@Component
+public class CentroidIndex {
+
+    private final ShardRouter shards;
+    private final EmbeddingVersions embeddings;
+    private final boolean enabled;
+    private final int topM;
+    private final int minDocuments;
+
+    private final Map<String, Matrix> tenants = new ConcurrentHashMap<>();
+    /** shard 별 마지막 읽기 시점의 pg_snapshot (null 이면 전체 읽기) */
+    private final String[] loadedAt;
+    private volatile String loadedVersion;
+    // DB 조회를 잡고 있는 동안 걸리는 락이라 synchronized 대신 (virtual thread 가 carrier 에 pin 되지 않도록)
+    private final ReentrantLock loadLock = new ReentrantLock();
+
+    public CentroidIndex(ShardRouter shards,
+                         EmbeddingVersions embeddings,
+                         @Value("${rag.centroid.enabled:true}") boolean enabled,
+                         @Value("${rag.centroid.top-m:50}") int topM,
+                         @Value("${rag.centroid.min-documents:1000}") int minDocuments) {
+        this.shards = shards;
+        this.embeddings = embeddings;
+        this.enabled = enabled;
+        this.topM = Math.max(1, topM);
+        this.minDocuments = minDocuments;
+        this.loadedAt = new String[shards.all().size()];
+    }
+
+    /**
+     * 질문 벡터와 centroid 가 가까운 문서 id (유사도 내림차순)
+     * 비활성, 아직 로딩 전, 버전 불일치, 문서 수가 min-documents 미만이면 빈 목록 → 1단계 생략
+     */
+    public List<Long> candidates(String tenantId, EmbeddingSpec spec, double[] q) {
+        if (!enabled || !spec.version().equals(loadedVersion)) return List.of();
+        Matrix m = tenants.get(tenantId);
+        if (m == null || m.dim != q.length || m.size() < Math.max(minDocuments, topM + 1)) return List.of();
+        return m.top(toFloat(q), topM);
+    }
+
+    void put(String tenantId, EmbeddingSpec spec, long documentId, double[] centroid) {
+        if (!enabled || !spec.version().equals(loadedVersion)) return;
+        tenants.computeIfAbsent(tenantId, t -> new Matrix(centroid.length)).put(documentId, quantize(centroid));
+    }
+
+    void remove(String tenantId, long documentId) {
+        Matrix m = tenants.get(tenantId);
+        if (m != null) m.remove(documentId);
+    }
+
+    /** 다음 refresh 에서 전체 다시 로딩 (스냅샷 import 처럼 DB 를 통째로 바꾼 뒤) */
+    void invalidate() {
+        loadedVersion = null;
+    }
+
+    @Scheduled(fixedDelayString = "${rag.centroid.refresh-ms:30000}")
+    public void refresh() {
+        if (!enabled) return;
+        EmbeddingSpec spec = embeddings.active();
+        if (!spec.version().equals(loadedVersion)) {
+            reload(spec);
+            return;
+        }
+        for (ShardRouter.Shard shard : shards.all()) {
+            load(shard, spec);
+        }
+    }
+
+    private void reload(EmbeddingSpec spec) {
+        loadLock.lock();
+        try {
+            long start = System.nanoTime();
+            tenants.clear();
+            Arrays.fill(loadedAt, null);
+            loadedVersion = spec.version();
+
+            for (ShardRouter.Shard shard : shards.all()) {
+                int filled = backfill(shard, spec);
+                if (filled > 0) {
+                    log.info("centroid 가 없는 문서를 채웠습니다. shard: {}, documents: {}", shard.index(), filled);
+                }
+                load(shard, spec);
+            }
+            int total = tenants.values().stream().mapToInt(Matrix::size).sum();
+            log.info("centroid 로딩 완료. version: {}, tenants: {}, documents: {}, elapsedMs: {}",
+                    spec.version(), tenants.size(), total, (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    /** centroid 기능 이전 문서 / 이전 버전 centroid 를 chunk 평균으로 다시 계산 */
+    private int backfill(ShardRouter.Shard shard, EmbeddingSpec spec) {
+        return shard.jdbc().update("""
+            UPDATE documents d SET centroid = s.c, centroid_version = ?
+            FROM (SELECT document_id, avg(embedding) AS c
+                  FROM document_chunks
+                  WHERE embedding IS NOT NULL
+                  GROUP BY document_id) s
+            WHERE s.document_id = d.id
+              AND d.centroid_version IS DISTINCT FROM ?
+        """, spec.version(), spec.version());
+    }
+
+    private void load(ShardRouter.Shard shard, EmbeddingSpec spec) {
+        loadLock.lock();
+        try {
+            int i = shard.index();
+            // 읽기 전에 snapshot 을 받아둠: 읽는 사이 커밋된 행은 다음번에 한 번 더 읽힘 (put 은 덮어쓰기라 무해)
+            String snapshot = CommitOrder.current(shard.jdbc());
+            String since = loadedAt[i];
+            RowCallbackHandler row = rs -> {
+                double[] v = parse(rs.getString("centroid"));
+                if (v.length == spec.dim()) {
+                    tenants.computeIfAbsent(rs.getString("tenant_id"), t -> new Matrix(v.length)).put(rs.getLong("id"), quantize(v));
+                }
+            };
+            if (since == null) {
+                shard.jdbc().query("SELECT id, tenant_id, centroid::text AS centroid FROM documents WHERE centroid_version = ?",
+                        row, spec.version());
+            } else {
+                shard.jdbc().query("SELECT id, tenant_id, centroid::text AS centroid FROM documents WHERE centroid_version = ? AND "
+                        + CommitOrder.CHANGED_SINCE, row, spec.version(), since, since);
+                // 같은 구간에 다른 노드가 지운 문서 (documents 보다 뒤에 읽어서 같은 구간의 추가보다 삭제가 이김)
+                shard.jdbc().query("SELECT document_id, tenant_id FROM document_tombstones WHERE " + CommitOrder.CHANGED_SINCE,
+                        (RowCallbackHandler) rs -> remove(rs.getString("tenant_id"), rs.getLong("document_id")), since, since);
+            }
+            loadedAt[i] = snapshot;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    /** 정규화된 벡터라 성분이 [-1, 1] → 127 배해서 byte 로 (순위만 보면 되므로 스케일은 무시) */
+    private static byte[] quantize(double[] v) {
+        double norm = 0.0;
+        for (double x : v) norm += x * x;
+        double scale = norm > 0 ? 127.0 / Math.sqrt(norm) : 0.0;
+
+        byte[] out = new byte[v.length];
+        for (int i = 0; i < v.length; i++) {
+            out[i] = (byte) Math.round(Math.max(-127, Math.min(127, v[i] * scale)));
+        }
+        return out;
+    }
+
+    private static float[] toFloat(double[] v) {
+        float[] out = new float[v.length];
+        for (int i = 0; i < v.length; i++) out[i] = (float) v[i];
+        return out;
+    }
+
+    private static double[] parse(String literal) {
+        String body = literal.substring(1, literal.length() - 1);
+        if (body.isEmpty()) return new double[0];
+        String[] parts = body.split(",");
+        double[] v = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) v[i] = Double.parseDouble(parts[i]);
+        return v;
+    }
+
+    /**
+     * 행 단위로 이어붙인 int8 행렬 (row = 문서)
+     * 삭제는 마지막 행을 빈 자리로 옮겨서 빈틈 없이 유지
+     */
+    private static final class Matrix {
+        private final int dim;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<Long, Integer> rowOf = new HashMap<>();
+        private byte[] data;
+        private long[] ids;
+        private int size;
+
+        Matrix(int dim) {
+            this.dim = dim;
+            this.data = new byte[dim * 16];
+            this.ids = new long[16];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void put(long id, byte[] v) {
+            lock.writeLock().lock();
+            try {
+                Integer row = rowOf.get(id);
+                if (row == null) {
+                    if (size == ids.length) {
+                        ids = Arrays.copyOf(ids, size * 2);
+                        data = Arrays.copyOf(data, size * 2 * dim);
+                    }
+                    row = size++;
+                    ids[row] = id;
+                    rowOf.put(id, row);
+                }
+                System.arraycopy(v, 0, data, row * dim, dim);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void remove(long id) {
+            lock.writeLock().lock();
+            try {
+                Integer row = rowOf.remove(id);
+                if (row == null) return;
+                int last = --size;
+                if (row != last) {
+                    System.arraycopy(data, last * dim, data, row * dim, dim);
+                    ids[row] = ids[last];
+                    rowOf.put(ids[row], row);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        List<Long> top(float[] q, int m) {
+            lock.readLock().lock();
+            try {
+                // 크기 m 의 min-heap: 루트가 지금까지 m 개 중 가장 낮은 점수
+                PriorityQueue<Scored> heap = new PriorityQueue<>(m + 1, (a, b) -> Float.compare(a.score, b.score));
+                for (int r = 0; r < size; r++) {
+                    float s = 0f;
+                    int off = r * dim;
+                    for (int i = 0; i < dim; i++) s += q[i] * data[off + i];
+                    if (heap.size() < m) {
+                        heap.add(new Scored(ids[r], s));
+                    } else if (s > heap.peek().score) {
+                        heap.poll();
+                        heap.add(new Scored(ids[r], s));
+                    }
+                }
+                List<Long> out = new ArrayList<>(heap.size());
+                while (!heap.isEmpty()) out.add(heap.poll().id);
+                Collections.reverse(out);
+                return out;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    private record Scored(long id, float score) {}
+}
@@ -0,0 +1,24 @@
+package com.ai.rag.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * documents 변경분을 커밋 순서 기준으로 읽기 위한 표식 (CentroidIndex, SnapshotRepository)
+ * - documents.change_xid: 행을 마지막으로 쓴 트랜잭션 id (schema.sql 의 trigger 가 insert/update 때 기록)
+ * - 읽기 전에 pg_current_snapshot() 을 받아두고, 다음번엔 그 snapshot 에서 보이지 않던 change_xid 만 읽음
+ *   → id 나 now() 순서와 상관없이 늦게 커밋된 행도 빠지지 않음 (이미 읽은 행이 한 번 더 읽힐 수는 있음)
+ * - change_xid >= snapshot xmin 조건으로 인덱스를 탐 (xmin 이전 트랜잭션은 모두 snapshot 에 보임)
+ */
+final class CommitOrder {
+
+    private CommitOrder() {}
+
+    /** WHERE 절 조각, 파라미터 2개 = 같은 snapshot 문자열 */
+    static final String CHANGED_SINCE =
+            "change_xid >= pg_snapshot_xmin(?::pg_snapshot) AND NOT pg_visible_in_snapshot(change_xid, ?::pg_snapshot)";
+
+    /** 지금 시점의 snapshot (이후 커밋되는 트랜잭션은 여기서 보이지 않음) */
+    static String current(JdbcTemplate jdbc) {
+        return jdbc.queryForObject("SELECT pg_current_snapshot()::text", String.class);
+    }
+}
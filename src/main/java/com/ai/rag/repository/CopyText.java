@@ -0,0 +1,60 @@
+package com.ai.rag.repository;
+
+import org.postgresql.PGConnection;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * COPY ... FROM STDIN (text 포맷) 용 escape / 실행 (BulkImportRepository, SnapshotRepository)
+ */
+final class CopyText {
+
+    static final String NULL = "\\N";
+
+    private CopyText() {}
+
+    /** 현재 트랜잭션의 커넥션으로 COPY, 들어간 행 수 반환 */
+    static long copyIn(JdbcTemplate jdbc, String sql, CharSequence data) {
+        Long rows = jdbc.execute((ConnectionCallback<Long>) con -> {
+            try {
+                return con.unwrap(PGConnection.class).getCopyAPI().copyIn(sql, new StringReader(data.toString()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return rows == null ? 0 : rows;
+    }
+
+    /** TEXT[] 리터럴: {"a","b"} (요소 안의 \ 와 " 는 escape) 를 다시 COPY escape */
+    static String array(List<String> values) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append('"').append(values.get(i).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        return escape(sb.append('}').toString());
+    }
+
+    /** 값 escape (구분자 탭, 줄바꿈, 역슬래시), null 이면 \N */
+    static String escape(String s) {
+        if (s == null) return NULL;
+        StringBuilder sb = new StringBuilder(s.length() + 16);
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            switch (ch) {
+                case '\\' -> sb.append("\\\\");
+                case '\t' -> sb.append("\\t");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\0' -> { } // TEXT 에 NUL 은 저장할 수 없으므로 버림
+                default -> sb.append(ch);
+            }
+        }
+        return sb.toString();
+    }
+}
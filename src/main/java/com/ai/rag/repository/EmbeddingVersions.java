@@ -0,0 +1,239 @@
+package com.ai.rag.repository;
+
+import com.ai.rag.utils.EmbeddingSpec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 현재 사용 중인(active) 임베딩 버전과 재임베딩 중인(migrating) 버전
+ * - 기준은 shard 0 의 embedding_versions 테이블, 노드마다 주기적으로 다시 읽어 cutover 를 따라감
+ * - 테이블이 비어있으면 rag.embedding.version 을 active 로 등록 (생성 시가 아니라 처음 쓸 때)
+ * - 재임베딩 버전의 상태: migrating(검색은 기존 컬럼, 쓰기는 양쪽) → dual-read(검색도 shadow 컬럼) → active
+ *   노드는 refresh 때마다 자기가 본 상태를 embedding_nodes 에 남기고, ReembedService 는 살아있는 모든 노드가
+ *   다음 상태를 본 것을 확인한 뒤에 진행 (cutover 시점에 옛 버전으로 검색/쓰기하는 노드가 없도록)
+ */
+@Slf4j
+@Component
+public class EmbeddingVersions implements DisposableBean {
+
+    public static final String MIGRATING = "migrating";
+    public static final String DUAL_READ = "dual-read";
+
+    private final JdbcTemplate jdbc;
+    private final String nodeId;
+    private final long nodeTimeoutMs;
+    private final EmbeddingSpec configured;
+    private volatile EmbeddingSpec active;
+    private volatile EmbeddingSpec migrating;
+    private volatile boolean dualRead;
+    // DB 조회를 잡고 있는 동안 걸리는 락이라 synchronized 대신 (virtual thread 가 carrier 에 pin 되지 않도록)
+    private final ReentrantLock loadLock = new ReentrantLock();
+
+    public EmbeddingVersions(ShardRouter shards,
+                             @Value("${rag.embedding.version:hash-v1-768}") String configured,
+                             @Value("${rag.embedding.node-timeout-ms:60000}") long nodeTimeoutMs) {
+        this.jdbc = shards.primary().jdbc();
+        this.nodeId = ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        this.nodeTimeoutMs = nodeTimeoutMs;
+        this.configured = EmbeddingSpec.parse(configured);
+    }
+
+    /**
+     * 처음 쓸 때 등록/로딩 (생성자에서 DB 를 읽지 않도록, schema 는 SchemaMigration 이 먼저 만들어 둠)
+     * 이후 갱신은 refresh
+     */
+    private void ensureLoaded() {
+        if (active != null) return;
+        loadLock.lock();
+        try {
+            if (active != null) return;
+            jdbc.update("""
+                INSERT INTO embedding_versions(version, dim, state, activated_at)
+                SELECT ?, ?, 'active', now()
+                WHERE NOT EXISTS (SELECT 1 FROM embedding_versions WHERE state = 'active')
+                ON CONFLICT DO NOTHING
+            """, configured.version(), configured.dim());
+            load();
+            if (!active.equals(configured)) {
+                log.warn("설정된 임베딩 버전({})과 DB 의 active 버전({})이 달라 DB 기준으로 동작합니다.", configured.version(), active.version());
+            }
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    public EmbeddingSpec active() {
+        ensureLoaded();
+        return active;
+    }
+
+    /** 재임베딩 중인 버전 (migrating, dual-read 단계 모두), 아니면 null */
+    public EmbeddingSpec migrating() {
+        ensureLoaded();
+        return migrating;
+    }
+
+    /** 재임베딩 버전이 dual-read 단계 (검색은 shadow 컬럼의 새 벡터로) */
+    public boolean dualRead() {
+        ensureLoaded();
+        return dualRead;
+    }
+
+    /** 질문 임베딩에 쓸 버전: dual-read 면 재임베딩 버전, 아니면 active */
+    public EmbeddingSpec reading() {
+        ensureLoaded();
+        EmbeddingSpec m = migrating;
+        return dualRead && m != null ? m : active;
+    }
+
+    /** 이 버전의 벡터가 들어있는 컬럼 (dual-read 중인 재임베딩 버전이면 shadow 컬럼) */
+    public String columnFor(String version) {
+        ensureLoaded();
+        EmbeddingSpec m = migrating;
+        return dualRead && m != null && m.version().equals(version) ? ReembedRepository.SHADOW_COLUMN : VectorStorage.COLUMN;
+    }
+
+    @Scheduled(fixedDelayString = "${rag.embedding.refresh-ms:10000}")
+    public void refresh() {
+        if (active == null) {
+            ensureLoaded();
+            return;
+        }
+        load();
+    }
+
+    private void load() {
+        List<String[]> rows = jdbc.query("SELECT version, state FROM embedding_versions WHERE state IN ('active', 'migrating', 'dual-read')",
+                (rs, n) -> new String[]{rs.getString("version"), rs.getString("state")});
+
+        EmbeddingSpec a = null, m = null;
+        boolean dr = false;
+        for (String[] r : rows) {
+            if ("active".equals(r[1])) {
+                a = EmbeddingSpec.parse(r[0]);
+            } else {
+                m = EmbeddingSpec.parse(r[0]);
+                dr = DUAL_READ.equals(r[1]);
+            }
+        }
+        if (a == null) {
+            throw new IllegalStateException("embedding_versions 에 active 버전이 없습니다.");
+        }
+        if (active != null && !active.equals(a)) {
+            log.info("임베딩 버전이 전환되었습니다. {} -> {}", active.version(), a.version());
+        }
+        if (dr && !dualRead) {
+            log.info("재임베딩 버전으로 검색을 시작합니다 (dual-read). version: {}", m.version());
+        }
+        // active 를 마지막에: ensureLoaded 가 active 만 보고 로딩 완료로 판단
+        this.migrating = m;
+        this.dualRead = dr;
+        this.active = a;
+        heartbeat();
+    }
+
+    /** 이 노드가 보고 있는 상태를 기록 (ReembedService 가 전체 노드의 인식을 확인할 때 사용) */
+    private void heartbeat() {
+        EmbeddingSpec m = migrating;
+        jdbc.update("""
+            INSERT INTO embedding_nodes(node_id, active, migrating, state, seen_at) VALUES (?, ?, ?, ?, now())
+            ON CONFLICT (node_id) DO UPDATE
+            SET active = EXCLUDED.active, migrating = EXCLUDED.migrating, state = EXCLUDED.state, seen_at = now()
+        """, nodeId, active.version(), m == null ? null : m.version(), m == null ? null : dualRead ? DUAL_READ : MIGRATING);
+    }
+
+    /**
+     * 재임베딩 시작: 이미 다른 버전이 진행 중이면 unique 인덱스 때문에 실패
+     * 같은 버전이 이미 dual-read 면 그 단계를 유지 (중단 후 재시작)
+     */
+    public void startMigration(EmbeddingSpec target) {
+        jdbc.update("""
+            INSERT INTO embedding_versions(version, dim, state) VALUES (?, ?, 'migrating')
+            ON CONFLICT (version) DO UPDATE
+            SET state = CASE WHEN embedding_versions.state = 'dual-read' THEN 'dual-read' ELSE 'migrating' END
+        """, target.version(), target.dim());
+        refresh();
+    }
+
+    /** backfill/인덱스가 끝난 뒤: 검색을 shadow 컬럼으로 넘김 (기존 컬럼은 cutover 전까지 그대로) */
+    public void startDualRead(EmbeddingSpec target) {
+        int updated = jdbc.update("UPDATE embedding_versions SET state = 'dual-read' WHERE version = ? AND state IN ('migrating', 'dual-read')",
+                target.version());
+        if (updated == 0) {
+            throw new IllegalStateException("재임베딩 중인 버전이 아닙니다: " + target.version());
+        }
+        refresh();
+    }
+
+    /**
+     * 최근 node-timeout-ms 안에 refresh 한 모든 노드가 target 을 state 로 보고 있을 때까지 대기
+     * timeoutMs 안에 따라오지 않는 노드가 있으면 IllegalStateException (다시 시작하면 이어서 진행)
+     */
+    public void awaitNodes(EmbeddingSpec target, String state, long timeoutMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (true) {
+            List<String> behind = jdbc.queryForList("""
+                SELECT node_id FROM embedding_nodes
+                WHERE seen_at > now() - ? * interval '1 millisecond'
+                  AND (migrating IS DISTINCT FROM ? OR state IS DISTINCT FROM ?)
+            """, String.class, nodeTimeoutMs, target.version(), state);
+            if (behind.isEmpty()) return;
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("임베딩 버전 " + state + " 단계를 따라오지 않은 노드가 있습니다: " + behind);
+            }
+            try {
+                TimeUnit.SECONDS.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("노드 확인 대기 중 인터럽트되었습니다.", e);
+            }
+        }
+    }
+
+    /** cutover 트랜잭션 안에서 호출 (shard 0 의 jdbc 로) */
+    void activate(JdbcTemplate shard0, EmbeddingSpec target) {
+        shard0.update("UPDATE embedding_versions SET state = 'retired' WHERE state = 'active'");
+        shard0.update("UPDATE embedding_versions SET state = 'active', activated_at = now() WHERE version = ?", target.version());
+    }
+
+    /** cutover 커밋 후 이 노드에 바로 반영 (다른 노드는 refresh 로) */
+    void switchedTo(EmbeddingSpec target) {
+        this.active = target;
+        this.migrating = null;
+        this.dualRead = false;
+        heartbeat();
+    }
+
+    /** dual-read 부터는 검색이 새 벡터를 쓰고 있고 일부 shard 는 이미 전환됐을 수 있어 폐기 불가 (cutover 를 끝내야 함) */
+    public void abandonMigration() {
+        ensureLoaded();
+        Integer inDualRead = jdbc.queryForObject("SELECT count(*) FROM embedding_versions WHERE state = 'dual-read'", Integer.class);
+        if (inDualRead != null && inDualRead > 0) {
+            throw new IllegalStateException("dual-read 단계의 재임베딩은 폐기할 수 없습니다. 재임베딩을 다시 시작해서 cutover 를 마치세요.");
+        }
+        jdbc.update("UPDATE embedding_versions SET state = 'retired' WHERE state = 'migrating'");
+        this.migrating = null;
+        heartbeat();
+    }
+
+    /** 종료한 노드는 기다리지 않도록 */
+    @Override
+    public void destroy() {
+        if (active == null) return;
+        try {
+            jdbc.update("DELETE FROM embedding_nodes WHERE node_id = ?", nodeId);
+        } catch (RuntimeException e) {
+            log.debug("embedding_nodes 정리 실패 (node-timeout 뒤에 무시됨). node: {}", nodeId, e);
+        }
+    }
+}
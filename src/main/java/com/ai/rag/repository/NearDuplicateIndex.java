@@ -0,0 +1,173 @@
+package com.ai.rag.repository;
+
+import com.ai.rag.utils.SimHash;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ingest 시 near-duplicate chunk 판별 (SimHash + 16bit 밴드 4개 LSH)
+ * - 범위는 판별/집계와 검색 결과 접기까지, document_chunks 저장 절감은 하지 않음
+ *   (simhash/canonical 컬럼과 밴드 인덱스만큼 테이블은 오히려 커짐, report 의 dedupIndexBytes)
+ * - 같은 tenant 의 canonical chunk(다른 chunk 를 참조하지 않는 chunk) 중 Hamming 거리 max-distance 이하를 찾음
+ * - 중복이면 canonical 의 (document_id, chunk_index) 를 같이 저장, 벡터는 자기 것을 그대로
+ *   (tags/owner/source_type/created_at/document_id 필터가 chunk 행 단위라, 벡터를 빼면 canonical 이 필터에서 빠질 때 함께 사라짐)
+ *   검색 결과의 near-duplicate 는 RagService 가 순위가 앞선 하나만 남김
+ * - canonical 만 후보로 조회하므로 밴드 인덱스가 작고, 판별 결과는 중복 현황(report)으로 확인
+ * - 밴드 조회는 schema-indexes.sql 의 식 인덱스(document_chunks_simhash_b0~b3)로, 후보 검증은 여기서
+ * - chunk 는 문서 id 로 shard 가 정해지므로 모든 shard 를 조회 (문서당 shard 별 쿼리 1번)
+ */
+@Slf4j
+@Component
+public class NearDuplicateIndex {
+
+    private final ShardRouter shards;
+    private final boolean enabled;
+    private final int maxDistance;
+    private final int minTokens;
+
+    public NearDuplicateIndex(ShardRouter shards,
+                              @Value("${rag.dedup.enabled:true}") boolean enabled,
+                              @Value("${rag.dedup.max-distance:3}") int maxDistance,
+                              @Value("${rag.dedup.min-tokens:20}") int minTokens) {
+        this.shards = shards;
+        this.enabled = enabled;
+        // 밴드 4개로 놓치지 않고 찾을 수 있는 최대 거리가 3
+        this.maxDistance = Math.max(0, Math.min(SimHash.BANDS - 1, maxDistance));
+        this.minTokens = minTokens;
+        if (maxDistance != this.maxDistance) {
+            log.warn("rag.dedup.max-distance({})는 밴드 수로 보장되는 범위를 넘어 {} 로 조정합니다.", maxDistance, this.maxDistance);
+        }
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /** chunk 별 서명 (판별 대상이 아닌 짧은 chunk 는 null) */
+    public Long[] signatures(List<String> chunks) {
+        Long[] out = new Long[chunks.size()];
+        for (int i = 0; i < chunks.size(); i++) {
+            String c = chunks.get(i);
+            out[i] = enabled && SimHash.tokenCount(c) >= minTokens ? SimHash.of(c) : null;
+        }
+        return out;
+    }
+
+    /** 서명 둘이 near-duplicate 인지 (서명이 없으면 false) */
+    public boolean near(Long a, Long b) {
+        return a != null && b != null && SimHash.distance(a, b) <= maxDistance;
+    }
+
+    /**
+     * chunk 별 canonical 참조 (중복이 아니면 null)
+     * - 같은 문서 안에서 앞선 chunk 와 겹치면 그 chunk 를, 아니면 DB 의 기존 canonical 중 가장 가까운 것을
+     */
+    public ChunkRef[] canonicalFor(String tenantId, long docId, Long[] hashes) {
+        ChunkRef[] out = new ChunkRef[hashes.length];
+        if (!enabled) return out;
+
+        List<Long> lookup = new ArrayList<>();
+        for (int i = 0; i < hashes.length; i++) {
+            if (hashes[i] == null) continue;
+            for (int j = 0; j < i; j++) {
+                if (hashes[j] != null && out[j] == null && SimHash.distance(hashes[i], hashes[j]) <= maxDistance) {
+                    out[i] = new ChunkRef(docId, j);
+                    break;
+                }
+            }
+            if (out[i] == null) lookup.add(hashes[i]);
+        }
+        if (lookup.isEmpty()) return out;
+
+        List<Candidate> candidates = new ArrayList<>();
+        for (ShardRouter.Shard shard : shards.all()) {
+            candidates.addAll(findCandidates(shard, tenantId, lookup));
+        }
+        if (candidates.isEmpty()) return out;
+
+        for (int i = 0; i < hashes.length; i++) {
+            if (hashes[i] == null || out[i] != null) continue;
+            int best = maxDistance + 1;
+            for (Candidate c : candidates) {
+                int d = SimHash.distance(hashes[i], c.simhash());
+                if (d < best || (d == best && out[i] != null && c.ref().compareTo(out[i]) < 0)) {
+                    best = d;
+                    out[i] = c.ref();
+                }
+            }
+        }
+        // 문서 안에서 참조한 chunk 가 DB 의 canonical 을 참조하게 됐으면 그쪽으로 (참조는 항상 한 단계)
+        for (int i = 0; i < out.length; i++) {
+            if (out[i] != null && out[i].documentId() == docId && out[out[i].chunkIndex()] != null) {
+                out[i] = out[out[i].chunkIndex()];
+            }
+        }
+        return out;
+    }
+
+    private List<Candidate> findCandidates(ShardRouter.Shard shard, String tenantId, List<Long> hashes) {
+        Long[][] bands = new Long[SimHash.BANDS][hashes.size()];
+        for (int i = 0; i < hashes.size(); i++) {
+            for (int b = 0; b < SimHash.BANDS; b++) {
+                bands[b][i] = (long) SimHash.band(hashes.get(i), b);
+            }
+        }
+        // 식/조건이 schema-indexes.sql 의 partial 식 인덱스와 같아야 인덱스를 탐
+        return shard.jdbc().query("""
+            SELECT document_id, chunk_index, simhash
+            FROM document_chunks
+            WHERE tenant_id = ?
+              AND simhash IS NOT NULL AND canonical_document_id IS NULL
+              AND (((simhash >> 48) & 65535) = ANY(?)
+                OR ((simhash >> 32) & 65535) = ANY(?)
+                OR ((simhash >> 16) & 65535) = ANY(?)
+                OR (simhash & 65535) = ANY(?))
+        """,
+                (rs, n) -> new Candidate(new ChunkRef(rs.getLong("document_id"), rs.getInt("chunk_index")), rs.getLong("simhash")),
+                tenantId, bands[0], bands[1], bands[2], bands[3]);
+    }
+
+    /**
+     * shard 별 near-duplicate 현황: 중복 비율(= 검색 결과에서 접힐 수 있는 chunk 비율)과 판별에 드는 저장 비용
+     * 중복 chunk 도 벡터를 가지므로 절감량은 없음, dedupIndexBytes 는 밴드/참조 인덱스 크기 (추가 비용)
+     */
+    public List<Report> report() {
+        List<Report> out = new ArrayList<>();
+        for (ShardRouter.Shard shard : shards.all()) {
+            out.add(shard.jdbc().queryForObject("""
+                SELECT count(*) AS chunks,
+                       count(*) FILTER (WHERE canonical_document_id IS NOT NULL) AS duplicates,
+                       (SELECT coalesce(sum(pg_total_relation_size(i.inhrelid)), 0)
+                        FROM pg_inherits i WHERE i.inhparent = 'document_chunks'::regclass)
+                       + pg_total_relation_size('document_chunks') AS table_bytes,
+                       (SELECT coalesce(sum(pg_relation_size(x.indexrelid)), 0) FROM pg_index x
+                        WHERE (x.indrelid = 'document_chunks'::regclass
+                               OR x.indrelid IN (SELECT inhrelid FROM pg_inherits WHERE inhparent = 'document_chunks'::regclass))
+                          AND pg_get_indexdef(x.indexrelid) ~ '(simhash|canonical_document_id)') AS dedup_index_bytes
+                FROM document_chunks
+            """, (rs, n) -> {
+                long chunks = rs.getLong("chunks");
+                long duplicates = rs.getLong("duplicates");
+                return new Report(shard.index(), chunks, duplicates,
+                        chunks == 0 ? 0.0 : (double) duplicates / chunks, rs.getLong("table_bytes"), rs.getLong("dedup_index_bytes"));
+            }));
+        }
+        return out;
+    }
+
+    public record ChunkRef(long documentId, int chunkIndex) implements Comparable<ChunkRef> {
+        @Override
+        public int compareTo(ChunkRef o) {
+            int c = Long.compare(documentId, o.documentId);
+            return c != 0 ? c : Integer.compare(chunkIndex, o.chunkIndex);
+        }
+    }
+
+    private record Candidate(ChunkRef ref, long simhash) {}
+
+    public record Report(int shard, long chunks, long duplicates, double duplicateRatio, long tableBytes, long dedupIndexBytes) {}
+}
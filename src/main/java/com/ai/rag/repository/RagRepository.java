@@ -1,56 +1,482 @@
 package com.ai.rag.repository;
 
+import com.ai.rag.common.StructuredTasks;
+import com.ai.rag.observability.RagEvents;
+import com.ai.rag.common.TenantResolver;
+import com.ai.rag.utils.EmbeddingSpec;
+import com.ai.rag.utils.VectorUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.BadSqlGrammarException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 
+import java.sql.Timestamp;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+@Slf4j
 @Repository
 public class RagRepository {
 
-    private final JdbcTemplate jdbc;
+    // partial HNSW 인덱스가 있는 source_type (schema-indexes.sql 과 맞춰야 함)
+    private static final Set<String> INDEXED_SOURCE_TYPES = Set.of("pdf", "docx", "hwpx");
 
-    public RagRepository(JdbcTemplate jdbc) {
-        this.jdbc = jdbc;
+    private static final RowMapper<ChunkHit> CHUNK_HIT = (rs, n) -> {
+        double distance = rs.getDouble("distance");
+        double similarity = clamp(1.0 - distance, -1.0, 1.0); // cosine similarity 범위 고려
+        return new ChunkHit(
+                rs.getLong("id"),
+                rs.getLong("document_id"),
+                rs.getInt("chunk_index"),
+                rs.getString("content"),
+                distance,
+                similarity
+        );
+    };
+
+    private final ShardRouter shards;
+    private final ReadYourWrites readYourWrites;
+    private final VectorIndexes vectorIndexes;
+    private final EmbeddingVersions embeddings;
+    private final CentroidIndex centroids;
+    private final String iterativeScan;
+    private final long shardTimeoutMs;
+    private final long shardMaxWaitMs;
+    private final int overfetch;
+
+    public RagRepository(ShardRouter shards,
+                         ReadYourWrites readYourWrites,
+                         VectorIndexes vectorIndexes,
+                         EmbeddingVersions embeddings,
+                         CentroidIndex centroids,
+                         @Value("${rag.search.iterative-scan:}") String iterativeScan,
+                         @Value("${rag.shards.timeout-ms:2000}") long shardTimeoutMs,
+                         @Value("${rag.shards.max-wait-ms:10000}") long shardMaxWaitMs,
+                         @Value("${rag.vector.overfetch:4}") int overfetch) {
+        this.shards = shards;
+        this.readYourWrites = readYourWrites;
+        this.vectorIndexes = vectorIndexes;
+        this.embeddings = embeddings;
+        this.centroids = centroids;
+        this.overfetch = Math.max(1, overfetch);
+        this.iterativeScan = iterativeScan;
+        this.shardTimeoutMs = shardTimeoutMs;
+        this.shardMaxWaitMs = Math.max(shardTimeoutMs, shardMaxWaitMs);
+    }
+
+    /**
+     * id 는 shard 0 의 시퀀스에서 발급 (전 shard 에서 유일), 저장은 id 해시로 정해진 shard 에
+     */
+    public long insertDocument(String tenantId, String title, DocumentMeta meta) {
+        long docId = shards.primary().jdbc().queryForObject("SELECT nextval('documents_id_seq')", Long.class);
+        ShardRouter.Shard shard = shards.forDocument(docId);
+
+        shard.partitions().ensure(tenantId);
+        readYourWrites.markWrite(tenantId);
+        shard.jdbc().update("INSERT INTO documents(id, tenant_id, title, tags, owner, source_type) VALUES (?, ?, ?, ?, ?, ?)",
+                docId, tenantId, title, meta.tags().toArray(String[]::new), meta.owner(), meta.sourceType());
+        return docId;
+    }
+
+    /**
+     * tenant/문서 메타데이터는 파티션 라우팅과 필터 pushdown 을 위해 chunk 행에 그대로 복사
+     * - next: 재임베딩 중이면 새 버전 벡터도 shadow 컬럼에 같이 기록 (없으면 null)
+     * - canonical: near-duplicate 면 canonical chunk 참조도 같이 (벡터는 자기 것을 그대로 저장)
+     */
+    public void insertChunk(long docId, int idx, String content, Embedded current, Embedded next,
+                            Long simhash, NearDuplicateIndex.ChunkRef canonical) {
+        String vec = current == null ? null : current.vec();
+        String version = current == null ? null : current.version();
+        Long canonicalDoc = canonical == null ? null : canonical.documentId();
+        Integer canonicalIdx = canonical == null ? null : canonical.chunkIndex();
+        if (next == null) {
+            shards.forDocument(docId).jdbc().update("""
+                INSERT INTO document_chunks(tenant_id, document_id, chunk_index, content, embedding, embedding_version,
+                                            simhash, canonical_document_id, canonical_chunk_index,
+                                            tags, owner, source_type, created_at)
+                SELECT d.tenant_id, ?, ?, ?, ?::vector, ?, ?, ?, ?, d.tags, d.owner, d.source_type, d.created_at
+                FROM documents d
+                WHERE d.id = ?
+            """, docId, idx, content, vec, version, simhash, canonicalDoc, canonicalIdx, docId);
+            return;
+        }
+        shards.forDocument(docId).jdbc().update("""
+            INSERT INTO document_chunks(tenant_id, document_id, chunk_index, content, embedding, embedding_version,
+                                        embedding_next, embedding_next_version,
+                                        simhash, canonical_document_id, canonical_chunk_index,
+                                        tags, owner, source_type, created_at)
+            SELECT d.tenant_id, ?, ?, ?, ?::vector, ?, ?::vector, ?, ?, ?, ?, d.tags, d.owner, d.source_type, d.created_at
+            FROM documents d
+            WHERE d.id = ?
+        """, docId, idx, content, vec, version, next.vec(), next.version(), simhash, canonicalDoc, canonicalIdx, docId);
+    }
+
+    /** chunk 를 다 넣은 뒤 문서 centroid 저장 + in-memory 행렬에 반영 */
+    public void saveCentroid(String tenantId, long docId, EmbeddingSpec spec, double[] centroid) {
+        shards.forDocument(docId).jdbc().update(
+                "UPDATE documents SET centroid = ?::vector, centroid_version = ?, updated_at = now() WHERE id = ?",
+                VectorUtils.toPgVectorLiteral(centroid), spec.version(), docId);
+        centroids.put(tenantId, spec, docId, centroid);
+    }
+
+    /** 2단계 검색의 1단계 후보 문서 (생략해야 하면 빈 목록) */
+    public List<Long> candidateDocuments(String tenantId, EmbeddingSpec spec, double[] q) {
+        return centroids.candidates(tenantId, spec, q);
+    }
+
+    /**
+     * chunk 본문 하나 (/api/chunks), 없거나 다른 tenant 의 chunk 면 empty
+     * chunk 는 저장 후 바뀌지 않으므로 replica 에서 읽음 (아직 복제 전이면 read-your-writes 윈도우로 primary)
+     */
+    public Optional<ChunkText> findChunk(String tenantId, long docId, int chunkIndex) {
+        ShardRouter.Replica reader = shards.forDocument(docId).reader(readYourWrites.mustReadPrimary(tenantId));
+        return reader.jdbc().query("""
+            SELECT c.document_id, c.chunk_index, d.title, c.content
+            FROM document_chunks c
+            JOIN documents d ON d.id = c.document_id
+            WHERE c.tenant_id = ? AND c.document_id = ? AND c.chunk_index = ?
+        """,
+                (rs, n) -> new ChunkText(rs.getLong("document_id"), rs.getInt("chunk_index"),
+                        rs.getString("title"), rs.getString("content")),
+                tenantId, docId, chunkIndex).stream().findFirst();
     }
 
-    public long insertDocument(String title) {
-        jdbc.update("INSERT INTO documents(title) VALUES (?)", title);
-        return jdbc.queryForObject("SELECT currval('documents_id_seq')", Long.class);
+    /**
+     * 이미 가진 chunk 들을 질문 벡터로 다시 채점 (대화 세션의 근거 재사용, ConversationStore)
+     * - 검색과 같은 컬럼에 같은 <=> 식이라 검색 결과의 거리와 그대로 비교/병합 가능 (저장 모드와 무관하게 full precision)
+     * - 그사이 삭제된 문서의 chunk 는 결과에 없음
+     * - chunk 는 (tenant_id, id) PK 로 찾고, 근거 수가 적어 소유 shard 에 차례로 요청
+     */
+    public List<ChunkHit> scoreChunks(String tenantId, Embedded q, List<ChunkHit> chunks) {
+        Map<ShardRouter.Shard, List<Long>> byShard = new LinkedHashMap<>();
+        for (ChunkHit h : chunks) {
+            byShard.computeIfAbsent(shards.forDocument(h.documentId()), s -> new ArrayList<>()).add(h.id());
+        }
+        String column = embeddings.columnFor(q.version());
+        List<ChunkHit> out = new ArrayList<>(chunks.size());
+        for (Map.Entry<ShardRouter.Shard, List<Long>> e : byShard.entrySet()) {
+            ShardRouter.Shard shard = e.getKey();
+            Long[] ids = e.getValue().toArray(Long[]::new);
+            try {
+                out.addAll(scoreChunks(shard, tenantId, q.vec(), ids, column));
+            } catch (BadSqlGrammarException ex) {
+                if (column.equals(VectorStorage.COLUMN)) throw ex;
+                out.addAll(scoreChunks(shard, tenantId, q.vec(), ids, VectorStorage.COLUMN));
+            }
+        }
+        out.sort(Comparator.comparingDouble(ChunkHit::distance));
+        return out;
     }
 
-    public void insertChunk(long docId, int idx, String content, String vec) {
-        jdbc.update("""
-            INSERT INTO document_chunks(document_id, chunk_index, content, embedding)
-            VALUES (?, ?, ?, ?::vector)
-        """, docId, idx, content, vec);
+    private List<ChunkHit> scoreChunks(ShardRouter.Shard shard, String tenantId, String qVec, Long[] ids, String column) {
+        return shard.reader(readYourWrites.mustReadPrimary(tenantId)).jdbc().query("""
+            SELECT id, document_id, chunk_index, content, (%s <=> ?::vector) AS distance
+            FROM document_chunks
+            WHERE tenant_id = ? AND id = ANY(?) AND %s IS NOT NULL
+        """.formatted(column, column), CHUNK_HIT, qVec, tenantId, ids);
     }
 
-    public List<ChunkHit> searchTopK(String qVec, int k) {
-        return jdbc.query("""
-        SELECT id, document_id, chunk_index, content,
-               (embedding <=> ?::vector) AS distance
-        FROM document_chunks
-        ORDER BY distance
-        LIMIT ?
-    """, (rs, n) -> {
-            double distance = rs.getDouble("distance");
-            double similarity = clamp(1.0 - distance, -1.0, 1.0); // cosine similarity 범위 고려
-            return new ChunkHit(
-                    rs.getLong("id"),
-                    rs.getLong("document_id"),
-                    rs.getInt("chunk_index"),
-                    rs.getString("content"),
-                    distance,
-                    similarity
-            );
-        }, qVec, k);
+    /**
+     * 문서 삭제 (chunk 는 FK cascade), 다른 tenant 의 문서면 false
+     * 이 문서의 chunk 를 canonical 로 참조하던 중복 chunk 는 참조만 지움 (벡터는 원래 자기 것이라 검색/centroid 는 그대로)
+     */
+    public boolean deleteDocument(String tenantId, long docId) {
+        readYourWrites.markWrite(tenantId);
+        ShardRouter.Shard owner = shards.forDocument(docId);
+        Integer deleted = owner.tx().execute(status -> {
+            int n = owner.jdbc().update("DELETE FROM documents WHERE id = ? AND tenant_id = ?", docId, tenantId);
+            if (n > 0) {
+                owner.jdbc().update("""
+                    INSERT INTO document_tombstones(document_id, tenant_id) VALUES (?, ?)
+                    ON CONFLICT (document_id) DO UPDATE SET deleted_at = now()
+                """, docId, tenantId);
+            }
+            return n;
+        });
+        if (deleted != null && deleted > 0) {
+            centroids.remove(tenantId, docId);
+            for (ShardRouter.Shard shard : shards.all()) {
+                releaseDuplicates(shard, tenantId, docId);
+            }
+        }
+        return deleted != null && deleted > 0;
+    }
+
+    /** 참조를 못 지워도 검색 결과는 같음 (다음 중복 판별의 후보에서 빠질 뿐) → 실패는 로그만 */
+    private void releaseDuplicates(ShardRouter.Shard shard, String tenantId, long canonicalDocId) {
+        try {
+            int n = shard.jdbc().update("""
+                UPDATE document_chunks SET canonical_document_id = NULL, canonical_chunk_index = NULL
+                WHERE tenant_id = ? AND canonical_document_id = ?
+            """, tenantId, canonicalDocId);
+            if (n > 0) {
+                log.info("삭제된 canonical 문서를 참조하던 중복 chunk 를 canonical 로 바꿨습니다. shard: {}, documentId: {}, chunks: {}",
+                        shard.index(), canonicalDocId, n);
+            }
+        } catch (RuntimeException e) {
+            log.warn("중복 chunk 참조 정리 실패. shard: {}, documentId: {}, error: {}", shard.index(), canonicalDocId, e.toString());
+        }
+    }
+
+    /** ingest 완료 시점부터 read-your-writes 윈도우를 다시 잡음 */
+    public void markWritten(String tenantId) {
+        readYourWrites.markWrite(tenantId);
+    }
+
+    /**
+     * 모든 shard 에 동시에 local top-k 를 요청하고 거리순 k-way merge
+     * - documentIds 필터가 있으면 그 문서들이 저장된 shard 에만 요청
+     * - shard 별 타임아웃(rag.shards.timeout-ms)을 넘기거나 실패한 shard 는 빼고 partial=true 로 반환
+     *   타임아웃은 shard 에서 statement_timeout 으로 걸어 쿼리 실행 시간만 셈 (커넥션 풀 대기는 제외)
+     *   응답 없는 커넥션에 대비해 풀 대기까지 포함한 전체 대기는 rag.shards.max-wait-ms 까지
+     */
+    public SearchResult searchTopK(String tenantId, String qVec, int k, SearchFilter filter) {
+        return searchTopK(tenantId, new Embedded(embeddings.reading().version(), qVec), k, filter);
+    }
+
+    /** q.version 으로 검색할 컬럼을 고름 (재임베딩 dual-read 중이면 shadow 컬럼) */
+    public SearchResult searchTopK(String tenantId, Embedded q, int k, SearchFilter filter) {
+        return searchTopK(tenantId, q, k, filter, 0);
+    }
+
+    /**
+     * timeoutMs > 0 이면 shard 마다 statement_timeout 을 그 이하로 (질문 확장 leg 가 남은 예산만큼만 DB 를 쓰도록)
+     * 단일 DB 여도 트랜잭션 안에서 걸림, 넘기면 예외 (shard 가 여럿이면 그 shard 만 빠지고 partial)
+     */
+    public SearchResult searchTopK(String tenantId, Embedded q, int k, SearchFilter filter, long timeoutMs) {
+        RagEvents.Search event = new RagEvents.Search();
+        event.begin();
+        List<ShardRouter.Shard> targets = shards.isSharded() ? targetShards(filter) : List.of(shards.primary());
+        SearchResult result = shards.isSharded()
+                ? searchShards(targets, tenantId, q, k, filter,
+                        timeoutMs > 0 ? Math.min(timeoutMs, shardTimeoutMs) : shardTimeoutMs)
+                : new SearchResult(searchShard(shards.primary(), tenantId, q, k, filter, timeoutMs), false);
+        if (event.shouldCommit()) {
+            event.tenant = tenantId;
+            event.k = k;
+            event.shards = targets.size();
+            event.filtered = filter != null && !filter.isEmpty();
+            event.hits = result.hits().size();
+            event.partial = result.partial();
+            event.commit();
+        }
+        return result;
+    }
+
+    private SearchResult searchShards(List<ShardRouter.Shard> targets, String tenantId, Embedded q, int k, SearchFilter filter,
+                                      long timeoutMs) {
+        List<Future<List<ChunkHit>>> futures = new ArrayList<>();
+        for (ShardRouter.Shard shard : targets) {
+            futures.add(shards.searchExecutor().submit(
+                    StructuredTasks.propagate(() -> searchShard(shard, tenantId, q, k, filter, timeoutMs))));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shardMaxWaitMs);
+        List<List<ChunkHit>> perShard = new ArrayList<>();
+        boolean partial = false;
+        for (int i = 0; i < futures.size(); i++) {
+            Future<List<ChunkHit>> f = futures.get(i);
+            try {
+                perShard.add(f.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                f.cancel(true);
+                partial = true;
+                log.warn("shard 검색 대기 시간 초과로 해당 shard 결과를 제외합니다. shard: {}, maxWaitMs: {}", i, shardMaxWaitMs);
+            } catch (ExecutionException e) {
+                partial = true;
+                log.warn("shard 검색 실패로 해당 shard 결과를 제외합니다. shard: {}", i, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(x -> x.cancel(true));
+                partial = true;
+                break;
+            }
+        }
+        return new SearchResult(mergeByDistance(perShard, k), partial);
+    }
+
+    /**
+     * tenant 파티션 안에서만 검색 + 메타데이터 필터를 SQL WHERE 로 내림
+     * - tenant 조건은 리터럴로 넣어 플래닝 시점에 파티션 pruning 되도록 (TenantResolver 에서 검증된 값)
+     * - 필터가 있으면 iterative scan(pgvector 0.8+) 을 켜서 HNSW 가 필터를 만족하는 후보를 k 개 채울 때까지 더 읽게 함
+     *   relaxed_order 는 순서가 약간 어긋날 수 있어 바깥에서 다시 정렬
+     * - 읽기는 replica 로 (read-your-writes 윈도우 안이면 primary)
+     * - 양자화 저장 모드면 coarse 검색 후 정확한 거리로 재정렬 (VectorStorage)
+     * - timeoutMs > 0 이면 트랜잭션 안에서 statement_timeout (넘기면 예외 → 호출 쪽에서 partial)
+     * - 재임베딩 dual-read 중이면 shadow 컬럼을 검색, 그 shard 가 이미 cutover 돼 컬럼이 없으면
+     *   새 벡터가 들어간 embedding 컬럼으로 다시 검색
+     */
+    private List<ChunkHit> searchShard(ShardRouter.Shard shard, String tenantId, Embedded q, int k, SearchFilter filter,
+                                       long timeoutMs) {
+        String column = embeddings.columnFor(q.version());
+        try {
+            return searchShard(shard, tenantId, q, k, filter, timeoutMs, column);
+        } catch (BadSqlGrammarException e) {
+            if (column.equals(VectorStorage.COLUMN)) throw e;
+            log.info("cutover 된 shard 라 embedding 컬럼으로 다시 검색합니다. shard: {}", shard.index());
+            return searchShard(shard, tenantId, q, k, filter, timeoutMs, VectorStorage.COLUMN);
+        }
+    }
+
+    private List<ChunkHit> searchShard(ShardRouter.Shard shard, String tenantId, Embedded q, int k, SearchFilter filter,
+                                       long timeoutMs, String column) {
+        String qVec = q.vec();
+        List<Object> whereParams = new ArrayList<>();
+        // 벡터가 아직 없는 행 제외 (backfill 전의 shadow 컬럼), near-duplicate 는 결과에서 RagService 가 하나로
+        String where = "tenant_id = '" + TenantResolver.validate(tenantId) + "' AND " + column + " IS NOT NULL";
+        if (filter != null && !filter.isEmpty()) {
+            where += " AND " + buildWhere(filter, whereParams);
+        }
+
+        VectorStorage storage = vectorIndexes.storage();
+        List<Object> params = new ArrayList<>();
+        String sql;
+        if (!storage.quantized()) {
+            sql = """
+            WITH hits AS MATERIALIZED (
+                SELECT id, document_id, chunk_index, content,
+                       (%s <=> ?::vector) AS distance
+                FROM document_chunks
+                WHERE %s
+                ORDER BY distance
+                LIMIT ?
+            )
+            SELECT * FROM hits ORDER BY distance
+        """.formatted(column, where);
+            params.add(qVec);
+            params.addAll(whereParams);
+            params.add(k);
+        } else {
+            // 양자화 인덱스로 k * overfetch 개 후보 → full precision 거리로 re-score
+            sql = """
+            WITH candidates AS MATERIALIZED (
+                SELECT id, document_id, chunk_index, content, %1$s AS embedding
+                FROM document_chunks
+                WHERE %2$s
+                ORDER BY %3$s
+                LIMIT ?
+            )
+            SELECT id, document_id, chunk_index, content,
+                   (embedding <=> ?::vector) AS distance
+            FROM candidates
+            ORDER BY distance
+            LIMIT ?
+        """.formatted(column, where, storage.coarseDistance(column, EmbeddingSpec.parse(q.version()).dim()));
+            params.addAll(whereParams);
+            params.add(qVec);
+            params.add(k * overfetch);
+            params.add(qVec);
+            params.add(k);
+        }
+
+        ShardRouter.Replica reader = shard.reader(readYourWrites.mustReadPrimary(tenantId));
+        JdbcTemplate jdbc = reader.jdbc();
+        boolean filtered = filter != null && !filter.isEmpty();
+        if (!filtered && timeoutMs <= 0) {
+            return jdbc.query(sql, CHUNK_HIT, params.toArray());
+        }
+        return reader.tx().execute(status -> {
+            if (timeoutMs > 0) {
+                jdbc.execute("SET LOCAL statement_timeout = " + timeoutMs);
+            }
+            if (filtered && iterativeScan != null && !iterativeScan.isBlank()) {
+                jdbc.execute("SET LOCAL hnsw.iterative_scan = " + iterativeScan);
+            }
+            return jdbc.query(sql, CHUNK_HIT, params.toArray());
+        });
+    }
+
+    private List<ShardRouter.Shard> targetShards(SearchFilter filter) {
+        if (filter == null || filter.documentIds() == null || filter.documentIds().isEmpty()) {
+            return shards.all();
+        }
+        LinkedHashSet<ShardRouter.Shard> owners = new LinkedHashSet<>();
+        for (Long id : filter.documentIds()) {
+            owners.add(shards.forDocument(id));
+        }
+        return List.copyOf(owners);
+    }
+
+    /** shard 별로 이미 거리순 정렬된 목록을 heap 으로 k 개까지 병합 */
+    static List<ChunkHit> mergeByDistance(List<List<ChunkHit>> sortedLists, int k) {
+        PriorityQueue<int[]> heap = new PriorityQueue<>(
+                Comparator.comparingDouble(c -> sortedLists.get(c[0]).get(c[1]).distance()));
+        for (int i = 0; i < sortedLists.size(); i++) {
+            if (!sortedLists.get(i).isEmpty()) heap.add(new int[]{i, 0});
+        }
+
+        List<ChunkHit> out = new ArrayList<>(k);
+        while (!heap.isEmpty() && out.size() < k) {
+            int[] cur = heap.poll();
+            List<ChunkHit> list = sortedLists.get(cur[0]);
+            out.add(list.get(cur[1]));
+            if (cur[1] + 1 < list.size()) heap.add(new int[]{cur[0], cur[1] + 1});
+        }
+        return out;
+    }
+
+    private String buildWhere(SearchFilter f, List<Object> params) {
+        List<String> clauses = new ArrayList<>();
+
+        if (f.tags() != null && !f.tags().isEmpty()) {
+            clauses.add("tags && ?");
+            params.add(f.tags().toArray(String[]::new));
+        }
+        if (f.owner() != null && !f.owner().isBlank()) {
+            clauses.add("owner = ?");
+            params.add(f.owner());
+        }
+        if (f.sourceTypes() != null && !f.sourceTypes().isEmpty()) {
+            if (f.sourceTypes().size() == 1 && INDEXED_SOURCE_TYPES.contains(f.sourceTypes().get(0))) {
+                // partial 인덱스는 플래너가 상수 조건을 봐야 선택하므로 (화이트리스트 값만) 리터럴로
+                clauses.add("source_type = '" + f.sourceTypes().get(0) + "'");
+            } else {
+                clauses.add("source_type = ANY(?)");
+                params.add(f.sourceTypes().toArray(String[]::new));
+            }
+        }
+        if (f.documentIds() != null && !f.documentIds().isEmpty()) {
+            clauses.add("document_id = ANY(?)");
+            params.add(f.documentIds().toArray(Long[]::new));
+        }
+        if (f.createdFrom() != null) {
+            clauses.add("created_at >= ?");
+            params.add(Timestamp.from(f.createdFrom().toInstant()));
+        }
+        if (f.createdTo() != null) {
+            clauses.add("created_at < ?");
+            params.add(Timestamp.from(f.createdTo().toInstant()));
+        }
+        return String.join(" AND ", clauses);
     }
 
     private static double clamp(double v, double min, double max) {
         return Math.max(min, Math.min(max, v));
     }
 
+    public record SearchResult(List<ChunkHit> hits, boolean partial) {}
+
+
+    /** pgvector literal + 임베딩 버전 */
+    public record Embedded(String version, String vec) {}
+
+    public record ChunkText(long documentId, int chunkIndex, String title, String content) {}
+
     public record ChunkHit(
             long id,
             long documentId,
@@ -60,4 +486,38 @@ public class RagRepository {
             double similarity
     ) {}
 
+    public record DocumentMeta(List<String> tags, String owner, String sourceType) {
+        public DocumentMeta {
+            tags = tags == null ? List.of() : List.copyOf(tags);
+            sourceType = sourceType == null || sourceType.isBlank() ? "text" : sourceType.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * 검색 범위 필터 (모든 조건 AND)
+     * - tags: 하나라도 겹치면 매칭
+     * - createdFrom 이상, createdTo 미만
+     */
+    public record SearchFilter(
+            List<String> tags,
+            String owner,
+            List<String> sourceTypes,
+            List<Long> documentIds,
+            OffsetDateTime createdFrom,
+            OffsetDateTime createdTo
+    ) {
+        public static SearchFilter documents(List<Long> documentIds) {
+            return new SearchFilter(null, null, null, documentIds, null, null);
+        }
+
+        public boolean isEmpty() {
+            return (tags == null || tags.isEmpty())
+                    && (owner == null || owner.isBlank())
+                    && (sourceTypes == null || sourceTypes.isEmpty())
+                    && (documentIds == null || documentIds.isEmpty())
+                    && createdFrom == null
+                    && createdTo == null;
+        }
+    }
+
 }
@@ -0,0 +1,41 @@
+package com.ai.rag.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * tenant 가 방금 ingest 한 문서를 바로 질문해도 보이도록,
+ * 마지막 쓰기 후 rag.replicas.read-your-writes-ms 동안은 그 tenant 의 읽기를 primary 로 보낸다.
+ * 0 이면 비활성 (항상 replica 우선)
+ * - 마지막 쓰기 시각은 노드 메모리에만 있으므로 보장은 쓰기를 받은 노드 안에서만:
+ *   노드 A 에 ingest 하고 노드 B 로 질문하면 B 는 쓰기를 모르고 지연된 replica 로 읽을 수 있음
+ *   여러 노드에서 보장이 필요하면 로드밸런서에서 X-Tenant-Id 기준으로 같은 노드에 붙이거나 (sticky),
+ *   replica 를 두지 않거나, rag.replicas.max-lag-ms 를 허용 가능한 지연으로 낮춤
+ */
+@Component
+public class ReadYourWrites {
+
+    private final long windowNanos;
+    private final Map<String, Long> lastWrite = new ConcurrentHashMap<>();
+
+    public ReadYourWrites(@Value("${rag.replicas.read-your-writes-ms:0}") long windowMs) {
+        this.windowNanos = windowMs * 1_000_000L;
+    }
+
+    public void markWrite(String tenantId) {
+        if (windowNanos <= 0) return;
+        lastWrite.put(tenantId, System.nanoTime());
+    }
+
+    public boolean mustReadPrimary(String tenantId) {
+        if (windowNanos <= 0) return false;
+        Long at = lastWrite.get(tenantId);
+        if (at == null) return false;
+        if (System.nanoTime() - at <= windowNanos) return true;
+        lastWrite.remove(tenantId, at);
+        return false;
+    }
+}
@@ -0,0 +1,188 @@
+package com.ai.rag.repository;
+
+import com.ai.rag.utils.EmbeddingSpec;
+import com.ai.rag.utils.VectorUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 재임베딩 SQL (shadow 컬럼 방식)
+ * 1) embedding_next vector(dim) / embedding_next_version 컬럼 추가
+ * 2) content 로부터 새 벡터를 배치로 채움 (ingest 는 그동안 양쪽 컬럼에 dual-write)
+ * 3) embedding_next 에 ANN 인덱스 생성
+ * 4) cutover: shard 마다 한 트랜잭션에서 insert 를 막고 남은 행을 채운 뒤 컬럼 이름을 바꿔치기
+ *    모든 노드가 dual-read(검색은 embedding_next) 인 상태에서만 실행 → 이름이 바뀐 shard 에서
+ *    embedding_next 를 못 찾은 검색/쓰기는 embedding 컬럼의 새 벡터로 다시 시도 (RagRepository, BulkImportRepository)
+ * 5) active 전환 후 다른 버전으로 남은 행을 다시 계산 (sweep)
+ */
+@Slf4j
+@Repository
+public class ReembedRepository {
+
+    public static final String SHADOW_COLUMN = "embedding_next";
+    private static final String PENDING_INDEX = "document_chunks_reembed_pending";
+
+    private final EmbeddingVersions embeddings;
+
+    public ReembedRepository(EmbeddingVersions embeddings) {
+        this.embeddings = embeddings;
+    }
+
+    /** 이전에 다른 차원으로 중단된 shadow 컬럼이 있으면 지우고 다시 만듦 */
+    public void prepare(ShardRouter.Shard shard, EmbeddingSpec target) {
+        JdbcTemplate jdbc = shard.jdbc();
+        List<String> existing = jdbc.queryForList("""
+            SELECT format_type(a.atttypid, a.atttypmod)
+            FROM pg_attribute a
+            WHERE a.attrelid = 'document_chunks'::regclass AND a.attname = 'embedding_next' AND NOT a.attisdropped
+        """, String.class);
+        String wanted = "vector(" + target.dim() + ")";
+        // near-duplicate chunk 도 자기 벡터가 있으므로 다른 chunk 와 같이 재임베딩
+        // embedding IS NOT NULL 조건은 중복 chunk 를 벡터 없이 저장하던 이전 버전의 행이 남은 DB 용 (그 행은 건너뜀)
+        if (!existing.isEmpty() && !Objects.equals(existing.get(0), wanted)) {
+            log.warn("기존 shadow 컬럼 타입({})이 대상({})과 달라 다시 만듭니다. shard: {}", existing.get(0), wanted, shard.index());
+            jdbc.execute("ALTER TABLE document_chunks DROP COLUMN embedding_next, DROP COLUMN IF EXISTS embedding_next_version");
+        }
+        jdbc.execute("ALTER TABLE document_chunks ADD COLUMN IF NOT EXISTS embedding_next " + wanted
+                + ", ADD COLUMN IF NOT EXISTS embedding_next_version TEXT");
+        jdbc.execute("CREATE INDEX IF NOT EXISTS " + PENDING_INDEX + " ON document_chunks (id) WHERE embedding_next IS NULL AND embedding IS NOT NULL");
+    }
+
+    public long countPending(ShardRouter.Shard shard) {
+        Long n = shard.jdbc().queryForObject("SELECT count(*) FROM document_chunks WHERE embedding_next IS NULL AND embedding IS NOT NULL", Long.class);
+        return n == null ? 0 : n;
+    }
+
+    public List<PendingChunk> nextBatch(ShardRouter.Shard shard, long afterId, int limit) {
+        return shard.jdbc().query("""
+            SELECT tenant_id, id, content FROM document_chunks
+            WHERE embedding_next IS NULL AND embedding IS NOT NULL AND id > ?
+            ORDER BY id
+            LIMIT ?
+        """, (rs, n) -> new PendingChunk(rs.getString("tenant_id"), rs.getLong("id"), rs.getString("content")),
+                afterId, limit);
+    }
+
+    public void write(ShardRouter.Shard shard, List<PendingChunk> rows, EmbeddingSpec target) {
+        write(shard.jdbc(), rows, target);
+    }
+
+    public void buildIndex(ShardRouter.Shard shard, VectorStorage storage, EmbeddingSpec target) {
+        // 파티션 테이블은 CONCURRENTLY 를 지원하지 않음 → 생성 중 해당 shard 쓰기가 잠시 막힘
+        shard.jdbc().execute(storage.createIndexSql(storage.indexName() + "_next", "embedding_next", target.dim()));
+    }
+
+    /** shadow 컬럼이 남아있으면 아직 cutover 전 (재시작 시 이미 전환한 shard 는 건너뜀) */
+    public boolean hasShadow(ShardRouter.Shard shard) {
+        Integer n = shard.jdbc().queryForObject("""
+            SELECT count(*) FROM pg_attribute
+            WHERE attrelid = 'document_chunks'::regclass AND attname = ? AND NOT attisdropped
+        """, Integer.class, SHADOW_COLUMN);
+        return n != null && n > 0;
+    }
+
+    /**
+     * shard 하나를 새 벡터로 전환. activateVersion 이면 같은 트랜잭션에서 embedding_versions 도 전환 (shard 0)
+     * 이미 전환한 shard 면 컬럼은 그대로 두고 버전 전환만
+     */
+    public void cutover(ShardRouter.Shard shard, VectorStorage storage, EmbeddingSpec target, boolean activateVersion) {
+        JdbcTemplate jdbc = shard.jdbc();
+        if (!hasShadow(shard)) {
+            if (activateVersion) {
+                shard.tx().executeWithoutResult(status -> embeddings.activate(jdbc, target));
+                embeddings.switchedTo(target);
+            }
+            log.info("이미 cutover 된 shard 입니다. shard: {}, version: {}", shard.index(), target.version());
+            return;
+        }
+        shard.tx().executeWithoutResult(status -> {
+            jdbc.execute("LOCK TABLE document_chunks IN SHARE ROW EXCLUSIVE MODE");
+
+            // dual-write 없이 들어온 행 (스냅샷 import, 중복 chunk 승격 등)
+            List<PendingChunk> left = jdbc.query(
+                    "SELECT tenant_id, id, content FROM document_chunks WHERE embedding_next IS NULL AND embedding IS NOT NULL",
+                    (rs, n) -> new PendingChunk(rs.getString("tenant_id"), rs.getLong("id"), rs.getString("content")));
+            write(jdbc, left, target);
+
+            jdbc.execute("ALTER TABLE document_chunks RENAME COLUMN embedding TO embedding_old");
+            jdbc.execute("ALTER TABLE document_chunks RENAME COLUMN embedding_version TO embedding_version_old");
+            jdbc.execute("ALTER TABLE document_chunks RENAME COLUMN embedding_next TO embedding");
+            jdbc.execute("ALTER TABLE document_chunks RENAME COLUMN embedding_next_version TO embedding_version");
+            // 이전 벡터 컬럼과 그 인덱스 삭제 (메타데이터만 바뀌므로 빠름, 공간은 이후 VACUUM 시 회수)
+            jdbc.execute("ALTER TABLE document_chunks DROP COLUMN embedding_old, DROP COLUMN embedding_version_old");
+            jdbc.execute("DROP INDEX IF EXISTS " + PENDING_INDEX);
+            jdbc.execute("ALTER INDEX IF EXISTS %s_next RENAME TO %s".formatted(storage.indexName(), storage.indexName()));
+
+            // 문서 centroid 도 새 벡터 기준으로 (CentroidIndex 는 버전 전환을 보고 다시 로딩)
+            jdbc.update("""
+                UPDATE documents d SET centroid = s.c, centroid_version = ?
+                FROM (SELECT document_id, avg(embedding) AS c
+                      FROM document_chunks
+                      WHERE embedding IS NOT NULL
+                      GROUP BY document_id) s
+                WHERE s.document_id = d.id
+            """, target.version());
+
+            if (activateVersion) {
+                embeddings.activate(jdbc, target);
+            }
+        });
+
+        // 컬럼과 함께 사라진 source_type partial 인덱스 등 재생성 (나머지는 IF NOT EXISTS 로 건너뜀)
+        new ResourceDatabasePopulator(new ClassPathResource("schema-indexes.sql")).execute(Objects.requireNonNull(jdbc.getDataSource()));
+        if (activateVersion) {
+            embeddings.switchedTo(target);
+        }
+        log.info("임베딩 cutover 완료. shard: {}, version: {}", shard.index(), target.version());
+    }
+
+    /**
+     * active 전환 후 embedding 컬럼에 다른 버전 벡터가 남은 행 (node-timeout 을 넘겨 멈춰 있던 노드가 쓴 행 등)
+     * 을 target 으로 다시 계산, 반환값은 고친 행 수
+     */
+    public int sweep(ShardRouter.Shard shard, EmbeddingSpec target, int batchSize) {
+        JdbcTemplate jdbc = shard.jdbc();
+        int fixed = 0;
+        long lastId = 0;
+        while (true) {
+            List<PendingChunk> rows = jdbc.query("""
+                SELECT tenant_id, id, content FROM document_chunks
+                WHERE embedding IS NOT NULL AND embedding_version IS DISTINCT FROM ? AND id > ?
+                ORDER BY id
+                LIMIT ?
+            """, (rs, n) -> new PendingChunk(rs.getString("tenant_id"), rs.getLong("id"), rs.getString("content")),
+                    target.version(), lastId, batchSize);
+            if (rows.isEmpty()) return fixed;
+            List<Object[]> args = new ArrayList<>(rows.size());
+            for (PendingChunk r : rows) {
+                String vec = VectorUtils.toPgVectorLiteral(VectorUtils.embed(r.content(), target));
+                args.add(new Object[]{vec, target.version(), r.tenantId(), r.id()});
+            }
+            jdbc.batchUpdate("UPDATE document_chunks SET embedding = ?::vector, embedding_version = ? WHERE tenant_id = ? AND id = ?", args);
+            fixed += rows.size();
+            lastId = rows.get(rows.size() - 1).id();
+        }
+    }
+
+    private void write(JdbcTemplate jdbc, List<PendingChunk> rows, EmbeddingSpec target) {
+        if (rows.isEmpty()) return;
+        List<Object[]> args = new ArrayList<>(rows.size());
+        for (PendingChunk r : rows) {
+            String vec = VectorUtils.toPgVectorLiteral(VectorUtils.embed(r.content(), target));
+            args.add(new Object[]{vec, target.version(), r.tenantId(), r.id()});
+        }
+        jdbc.batchUpdate("""
+            UPDATE document_chunks SET embedding_next = ?::vector, embedding_next_version = ?
+            WHERE tenant_id = ? AND id = ?
+        """, args);
+    }
+
+    public record PendingChunk(String tenantId, long id, String content) {}
+}
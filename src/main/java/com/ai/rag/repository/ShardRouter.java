@@ -0,0 +1,309 @@
+package com.ai.rag.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * document 저장소 shard 목록
+ * - shard 0 = spring.datasource (document id 발급도 담당)
+ * - rag.shards.additional-urls (쉼표 구분) 에 지정한 DB 가 shard 1..N-1
+ * - schema 는 기동 시 만들지 않음: SchemaMigration (--spring.profiles.active=migrate) 이 모든 shard 에 적용
+ *   생성 시 DB 에 접속하지 않음 (커넥션은 처음 쓸 때)
+ * - 문서는 document id 해시로 고정 slot(SLOTS 개) 에 속하고, slot → shard 배치는 shard 0 의 shard_slots 테이블
+ *   chunk 는 문서와 같은 shard 에 저장
+ *   shard 를 추가해도 배치는 그대로 (새 shard 는 slot 을 받기 전까지 비어 있음) → 문서가 옮겨지지 않음
+ *   배치는 처음 쓸 때 한 번 읽음 (shard_slots 는 SchemaMigration 이 만들고 ShardRebalance 만 바꿈)
+ * - reshard: (1) rag.shards.additional-urls 에 새 shard 추가 후 migrate (2) ingest 를 멈추고
+ *   --spring.profiles.active=reshard 실행 → slot 을 shard 수에 맞게 고르게 다시 배치하고 옮겨진 slot 의 문서만 새 shard 로 이동
+ *   (3) 모든 노드를 새 설정으로 재시작 (기존 노드는 예전 배치를 들고 있음)
+ * - shard 마다 read replica 를 둘 수 있음 (rag.replicas.urls, 쉼표 구분, "N=jdbcUrl" 형식, N 생략 시 shard 0)
+ *   쓰기는 항상 primary, 검색은 healthy replica 간 round-robin (없으면 primary)
+ *   replica 는 첫 health check 를 통과하기 전까지 unhealthy (기동 직후 지연된 replica 로 읽지 않도록)
+ */
+@Slf4j
+@Component
+public class ShardRouter implements DisposableBean {
+
+    /** 고정 slot 수: 1~10, 12, 14, 15 ... 처럼 이 값의 약수인 shard 수는 slot % N 배치가 예전 해시 % N 배치와 같음 */
+    public static final int SLOTS = 2520;
+
+    private final List<Shard> shards = new ArrayList<>();
+    private final List<DataSource> owned = new ArrayList<>();
+    private final ExecutorService searchExecutor;
+    private final long maxReplicaLagMs;
+    /** slot → shard index, 처음 forDocument 때 shard 0 에서 읽음 */
+    private volatile int[] slotOwners;
+
+    public ShardRouter(JdbcTemplate primary,
+                       TransactionTemplate primaryTx,
+                       @Value("${rag.shards.additional-urls:}") List<String> additionalUrls,
+                       @Value("${rag.shards.username:${spring.datasource.username:}}") String username,
+                       @Value("${rag.shards.password:${spring.datasource.password:}}") String password,
+                       @Value("${rag.replicas.urls:}") List<String> replicaUrls,
+                       @Value("${rag.replicas.max-lag-ms:10000}") long maxReplicaLagMs) {
+        this.maxReplicaLagMs = maxReplicaLagMs;
+        shards.add(new Shard(0, primary, primaryTx, new TenantPartitions(primary)));
+
+        for (String url : additionalUrls) {
+            if (url == null || url.isBlank()) continue;
+            DataSource ds = dataSource(url, username, password);
+            JdbcTemplate jdbc = new JdbcTemplate(ds);
+            TransactionTemplate tx = new TransactionTemplate(new DataSourceTransactionManager(ds));
+            shards.add(new Shard(shards.size(), jdbc, tx, new TenantPartitions(jdbc)));
+        }
+
+        for (String spec : replicaUrls) {
+            if (spec == null || spec.isBlank()) continue;
+            int eq = spec.indexOf('=');
+            boolean hasShard = eq > 0 && spec.substring(0, eq).chars().allMatch(Character::isDigit);
+            int shardIndex = hasShard ? Integer.parseInt(spec.substring(0, eq)) : 0;
+            String url = hasShard ? spec.substring(eq + 1) : spec;
+            if (shardIndex >= shards.size()) {
+                throw new IllegalArgumentException("존재하지 않는 shard 의 replica 입니다: " + spec);
+            }
+
+            DataSource ds = dataSource(url, username, password);
+            JdbcTemplate jdbc = new JdbcTemplate(ds);
+            Shard shard = shards.get(shardIndex);
+            shard.replicas.add(new Replica(url.trim(), jdbc, new TransactionTemplate(new DataSourceTransactionManager(ds))));
+        }
+
+        // shard 검색은 대부분 JDBC 대기라 요청마다 virtual thread (동시 실행 수는 커넥션 풀이 제한)
+        this.searchExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("shard-search-", 0).factory());
+        log.info("document shard 수: {}, replica 수: {}", shards.size(),
+                shards.stream().mapToInt(s -> s.replicas.size()).sum());
+    }
+
+    public List<Shard> all() {
+        return shards;
+    }
+
+    public Shard primary() {
+        return shards.get(0);
+    }
+
+    public Shard forDocument(long documentId) {
+        if (shards.size() == 1) return shards.get(0);
+        return shards.get(slotOwners()[slot(documentId)]);
+    }
+
+    public static int slot(long documentId) {
+        return Math.floorMod(Long.hashCode(mix(documentId)), SLOTS);
+    }
+
+    private int[] slotOwners() {
+        int[] owners = slotOwners;
+        if (owners == null) {
+            owners = loadSlots();
+            slotOwners = owners;
+        }
+        return owners;
+    }
+
+    /** shard_slots 를 다시 읽음 (ShardRebalance 가 배치를 바꾼 뒤) */
+    public int[] loadSlots() {
+        int[] owners = new int[SLOTS];
+        Arrays.fill(owners, -1);
+        primary().jdbc().query("SELECT slot, shard FROM shard_slots", (RowCallbackHandler) rs -> {
+            int slot = rs.getInt("slot");
+            if (slot >= 0 && slot < SLOTS) owners[slot] = rs.getInt("shard");
+        });
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (owners[slot] < 0) {
+                throw new IllegalStateException("shard_slots 에 slot " + slot + " 의 배치가 없습니다. migrate 를 먼저 실행하세요.");
+            }
+            if (owners[slot] >= shards.size()) {
+                throw new IllegalStateException("shard_slots 가 설정에 없는 shard " + owners[slot] + " 를 가리킵니다. (shard 수: " + shards.size() + ")");
+            }
+        }
+        slotOwners = owners;
+        return owners;
+    }
+
+    /** slot 을 현재 shard 수에 맞게 다시 배치해서 저장 (ShardRebalance), 반환값은 옮겨진 slot 수 */
+    public int rebalanceSlots() {
+        int[] owners = loadSlots();
+        int[] next = rebalance(owners, shards.size());
+        List<Object[]> changed = new ArrayList<>();
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (next[slot] != owners[slot]) changed.add(new Object[]{next[slot], slot});
+        }
+        primary().tx().executeWithoutResult(status ->
+                primary().jdbc().batchUpdate("UPDATE shard_slots SET shard = ? WHERE slot = ?", changed));
+        slotOwners = next;
+        return changed.size();
+    }
+
+    /**
+     * shard 수에 맞춰 slot 을 고르게 (shard 당 SLOTS / N, 나머지는 앞 shard 부터 하나씩) 다시 배치
+     * 많이 가진 shard 의 slot 만 모자란 shard 로 넘겨서 옮기는 slot 수가 최소
+     */
+    static int[] rebalance(int[] owners, int shardCount) {
+        int[] next = owners.clone();
+        int[] count = new int[shardCount];
+        List<Integer> spare = new ArrayList<>();
+        for (int owner : next) count[owner]++;
+        int[] target = new int[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            target[i] = next.length / shardCount + (i < next.length % shardCount ? 1 : 0);
+        }
+        for (int slot = next.length - 1; slot >= 0; slot--) {
+            int owner = next[slot];
+            if (count[owner] > target[owner]) {
+                count[owner]--;
+                spare.add(slot);
+            }
+        }
+        int shard = 0;
+        for (int slot : spare) {
+            while (count[shard] >= target[shard]) shard++;
+            next[slot] = shard;
+            count[shard]++;
+        }
+        return next;
+    }
+
+    public boolean isSharded() {
+        return shards.size() > 1;
+    }
+
+    ExecutorService searchExecutor() {
+        return searchExecutor;
+    }
+
+    /**
+     * replica health check: 접속 가능 + 복제 지연이 rag.replicas.max-lag-ms 이하
+     * - WAL receiver 가 streaming 이고 받은 WAL 을 다 재생했으면 primary 가 한가한 것이므로 지연 0
+     * - receiver 가 끊겼으면 받은 만큼 재생했어도 뒤처진 것일 수 있으므로 마지막 재생 시각 기준 지연
+     */
+    @Scheduled(fixedDelayString = "${rag.replicas.health-interval-ms:5000}")
+    public void checkReplicas() {
+        for (Shard shard : shards) {
+            for (Replica r : shard.replicas) {
+                boolean healthy;
+                try {
+                    Double lagMs = r.jdbc().queryForObject("""
+                        SELECT CASE
+                                 WHEN NOT pg_is_in_recovery() THEN 0
+                                 WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn()
+                                      AND EXISTS (SELECT 1 FROM pg_stat_wal_receiver WHERE status = 'streaming') THEN 0
+                                 ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000
+                               END
+                    """, Double.class);
+                    healthy = lagMs != null && lagMs <= maxReplicaLagMs;
+                    if (!healthy) {
+                        log.warn("replica 복제 지연이 커서 제외합니다. shard: {}, replica: {}, lagMs: {}", shard.index(), r.url(), lagMs);
+                    }
+                } catch (RuntimeException e) {
+                    healthy = false;
+                    log.warn("replica health check 실패로 제외합니다. shard: {}, replica: {}", shard.index(), r.url(), e);
+                }
+                if (healthy && !r.healthy) {
+                    log.info("replica 를 다시 사용합니다. shard: {}, replica: {}", shard.index(), r.url());
+                }
+                r.healthy = healthy;
+            }
+        }
+    }
+
+    private DataSource dataSource(String url, String username, String password) {
+        DataSource ds = DataSourceBuilder.create()
+                .url(url.trim())
+                .username(username)
+                .password(password)
+                .build();
+        owned.add(ds);
+        return ds;
+    }
+
+    // 연속된 id 가 slot 에 고르게 퍼지도록 (SplitMix64 finalizer)
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        searchExecutor.shutdownNow();
+        for (DataSource ds : owned) {
+            if (ds instanceof Closeable c) c.close();
+        }
+    }
+
+    public static final class Shard {
+        private final int index;
+        private final JdbcTemplate jdbc;
+        private final TransactionTemplate tx;
+        private final TenantPartitions partitions;
+        private final Replica primaryReader;
+        private final List<Replica> replicas = new ArrayList<>();
+        private final AtomicInteger nextReplica = new AtomicInteger();
+
+        Shard(int index, JdbcTemplate jdbc, TransactionTemplate tx, TenantPartitions partitions) {
+            this.index = index;
+            this.jdbc = jdbc;
+            this.tx = tx;
+            this.partitions = partitions;
+            this.primaryReader = new Replica("primary", jdbc, tx);
+        }
+
+        public int index() { return index; }
+
+        /** 쓰기용 (primary) */
+        public JdbcTemplate jdbc() { return jdbc; }
+
+        public TransactionTemplate tx() { return tx; }
+
+        public TenantPartitions partitions() { return partitions; }
+
+        /** 읽기용: healthy replica round-robin, 없거나 primary 강제면 primary */
+        public Replica reader(boolean forcePrimary) {
+            if (!forcePrimary && !replicas.isEmpty()) {
+                int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+                for (int i = 0; i < replicas.size(); i++) {
+                    Replica r = replicas.get((start + i) % replicas.size());
+                    if (r.healthy) return r;
+                }
+            }
+            return primaryReader;
+        }
+    }
+
+    public static final class Replica {
+        private final String url;
+        private final JdbcTemplate jdbc;
+        private final TransactionTemplate tx;
+        private volatile boolean healthy;
+
+        Replica(String url, JdbcTemplate jdbc, TransactionTemplate tx) {
+            this.url = url;
+            this.jdbc = jdbc;
+            this.tx = tx;
+        }
+
+        public String url() { return url; }
+
+        public JdbcTemplate jdbc() { return jdbc; }
+
+        public TransactionTemplate tx() { return tx; }
+    }
+}
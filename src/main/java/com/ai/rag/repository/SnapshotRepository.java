@@ -0,0 +1,318 @@
+package com.ai.rag.repository;
+
+import com.ai.rag.utils.SnapshotFormat;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 스냅샷 읽기/쓰기 SQL (SnapshotService)
+ * - export: shard 별 REPEATABLE READ 트랜잭션에서 문서 id keyset 으로 배치 단위로 읽음
+ *   delta 면 base 가 읽은 snapshot 에서 보이지 않던 change_xid 만 (CommitOrder)
+ * - import: 대상 클러스터의 shard 라우팅대로 묶어서 문서 단위 upsert (있으면 지우고 COPY, 문서와 chunk 를 한 트랜잭션에)
+ *   tombstone 은 문서를 지우고 이 노드에도 tombstone 을 남김 (이 노드에서 다시 delta 를 export 할 수 있게)
+ *   같은 스냅샷을 다시 적용해도 결과가 같음
+ */
+@Slf4j
+@Repository
+public class SnapshotRepository {
+
+    private final ShardRouter shards;
+    private final CentroidIndex centroids;
+
+    public SnapshotRepository(ShardRouter shards, CentroidIndex centroids) {
+        this.shards = shards;
+        this.centroids = centroids;
+    }
+
+    /**
+     * shard 하나를 스냅샷에 씀
+     * until 은 이 트랜잭션이 읽는 snapshot (REPEATABLE READ 라 첫 쿼리 시점에 고정)
+     * → 그때 진행 중이던 트랜잭션이 나중에 커밋해도 다음 delta(since = until)에 포함됨 (겹치는 행은 import 가 upsert)
+     */
+    public SnapshotFormat.Watermark export(ShardRouter.Shard shard, String since, int dim, int batchDocuments,
+                                           SnapshotFormat.Writer writer, ExportCounter counter) {
+        TransactionTemplate tx = new TransactionTemplate(shard.tx().getTransactionManager());
+        tx.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        tx.setReadOnly(true);
+        JdbcTemplate jdbc = shard.jdbc();
+
+        return tx.execute(status -> {
+            String until = CommitOrder.current(jdbc);
+
+            long afterId = 0;
+            while (true) {
+                List<SnapshotFormat.DocumentRow> docs = since == null
+                        ? jdbc.query(DOCUMENTS_SQL.formatted(""), this::documentRow, afterId, batchDocuments)
+                        : jdbc.query(DOCUMENTS_SQL.formatted("AND " + CommitOrder.CHANGED_SINCE), this::documentRow,
+                                afterId, since, since, batchDocuments);
+                if (docs.isEmpty()) break;
+
+                Long[] ids = docs.stream().map(SnapshotFormat.DocumentRow::id).toArray(Long[]::new);
+                List<SnapshotFormat.ChunkRow> chunks = jdbc.query(CHUNKS_SQL, (rs, n) -> chunkRow(rs, dim), (Object) ids);
+
+                try {
+                    writer.documents(docs);
+                    writer.chunks(chunks);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                counter.documents += docs.size();
+                counter.chunks += chunks.size();
+                afterId = ids[ids.length - 1];
+            }
+
+            if (since != null) {
+                List<SnapshotFormat.Tombstone> deleted = jdbc.query(
+                        "SELECT document_id, tenant_id FROM document_tombstones WHERE " + CommitOrder.CHANGED_SINCE + " ORDER BY document_id",
+                        (rs, n) -> new SnapshotFormat.Tombstone(rs.getLong("document_id"), rs.getString("tenant_id")),
+                        since, since);
+                try {
+                    writer.tombstones(deleted);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                counter.tombstones += deleted.size();
+            }
+            return new SnapshotFormat.Watermark(shard.index(), since, until);
+        });
+    }
+
+    private static final String DOCUMENTS_SQL = """
+        SELECT id, tenant_id, title, tags, owner, source_type, created_at, centroid_version, centroid::text AS centroid
+        FROM documents
+        WHERE id > ? %s
+        ORDER BY id
+        LIMIT ?
+    """;
+
+    private static final String CHUNKS_SQL = """
+        SELECT document_id, chunk_index, tenant_id, content, embedding_version, embedding::text AS embedding,
+               simhash, canonical_document_id, canonical_chunk_index
+        FROM document_chunks
+        WHERE document_id = ANY(?)
+        ORDER BY document_id, chunk_index
+    """;
+
+    private SnapshotFormat.DocumentRow documentRow(ResultSet rs, int n) throws SQLException {
+        Array tags = rs.getArray("tags");
+        String centroid = rs.getString("centroid");
+        return new SnapshotFormat.DocumentRow(
+                rs.getLong("id"),
+                rs.getString("tenant_id"),
+                rs.getString("title"),
+                tags == null ? List.of() : Arrays.asList((String[]) tags.getArray()),
+                rs.getString("owner"),
+                rs.getString("source_type"),
+                toMicros(rs.getTimestamp("created_at")),
+                centroid == null ? null : rs.getString("centroid_version"),
+                centroid == null ? null : parseVector(centroid)
+        );
+    }
+
+    private SnapshotFormat.ChunkRow chunkRow(ResultSet rs, int dim) throws SQLException {
+        String embedding = rs.getString("embedding");
+        long simhash = rs.getLong("simhash");
+        Long simhashOrNull = rs.wasNull() ? null : simhash;
+        long canonicalDoc = rs.getLong("canonical_document_id");
+        Long canonicalDocOrNull = rs.wasNull() ? null : canonicalDoc;
+        int canonicalIdx = rs.getInt("canonical_chunk_index");
+        Integer canonicalIdxOrNull = rs.wasNull() ? null : canonicalIdx;
+
+        float[] v = embedding == null ? null : parseVector(embedding);
+        if (v != null && v.length != dim) {
+            throw new IllegalStateException("chunk 벡터 차원이 active 버전과 다릅니다(재임베딩 중?): " + v.length + " != " + dim);
+        }
+        return new SnapshotFormat.ChunkRow(
+                rs.getLong("document_id"),
+                rs.getInt("chunk_index"),
+                rs.getString("tenant_id"),
+                rs.getString("content"),
+                rs.getString("embedding_version"),
+                v,
+                simhashOrNull,
+                canonicalDocOrNull,
+                canonicalIdxOrNull
+        );
+    }
+
+    /**
+     * 문서 segment 와 이어지는 chunk segment 를 대상 shard 별로 한 트랜잭션에: 기존 문서(와 chunk)를 지우고 COPY
+     * chunk 의 필터용 메타데이터는 문서 행에서 복사 (insertChunk 와 같은 비정규화)
+     */
+    public void importDocuments(List<SnapshotFormat.DocumentRow> docs, List<SnapshotFormat.ChunkRow> chunks) {
+        Map<Long, SnapshotFormat.DocumentRow> byId = new HashMap<>(docs.size() * 2);
+        Map<ShardRouter.Shard, List<SnapshotFormat.DocumentRow>> byShard = new LinkedHashMap<>();
+        for (SnapshotFormat.DocumentRow d : docs) {
+            byId.put(d.id(), d);
+            byShard.computeIfAbsent(shards.forDocument(d.id()), s -> new ArrayList<>()).add(d);
+        }
+        Map<ShardRouter.Shard, StringBuilder> chunkCopy = new HashMap<>();
+        for (SnapshotFormat.ChunkRow c : chunks) {
+            SnapshotFormat.DocumentRow d = byId.get(c.documentId());
+            if (d == null) {
+                throw new IllegalStateException("chunk 앞에 문서 segment 가 없습니다. documentId: " + c.documentId());
+            }
+            chunkCopy.computeIfAbsent(shards.forDocument(c.documentId()), s -> new StringBuilder(1 << 16))
+                    .append(CopyText.escape(c.tenantId())).append('\t')
+                    .append(c.documentId()).append('\t')
+                    .append(c.chunkIndex()).append('\t')
+                    .append(CopyText.escape(c.content())).append('\t')
+                    .append(c.embedding() == null ? CopyText.NULL : vectorLiteral(c.embedding())).append('\t')
+                    .append(CopyText.escape(c.embeddingVersion())).append('\t')
+                    .append(c.simhash() == null ? CopyText.NULL : c.simhash()).append('\t')
+                    .append(c.canonicalDocumentId() == null ? CopyText.NULL : c.canonicalDocumentId()).append('\t')
+                    .append(c.canonicalChunkIndex() == null ? CopyText.NULL : c.canonicalChunkIndex()).append('\t')
+                    .append(CopyText.array(d.tags())).append('\t')
+                    .append(CopyText.escape(d.owner())).append('\t')
+                    .append(CopyText.escape(d.sourceType())).append('\t')
+                    .append(toInstant(d.createdAtMicros()))
+                    .append('\n');
+        }
+
+        for (Map.Entry<ShardRouter.Shard, List<SnapshotFormat.DocumentRow>> e : byShard.entrySet()) {
+            ShardRouter.Shard shard = e.getKey();
+            List<SnapshotFormat.DocumentRow> rows = e.getValue();
+            rows.stream().map(SnapshotFormat.DocumentRow::tenantId).distinct().forEach(t -> shard.partitions().ensure(t));
+
+            StringBuilder copy = new StringBuilder(rows.size() * 256);
+            for (SnapshotFormat.DocumentRow d : rows) {
+                copy.append(d.id()).append('\t')
+                        .append(CopyText.escape(d.tenantId())).append('\t')
+                        .append(CopyText.escape(d.title())).append('\t')
+                        .append(CopyText.array(d.tags())).append('\t')
+                        .append(CopyText.escape(d.owner())).append('\t')
+                        .append(CopyText.escape(d.sourceType())).append('\t')
+                        .append(toInstant(d.createdAtMicros())).append('\t')
+                        .append(CopyText.escape(d.centroidVersion())).append('\t')
+                        .append(d.centroid() == null ? CopyText.NULL : vectorLiteral(d.centroid()))
+                        .append('\n');
+            }
+            Long[] ids = rows.stream().map(SnapshotFormat.DocumentRow::id).toArray(Long[]::new);
+            StringBuilder shardChunks = chunkCopy.get(shard);
+            shard.tx().executeWithoutResult(status -> {
+                shard.jdbc().update("DELETE FROM documents WHERE id = ANY(?)", (Object) ids);
+                shard.jdbc().update("DELETE FROM document_tombstones WHERE document_id = ANY(?)", (Object) ids);
+                CopyText.copyIn(shard.jdbc(), """
+                    COPY documents(id, tenant_id, title, tags, owner, source_type, created_at, centroid_version, centroid) FROM STDIN
+                """, copy);
+                if (shardChunks != null) {
+                    CopyText.copyIn(shard.jdbc(), """
+                        COPY document_chunks(tenant_id, document_id, chunk_index, content, embedding, embedding_version,
+                                             simhash, canonical_document_id, canonical_chunk_index,
+                                             tags, owner, source_type, created_at) FROM STDIN
+                    """, shardChunks);
+                }
+            });
+        }
+    }
+
+    /**
+     * reshard 후: 이 shard 에 있지만 배치상 다른 shard 로 간 문서를 새 shard 로 복사 (importDocuments 와 같은 upsert) 한 뒤 여기서 삭제
+     * 문서는 그대로 있으므로 tombstone 은 남기지 않음 (centroid/delta 스냅샷은 새 shard 의 행으로 이어짐)
+     * 배치 단위라 중간에 멈춰도 다시 실행하면 이어서 진행, 반환값은 옮긴 문서 수
+     */
+    public long relocate(ShardRouter.Shard shard, int dim, int batchDocuments) {
+        JdbcTemplate jdbc = shard.jdbc();
+        long moved = 0;
+        long afterId = 0;
+        while (true) {
+            List<SnapshotFormat.DocumentRow> docs = jdbc.query(DOCUMENTS_SQL.formatted(""), this::documentRow, afterId, batchDocuments);
+            if (docs.isEmpty()) break;
+            afterId = docs.get(docs.size() - 1).id();
+
+            List<SnapshotFormat.DocumentRow> misplaced = docs.stream().filter(d -> shards.forDocument(d.id()) != shard).toList();
+            if (misplaced.isEmpty()) continue;
+            Long[] ids = misplaced.stream().map(SnapshotFormat.DocumentRow::id).toArray(Long[]::new);
+            List<SnapshotFormat.ChunkRow> chunks = jdbc.query(CHUNKS_SQL, (rs, n) -> chunkRow(rs, dim), (Object) ids);
+
+            importDocuments(misplaced, chunks);
+            jdbc.update("DELETE FROM documents WHERE id = ANY(?)", (Object) ids);
+            moved += ids.length;
+        }
+        return moved;
+    }
+
+    /** 문서 삭제 + 이 노드의 tombstone (deleteDocument 와 같은 기록, 이 노드에서 export 하는 delta 에도 실림) */
+    public void importTombstones(List<SnapshotFormat.Tombstone> tombstones) {
+        for (SnapshotFormat.Tombstone t : tombstones) {
+            ShardRouter.Shard shard = shards.forDocument(t.documentId());
+            shard.tx().executeWithoutResult(status -> {
+                shard.jdbc().update("DELETE FROM documents WHERE id = ? AND tenant_id = ?", t.documentId(), t.tenantId());
+                shard.jdbc().update("""
+                    INSERT INTO document_tombstones(document_id, tenant_id) VALUES (?, ?)
+                    ON CONFLICT (document_id) DO UPDATE SET tenant_id = EXCLUDED.tenant_id, deleted_at = now()
+                """, t.documentId(), t.tenantId());
+            });
+        }
+    }
+
+    /** import 후: 문서 id 시퀀스를 가져온 id 뒤로, centroid 는 전체 다시 로딩 */
+    public void finishImport(long maxDocumentId) {
+        shards.primary().jdbc().queryForObject(
+                "SELECT setval('documents_id_seq', GREATEST((SELECT last_value FROM documents_id_seq), ?))",
+                Long.class, maxDocumentId);
+        centroids.invalidate();
+        centroids.refresh();
+    }
+
+    public boolean isEmpty() {
+        for (ShardRouter.Shard shard : shards.all()) {
+            if (Boolean.TRUE.equals(shard.jdbc().queryForObject("SELECT EXISTS (SELECT 1 FROM documents)", Boolean.class))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static float[] parseVector(String literal) {
+        String body = literal.substring(1, literal.length() - 1);
+        if (body.isEmpty()) return new float[0];
+        String[] parts = body.split(",");
+        float[] v = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) v[i] = Float.parseFloat(parts[i]);
+        return v;
+    }
+
+    private static String vectorLiteral(float[] v) {
+        StringBuilder sb = new StringBuilder(v.length * 10).append('[');
+        for (int i = 0; i < v.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(v[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    private static long toMicros(Timestamp ts) {
+        Instant i = ts.toInstant();
+        return ChronoUnit.MICROS.between(Instant.EPOCH, i);
+    }
+
+    private static Instant toInstant(long micros) {
+        return Instant.EPOCH.plus(micros, ChronoUnit.MICROS);
+    }
+
+    /** export 진행 상황 (로그/응답용) */
+    public static final class ExportCounter {
+        public long documents;
+        public long chunks;
+        public long tombstones;
+    }
+}
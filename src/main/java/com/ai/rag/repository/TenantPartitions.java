@@ -0,0 +1,120 @@
+package com.ai.rag.repository;
+
+import com.ai.rag.common.TenantResolver;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * document_chunks 의 tenant 별 LIST 파티션 관리
+ * - tenant 첫 ingest 시 전용 파티션 생성 (벡터/보조 인덱스는 부모 인덱스에서 자동 생성)
+ * - 어느 파티션에도 속하지 않는 값은 DEFAULT 파티션으로 (SchemaMigration 이 생성)
+ * - 파티셔닝 이전에 만들어진 일반 테이블이면 ingest 가 실패함: migrate 가 convertLegacyTable 로 변환
+ * - shard 마다 하나씩 (ShardRouter 가 생성)
+ */
+@Slf4j
+public class TenantPartitions {
+
+    private final JdbcTemplate jdbc;
+    private final Set<String> known = ConcurrentHashMap.newKeySet();
+    /** 처음 ensure 때 확인 (생성 시 DB 를 읽지 않도록) */
+    private volatile Boolean partitioned;
+
+    public TenantPartitions(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /** tenantId 는 파티션 이름/FOR VALUES 리터럴로 들어가므로 (DDL 은 바인딩 불가) TenantResolver 규칙으로 다시 검증 */
+    public void ensure(String tenantId) {
+        if (known.contains(tenantId)) return;
+        if (!partitioned()) {
+            throw new IllegalStateException("document_chunks 가 파티션 테이블이 아닙니다. --spring.profiles.active=migrate 로 변환하세요.");
+        }
+
+        String name = partitionName(TenantResolver.validate(tenantId));
+        try {
+            createPartition("document_chunks", tenantId);
+        } catch (DataAccessException e) {
+            // 다른 노드가 동시에 만든 경우 IF NOT EXISTS 여도 카탈로그 충돌이 날 수 있음
+            Boolean exists = jdbc.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, name);
+            if (!Boolean.TRUE.equals(exists)) throw e;
+        }
+        known.add(tenantId);
+        log.info("tenant 파티션 준비 완료. tenant: {}", tenantId);
+    }
+
+    /**
+     * 파티셔닝 이전에 만들어진 일반 테이블 document_chunks 를 LIST 파티션 테이블로 변환 (SchemaMigration, 앱을 멈춘 상태에서)
+     * - 한 트랜잭션에서: 같은 컬럼의 파티션 테이블 → DEFAULT/기존 tenant 파티션 → 데이터 복사 → 기존 테이블 삭제 후 이름 교체
+     *   실패하면 전부 롤백되어 기존 테이블 그대로
+     * - 복사하는 동안 기존 테이블 쓰기는 막히고 디스크는 잠시 두 배 필요
+     * - 인덱스는 이후 schema-indexes.sql 단계에서 파티션별로 CONCURRENTLY
+     * 변환했으면 true, 이미 파티션 테이블이면 false
+     */
+    public boolean convertLegacyTable(TransactionTemplate tx) {
+        String kind = jdbc.queryForObject("SELECT relkind::text FROM pg_class WHERE oid = to_regclass('document_chunks')", String.class);
+        if (!"r".equals(kind)) return false;
+
+        long start = System.nanoTime();
+        Integer rows = tx.execute(status -> {
+            jdbc.execute("LOCK TABLE document_chunks IN EXCLUSIVE MODE");
+            jdbc.execute("""
+                CREATE TABLE document_chunks_partitioned (
+                    LIKE document_chunks INCLUDING DEFAULTS INCLUDING CONSTRAINTS,
+                    PRIMARY KEY (tenant_id, id)
+                ) PARTITION BY LIST (tenant_id)
+            """);
+            jdbc.execute("CREATE TABLE document_chunks_default PARTITION OF document_chunks_partitioned DEFAULT");
+            for (String tenantId : jdbc.queryForList("SELECT DISTINCT tenant_id FROM document_chunks", String.class)) {
+                try {
+                    TenantResolver.validate(tenantId);
+                } catch (IllegalArgumentException e) {
+                    log.warn("tenant id 규칙에 맞지 않아 DEFAULT 파티션에 둡니다. tenant: {}", tenantId);
+                    continue;
+                }
+                createPartition("document_chunks_partitioned", tenantId);
+            }
+            int copied = jdbc.update("INSERT INTO document_chunks_partitioned SELECT * FROM document_chunks");
+
+            // id 시퀀스는 기존 테이블 소유라 같이 지워지지 않도록 떼었다가 새 테이블에 붙임
+            jdbc.execute("ALTER SEQUENCE document_chunks_id_seq OWNED BY NONE");
+            jdbc.execute("DROP TABLE document_chunks");
+            jdbc.execute("ALTER TABLE document_chunks_partitioned RENAME TO document_chunks");
+            jdbc.execute("ALTER INDEX document_chunks_partitioned_pkey RENAME TO document_chunks_pkey");
+            jdbc.execute("ALTER SEQUENCE document_chunks_id_seq OWNED BY document_chunks.id");
+            jdbc.execute("ALTER TABLE document_chunks ADD FOREIGN KEY (document_id) REFERENCES documents(id) ON DELETE CASCADE");
+            return copied;
+        });
+        partitioned = null;
+        log.info("document_chunks 를 파티션 테이블로 변환했습니다. rows: {}, elapsedMs: {}", rows, (System.nanoTime() - start) / 1_000_000);
+        return true;
+    }
+
+    private void createPartition(String parent, String tenantId) {
+        jdbc.execute("CREATE TABLE IF NOT EXISTS %s PARTITION OF %s FOR VALUES IN ('%s')"
+                .formatted(partitionName(tenantId), parent, TenantResolver.validate(tenantId)));
+    }
+
+    private boolean partitioned() {
+        Boolean p = partitioned;
+        if (p == null) {
+            p = Boolean.TRUE.equals(jdbc.queryForObject("""
+                SELECT EXISTS (
+                    SELECT 1 FROM pg_partitioned_table p
+                    JOIN pg_class c ON c.oid = p.partrelid
+                    WHERE c.relname = 'document_chunks'
+                )
+            """, Boolean.class));
+            partitioned = p;
+        }
+        return p;
+    }
+
+    static String partitionName(String tenantId) {
+        return "document_chunks_t_" + tenantId;
+    }
+}
@@ -0,0 +1,26 @@
+package com.ai.rag.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 설정된 VectorStorage (rag.vector.storage)
+ * - ANN 인덱스는 기동 시 만들지 않음: SchemaMigration (--spring.profiles.active=migrate) 이 모든 shard 에 CONCURRENTLY 로 생성
+ *   rag.vector.drop-unused-indexes 도 거기서 적용, 저장 모드를 바꾸면 마이그레이션을 먼저 실행
+ */
+@Slf4j
+@Component
+public class VectorIndexes {
+
+    private final VectorStorage storage;
+
+    public VectorIndexes(@Value("${rag.vector.storage:full}") String storage) {
+        this.storage = VectorStorage.parse(storage);
+        log.info("vector storage 모드: {}", this.storage);
+    }
+
+    public VectorStorage storage() {
+        return storage;
+    }
+}
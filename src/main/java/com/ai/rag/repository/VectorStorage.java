@@ -0,0 +1,68 @@
+package com.ai.rag.repository;
+
+import java.util.Locale;
+
+/**
+ * ANN 인덱스 저장 방식 (rag.vector.storage)
+ * - FULL    : vector(dim) 그대로 HNSW
+ * - HALFVEC : halfvec(dim) 표현식 인덱스 (인덱스 크기 약 1/2)
+ * - BINARY  : binary_quantize → bit(dim) Hamming 인덱스 (인덱스 크기 약 1/32)
+ * 양자화 모드는 인덱스로 후보를 overfetch 배 더 가져온 뒤, 테이블의 full precision 벡터로 정확히 다시 정렬
+ * 차원/컬럼은 임베딩 버전(EmbeddingVersions)에 따라 달라지므로 인자로 받음
+ */
+public enum VectorStorage {
+    FULL(
+            "document_chunks_embedding_hnsw",
+            "%1$s vector_cosine_ops",
+            "%1$s <=> ?::vector"
+    ),
+    HALFVEC(
+            "document_chunks_embedding_halfvec_hnsw",
+            "(%1$s::halfvec(%2$d)) halfvec_cosine_ops",
+            "%1$s::halfvec(%2$d) <=> ?::halfvec(%2$d)"
+    ),
+    BINARY(
+            "document_chunks_embedding_bit_hnsw",
+            "(binary_quantize(%1$s)::bit(%2$d)) bit_hamming_ops",
+            "binary_quantize(%1$s)::bit(%2$d) <~> binary_quantize(?::vector)"
+    );
+
+    public static final String COLUMN = "embedding";
+
+    private final String indexName;
+    private final String indexExpression;
+    private final String coarseDistance;
+
+    VectorStorage(String indexName, String indexExpression, String coarseDistance) {
+        this.indexName = indexName;
+        this.indexExpression = indexExpression;
+        this.coarseDistance = coarseDistance;
+    }
+
+    public String indexName() {
+        return indexName;
+    }
+
+    public String createIndexSql(String indexName, String column, int dim) {
+        return "CREATE INDEX IF NOT EXISTS %s ON document_chunks USING hnsw (%s)"
+                .formatted(indexName, indexExpression.formatted(column, dim));
+    }
+
+    /** ORDER BY 에 쓰는 (인덱스를 타는) 거리 식, 파라미터 1개 = query vector literal */
+    public String coarseDistance(int dim) {
+        return coarseDistance(COLUMN, dim);
+    }
+
+    /** dual-read 중 shadow 컬럼 검색용 (인덱스는 ReembedRepository.buildIndex 가 같은 식으로 생성) */
+    public String coarseDistance(String column, int dim) {
+        return coarseDistance.formatted(column, dim);
+    }
+
+    public boolean quantized() {
+        return this != FULL;
+    }
+
+    public static VectorStorage parse(String v) {
+        return v == null || v.isBlank() ? FULL : valueOf(v.trim().toUpperCase(Locale.ROOT));
+    }
+}
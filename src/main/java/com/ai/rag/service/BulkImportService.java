@@ -0,0 +1,495 @@
+package com.ai.rag.service;
+
+import com.ai.rag.common.StructuredTasks;
+import com.ai.rag.observability.RagEvents;
+import com.ai.rag.repository.BulkImportRepository;
+import com.ai.rag.repository.EmbeddingVersions;
+import com.ai.rag.repository.NearDuplicateIndex;
+import com.ai.rag.repository.RagRepository;
+import com.ai.rag.utils.Chunker;
+import com.ai.rag.utils.DocumentParser;
+import com.ai.rag.utils.EmbeddingSpec;
+import com.ai.rag.utils.VectorUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * 대량 import 파이프라인: source 읽기 → (병렬) 파싱 · 청킹 · 임베딩 → (단일 writer) 배치 COPY
+ * - source: ZIP 업로드 / 서버 디렉토리 / NDJSON 스트림 ({title, text, tags?, owner?, sourceType?})
+ * - 파일 하나가 실패해도 배치는 계속, 실패 목록은 결과에 담아서 반환
+ * - 동시에 메모리에 올라가는 파일 수는 workers * 2 로 제한
+ */
+@Slf4j
+@Service
+// NDJSON 행을 ObjectMapper 로 직접 읽으므로 native image 에서 바인딩 reflection 필요
+@RegisterReflectionForBinding(BulkImportService.NdjsonDoc.class)
+public class BulkImportService implements DisposableBean {
+
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final DocumentParser documentParser;
+    private final BulkImportRepository bulkRepo;
+    private final EmbeddingVersions embeddings;
+    private final NearDuplicateIndex duplicates;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService workers;
+    private final int workerCount;
+    private final int batchDocuments;
+    private final long maxFileBytes;
+    private final Path allowedRoot;
+
+    public BulkImportService(DocumentParser documentParser,
+                             BulkImportRepository bulkRepo,
+                             EmbeddingVersions embeddings,
+                             NearDuplicateIndex duplicates,
+                             ObjectMapper objectMapper,
+                             @Value("${rag.import.workers:0}") int workers,
+                             @Value("${rag.import.batch-documents:64}") int batchDocuments,
+                             @Value("${rag.import.max-file-bytes:52428800}") long maxFileBytes,
+                             @Value("${rag.import.allowed-root:}") String allowedRoot) {
+        this.documentParser = documentParser;
+        this.bulkRepo = bulkRepo;
+        this.embeddings = embeddings;
+        this.duplicates = duplicates;
+        this.objectMapper = objectMapper;
+        this.workerCount = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        this.workers = Executors.newFixedThreadPool(workerCount, r -> {
+            Thread t = new Thread(r, "import-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        this.batchDocuments = Math.max(1, batchDocuments);
+        this.maxFileBytes = maxFileBytes;
+        this.allowedRoot = allowedRoot == null || allowedRoot.isBlank() ? null : Path.of(allowedRoot).toAbsolutePath().normalize();
+    }
+
+    public ImportReport importZip(String tenantId, InputStream zip, List<String> tags, String owner) {
+        try (Run run = new Run(tenantId)) {
+            try (ZipInputStream zis = new ZipInputStream(zip, StandardCharsets.UTF_8)) {
+                ZipEntry entry;
+                while ((entry = zis.getNextEntry()) != null) {
+                    String name = entry.getName();
+                    if (entry.isDirectory() || name.startsWith("__MACOSX/") || baseName(name).startsWith(".")) continue;
+                    if (!DocumentParser.SUPPORTED_EXTENSIONS.contains(DocumentParser.extensionOf(name))) {
+                        run.skip(name);
+                        continue;
+                    }
+                    byte[] data;
+                    try {
+                        data = readLimited(zis, name);
+                    } catch (IllegalArgumentException e) {
+                        run.fail(name, e.getMessage());
+                        continue;
+                    }
+                    run.submit(name, () -> parse(tenantId, name, data, tags, owner));
+                }
+            } catch (IOException e) {
+                // 앞에서 이미 넘긴 파일은 그대로 저장하고, 깨진 지점만 실패로 기록
+                run.fail("(zip)", "ZIP 읽기 실패: " + e.getMessage());
+            }
+            return run.finish();
+        }
+    }
+
+    public ImportReport importDirectory(String tenantId, String directory, List<String> tags, String owner) {
+        Path dir = resolveDirectory(directory);
+        try (Run run = new Run(tenantId);
+             Stream<Path> files = Files.walk(dir)) {
+            files.filter(Files::isRegularFile).sorted().forEach(file -> {
+                String name = dir.relativize(file).toString();
+                if (!DocumentParser.SUPPORTED_EXTENSIONS.contains(DocumentParser.extensionOf(name))) {
+                    run.skip(name);
+                    return;
+                }
+                run.submit(name, () -> {
+                    long size = Files.size(file);
+                    if (size > maxFileBytes) {
+                        throw new IllegalArgumentException("파일이 너무 큽니다(>" + maxFileBytes + " bytes)");
+                    }
+                    return parse(tenantId, name, Files.readAllBytes(file), tags, owner);
+                });
+            });
+            return run.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException("디렉토리 읽기 실패: " + dir, e);
+        }
+    }
+
+    public ImportReport importNdjson(String tenantId, InputStream body, List<String> tags, String owner) {
+        try (Run run = new Run(tenantId);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            String line;
+            int lineNo = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (line.isBlank()) continue;
+                String name = "line " + lineNo;
+                String json = line;
+                run.submit(name, () -> {
+                    NdjsonDoc d = objectMapper.readValue(json, NdjsonDoc.class);
+                    if (d.text() == null || d.text().isBlank()) {
+                        throw new IllegalArgumentException("text 가 비어있습니다.");
+                    }
+                    String title = d.title() == null || d.title().isBlank() ? name : d.title();
+                    RagRepository.DocumentMeta meta = new RagRepository.DocumentMeta(
+                            d.tags() == null ? tags : d.tags(), d.owner() == null ? owner : d.owner(), d.sourceType());
+                    return prepare(tenantId, title, d.text(), meta);
+                });
+            }
+            return run.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException("NDJSON 읽기 실패", e);
+        }
+    }
+
+    private BulkImportRepository.NewDocument parse(String tenantId, String name, byte[] data, List<String> tags, String owner) {
+        String text = documentParser.extract(name, data);
+        String ext = DocumentParser.extensionOf(name);
+        String sourceType = ext.equals("txt") || ext.equals("md") ? "text" : ext;
+        return prepare(tenantId, stripExt(baseName(name)), text, new RagRepository.DocumentMeta(tags, owner, sourceType));
+    }
+
+    /**
+     * RagService.ingest 와 같은 청킹/중복 판별/임베딩 (재임베딩 중이면 새 버전 벡터도)
+     * - 중복 판별은 이미 저장된 chunk 기준이라, 같은 배치 안에서 아직 쓰이지 않은 문서끼리는 잡지 못함
+     */
+    private BulkImportRepository.NewDocument prepare(String tenantId, String title, String text, RagRepository.DocumentMeta meta) {
+        EmbeddingSpec active = embeddings.active();
+        EmbeddingSpec migrating = embeddings.migrating();
+
+        List<String> chunks = Chunker.chunkByChars(text, 1200, 200);
+        if (chunks.isEmpty()) {
+            throw new IllegalArgumentException("추출된 텍스트가 없습니다.");
+        }
+        long docId = bulkRepo.nextDocumentId();
+        Long[] hashes = duplicates.signatures(chunks);
+        NearDuplicateIndex.ChunkRef[] canonical = duplicates.canonicalFor(tenantId, docId, hashes);
+
+        // near-duplicate chunk 도 자기 벡터를 저장, canonical 참조는 중복 집계와 다음 판별의 후보 축소용
+        List<BulkImportRepository.NewChunk> out = new ArrayList<>(chunks.size());
+        double[] centroid = new double[active.dim()];
+        double[] nextCentroid = migrating == null ? null : new double[migrating.dim()];
+        long embeddedChars = 0;
+        RagEvents.Embed event = new RagEvents.Embed();
+        event.begin();
+        for (int i = 0; i < chunks.size(); i++) {
+            String chunk = chunks.get(i);
+            double[] v = VectorUtils.embed(chunk, active);
+            for (int d = 0; d < v.length; d++) centroid[d] += v[d];
+            embeddedChars += chunk.length();
+            RagRepository.Embedded next = null;
+            if (migrating != null) {
+                double[] nv = VectorUtils.embed(chunk, migrating);
+                for (int d = 0; d < nv.length; d++) nextCentroid[d] += nv[d];
+                next = new RagRepository.Embedded(migrating.version(), VectorUtils.toPgVectorLiteral(nv));
+            }
+            out.add(new BulkImportRepository.NewChunk(chunk,
+                    new RagRepository.Embedded(active.version(), VectorUtils.toPgVectorLiteral(v)), next, hashes[i], canonical[i]));
+        }
+        if (event.shouldCommit()) {
+            event.version = active.version();
+            event.source = "import";
+            event.texts = chunks.size();
+            event.chars = embeddedChars;
+            event.commit();
+        }
+        for (int d = 0; d < centroid.length; d++) centroid[d] /= chunks.size();
+        if (nextCentroid != null) {
+            for (int d = 0; d < nextCentroid.length; d++) nextCentroid[d] /= chunks.size();
+        }
+        return new BulkImportRepository.NewDocument(docId, title, meta, out, centroid, migrating, nextCentroid);
+    }
+
+    /** 서버 경로 import 는 rag.import.allowed-root 아래만 허용 */
+    private Path resolveDirectory(String directory) {
+        if (allowedRoot == null) {
+            throw new IllegalStateException("디렉토리 import 가 비활성화되어 있습니다. (rag.import.allowed-root)");
+        }
+        Path dir = allowedRoot.resolve(directory).toAbsolutePath().normalize();
+        if (!dir.startsWith(allowedRoot) || !Files.isDirectory(dir)) {
+            throw new IllegalArgumentException("허용되지 않았거나 존재하지 않는 디렉토리입니다: " + directory);
+        }
+        return dir;
+    }
+
+    /** zip bomb 방지: 선언된 크기와 상관없이 실제로 읽은 바이트로 제한 */
+    private byte[] readLimited(InputStream in, String name) throws IOException {
+        byte[] data = in.readNBytes((int) Math.min(Integer.MAX_VALUE - 8, maxFileBytes + 1));
+        if (data.length > maxFileBytes) {
+            throw new IllegalArgumentException("파일이 너무 큽니다(>" + maxFileBytes + " bytes)");
+        }
+        return data;
+    }
+
+    private static String baseName(String path) {
+        int slash = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+        return slash == -1 ? path : path.substring(slash + 1);
+    }
+
+    private static String stripExt(String filename) {
+        int dot = filename.lastIndexOf('.');
+        return dot <= 0 ? filename : filename.substring(0, dot);
+    }
+
+    @Override
+    public void destroy() {
+        workers.shutdownNow();
+    }
+
+    @FunctionalInterface
+    private interface Task {
+        BulkImportRepository.NewDocument call() throws Exception;
+    }
+
+    private record Prepared(String name, BulkImportRepository.NewDocument doc) {}
+
+    /**
+     * import 한 번의 상태
+     * - submit: 호출 스레드에서 source 를 읽고, worker 에서 준비한 문서를 큐에 넣음
+     * - writer 스레드는 큐에서 batch-documents 개씩 모아 COPY, 커밋되지 않은 shard 의 문서만 하나씩 다시 써서 실패 파일을 골라냄
+     * - writer 가 죽으면 submit/finish 가 더 기다리지 않고 IllegalStateException
+     */
+    private final class Run implements AutoCloseable {
+
+        private final String tenantId;
+        private final long startNanos = System.nanoTime();
+        private final Semaphore inFlight = new Semaphore(workerCount * 2);
+        private final BlockingQueue<Prepared> ready = new ArrayBlockingQueue<>(Math.max(batchDocuments * 2, workerCount * 2));
+        private final List<FileError> errors = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger files = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+        private final AtomicInteger documents = new AtomicInteger();
+        private final AtomicLong chunks = new AtomicLong();
+        // 이 import 의 작업을 실행 중인 worker 스레드 (worker 풀은 import 끼리 공유하므로 close 때 이것만 인터럽트)
+        private final Set<Thread> running = new HashSet<>();
+        private final Thread writer;
+        private volatile boolean producing = true;
+        private volatile boolean closed;
+        private volatile Throwable writerFailure;
+
+        Run(String tenantId) {
+            this.tenantId = tenantId;
+            this.writer = new Thread(this::writeLoop, "import-writer");
+            this.writer.start();
+        }
+
+        void submit(String name, Task task) {
+            checkWriter();
+            files.incrementAndGet();
+            try {
+                while (!inFlight.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                    checkWriter();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("import 가 중단되었습니다.", e);
+            }
+            // worker 풀 스레드에서도 요청의 traceId 로 로그/JFR 이벤트(Parse/Chunk/Embed)가 남도록
+            Callable<BulkImportRepository.NewDocument> traced = StructuredTasks.propagate(task::call);
+            workers.execute(() -> {
+                synchronized (running) {
+                    if (closed) {
+                        inFlight.release();
+                        return;
+                    }
+                    running.add(Thread.currentThread());
+                }
+                try {
+                    Prepared p = new Prepared(name, traced.call());
+                    while (!ready.offer(p, 100, TimeUnit.MILLISECONDS)) {
+                        if (closed || writerFailure != null) return;
+                    }
+                } catch (InterruptedException e) {
+                    // close 로 중단
+                } catch (Exception e) {
+                    fail(name, e.getMessage());
+                } finally {
+                    synchronized (running) {
+                        running.remove(Thread.currentThread());
+                    }
+                    // 공유 풀 스레드라 인터럽트 상태를 다음 작업에 넘기지 않음
+                    Thread.interrupted();
+                    inFlight.release();
+                }
+            });
+        }
+
+        void skip(String name) {
+            skipped.incrementAndGet();
+            log.debug("지원하지 않는 파일이라 건너뜁니다. file: {}", name);
+        }
+
+        void fail(String name, String message) {
+            failed.incrementAndGet();
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new FileError(name, message));
+            }
+            log.warn("import 실패. file: {}, reason: {}", name, message);
+        }
+
+        private void checkWriter() {
+            Throwable f = writerFailure;
+            if (f != null) {
+                throw new IllegalStateException("import 저장이 중단되었습니다: " + f.getMessage(), f);
+            }
+        }
+
+        private void writeLoop() {
+            try {
+                List<Prepared> batch = new ArrayList<>(batchDocuments);
+                while (true) {
+                    Prepared p;
+                    try {
+                        p = ready.poll(50, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (p != null) {
+                        batch.add(p);
+                        ready.drainTo(batch, batchDocuments - batch.size());
+                    }
+                    boolean done = p == null && !producing && ready.isEmpty();
+                    if (batch.size() >= batchDocuments || (!batch.isEmpty() && (p == null || done))) {
+                        flush(batch);
+                        batch.clear();
+                    }
+                    if (done) return;
+                }
+            } catch (RuntimeException | Error e) {
+                writerFailure = e;
+                log.error("import writer 가 중단되었습니다. tenant: {}", tenantId, e);
+            }
+        }
+
+        /** 커밋되지 않은 shard 의 문서만 하나씩 다시 씀 (커밋된 문서를 다시 쓰면 중복) */
+        private void flush(List<Prepared> batch) {
+            EmbeddingSpec spec = embeddings.active();
+            List<BulkImportRepository.Failed> failures = bulkRepo.write(tenantId, spec, batch.stream().map(Prepared::doc).toList());
+            if (failures.isEmpty()) {
+                written(batch);
+                return;
+            }
+            Map<Long, RuntimeException> uncommitted = new HashMap<>();
+            for (BulkImportRepository.Failed f : failures) uncommitted.put(f.doc().id(), f.error());
+            written(batch.stream().filter(p -> !uncommitted.containsKey(p.doc().id())).toList());
+            if (batch.size() > 1) {
+                log.warn("커밋되지 않은 문서를 하나씩 다시 저장합니다. documents: {}/{}", uncommitted.size(), batch.size());
+            }
+            for (Prepared p : batch) {
+                RuntimeException error = uncommitted.get(p.doc().id());
+                if (error == null) continue;
+                if (batch.size() > 1) {
+                    List<BulkImportRepository.Failed> single = bulkRepo.write(tenantId, spec, List.of(p.doc()));
+                    error = single.isEmpty() ? null : single.get(0).error();
+                }
+                if (error == null) {
+                    written(List.of(p));
+                } else {
+                    fail(p.name(), error.getMessage());
+                }
+            }
+        }
+
+        private void written(List<Prepared> batch) {
+            documents.addAndGet(batch.size());
+            for (Prepared p : batch) chunks.addAndGet(p.doc().chunks().size());
+        }
+
+        ImportReport finish() {
+            // 모든 worker 작업이 끝날 때까지 (permit 이 전부 돌아올 때까지) 대기, 그사이 writer 가 죽으면 실패
+            try {
+                while (!inFlight.tryAcquire(workerCount * 2, 100, TimeUnit.MILLISECONDS)) {
+                    checkWriter();
+                }
+                inFlight.release(workerCount * 2);
+                producing = false;
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("import 가 중단되었습니다.", e);
+            }
+            checkWriter();
+
+            double sec = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+            ImportReport report = new ImportReport(
+                    files.get(), documents.get(), chunks.get(), failed.get(), skipped.get(),
+                    Math.round(sec * 1000), documents.get() / sec, chunks.get() / sec, List.copyOf(errors));
+            log.info("import 완료. tenant: {}, files: {}, documents: {}, chunks: {}, failed: {}, skipped: {}, docs/s: {}, chunks/s: {}",
+                    tenantId, report.files(), report.documents(), report.chunks(), report.failed(), report.skipped(),
+                    String.format("%.1f", report.docsPerSec()), String.format("%.1f", report.chunksPerSec()));
+            return report;
+        }
+
+        /**
+         * finish 전에 예외로 빠져나가면 남은 작업을 버리고 정리: 아직 시작 안 한 worker 작업은 건너뛰고,
+         * 실행 중인 것과 writer 는 인터럽트 후 writer 종료까지 대기 (진행 중인 배치 트랜잭션은 끝까지 감)
+         * finish 뒤에 호출되면 할 일 없음
+         */
+        @Override
+        public void close() {
+            producing = false;
+            synchronized (running) {
+                closed = true;
+                running.forEach(Thread::interrupt);
+            }
+            if (writer.isAlive()) {
+                writer.interrupt();
+                try {
+                    writer.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    record NdjsonDoc(String title, String text, List<String> tags, String owner, String sourceType) {}
+
+    public record FileError(String file, String message) {}
+
+    /** files: 읽은 (지원 형식) 파일 수, failed 는 그중 실패, skipped 는 지원하지 않는 형식 */
+    public record ImportReport(
+            int files,
+            int documents,
+            long chunks,
+            int failed,
+            int skipped,
+            long elapsedMs,
+            double docsPerSec,
+            double chunksPerSec,
+            List<FileError> errors
+    ) {}
+}
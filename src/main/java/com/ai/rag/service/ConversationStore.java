@@ -0,0 +1,333 @@
+package com.ai.rag.service;
+
+import com.ai.rag.model.GeminiClient;
+import com.ai.rag.repository.RagRepository;
+import com.ai.rag.utils.EmbeddingSpec;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * /api/ask 멀티턴 대화 세션 (sessionId)
+ * - 세션 = 이전 턴(보낸 메시지/답변) + 누적 근거(번호 고정) + 직전 질문 벡터
+ * - 노드 로컬 메모리, access-order LRU 로 max-sessions 개까지, ttl 동안 안 쓰이면 만료 → 다른 노드/만료면 새 세션
+ * - 세션 id 는 서버가 발급 (모르는 id 를 보내면 새 세션을 만들어 새 id 를 돌려줌)
+ * - 근거가 max-evidence 를 넘으면 가장 오래 안 쓰인 근거부터 내보내고 그 번호를 새 근거가 이어받음
+ *   (내보낸 근거를 인용했을 수 있는 이전 턴도 history 에서 같이 뺌)
+ * - 임베딩 버전/필터가 바뀌면 세션 내용을 비우고 다시 시작
+ */
+@Component
+public class ConversationStore {
+
+    private final int maxSessions;
+    private final long ttlNanos;
+    private final int maxTurns;
+    private final int maxEvidence;
+    private final double reuseSimilarity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Conversation> sessions = new LinkedHashMap<>(64, 0.75f, true);
+
+    private final Counter evictedCapacity;
+    private final Counter evictedExpired;
+
+    public ConversationStore(@Value("${rag.session.max-sessions:1000}") int maxSessions,
+                             @Value("${rag.session.ttl-ms:1800000}") long ttlMs,
+                             @Value("${rag.session.max-turns:6}") int maxTurns,
+                             @Value("${rag.session.max-evidence:20}") int maxEvidence,
+                             @Value("${rag.session.reuse-similarity:0.8}") double reuseSimilarity,
+                             MeterRegistry registry) {
+        if (maxSessions < 1 || maxTurns < 1 || maxEvidence < 1) {
+            throw new IllegalArgumentException("rag.session.max-sessions / max-turns / max-evidence 는 1 이상이어야 합니다.");
+        }
+        this.maxSessions = maxSessions;
+        this.ttlNanos = ttlMs * 1_000_000L;
+        this.maxTurns = maxTurns;
+        this.maxEvidence = maxEvidence;
+        this.reuseSimilarity = reuseSimilarity;
+
+        Gauge.builder("rag.session.active", this, ConversationStore::size)
+                .description("메모리에 있는 대화 세션 수").register(registry);
+        this.evictedCapacity = Counter.builder("rag.session.evicted").tag("cause", "capacity")
+                .description("축출된 대화 세션 수").register(registry);
+        this.evictedExpired = Counter.builder("rag.session.evicted").tag("cause", "expired")
+                .description("축출된 대화 세션 수").register(registry);
+    }
+
+    /** tenant 의 세션, 없거나 만료/다른 tenant 면 새 세션 (반환값의 id 를 클라이언트가 이어서 사용) */
+    public Conversation open(String tenantId, String sessionId) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            Conversation c = sessionId == null ? null : sessions.get(sessionId);
+            if (c != null && c.tenantId.equals(tenantId) && now - c.lastAccess <= ttlNanos) {
+                c.lastAccess = now;
+                return c;
+            }
+            if (c != null && c.tenantId.equals(tenantId)) {
+                sessions.remove(sessionId);
+                evictedExpired.increment();
+            }
+            Conversation created = new Conversation(UUID.randomUUID().toString(), tenantId, now);
+            sessions.put(created.id, created);
+            Iterator<Conversation> it = sessions.values().iterator();
+            while (sessions.size() > maxSessions && it.hasNext()) {
+                it.next();
+                it.remove();
+                evictedCapacity.increment();
+            }
+            return created;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${rag.session.sweep-ms:60000}")
+    public void expire() {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            // access-order 라 앞쪽이 가장 오래 안 쓰인 세션
+            Iterator<Conversation> it = sessions.values().iterator();
+            while (it.hasNext()) {
+                Conversation c = it.next();
+                if (now - c.lastAccess <= ttlNanos) break;
+                it.remove();
+                evictedExpired.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int size() {
+        lock.lock();
+        try {
+            return sessions.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 근거 하나: 세션 안에서 번호 고정
+     * sentTurn 은 본문을 LLM 에 보낸 턴 번호 (-1 = 아직 안 보냄), usedTurn 은 마지막으로 근거로 쓴 턴 번호
+     */
+    private static final class Evidence {
+        final int number;
+        RagRepository.ChunkHit hit;
+        int sentTurn = -1;
+        int usedTurn;
+        boolean gone;
+
+        Evidence(int number, RagRepository.ChunkHit hit, int usedTurn) {
+            this.number = number;
+            this.hit = hit;
+            this.usedTurn = usedTurn;
+        }
+    }
+
+    private record Turn(int number, String message, String answer) {}
+
+    /** 번호가 붙은 근거 (이번 턴에 쓸 것) */
+    public record Numbered(int number, RagRepository.ChunkHit hit) {}
+
+    /**
+     * 세션 하나. 한 턴 처리 동안 lock() ~ unlock() 으로 잡고 있음 (같은 세션의 동시 요청은 순서대로)
+     */
+    public final class Conversation {
+        private final String id;
+        private final String tenantId;
+        private final ReentrantLock turnLock = new ReentrantLock();
+        private volatile long lastAccess;
+
+        private final Map<String, Evidence> evidence = new HashMap<>();
+        // 번호 순 (slots[n - 1] = [n])
+        private final List<Evidence> slots = new ArrayList<>();
+        private final Deque<Turn> turns = new ArrayDeque<>();
+        private int turnCount;
+        private String version;
+        private RagRepository.SearchFilter filter;
+        private double[] lastQuery;
+        private int lastHits;
+
+        private Conversation(String id, String tenantId, long now) {
+            this.id = id;
+            this.tenantId = tenantId;
+            this.lastAccess = now;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        /** 완료된 턴 수 (0 이면 첫 질문) */
+        public int turns() {
+            return turnCount;
+        }
+
+        public void lock() {
+            turnLock.lock();
+        }
+
+        public void unlock() {
+            lastAccess = System.nanoTime();
+            turnLock.unlock();
+        }
+
+        /** 턴 시작: 버전/필터가 바뀌었으면 비우고 새로 시작 */
+        public void begin(EmbeddingSpec spec, RagRepository.SearchFilter filter) {
+            boolean stale = !spec.version().equals(version) || !Objects.equals(filter, this.filter);
+            if (stale) {
+                evidence.clear();
+                slots.clear();
+                turns.clear();
+                lastQuery = null;
+                lastHits = 0;
+            }
+            this.version = spec.version();
+            this.filter = filter;
+        }
+
+        /**
+         * 직전 질문과 충분히 비슷하면 검색 없이 가진 근거로 답할 수 있음
+         * (근거를 다시 채점한 결과가 직전 턴 만큼은 남아 있어야 함 → retrieve 에서 확인)
+         */
+        public boolean similarToLast(double[] q) {
+            return lastQuery != null && dot(q, lastQuery) >= reuseSimilarity;
+        }
+
+        /** 직전 턴에 쓴 근거 수 (topK 상한) */
+        public int lastHits(int topK) {
+            return Math.min(topK, lastHits);
+        }
+
+        /** 다시 채점할 근거 (RagRepository.scoreChunks 로 DB 에서 검색과 같은 거리를 받음) */
+        public List<RagRepository.ChunkHit> held() {
+            return slots.stream().filter(e -> !e.gone).map(e -> e.hit).toList();
+        }
+
+        /** held() 중 DB 에서 다시 찾은 chunk, 나머지는 삭제된 것으로 보고 가장 먼저 내보냄 */
+        public void found(List<RagRepository.ChunkHit> rescored) {
+            Set<String> alive = new HashSet<>();
+            for (RagRepository.ChunkHit h : rescored) alive.add(key(h));
+            for (Evidence e : slots) {
+                if (!alive.contains(key(e.hit))) e.gone = true;
+            }
+        }
+
+        /**
+         * 이번 턴 근거에 번호 부여 (처음 보는 chunk 는 빈 번호 → 뒤 번호)
+         * max-evidence 가 차 있으면 이번 턴에 안 쓰는 근거 중 삭제된 것, 그다음 가장 오래 안 쓰인 것의 번호를 이어받음
+         * (이번 턴 근거만으로 max-evidence 를 넘으면 이번 턴은 넘긴 채로 두고 다음 턴에 정리)
+         */
+        public List<Numbered> admit(List<RagRepository.ChunkHit> hits) {
+            int turn = turnCount;
+            Set<String> current = new HashSet<>();
+            for (RagRepository.ChunkHit h : hits) {
+                current.add(key(h));
+                Evidence e = evidence.get(key(h));
+                if (e != null) {
+                    e.hit = h;
+                    e.gone = false;
+                    e.usedTurn = turn;
+                }
+            }
+            List<Numbered> out = new ArrayList<>(hits.size());
+            for (RagRepository.ChunkHit h : hits) {
+                Evidence e = evidence.get(key(h));
+                if (e == null) {
+                    Evidence victim = slots.size() >= maxEvidence ? oldest(current) : null;
+                    int number = victim == null ? slots.size() + 1 : victim.number;
+                    if (victim != null) evict(victim);
+                    e = new Evidence(number, h, turn);
+                    evidence.put(key(h), e);
+                    if (number > slots.size()) slots.add(e);
+                    else slots.set(number - 1, e);
+                }
+                out.add(new Numbered(e.number, h));
+            }
+            return out;
+        }
+
+        private Evidence oldest(Set<String> current) {
+            return slots.stream()
+                    .filter(e -> !current.contains(key(e.hit)))
+                    .min(Comparator.<Evidence, Boolean>comparing(e -> !e.gone)
+                            .thenComparingInt(e -> e.usedTurn)
+                            .thenComparingInt(e -> e.number))
+                    .orElse(null);
+        }
+
+        /** 근거를 빼고, 그 근거를 썼던 턴까지의 history 도 뺌 (남은 턴이 사라진 번호를 인용하지 않도록) */
+        private void evict(Evidence victim) {
+            evidence.remove(key(victim.hit));
+            while (!turns.isEmpty() && turns.peekFirst().number() <= victim.usedTurn) {
+                turns.removeFirst();
+            }
+            if (victim.usedTurn >= turnCount - 1) {
+                lastQuery = null;
+                lastHits = 0;
+            }
+        }
+
+        /** 본문이 history(최근 max-turns 턴) 안에 이미 있는 근거인지 */
+        public boolean inHistory(Numbered n) {
+            Evidence e = evidence.get(key(n.hit()));
+            return e != null && e.sentTurn >= 0 && !turns.isEmpty() && e.sentTurn >= turns.peekFirst().number();
+        }
+
+        /** 세션 전체 근거 (번호 순, [n] = n 번째) */
+        public List<RagRepository.ChunkHit> sources() {
+            return slots.stream().map(e -> e.hit).toList();
+        }
+
+        /** LLM 에 같이 보낼 이전 턴들 */
+        public List<GeminiClient.Turn> history() {
+            return turns.stream().map(t -> new GeminiClient.Turn(t.message(), t.answer())).toList();
+        }
+
+        /** 답변이 나간 턴만 기록 (message 에 본문을 실은 근거는 sent 로 표시) */
+        public void complete(String message, String answer, double[] q,
+                             List<Numbered> used, List<Numbered> sent) {
+            int number = turnCount++;
+            turns.addLast(new Turn(number, message, answer));
+            while (turns.size() > maxTurns) turns.removeFirst();
+            for (Numbered n : sent) {
+                Evidence e = evidence.get(key(n.hit()));
+                if (e != null) e.sentTurn = number;
+            }
+            lastQuery = q;
+            lastHits = used.size();
+        }
+    }
+
+    private static String key(RagRepository.ChunkHit h) {
+        return h.documentId() + "_" + h.chunkIndex();
+    }
+
+    private static double dot(double[] a, double[] b) {
+        if (a.length != b.length) return 0.0;
+        double s = 0;
+        for (int i = 0; i < a.length; i++) s += a[i] * b[i];
+        return s;
+    }
+}
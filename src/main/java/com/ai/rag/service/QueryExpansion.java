@@ -0,0 +1,139 @@
+package com.ai.rag.service;
+
+import com.ai.rag.model.GeminiClient;
+import com.ai.rag.utils.KoreanQueryRewriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 질문 확장 (rag.expansion.*): 짧거나 모호한 질문을 여러 질의로 바꿔 검색 leg 를 추가
+ * - 로컬: KoreanQueryRewriter (조사/어미 제거, 동의어 치환), 동의어는 기본 그룹 + synonyms-file (한 줄에 "환불,반품,환급")
+ * - LLM: llm-rewrites > 0 이면 Gemini 로 재작성 질의를 더 받음 (한 leg 안에서 생성 → 검색)
+ * - leg 는 RagService 의 StructuredTasks 범위에서 원 질의 검색과 함께 실행, 예산(budget-ms)을 넘긴 leg 는 결과에서 빼고
+ *   범위를 닫을 때 취소 후 종료를 기다림 (ask 가 끝난 뒤 남는 leg 없음)
+ *   leg 의 검색은 남은 예산을 statement_timeout 으로 걸어서 취소된 leg 도 예산 근처에서 끝남
+ * - LLM 재작성 지연의 EWMA 가 남은 예산 이상이면 LLM leg 를 띄우지 않음 (어차피 버려질 생성 호출에 과금되지 않도록)
+ *   그동안은 PROBE_EVERY 번에 한 번만 띄워서 지연이 회복됐는지 확인
+ */
+@Slf4j
+@Component
+public class QueryExpansion {
+
+    private static final double EWMA_ALPHA = 0.2;
+    static final int PROBE_EVERY = 50;
+
+    private final boolean enabled;
+    private final int maxRewrites;
+    private final long budgetNanos;
+    private final int llmRewrites;
+    private final int rrfK;
+    private final Map<String, List<String>> synonyms;
+    private final GeminiClient geminiClient;
+
+    // 0 = 아직 잰 적 없음
+    private final AtomicLong llmEwmaNanos = new AtomicLong();
+    private final AtomicInteger llmSkipped = new AtomicInteger();
+
+    public QueryExpansion(@Value("${rag.expansion.enabled:false}") boolean enabled,
+                          @Value("${rag.expansion.max-rewrites:3}") int maxRewrites,
+                          @Value("${rag.expansion.budget-ms:300}") long budgetMs,
+                          @Value("${rag.expansion.llm-rewrites:0}") int llmRewrites,
+                          @Value("${rag.expansion.rrf-k:60}") int rrfK,
+                          @Value("${rag.expansion.synonyms-file:}") String synonymsFile,
+                          GeminiClient geminiClient) {
+        this.enabled = enabled;
+        this.maxRewrites = maxRewrites;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMs);
+        this.llmRewrites = llmRewrites;
+        this.rrfK = rrfK;
+        this.synonyms = KoreanQueryRewriter.index(loadSynonyms(synonymsFile));
+        this.geminiClient = geminiClient;
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public long budgetNanos() {
+        return budgetNanos;
+    }
+
+    public int rrfK() {
+        return rrfK;
+    }
+
+    public boolean llmEnabled() {
+        return llmRewrites > 0;
+    }
+
+    /** LLM leg 를 띄울지: 최근 LLM 재작성 지연이 남은 예산 안이면 true, 아니면 PROBE_EVERY 번에 한 번 */
+    public boolean llmFits(long remainingNanos) {
+        if (!llmEnabled()) return false;
+        if (llmEwmaNanos.get() < remainingNanos) return true;
+        return llmSkipped.incrementAndGet() % PROBE_EVERY == 0;
+    }
+
+    long llmLatencyNanos() {
+        return llmEwmaNanos.get();
+    }
+
+    public List<String> rewrite(String question) {
+        return KoreanQueryRewriter.rewrite(question, synonyms, maxRewrites);
+    }
+
+    /** 검색용 재작성 질의를 한 줄에 하나씩 받음 (원문과 같은 줄은 제외) */
+    public List<String> llmRewrite(String question) {
+        String system = """
+        너는 문서 검색용 질의 재작성기다.
+        질문과 같은 뜻의 검색 질의를 %d개, 한 줄에 하나씩 출력해라. 번호나 설명은 붙이지 마라.
+        """.formatted(llmRewrites).trim();
+        long start = System.nanoTime();
+        String raw;
+        try {
+            raw = geminiClient.generateAnswer(system, question);
+        } finally {
+            // 예산에서 취소돼 인터럽트된 호출도 그때까지 걸린 시간으로 (실제 지연의 하한)
+            long sample = System.nanoTime() - start;
+            llmEwmaNanos.updateAndGet(prev -> prev == 0 ? sample : prev + (long) (EWMA_ALPHA * (sample - prev)));
+        }
+        return raw.lines()
+                .map(l -> l.replaceFirst("^[-*\\d.)\\s]+", "").trim())
+                .filter(l -> !l.isEmpty() && !l.equalsIgnoreCase(question.trim()))
+                .distinct()
+                .limit(llmRewrites)
+                .toList();
+    }
+
+    private static List<List<String>> loadSynonyms(String file) {
+        List<List<String>> groups = new ArrayList<>(KoreanQueryRewriter.DEFAULT_SYNONYMS);
+        if (file == null || file.isBlank()) return groups;
+        try {
+            for (String line : Files.readAllLines(Path.of(file), StandardCharsets.UTF_8)) {
+                if (line.isBlank() || line.startsWith("#")) continue;
+                List<String> group = Arrays.stream(line.split(","))
+                        .map(w -> w.trim().toLowerCase(Locale.ROOT))
+                        .filter(w -> !w.isEmpty())
+                        .toList();
+                if (group.size() >= 2) groups.add(group);
+            }
+            log.info("질문 확장 동의어를 읽었습니다. file: {}, groups: {}", file, groups.size());
+        } catch (IOException e) {
+            throw new IllegalStateException("rag.expansion.synonyms-file 을 읽지 못했습니다: " + file, e);
+        }
+        return groups;
+    }
+}
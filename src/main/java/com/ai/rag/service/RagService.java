@@ -1,19 +1,36 @@
 package com.ai.rag.service;
 
+import com.ai.rag.common.StructuredTasks;
 import com.ai.rag.dto.Action;
 import com.ai.rag.dto.GuardrailResult;
 import com.ai.rag.model.GeminiClient;
+import com.ai.rag.observability.AskMetrics;
+import com.ai.rag.observability.RagEvents;
+import com.ai.rag.repository.EmbeddingVersions;
+import com.ai.rag.repository.NearDuplicateIndex;
 import com.ai.rag.repository.RagRepository;
 import com.ai.rag.utils.*;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.MDC;
+import org.springframework.jdbc.BadSqlGrammarException;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -23,28 +40,156 @@ public class RagService {
     private final RagRepository repo;
     private final GeminiClient geminiClient;
     private final DocumentParser documentParser;
+    private final AskMetrics metrics;
+    private final EmbeddingVersions embeddings;
+    private final NearDuplicateIndex duplicates;
+    private final ConversationStore conversations;
+    private final QueryExpansion expansion;
 
     private static final double DEFAULT_MAX_DISTANCE = 0.35;
     private static final int MAX_CONTEXT_CHARS = Integer.MAX_VALUE;
 
-    public RagService(RagRepository repo, GeminiClient geminiClient, DocumentParser documentParser) {
+    public RagService(RagRepository repo, GeminiClient geminiClient, DocumentParser documentParser,
+                      AskMetrics metrics, EmbeddingVersions embeddings, NearDuplicateIndex duplicates,
+                      ConversationStore conversations, QueryExpansion expansion) {
         this.repo = repo;
         this.geminiClient = geminiClient;
         this.documentParser = documentParser;
+        this.metrics = metrics;
+        this.embeddings = embeddings;
+        this.duplicates = duplicates;
+        this.conversations = conversations;
+        this.expansion = expansion;
     }
 
-    public long ingest(String title, String text) {
-        long docId = repo.insertDocument(title);
+    public long ingest(String tenantId, String title, String text, RagRepository.DocumentMeta meta) {
+        long docId = repo.insertDocument(tenantId, title, meta);
 
         List<String> chunks = Chunker.chunkByChars(text, 1200, 200);
+        Long[] hashes = duplicates.signatures(chunks);
+        NearDuplicateIndex.ChunkRef[] canonical = duplicates.canonicalFor(tenantId, docId, hashes);
+
+        EmbeddingSpec spec = embeddings.active();
+        EmbeddingSpec next = embeddings.migrating();
+        boolean dualRead = embeddings.dualRead();
+        // near-duplicate chunk 도 자기 벡터를 저장 (필터 컬럼이 chunk 단위라 참조만 두면 필터 검색에서 빠짐), 결과에서만 하나로
+        double[][] vectors = embedBatch(chunks, spec);
+        double[][] nextVectors = next == null ? null : embedBatch(chunks, next);
+        // 재임베딩 cutover 로 shadow 컬럼이 사라진 shard 면 embedding 컬럼에 새 버전 벡터를 씀
+        boolean cut = false;
         for (int i = 0; i < chunks.size(); i++) {
-            double[] emb = VectorUtils.embedLocal(chunks.get(i));
-            repo.insertChunk(docId, i, chunks.get(i), VectorUtils.toPgVectorLiteral(emb));
+            if (!cut) {
+                try {
+                    repo.insertChunk(docId, i, chunks.get(i), embedded(vectors[i], spec),
+                            next == null ? null : embedded(nextVectors[i], next), hashes[i], canonical[i]);
+                } catch (BadSqlGrammarException e) {
+                    if (!dualRead) throw e;
+                    log.info("cutover 된 shard 라 새 버전 벡터만 저장합니다. docId: {}, chunk: {}", docId, i);
+                    cut = true;
+                }
+            }
+            if (cut) {
+                repo.insertChunk(docId, i, chunks.get(i), embedded(nextVectors[i], next), null, hashes[i], canonical[i]);
+            }
+        }
+        if (!chunks.isEmpty()) {
+            // 문서의 chunk 는 모두 같은 shard → cutover 됐으면 앞서 넣은 chunk 도 embedding 컬럼이 새 버전
+            EmbeddingSpec stored = cut ? next : spec;
+            double[][] source = cut ? nextVectors : vectors;
+            double[] centroid = new double[stored.dim()];
+            for (double[] v : source) {
+                for (int d = 0; d < v.length; d++) centroid[d] += v[d];
+            }
+            for (int d = 0; d < centroid.length; d++) centroid[d] /= source.length;
+            repo.saveCentroid(tenantId, docId, stored, centroid);
+        }
+        long duplicateCount = Arrays.stream(canonical).filter(Objects::nonNull).count();
+        if (duplicateCount > 0) {
+            log.info("near-duplicate chunk 를 canonical 참조와 함께 저장했습니다. docId: {}, duplicates: {}/{}", docId, duplicateCount, chunks.size());
         }
+        repo.markWritten(tenantId);
         return docId;
     }
 
-    public AskResponse ask(String q, int k, Double maxDistance) {
+    /** chunk 들을 주어진 버전으로 한 번에 임베딩 (JFR Embed 이벤트 하나) */
+    private static double[][] embedBatch(List<String> chunks, EmbeddingSpec spec) {
+        RagEvents.Embed event = new RagEvents.Embed();
+        event.begin();
+        double[][] out = new double[chunks.size()][];
+        long chars = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            out[i] = VectorUtils.embed(chunks.get(i), spec);
+            chars += chunks.get(i).length();
+        }
+        if (event.shouldCommit()) {
+            event.version = spec.version();
+            event.source = "ingest";
+            event.texts = chunks.size();
+            event.chars = chars;
+            event.commit();
+        }
+        return out;
+    }
+
+    public boolean deleteDocument(String tenantId, long docId) {
+        return repo.deleteDocument(tenantId, docId);
+    }
+
+    public Optional<RagRepository.ChunkText> chunk(String tenantId, long docId, int chunkIndex) {
+        return repo.findChunk(tenantId, docId, chunkIndex);
+    }
+
+    private static RagRepository.Embedded embedded(double[] v, EmbeddingSpec spec) {
+        return new RagRepository.Embedded(spec.version(), VectorUtils.toPgVectorLiteral(v));
+    }
+
+    public AskResponse ask(String tenantId, String q, int k, Double maxDistance, RagRepository.SearchFilter filter) {
+        return ask(tenantId, q, k, maxDistance, filter, null);
+    }
+
+    /**
+     * sessionId 가 있으면 대화 세션의 후속 질문으로 처리 (ConversationStore)
+     * - 모르는/만료된 id 면 새 세션, 응답의 sessionId 를 다음 질문에 사용
+     * - 직전 질문과 비슷하면 검색 없이 세션 근거를 다시 채점해서 사용, 아니면 검색 결과를 세션 근거에 합침
+     * - LLM 에는 이전 턴을 history 로 붙이고 새 메시지에는 history 에 없는 근거 본문만
+     */
+    public AskResponse ask(String tenantId, String q, int k, Double maxDistance, RagRepository.SearchFilter filter,
+                           String sessionId) {
+        return ask(tenantId, q, k, maxDistance, filter, sessionId, geminiClient::generateAnswer);
+    }
+
+    /**
+     * 기동 warm-up (WarmupRunner): ask 와 같은 경로(guardrail, 질문 확장/재작성, 2단계 검색, 세션, 답변 정규화/검증)를
+     * Gemini 호출 없이 실행. 답변은 첫 근거 본문으로 만든 고정 응답이고 LLM 재작성 leg 도 띄우지 않음
+     */
+    public AskResponse warmUp(String tenantId, String q, int k, String sessionId) {
+        return ask(tenantId, q, k, null, null, sessionId, null);
+    }
+
+    /** generator == null 이면 warm-up (Gemini 를 부르지 않음) */
+    private AskResponse ask(String tenantId, String q, int k, Double maxDistance, RagRepository.SearchFilter filter,
+                            String sessionId, Generator generator) {
+        long startNanos = System.nanoTime();
+        AskTrace trace = new AskTrace();
+        ConversationStore.Conversation conv = sessionId == null ? null : conversations.open(tenantId, sessionId);
+        if (conv != null) conv.lock();
+        try {
+            AskResponse res = doAsk(tenantId, q, k, maxDistance, filter, conv, trace, generator);
+            if (trace.partial) res = res.asPartial();
+            return conv == null ? res : res.inSession(conv.id(), conv.turns());
+        } catch (RuntimeException e) {
+            trace.reason = "error";
+            throw e;
+        } finally {
+            if (conv != null) conv.unlock();
+            if (trace.stage != null) trace.stop("error");
+            metrics.recordAsk(startNanos, trace.outcome(), trace.reason, trace.retried);
+        }
+    }
+
+    private AskResponse doAsk(String tenantId, String q, int k, Double maxDistance,
+                              RagRepository.SearchFilter filter, ConversationStore.Conversation conv, AskTrace trace,
+                              Generator generator) {
 
         final String 부족응답 = """
             - 답변:
@@ -53,35 +198,56 @@ public class RagService {
             (없음)
             """.trim();
 
-        // ---------- Input Guardrail ----------
-        GuardrailResult gr = InputGuardrail.validateAndSanitize(q);
+        // ---------- parameters ----------
+        int topK = (k <= 0 ? 5 : k);
+        double md = (maxDistance == null ? DEFAULT_MAX_DISTANCE : maxDistance);
+        // 재임베딩 dual-read 중이면 새 버전으로 검색
+        EmbeddingSpec spec = embeddings.reading();
+        if (conv != null) conv.begin(spec, filter);
+
+        // ---------- Input Guardrail → retrieval ----------
+        // guardrail 은 Aho-Corasick 한 번 + 정규식이라 검색보다 훨씬 짧음 → 검색을 먼저 띄우지 않고 판정 뒤에 정규화된 질문으로
+        // (차단/마스킹 전 원문이 검색이나 LLM 확장으로 가지 않고, 차단 시 취소되지 않는 JDBC 검색을 기다리지 않음)
+        GuardrailResult gr = guardrail(q);
         if (gr.action() == Action.BLOCK) {
+            trace.reason = "blocked";
             return new AskResponse(gr.message(), "", List.of());
         }
+        Retrieval retrieval = retrieve(tenantId, spec, gr.normalizedQuestion(), topK, md, filter, conv, generator != null);
+        Generator generate = generator == null ? RagService::warmUpAnswer : generator;
         String normalizedQ = gr.normalizedQuestion();
-
-        // ---------- parameters ----------
-        int topK = (k <= 0 ? 5 : k);
-        double md = (maxDistance == null ? DEFAULT_MAX_DISTANCE : maxDistance);
-
-        // ---------- retrieval ----------
-        String qVec = VectorUtils.toPgVectorLiteral(VectorUtils.embedLocal(normalizedQ));
-        List<RagRepository.ChunkHit> hits = repo.searchTopK(qVec, topK);
-
-        List<RagRepository.ChunkHit> filtered = hits.stream()
-                .filter(h -> h.distance() <= md)
-                .toList();
-
-        filtered = deduplicate(filtered);
+        List<RagRepository.ChunkHit> filtered = retrieval.hits();
+        trace.partial = retrieval.partial();
 
         if (filtered.isEmpty()) {
             log.info("중복 제거 후 없는 컨텍스트가 존재하지 않아 부족 응답으로 결과를 냅니다. maxcdn_distance: {}, filtered_hits: {}", md, filtered);
+            trace.reason = "no_context";
             return new AskResponse(부족응답, "", filtered);
         }
 
-        String ctx = buildContext(filtered, MAX_CONTEXT_CHARS);
+        // 세션이면 근거 번호는 세션 안에서 고정, sources 는 세션 근거 전체 ([n] = n 번째)
+        List<ConversationStore.Numbered> evidence = conv == null ? numbered(filtered) : conv.admit(filtered);
+        List<RagRepository.ChunkHit> sources = conv == null ? filtered : conv.sources();
+        List<Integer> numbers = evidence.stream().map(ConversationStore.Numbered::number).toList();
+        List<GeminiClient.Turn> history = conv == null ? List.of() : conv.history();
+        boolean followUp = !history.isEmpty();
+        List<ConversationStore.Numbered> delta = followUp
+                ? evidence.stream().filter(n -> !conv.inHistory(n)).toList()
+                : evidence;
+
+        String ctx = buildContext(evidence, MAX_CONTEXT_CHARS);
+        String evidenceSection = followUp
+                ? """
+                  ### 추가 문서 근거 (앞선 대화의 근거는 번호 그대로 사용)
+                  %s
+                  ### 이번 질문에 쓸 근거 번호
+                  %s""".formatted(delta.isEmpty() ? "(없음)\n" : buildContext(delta, MAX_CONTEXT_CHARS),
+                        CitationUtils.buildEvidenceSection(new LinkedHashSet<>(numbers)))
+                : "### 문서 근거(TopK)\n" + ctx;
 
         // ---------- prompt ----------
+        // system + 근거(evidenceSection) 는 첫 시도와 재시도가 같은 prefix → Gemini context cache 로 한 번만 등록
+        // 재시도 전용 지시는 system 이 아니라 retryPrompt 쪽에
         String system = """
         너는 문서 근거 기반 Q&A 어시스턴트다.
         제공된 '문서 근거'에 없는 내용은 추측하지 말고, "문서 근거가 부족합니다"라고 답해라.
@@ -91,66 +257,66 @@ public class RagService {
         """.trim();
 
         String prompt = """
-        ### 문서 근거(TopK)
-        %s
-
         ### 질문
         %s
 
         ### 출력 형식
         - 답변:
         - 근거:
-        """.formatted(ctx, normalizedQ);
+        """.formatted(normalizedQ);
 
         // ---------- 1st generation ----------
-        String rawAnswer = geminiClient.generateAnswer(system, prompt);
+        trace.stage = metrics.stage("generate");
+        metrics.recordPrompt(evidenceSection.length() + prompt.length(), followUp);
+        String rawAnswer = generate.answer(system, history, evidenceSection, prompt, true);
 
         log.info("첫번째 ai 모델 응답 : {}", rawAnswer);
 
-        AnswerFormatter.NormalizedAnswer normalized = normalizeWithAutoEvidence(rawAnswer, filtered.size(), 부족응답, ctx, filtered);
+        AnswerFormatter.NormalizedAnswer normalized = normalizeWithAutoEvidence(rawAnswer, numbers, 부족응답, ctx, filtered);
         if (normalized == null) {
-            return new AskResponse(부족응답, ctx, filtered);
+            trace.stop("invalid");
+            trace.reason = "citation";
+            return new AskResponse(부족응답, ctx, sources);
         }
 
         // ---------- Quality gate + 1 retry (domain-neutral) ----------
+        RagEvents.Decision retryDecision = new RagEvents.Decision();
+        retryDecision.begin();
         boolean needRetry = AnswerQuality.isLowQuality(normalized.answerText())
                 || (AnswerQuality.expectsNumbers(normalizedQ) && !AnswerQuality.hasAnyDigit(normalized.answerText()));
+        commit(retryDecision, "retry", needRetry ? "retry" : "skip");
+        trace.stop(needRetry ? "low_quality" : "ok");
 
         if (needRetry) {
             log.info("응답 퀄리티 가 좋지 않아 1회 재시도 합니다. input 질문내용 : {}", normalized);
-            String retrySystem = """
-            너는 문서 근거 기반 Q&A 어시스턴트다.
-            제공된 문서 근거에서만 답하고, 근거에 없는 내용은 "문서 근거가 부족합니다"라고 답해라.
-            답변은 구체적으로 작성하라(조건/절차/예외/수치가 있으면 포함).
-            출력 형식은 반드시 아래를 지켜라:
-            - 답변:
-            - 근거:
-            """.trim();
-
+            trace.retried = true;
+            trace.stage = metrics.stage("retry");
             String retryPrompt = """
-            ### 문서 근거(TopK)
-            %s
-
             ### 질문
             %s
 
             ### 작성 규칙(중요)
-            1) 답변은 3~7개 bullet로 핵심만 정리해라.
-            2) 문서에 숫자/조건/절차가 있으면 반드시 포함해라.
-            3) 문서에 없으면 "문서 근거가 부족합니다"라고만 답해라.
-            4) 출력 형식:
+            1) 제공된 문서 근거에서만 답하고, 답변은 구체적으로 작성하라(조건/절차/예외/수치가 있으면 포함).
+            2) 답변은 3~7개 bullet로 핵심만 정리해라.
+            3) 문서에 숫자/조건/절차가 있으면 반드시 포함해라.
+            4) 문서에 없으면 "문서 근거가 부족합니다"라고만 답해라.
+            5) 출력 형식:
                - 답변:
                - 근거:
-            """.formatted(ctx, normalizedQ);
+            """.formatted(normalizedQ);
 
-            rawAnswer = geminiClient.generateAnswer(retrySystem, retryPrompt);
+            metrics.recordPrompt(evidenceSection.length() + retryPrompt.length(), followUp);
+            rawAnswer = generate.answer(system, history, evidenceSection, retryPrompt, false);
+            prompt = retryPrompt;
 
             log.info("재시도 후 AI 모델 첫번째 응답 : {}", rawAnswer);
 
-            normalized = normalizeWithAutoEvidence(rawAnswer, filtered.size(), 부족응답, ctx, filtered);
+            normalized = normalizeWithAutoEvidence(rawAnswer, numbers, 부족응답, ctx, filtered);
             if (normalized == null) {
                 log.info("근거범위에 도착하지 못해 부족응답으로 치부합니다. normalized: {}", normalized);
-                return new AskResponse(부족응답, ctx, filtered);
+                trace.stop("fallback");
+                trace.reason = "citation";
+                return new AskResponse(부족응답, ctx, sources);
             }
 
             // 재시도 후에도 품질이 너무 낮으면 fallback
@@ -158,17 +324,235 @@ public class RagService {
                     || (AnswerQuality.expectsNumbers(normalizedQ) && !AnswerQuality.hasAnyDigit(normalized.answerText()));
             if (stillBad) {
                 log.warn("재시도 이후 에도 응답 품질이 좋지 않아 fallback 합니다/");
-                return new AskResponse(부족응답, ctx, filtered);
+                trace.stop("fallback");
+                trace.reason = "quality";
+                return new AskResponse(부족응답, ctx, sources);
             }
+            trace.stop("ok");
         }
 
         // ---------- consistency check ----------
-        if (!EvidenceConsistency.isConsistent(normalized.answerText(), ctx)) {
+        trace.stage = metrics.stage("consistency");
+        RagEvents.Decision consistency = new RagEvents.Decision();
+        consistency.begin();
+        boolean consistent = EvidenceConsistency.isConsistent(normalized.answerText(), ctx);
+        commit(consistency, "consistency", consistent ? "pass" : "fail");
+        if (!consistent) {
             log.warn("consistency check 응답에 false 로 빠졌습니다.");
-            return new AskResponse(부족응답, ctx, filtered);
+            trace.stop("fallback");
+            trace.reason = "consistency";
+            return new AskResponse(부족응답, ctx, sources);
+        }
+        trace.stop("ok");
+
+        if (conv != null) {
+            conv.complete(evidenceSection + "\n\n" + prompt, normalized.formatted(), retrieval.query(), evidence, delta);
+        }
+        return new AskResponse(normalized.formatted(), ctx, sources);
+    }
+
+    private GuardrailResult guardrail(String q) {
+        AskMetrics.Stage stage = metrics.stage("guardrail");
+        GuardrailResult gr = InputGuardrail.validateAndSanitize(q);
+        stage.stop(switch (gr.action()) {
+            case BLOCK -> "blocked";
+            case ALLOW_WITH_REDACTION -> "redacted";
+            default -> "allowed";
+        });
+        return gr;
+    }
+
+    /**
+     * 임베딩 → 검색 → 거리 컷 → 중복 제거
+     * 세션이면: 세션 근거를 DB 에서 다시 채점하고, 직전 질문과 비슷하고 직전 턴 만큼 md 안에 남으면 검색 생략 (search=reused),
+     * 아니면 검색 결과와 세션 근거를 합쳐 가까운 topK
+     * 질문 확장이 켜져 있으면 재작성 질의 leg 들과 같이 검색해서 RRF 로 합친 순서 (세션 근거도 leg 하나로)
+     */
+    private Retrieval retrieve(String tenantId, EmbeddingSpec spec, String question, int topK, double md,
+                               RagRepository.SearchFilter filter, ConversationStore.Conversation conv, boolean llm) {
+        AskMetrics.Stage stage = metrics.stage("embedding");
+        RagEvents.Embed event = new RagEvents.Embed();
+        event.begin();
+        double[] q = VectorUtils.embed(question, spec);
+        String qVec = VectorUtils.toPgVectorLiteral(q);
+        if (event.shouldCommit()) {
+            event.version = spec.version();
+            event.source = "ask";
+            event.texts = 1;
+            event.chars = question.length();
+            event.commit();
+        }
+        stage.stop("ok");
+
+        stage = metrics.stage("search");
+        try {
+            return searchAndMerge(tenantId, spec, question, q, qVec, topK, md, filter, conv, llm, stage);
+        } catch (RuntimeException e) {
+            stage.stop("error");
+            throw e;
+        }
+    }
+
+    /** retrieve 의 검색 단계 (stage 는 정상 종료 시 여기서 닫음) */
+    private Retrieval searchAndMerge(String tenantId, EmbeddingSpec spec, String question, double[] q, String qVec,
+                                     int topK, double md, RagRepository.SearchFilter filter,
+                                     ConversationStore.Conversation conv, boolean llm, AskMetrics.Stage stage) {
+        List<RagRepository.ChunkHit> held = conv == null ? List.of() : rescoreHeld(tenantId, spec, qVec, md, conv);
+        if (conv != null && conv.similarToLast(q) && !held.isEmpty() && held.size() >= conv.lastHits(topK)) {
+            stage.stop("reused");
+            return new Retrieval(held.subList(0, Math.min(topK, held.size())), false, q);
+        }
+
+        List<RagRepository.ChunkHit> ranked;
+        boolean partial;
+        if (expansion.enabled()) {
+            Expanded expanded = expandedSearch(tenantId, spec, question, q, qVec, topK, filter, llm);
+            List<List<RagRepository.ChunkHit>> lists = new ArrayList<>(expanded.lists());
+            if (!held.isEmpty()) lists.add(held);
+            ranked = RankFusion.rrf(lists, expansion.rrfK());
+            partial = expanded.partial();
+        } else {
+            RagRepository.SearchResult searched = search(tenantId, spec, q, qVec, topK, filter);
+            List<RagRepository.ChunkHit> merged = new ArrayList<>(searched.hits());
+            merged.addAll(held);
+            merged.sort(Comparator.comparingDouble(RagRepository.ChunkHit::distance));
+            ranked = merged;
+            partial = searched.partial();
         }
+        List<RagRepository.ChunkHit> filtered = ranked.stream()
+                .filter(h -> h.distance() <= md)
+                .toList();
+
+        filtered = deduplicate(filtered);
+        if ((conv != null || expansion.enabled()) && filtered.size() > topK) {
+            filtered = filtered.subList(0, topK);
+        }
+        stage.stop(partial ? "partial" : filtered.isEmpty() ? "empty" : "hit");
+        return new Retrieval(filtered, partial, q);
+    }
+
+    /** 세션 근거를 이번 질문으로 DB 에서 다시 채점 (삭제된 문서의 chunk 는 빠지고 세션에서도 정리 대상) → md 이내 */
+    private List<RagRepository.ChunkHit> rescoreHeld(String tenantId, EmbeddingSpec spec, String qVec, double md,
+                                                     ConversationStore.Conversation conv) {
+        List<RagRepository.ChunkHit> held = conv.held();
+        if (held.isEmpty()) return held;
+        List<RagRepository.ChunkHit> rescored = repo.scoreChunks(tenantId, new RagRepository.Embedded(spec.version(), qVec), held);
+        conv.found(rescored);
+        return rescored.stream().filter(h -> h.distance() <= md).toList();
+    }
+
+    /**
+     * 질문 확장: 재작성 질의 leg 를 먼저 띄우고 원 질의 검색은 이 스레드에서
+     * - 예산(rag.expansion.budget-ms, 확장 시작 기준) 안에 끝난 leg 만 합침, 실패한 leg 는 무시
+     * - 하나도 못 끝내면 원 질의 결과만 (= 확장 포기), 남은 leg 는 취소
+     * - leg 의 검색은 남은 예산을 statement_timeout 으로, LLM leg 는 최근 지연이 예산 안일 때만 (QueryExpansion.llmFits)
+     * - partial 은 원 질의 검색 기준
+     * rag.ask.stage{stage=expansion}: fused | partial(일부 leg 만) | abandoned | none(재작성 없음)
+     */
+    private Expanded expandedSearch(String tenantId, EmbeddingSpec spec, String question, double[] q, String qVec,
+                                    int topK, RagRepository.SearchFilter filter, boolean llm) {
+        AskMetrics.Stage stage = metrics.stage("expansion");
+        long deadline = System.nanoTime() + expansion.budgetNanos();
+        // 원 질의 검색과 확장 leg 를 한 범위에서: 예산을 넘긴 leg 는 버리고, 범위를 닫을 때 취소 후 종료까지 기다림
+        try (StructuredTasks scope = StructuredTasks.open("expand")) {
+            Future<RagRepository.SearchResult> plainFork = scope.fork(() -> search(tenantId, spec, q, qVec, topK, filter));
+            List<Future<List<RagRepository.SearchResult>>> legs = new ArrayList<>();
+            for (String rewrite : expansion.rewrite(question)) {
+                legs.add(scope.fork(() -> List.of(searchText(tenantId, spec, rewrite, topK, filter, deadline))));
+            }
+            if (llm && expansion.llmFits(deadline - System.nanoTime())) {
+                legs.add(scope.fork(() -> expansion.llmRewrite(question).stream()
+                        .map(rewrite -> searchText(tenantId, spec, rewrite, topK, filter, deadline))
+                        .toList()));
+            }
+
+            RagRepository.SearchResult plain;
+            try {
+                plain = scope.await(plainFork);
+            } catch (RuntimeException e) {
+                stage.stop("error");
+                throw e;
+            }
+            List<List<RagRepository.ChunkHit>> lists = new ArrayList<>();
+            lists.add(plain.hits());
+            int missed = 0;
+            for (Future<List<RagRepository.SearchResult>> leg : legs) {
+                List<RagRepository.SearchResult> results = collect(leg, deadline);
+                if (results == null) {
+                    missed++;
+                    continue;
+                }
+                results.forEach(r -> lists.add(r.hits()));
+            }
+            stage.stop(legs.isEmpty() ? "none" : missed == 0 ? "fused" : missed < legs.size() ? "partial" : "abandoned");
+            if (missed > 0) {
+                log.debug("질문 확장 leg 일부가 예산 안에 끝나지 않았습니다. legs: {}, missed: {}", legs.size(), missed);
+            }
+            return new Expanded(lists, plain.partial());
+        }
+    }
+
+    /** 확장 leg 의 검색: 예산이 이미 지났으면 DB 에 가지 않음, 아니면 남은 시간을 statement_timeout 으로 */
+    private RagRepository.SearchResult searchText(String tenantId, EmbeddingSpec spec, String text, int topK,
+                                                  RagRepository.SearchFilter filter, long deadlineNanos) {
+        double[] v = VectorUtils.embed(text, spec);
+        long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+        if (remainingMs <= 0) {
+            throw new IllegalStateException("질문 확장 예산을 넘겨 검색하지 않습니다.");
+        }
+        return search(tenantId, spec, v, VectorUtils.toPgVectorLiteral(v), topK, filter, remainingMs);
+    }
+
+    /** deadline 까지 leg 결과, 넘기거나 실패하면 취소하고 null */
+    private static <T> T collect(Future<T> leg, long deadlineNanos) {
+        try {
+            return leg.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            leg.cancel(true);
+            return null;
+        } catch (ExecutionException e) {
+            log.debug("질문 확장 leg 가 실패해서 제외합니다. error: {}", e.getCause().toString());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            leg.cancel(true);
+            return null;
+        }
+    }
+
+    private static void commit(RagEvents.Decision event, String decision, String outcome) {
+        if (event.shouldCommit()) {
+            event.decision = decision;
+            event.outcome = outcome;
+            event.commit();
+        }
+    }
+
+    /**
+     * 2단계 검색: centroid 로 고른 top-M 문서 안에서만 chunk 검색
+     * - 사용자 필터가 있으면 이미 범위가 좁혀져 있으므로 바로 chunk 검색
+     * - 후보 문서 안에서 k 개를 못 채우면 (centroid 가 놓친 문서가 있을 수 있음) 전체 검색으로
+     */
+    private RagRepository.SearchResult search(String tenantId, EmbeddingSpec spec, double[] q, String qVec,
+                                              int topK, RagRepository.SearchFilter filter) {
+        return search(tenantId, spec, q, qVec, topK, filter, 0);
+    }
 
-        return new AskResponse(normalized.formatted(), ctx, filtered);
+    /** timeoutMs > 0 이면 검색 쿼리마다 statement_timeout (질문 확장 leg) */
+    private RagRepository.SearchResult search(String tenantId, EmbeddingSpec spec, double[] q, String qVec,
+                                              int topK, RagRepository.SearchFilter filter, long timeoutMs) {
+        if (filter == null || filter.isEmpty()) {
+            List<Long> docs = repo.candidateDocuments(tenantId, spec, q);
+            if (!docs.isEmpty()) {
+                RagRepository.SearchResult staged = repo.searchTopK(tenantId, new RagRepository.Embedded(spec.version(), qVec), topK,
+                        RagRepository.SearchFilter.documents(docs), timeoutMs);
+                if (staged.hits().size() >= topK) {
+                    return staged;
+                }
+                log.debug("후보 문서 안에서 topK 를 채우지 못해 전체 검색합니다. candidates: {}, hits: {}", docs.size(), staged.hits().size());
+            }
+        }
+        return repo.searchTopK(tenantId, new RagRepository.Embedded(spec.version(), qVec), topK, filter, timeoutMs);
     }
 
     /**
@@ -181,7 +565,7 @@ public class RagService {
      */
     private AnswerFormatter.NormalizedAnswer normalizeWithAutoEvidence(
             String rawAnswer,
-            int maxIndex,
+            List<Integer> numbers,
             String 부족응답,
             String ctx,
             List<RagRepository.ChunkHit> filtered
@@ -194,11 +578,11 @@ public class RagService {
 
         // ✅ 자동 근거 보강: 없으면 Top1 근거로 처리
         if (citations.isEmpty()) {
-            citations = Set.of(1);
+            citations = Set.of(numbers.get(0));
         }
 
-        // 근거번호 범위 검증
-        boolean citationRangeOk = citations.stream().allMatch(i -> i >= 1 && i <= maxIndex);
+        // 근거번호 범위 검증 (세션이면 이번 턴에 쓸 근거 번호만)
+        boolean citationRangeOk = numbers.containsAll(citations);
         if (!citationRangeOk) {
             return null;
         }
@@ -207,7 +591,7 @@ public class RagService {
         return AnswerFormatter.normalize(rawAnswer, forcedEvidence);
     }
 
-    public long ingestFile(MultipartFile file) {
+    public long ingestFile(String tenantId, MultipartFile file, List<String> tags, String owner) {
         String filename = Objects.requireNonNull(file.getOriginalFilename(), "filename");
         String ext = getExtLower(filename);
 
@@ -219,7 +603,7 @@ public class RagService {
         };
 
         String title = stripExt(filename);
-        return ingest(title, text); // 기존 ingest 재사용
+        return ingest(tenantId, title, text, new RagRepository.DocumentMeta(tags, owner, ext)); // 기존 ingest 재사용
     }
 
     private String getExtLower(String filename) {
@@ -238,31 +622,52 @@ public class RagService {
         return filename.substring(0, dot);
     }
 
+    /**
+     * 같은 chunk 중복 제거 + 내용이 near-duplicate 인 chunk 는 순위가 앞선 것 하나로
+     * (ingest 때 canonical 참조를 남긴 chunk 도 자기 벡터로 검색되므로 여기서 접음, 판별 이전에 저장된 chunk 나 같은 배치로 import 된 chunk 도)
+     * 입력 순서(거리순 또는 RRF 순)를 그대로 유지
+     */
     private List<RagRepository.ChunkHit> deduplicate(List<RagRepository.ChunkHit> hits) {
-        return hits.stream()
+        List<RagRepository.ChunkHit> sorted = List.copyOf(hits.stream()
                 .collect(Collectors.toMap(
                         h -> h.documentId() + "_" + h.chunkIndex(),
                         h -> h,
-                        (a, b) -> a.distance() <= b.distance() ? a : b
+                        (a, b) -> a,
+                        LinkedHashMap::new
                 ))
-                .values()
-                .stream()
-                .sorted(Comparator.comparingDouble(RagRepository.ChunkHit::distance))
-                .toList();
+                .values());
+
+        Long[] hashes = duplicates.signatures(sorted.stream().map(RagRepository.ChunkHit::content).toList());
+        List<RagRepository.ChunkHit> out = new ArrayList<>(sorted.size());
+        List<Long> kept = new ArrayList<>(sorted.size());
+        for (int i = 0; i < sorted.size(); i++) {
+            Long h = hashes[i];
+            if (kept.stream().anyMatch(k -> duplicates.near(k, h))) continue;
+            kept.add(h);
+            out.add(sorted.get(i));
+        }
+        return out;
     }
 
-    private String buildContext(List<RagRepository.ChunkHit> hits, int maxChars) {
+    /** 세션 없는 요청: 검색 순서대로 1..n */
+    private static List<ConversationStore.Numbered> numbered(List<RagRepository.ChunkHit> hits) {
+        List<ConversationStore.Numbered> out = new ArrayList<>(hits.size());
+        for (int i = 0; i < hits.size(); i++) out.add(new ConversationStore.Numbered(i + 1, hits.get(i)));
+        return out;
+    }
+
+    private String buildContext(List<ConversationStore.Numbered> hits, int maxChars) {
         StringBuilder ctx = new StringBuilder();
 
-        for (int i = 0; i < hits.size(); i++) {
-            RagRepository.ChunkHit h = hits.get(i);
+        for (ConversationStore.Numbered n : hits) {
+            RagRepository.ChunkHit h = n.hit();
 
             String block = """
             [%d] (doc=%d, chunk=%d, dist=%.4f, sim=%.4f)
             %s
 
             """.formatted(
-                    i + 1,
+                    n.number(),
                     h.documentId(),
                     h.chunkIndex(),
                     h.distance(),
@@ -277,5 +682,70 @@ public class RagService {
     }
 
 
-    public record AskResponse(String answer, String context, List<RagRepository.ChunkHit> sources) {}
+    /**
+     * partial: 일부 shard 가 타임아웃/실패해서 빠진 채로 검색된 결과
+     * sessionId/turns: 대화 세션이면 세션 id 와 완료된 턴 수 (세션 없으면 null/0)
+     */
+    public record AskResponse(String answer, String context, List<RagRepository.ChunkHit> sources, boolean partial,
+                              String sessionId, int turns) {
+        public AskResponse(String answer, String context, List<RagRepository.ChunkHit> sources) {
+            this(answer, context, sources, false, null, 0);
+        }
+
+        AskResponse asPartial() {
+            return new AskResponse(answer, context, sources, true, sessionId, turns);
+        }
+
+        AskResponse inSession(String sessionId, int turns) {
+            return new AskResponse(answer, context, sources, partial, sessionId, turns);
+        }
+    }
+
+    /** query: 최종 질문 벡터 (세션에 직전 질문으로 저장) */
+    private record Retrieval(List<RagRepository.ChunkHit> hits, boolean partial, double[] query) {}
+
+    /** lists: 원 질의 결과 + 예산 안에 끝난 재작성 leg 결과들 */
+    private record Expanded(List<List<RagRepository.ChunkHit>> lists, boolean partial) {}
+
+    /** 답변 생성 (GeminiClient.generateAnswer, warm-up 이면 warmUpAnswer) */
+    @FunctionalInterface
+    private interface Generator {
+        String answer(String system, List<GeminiClient.Turn> history, String context, String prompt, boolean firstAttempt);
+    }
+
+    private static final Pattern EVIDENCE_BLOCK = Pattern.compile("\\[(\\d+)] \\(doc=[^\\n]*\\n([^\\n]+)");
+
+    /** warm-up 용 고정 응답: 근거 블록 중 첫 번째 본문을 인용 (정규화/품질/일관성 검사를 실제와 같이 태움) */
+    private static String warmUpAnswer(String system, List<GeminiClient.Turn> history, String context, String prompt,
+                                       boolean firstAttempt) {
+        Matcher m = EVIDENCE_BLOCK.matcher(context);
+        if (!m.find()) return "- 답변:\n문서 근거가 부족합니다\n- 근거:\n(없음)";
+        String text = m.group(2).length() > 300 ? m.group(2).substring(0, 300) : m.group(2);
+        return "- 답변:\n- " + text.trim() + " [" + m.group(1) + "]\n- 근거:\n[" + m.group(1) + "]";
+    }
+
+    /**
+     * 메트릭 태그용 요청 결과 (reason: none 이면 정상 답변, error 면 예외로 끝남)
+     * stage: 요청 스레드에서 진행 중인 stage, 예외로 빠져나가면 ask 의 finally 가 error 로 닫음
+     */
+    private static final class AskTrace {
+        String reason = "none";
+        boolean retried;
+        boolean partial;
+        AskMetrics.Stage stage;
+
+        void stop(String outcome) {
+            stage.stop(outcome);
+            stage = null;
+        }
+
+        String outcome() {
+            return switch (reason) {
+                case "none" -> "answered";
+                case "blocked" -> "blocked";
+                case "error" -> "error";
+                default -> "insufficient";
+            };
+        }
+    }
 }
@@ -0,0 +1,234 @@
+package com.ai.rag.service;
+
+import com.ai.rag.repository.EmbeddingVersions;
+import com.ai.rag.repository.ReembedRepository;
+import com.ai.rag.repository.ShardRouter;
+import com.ai.rag.repository.VectorIndexes;
+import com.ai.rag.utils.EmbeddingSpec;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 온라인 재임베딩 작업 (무중단)
+ * - 저장된 content 로 새 버전 벡터를 배치 단위로 계산해서 shadow 컬럼에 기록 (초당 처리량 제한)
+ * - 모든 노드가 dual-write 를 시작한 것을 확인한 뒤 backfill (그 뒤로는 shadow 컬럼이 빈 행이 새로 생기지 않음)
+ * - 끝나면 dual-read 로 넘기고 모든 노드가 새 벡터로 검색하는 것을 확인한 뒤 shard 별 cutover,
+ *   마지막으로 shard 0 에서 active 버전 전환 후 다른 버전으로 남은 행을 다시 계산
+ * - 진행률: GET /api/admin/embeddings, 메트릭 rag.reembed.processed / rag.reembed.total / rag.reembed.rate
+ * - 중단 후 다시 시작하면 아직 안 채워진 행부터 이어서 진행 (dual-read 에서 멈췄으면 cutover 부터)
+ */
+@Slf4j
+@Service
+public class ReembedService implements DisposableBean {
+
+    private final ShardRouter shards;
+    private final EmbeddingVersions embeddings;
+    private final ReembedRepository reembedRepo;
+    private final VectorIndexes vectorIndexes;
+    private final long ackTimeoutMs;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> new Thread(r, "reembed"));
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private volatile boolean cancelled;
+    private volatile long startedNanos;
+    private volatile String state = "IDLE";
+    private volatile String target;
+    private volatile String error;
+
+    public ReembedService(ShardRouter shards,
+                          EmbeddingVersions embeddings,
+                          ReembedRepository reembedRepo,
+                          VectorIndexes vectorIndexes,
+                          @Value("${rag.embedding.ack-timeout-ms:120000}") long ackTimeoutMs,
+                          MeterRegistry registry) {
+        this.shards = shards;
+        this.embeddings = embeddings;
+        this.reembedRepo = reembedRepo;
+        this.vectorIndexes = vectorIndexes;
+        this.ackTimeoutMs = ackTimeoutMs;
+
+        Gauge.builder("rag.reembed.processed", processed, AtomicLong::get)
+                .description("재임베딩된 chunk 수").register(registry);
+        Gauge.builder("rag.reembed.total", total, AtomicLong::get)
+                .description("재임베딩 대상 chunk 수").register(registry);
+        Gauge.builder("rag.reembed.rate", this, ReembedService::ratePerSec)
+                .description("재임베딩 처리량(chunk/s)").register(registry);
+    }
+
+    public Status start(String version, int batchSize, double maxPerSec) {
+        EmbeddingSpec spec = EmbeddingSpec.parse(version);
+        if (spec.equals(embeddings.active())) {
+            throw new IllegalArgumentException("이미 active 인 버전입니다: " + version);
+        }
+        EmbeddingSpec current = embeddings.migrating();
+        if (current != null && !current.equals(spec)) {
+            throw new IllegalStateException("다른 버전으로 재임베딩 중입니다: " + current.version());
+        }
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("이 노드에서 이미 재임베딩이 실행 중입니다.");
+        }
+
+        cancelled = false;
+        processed.set(0);
+        total.set(0);
+        target = spec.version();
+        error = null;
+        state = "PREPARING";
+        startedNanos = System.nanoTime();
+        worker.submit(() -> run(spec, Math.max(1, batchSize), maxPerSec));
+        return status();
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /** 진행 중인 작업을 버리고 migrating 버전을 폐기 (shadow 컬럼은 다음 시작 시 정리) */
+    public void abandon() {
+        if (running.get()) {
+            throw new IllegalStateException("실행 중에는 폐기할 수 없습니다. 먼저 cancel 하세요.");
+        }
+        embeddings.abandonMigration();
+        state = "IDLE";
+    }
+
+    public Status status() {
+        return new Status(
+                state,
+                embeddings.active().version(),
+                embeddings.migrating() == null ? null : embeddings.migrating().version(),
+                target,
+                processed.get(),
+                total.get(),
+                ratePerSec(),
+                error
+        );
+    }
+
+    private void run(EmbeddingSpec spec, int batchSize, double maxPerSec) {
+        try {
+            List<ShardRouter.Shard> all = shards.all();
+            embeddings.refresh();
+            boolean resumeCutover = embeddings.dualRead() && spec.equals(embeddings.migrating());
+            if (!resumeCutover) {
+                for (ShardRouter.Shard shard : all) {
+                    reembedRepo.prepare(shard, spec);
+                }
+                embeddings.startMigration(spec);
+
+                // 아직 dual-write 를 모르는 노드가 shadow 컬럼 없이 넣는 행이 backfill 커서 뒤에 남지 않도록
+                state = "WAITING_NODES";
+                embeddings.awaitNodes(spec, EmbeddingVersions.MIGRATING, ackTimeoutMs);
+                for (ShardRouter.Shard shard : all) {
+                    total.addAndGet(reembedRepo.countPending(shard));
+                }
+
+                state = "BACKFILLING";
+                for (ShardRouter.Shard shard : all) {
+                    backfill(shard, spec, batchSize, maxPerSec);
+                    if (cancelled) {
+                        state = "CANCELLED";
+                        log.info("재임베딩이 중단되었습니다. processed: {}/{}", processed.get(), total.get());
+                        return;
+                    }
+                }
+
+                state = "INDEXING";
+                for (ShardRouter.Shard shard : all) {
+                    reembedRepo.buildIndex(shard, vectorIndexes.storage(), spec);
+                }
+            }
+
+            // 검색을 새 벡터(shadow 컬럼)로 넘기고 모든 노드가 따라온 뒤에만 컬럼 이름을 바꿈
+            state = "DUAL_READ";
+            embeddings.startDualRead(spec);
+            embeddings.awaitNodes(spec, EmbeddingVersions.DUAL_READ, ackTimeoutMs);
+
+            // shard 0 을 마지막에: active 버전 전환이 shard 0 트랜잭션에 같이 들어감
+            state = "CUTTING_OVER";
+            for (int i = all.size() - 1; i >= 0; i--) {
+                reembedRepo.cutover(all.get(i), vectorIndexes.storage(), spec, i == 0);
+            }
+
+            state = "SWEEPING";
+            for (ShardRouter.Shard shard : all) {
+                int fixed = reembedRepo.sweep(shard, spec, batchSize);
+                if (fixed > 0) {
+                    log.warn("cutover 후 다른 버전으로 남은 chunk 를 다시 계산했습니다. shard: {}, chunks: {}", shard.index(), fixed);
+                }
+            }
+            state = "DONE";
+            log.info("재임베딩 완료. version: {}, chunks: {}, rate: {}/s", spec.version(), processed.get(), ratePerSec());
+        } catch (RuntimeException e) {
+            state = "FAILED";
+            error = e.getMessage();
+            log.error("재임베딩 실패. version: {}", spec.version(), e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void backfill(ShardRouter.Shard shard, EmbeddingSpec spec, int batchSize, double maxPerSec) {
+        long lastId = 0;
+        while (!cancelled) {
+            List<ReembedRepository.PendingChunk> batch = reembedRepo.nextBatch(shard, lastId, batchSize);
+            if (batch.isEmpty()) return;
+
+            reembedRepo.write(shard, batch, spec);
+            lastId = batch.get(batch.size() - 1).id();
+            processed.addAndGet(batch.size());
+            throttle(maxPerSec);
+        }
+    }
+
+    /** 시작 이후 평균 처리량이 maxPerSec 를 넘지 않도록 대기 */
+    private void throttle(double maxPerSec) {
+        if (maxPerSec <= 0) return;
+        long expectedNanos = (long) (processed.get() / maxPerSec * 1e9);
+        long ahead = expectedNanos - (System.nanoTime() - startedNanos);
+        if (ahead > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(ahead);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancelled = true;
+            }
+        }
+    }
+
+    private double ratePerSec() {
+        if (startedNanos == 0) return 0.0;
+        double sec = (System.nanoTime() - startedNanos) / 1e9;
+        return sec <= 0 ? 0.0 : processed.get() / sec;
+    }
+
+    @Override
+    public void destroy() {
+        cancelled = true;
+        worker.shutdownNow();
+    }
+
+    public record Status(
+            String state,
+            String activeVersion,
+            String migratingVersion,
+            String target,
+            long processed,
+            long total,
+            double ratePerSec,
+            String error
+    ) {}
+}
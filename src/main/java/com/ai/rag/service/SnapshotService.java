@@ -0,0 +1,233 @@
+package com.ai.rag.service;
+
+import com.ai.rag.repository.EmbeddingVersions;
+import com.ai.rag.repository.ShardRouter;
+import com.ai.rag.repository.SnapshotRepository;
+import com.ai.rag.utils.EmbeddingSpec;
+import com.ai.rag.utils.SnapshotFormat;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * 코퍼스 스냅샷 export / import (노드 부트스트랩, 야간 delta)
+ * - full: 전체 문서/chunk/벡터. delta: base 스냅샷이 읽은 snapshot 이후 커밋된 문서 변경 + 삭제된 문서(tombstone)
+ * - import 는 full 하나 + 이어지는 delta 들 순서대로. 헤더의 watermark 로 체인이 끊기지 않았는지 확인
+ * - 파일은 rag.snapshot.dir 아래 이름으로만 지정 (임의 경로 접근 방지)
+ * - 임베딩 버전이 바뀌면 이전 스냅샷 위에 delta 를 쌓을 수 없음 → full 로 다시 export
+ */
+@Slf4j
+@Service
+public class SnapshotService {
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9._-]{1,128}");
+    private static final String EXTENSION = ".snap";
+
+    private final ShardRouter shards;
+    private final EmbeddingVersions embeddings;
+    private final SnapshotRepository snapshotRepo;
+    private final Path dir;
+    private final int batchDocuments;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public SnapshotService(ShardRouter shards,
+                           EmbeddingVersions embeddings,
+                           SnapshotRepository snapshotRepo,
+                           @Value("${rag.snapshot.dir:./snapshots}") String dir,
+                           @Value("${rag.snapshot.batch-documents:512}") int batchDocuments) {
+        this.shards = shards;
+        this.embeddings = embeddings;
+        this.snapshotRepo = snapshotRepo;
+        this.dir = Path.of(dir).toAbsolutePath().normalize();
+        this.batchDocuments = batchDocuments;
+    }
+
+    /** baseName 이 있으면 그 스냅샷 이후 delta */
+    public ExportReport export(String name, String baseName) {
+        Path target = resolve(name);
+        if (Files.exists(target)) {
+            throw new IllegalArgumentException("이미 있는 스냅샷입니다: " + name);
+        }
+        EmbeddingSpec spec = embeddings.active();
+        Map<Integer, String> since = new HashMap<>();
+        if (baseName != null && !baseName.isBlank()) {
+            SnapshotFormat.Header base = header(resolve(baseName));
+            if (!base.embeddingVersion().equals(spec.version())) {
+                throw new IllegalStateException("base 스냅샷의 임베딩 버전(" + base.embeddingVersion()
+                        + ")이 현재 버전(" + spec.version() + ")과 다릅니다. full 스냅샷을 만드세요.");
+            }
+            for (SnapshotFormat.Watermark w : base.watermarks()) since.put(w.shard(), w.until());
+            if (since.size() != shards.all().size()) {
+                throw new IllegalStateException("base 스냅샷의 shard 수가 현재와 다릅니다: " + since.size() + " != " + shards.all().size());
+            }
+        }
+
+        exclusive();
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, name, ".tmp");
+            SnapshotRepository.ExportCounter counter = new SnapshotRepository.ExportCounter();
+            try {
+                List<SnapshotFormat.Watermark> placeholder = new ArrayList<>();
+                for (ShardRouter.Shard shard : shards.all()) {
+                    placeholder.add(new SnapshotFormat.Watermark(shard.index(), since.get(shard.index()), null));
+                }
+                long createdAt = System.currentTimeMillis();
+                try (SnapshotFormat.Writer writer = new SnapshotFormat.Writer(tmp,
+                        new SnapshotFormat.Header(createdAt, spec.version(), spec.dim(), placeholder))) {
+                    List<SnapshotFormat.Watermark> watermarks = new ArrayList<>();
+                    for (ShardRouter.Shard shard : shards.all()) {
+                        watermarks.add(snapshotRepo.export(shard, since.get(shard.index()), spec.dim(),
+                                batchDocuments, writer, counter));
+                    }
+                    writer.header(new SnapshotFormat.Header(createdAt, spec.version(), spec.dim(), watermarks));
+                }
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            long bytes = Files.size(target);
+            log.info("스냅샷 export 완료. name: {}, delta: {}, documents: {}, chunks: {}, tombstones: {}, bytes: {}, elapsedMs: {}",
+                    name, !since.isEmpty(), counter.documents, counter.chunks, counter.tombstones, bytes, elapsedMs);
+            return new ExportReport(name, !since.isEmpty(), counter.documents, counter.chunks, counter.tombstones, bytes, elapsedMs);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /** full 스냅샷 뒤에 delta 들을 순서대로 적용 (names[0] 이 delta 면 이미 적용된 체인 위에 이어서) */
+    public ImportReport importSnapshots(List<String> names) {
+        if (names == null || names.isEmpty()) {
+            throw new IllegalArgumentException("names 가 비어 있습니다.");
+        }
+        EmbeddingSpec spec = embeddings.active();
+        List<Path> paths = names.stream().map(this::resolve).toList();
+
+        // 적용 전에 헤더만 읽어서 체인 검증 (중간에 실패하면 일부만 적용되므로)
+        SnapshotFormat.Header prev = null;
+        for (int i = 0; i < paths.size(); i++) {
+            SnapshotFormat.Header h = header(paths.get(i));
+            if (!h.embeddingVersion().equals(spec.version()) || h.dim() != spec.dim()) {
+                throw new IllegalStateException("스냅샷 임베딩 버전(" + h.embeddingVersion()
+                        + ")이 현재 active 버전(" + spec.version() + ")과 다릅니다: " + names.get(i));
+            }
+            if (prev != null) {
+                if (!h.delta()) {
+                    throw new IllegalArgumentException("full 스냅샷은 첫 번째에만 올 수 있습니다: " + names.get(i));
+                }
+                for (SnapshotFormat.Watermark w : h.watermarks()) {
+                    String expected = prev.watermarks().stream().filter(p -> p.shard() == w.shard())
+                            .map(SnapshotFormat.Watermark::until).findFirst().orElse(null);
+                    if (!w.since().equals(expected)) {
+                        throw new IllegalArgumentException("delta 가 앞 스냅샷에 이어지지 않습니다: " + names.get(i));
+                    }
+                }
+            }
+            prev = h;
+        }
+
+        exclusive();
+        long start = System.nanoTime();
+        long documents = 0, chunks = 0, tombstones = 0, maxId = 0;
+        try {
+            for (Path path : paths) {
+                try (SnapshotFormat.Reader reader = new SnapshotFormat.Reader(path)) {
+                    // 문서 segment 는 바로 뒤의 chunk segment 와 같이 적용 (문서만 있고 chunk 가 없는 상태로 커밋되지 않게)
+                    List<SnapshotFormat.DocumentRow> pending = null;
+                    SnapshotFormat.Segment segment;
+                    while ((segment = reader.next()) != null) {
+                        if (pending != null && segment.type() != SnapshotFormat.CHUNKS) {
+                            snapshotRepo.importDocuments(pending, List.of());
+                            pending = null;
+                        }
+                        switch (segment.type()) {
+                            case SnapshotFormat.DOCUMENTS -> {
+                                pending = reader.documents(segment);
+                                for (SnapshotFormat.DocumentRow d : pending) maxId = Math.max(maxId, d.id());
+                                documents += pending.size();
+                            }
+                            case SnapshotFormat.CHUNKS -> {
+                                if (pending == null) {
+                                    throw new IllegalStateException("chunk segment 앞에 문서 segment 가 없습니다: " + path.getFileName());
+                                }
+                                List<SnapshotFormat.ChunkRow> rows = reader.chunks(segment);
+                                snapshotRepo.importDocuments(pending, rows);
+                                pending = null;
+                                chunks += rows.size();
+                            }
+                            case SnapshotFormat.TOMBSTONES -> {
+                                List<SnapshotFormat.Tombstone> rows = reader.tombstones(segment);
+                                snapshotRepo.importTombstones(rows);
+                                tombstones += rows.size();
+                            }
+                            default -> log.warn("알 수 없는 segment 를 건너뜁니다. type: {}, file: {}", segment.type(), path);
+                        }
+                    }
+                    if (pending != null) {
+                        snapshotRepo.importDocuments(pending, List.of());
+                    }
+                }
+                log.info("스냅샷 적용. file: {}, documents: {}, chunks: {}", path.getFileName(), documents, chunks);
+            }
+            snapshotRepo.finishImport(maxId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            running.set(false);
+        }
+
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        return new ImportReport(names, documents, chunks, tombstones, elapsedMs,
+                elapsedMs == 0 ? 0.0 : chunks * 1000.0 / elapsedMs);
+    }
+
+    /** 비어 있는 노드에서만 true (부트스트랩 판단) */
+    public boolean corpusEmpty() {
+        return snapshotRepo.isEmpty();
+    }
+
+    private void exclusive() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("이 노드에서 이미 스냅샷 작업이 실행 중입니다.");
+        }
+    }
+
+    private Path resolve(String name) {
+        if (name == null || !NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("스냅샷 이름은 영문/숫자/._- 만 사용할 수 있습니다: " + name);
+        }
+        return dir.resolve(name.endsWith(EXTENSION) ? name : name + EXTENSION);
+    }
+
+    private static SnapshotFormat.Header header(Path path) {
+        if (!Files.exists(path)) {
+            throw new IllegalArgumentException("스냅샷이 없습니다: " + path.getFileName());
+        }
+        try (SnapshotFormat.Reader reader = new SnapshotFormat.Reader(path)) {
+            return reader.header();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public record ExportReport(String name, boolean delta, long documents, long chunks, long tombstones, long bytes, long elapsedMs) {}
+
+    public record ImportReport(List<String> names, long documents, long chunks, long tombstones, long elapsedMs, double chunksPerSec) {}
+}
@@ -0,0 +1,175 @@
+package com.ai.rag.tools;
+
+import com.ai.rag.repository.EmbeddingVersions;
+import com.ai.rag.repository.ShardRouter;
+import com.ai.rag.repository.VectorStorage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 양자화 저장 모드별 용량 절감 vs recall@k 측정 (shard 0 기준)
+ * 실행: java -jar rag.jar --spring.profiles.active=quant-report [--rag.quant-report.queries=100 --rag.quant-report.k=5]
+ *
+ * - 용량: chunk 의 벡터 컬럼을 각 표현으로 바꿨을 때 바이트 + 현재 존재하는 HNSW 인덱스 크기
+ * - recall: 임의 chunk 벡터를 질의로 써서, 인덱스 없이 계산한 정확 top-k 대비
+ *   (coarse) 양자화 거리만으로 고른 top-k / (rescored) overfetch 후 full precision 재정렬한 top-k 의 겹침 비율
+ *   해당 모드 인덱스가 없으면 seq scan 으로 계산되므로 recall 은 같고 시간만 더 걸림
+ */
+@Slf4j
+@Component
+@Profile("quant-report")
+public class QuantizationReport implements ApplicationRunner {
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final ApplicationContext context;
+    private final int queries;
+    private final int k;
+    private final int overfetch;
+    private final int dim;
+
+    public QuantizationReport(ShardRouter shards,
+                              EmbeddingVersions embeddings,
+                              ApplicationContext context,
+                              @Value("${rag.quant-report.queries:50}") int queries,
+                              @Value("${rag.quant-report.k:5}") int k,
+                              @Value("${rag.vector.overfetch:4}") int overfetch) {
+        this.jdbc = shards.primary().jdbc();
+        this.tx = shards.primary().tx();
+        this.context = context;
+        this.queries = queries;
+        this.k = k;
+        this.overfetch = overfetch;
+        this.dim = embeddings.active().dim();
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            reportStorage();
+            reportRecall();
+        } finally {
+            System.exit(SpringApplication.exit(context, () -> 0));
+        }
+    }
+
+    private void reportStorage() {
+        Map<String, Object> col = jdbc.queryForMap("""
+            SELECT count(*) AS chunks,
+                   coalesce(sum(pg_column_size(content)), 0) AS content_bytes,
+                   coalesce(sum(pg_column_size(embedding)), 0) AS vector_bytes,
+                   coalesce(sum(pg_column_size(embedding::halfvec(%1$d))), 0) AS halfvec_bytes,
+                   coalesce(sum(pg_column_size(binary_quantize(embedding)::bit(%1$d))), 0) AS bit_bytes
+            FROM document_chunks
+        """.formatted(dim));
+
+        Map<String, Long> indexBytes = new TreeMap<>();
+        jdbc.query("""
+            SELECT pg_relation_size(i.oid) AS bytes, pg_get_indexdef(i.oid) AS def
+            FROM pg_index x
+            JOIN pg_class i ON i.oid = x.indexrelid
+            JOIN pg_class t ON t.oid = x.indrelid
+            WHERE t.relname LIKE 'document_chunks%' AND pg_get_indexdef(i.oid) LIKE '%USING hnsw%'
+        """, rs -> {
+            String def = rs.getString("def");
+            String kind = def.contains(" WHERE ") ? "partial(full)"
+                    : def.contains("binary_quantize") ? "binary"
+                    : def.contains("halfvec") ? "halfvec"
+                    : "full";
+            indexBytes.merge(kind, rs.getLong("bytes"), Long::sum);
+        });
+
+        log.info("""
+
+                === vector storage ===
+                chunks          : {}
+                content         : {}
+                vector(full)    : {}
+                halfvec         : {}
+                bit             : {}
+                HNSW index      : {}""",
+                col.get("chunks"),
+                mb(col.get("content_bytes")), mb(col.get("vector_bytes")),
+                mb(col.get("halfvec_bytes")), mb(col.get("bit_bytes")),
+                indexBytes.isEmpty() ? "(없음)" : indexBytes.entrySet().stream()
+                        .map(e -> e.getKey() + "=" + mb(e.getValue()))
+                        .toList());
+    }
+
+    private void reportRecall() {
+        List<Map<String, Object>> samples = jdbc.queryForList(
+                "SELECT tenant_id, embedding::text AS q FROM document_chunks WHERE embedding IS NOT NULL ORDER BY random() LIMIT ?", queries);
+        if (samples.isEmpty()) {
+            log.info("chunk 가 없어 recall 측정을 건너뜁니다.");
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder("\n=== recall@").append(k).append(" (queries=").append(samples.size())
+                .append(", overfetch=").append(overfetch).append(") ===\n");
+        for (VectorStorage storage : VectorStorage.values()) {
+            double coarse = 0, rescored = 0;
+            long nanos = 0;
+            for (Map<String, Object> s : samples) {
+                String tenant = (String) s.get("tenant_id");
+                String q = (String) s.get("q");
+                Set<Long> exact = exactTopK(tenant, q);
+
+                long t0 = System.nanoTime();
+                Set<Long> approx = ids("""
+                    SELECT id FROM document_chunks WHERE tenant_id = ? AND embedding IS NOT NULL ORDER BY %s LIMIT ?
+                """.formatted(storage.coarseDistance(dim)), tenant, q, k);
+                Set<Long> re = ids("""
+                    SELECT id FROM (
+                        SELECT id, embedding FROM document_chunks WHERE tenant_id = ? AND embedding IS NOT NULL ORDER BY %s LIMIT ?
+                    ) c ORDER BY embedding <=> ?::vector LIMIT ?
+                """.formatted(storage.coarseDistance(dim)), tenant, q, k * overfetch, q, k);
+                nanos += System.nanoTime() - t0;
+
+                coarse += overlap(exact, approx);
+                rescored += overlap(exact, re);
+            }
+            int n = samples.size();
+            sb.append(String.format(Locale.ROOT, "%-8s coarse=%.3f  rescored=%.3f  avg=%.1fms%n",
+                    storage, coarse / n, rescored / n, nanos / 1e6 / n));
+        }
+        log.info(sb.toString());
+    }
+
+    /** 인덱스를 끄고 정확한 top-k */
+    private Set<Long> exactTopK(String tenant, String q) {
+        return tx.execute(status -> {
+            jdbc.execute("SET LOCAL enable_indexscan = off");
+            return ids("SELECT id FROM document_chunks WHERE tenant_id = ? AND embedding IS NOT NULL ORDER BY embedding <=> ?::vector LIMIT ?",
+                    tenant, q, k);
+        });
+    }
+
+    private Set<Long> ids(String sql, Object... params) {
+        return new HashSet<>(jdbc.queryForList(sql, Long.class, params));
+    }
+
+    private double overlap(Set<Long> exact, Set<Long> approx) {
+        if (exact.isEmpty()) return 1.0;
+        long hit = approx.stream().filter(exact::contains).count();
+        return hit / (double) exact.size();
+    }
+
+    private static String mb(Object bytes) {
+        return String.format(Locale.ROOT, "%.1fMB", ((Number) bytes).longValue() / 1024.0 / 1024.0);
+    }
+}
@@ -0,0 +1,196 @@
+package com.ai.rag.tools;
+
+import com.ai.rag.repository.EmbeddingVersions;
+import com.ai.rag.repository.ShardRouter;
+import com.ai.rag.repository.VectorStorage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * schema 마이그레이션: 앱 기동과 분리해서 배포 전에 한 번 실행 (앱은 기동 시 DDL 을 하지 않음)
+ * 실행: java -jar rag.jar --spring.profiles.active=migrate
+ *
+ * - 모든 shard 에 schema.sql (테이블/컬럼/함수) → DEFAULT 파티션 → schema-indexes.sql → rag.vector.storage 의 ANN 인덱스
+ * - document_chunks 가 파티셔닝 이전의 일반 테이블이면 파티션 테이블로 변환 (TenantPartitions.convertLegacyTable, 앱을 멈추고 실행)
+ * - shard_slots (shard 0) 가 비어 있으면 slot % shard 수 로 채움, 이미 있으면 그대로 (shard 를 추가해도 문서가 옮겨지지 않음)
+ * - 인덱스는 CREATE INDEX CONCURRENTLY (쓰기를 막지 않음)
+ *   파티션 테이블은 CONCURRENTLY 가 안 되므로 부모에 ON ONLY 로 만들고 파티션마다 CONCURRENTLY 후 ATTACH PARTITION
+ *   (모든 파티션이 붙으면 부모 인덱스가 valid 가 됨)
+ * - 중단돼서 invalid 로 남은 인덱스는 지우고 다시 만듦 → 실패하면 그대로 다시 실행
+ * - rag.vector.drop-unused-indexes=true 면 다른 저장 모드의 전체 테이블 ANN 인덱스를 삭제
+ */
+@Slf4j
+@Component
+@Profile("migrate")
+public class SchemaMigration implements ApplicationRunner {
+
+    private static final Pattern CREATE_INDEX = Pattern.compile(
+            "CREATE\\s+(UNIQUE\\s+)?INDEX\\s+IF\\s+NOT\\s+EXISTS\\s+(\\w+)\\s+ON\\s+(\\w+)\\s+(.+)",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private final ShardRouter shards;
+    private final EmbeddingVersions embeddings;
+    private final ApplicationContext context;
+    private final VectorStorage storage;
+    private final boolean dropUnused;
+
+    public SchemaMigration(ShardRouter shards,
+                           EmbeddingVersions embeddings,
+                           ApplicationContext context,
+                           @Value("${rag.vector.storage:full}") String storage,
+                           @Value("${rag.vector.drop-unused-indexes:false}") boolean dropUnused) {
+        this.shards = shards;
+        this.embeddings = embeddings;
+        this.context = context;
+        this.storage = VectorStorage.parse(storage);
+        this.dropUnused = dropUnused;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int exitCode = 1;
+        try {
+            List<String> indexes = statements("schema-indexes.sql");
+            for (ShardRouter.Shard shard : shards.all()) {
+                long start = System.nanoTime();
+                new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(shard.jdbc().getDataSource());
+                shard.partitions().convertLegacyTable(shard.tx());
+                if (partitioned(shard.jdbc(), "document_chunks")) {
+                    shard.jdbc().execute("CREATE TABLE IF NOT EXISTS document_chunks_default PARTITION OF document_chunks DEFAULT");
+                }
+                for (String sql : indexes) {
+                    createIndex(shard.jdbc(), sql);
+                }
+                log.info("schema 적용 완료. shard: {}, elapsedMs: {}", shard.index(), (System.nanoTime() - start) / 1_000_000);
+            }
+
+            initSlots();
+
+            // active 버전 등록/차원은 shard 0 의 embedding_versions 기준 (위에서 테이블이 만들어진 뒤에 읽음)
+            int dim = embeddings.active().dim();
+            for (ShardRouter.Shard shard : shards.all()) {
+                createIndex(shard.jdbc(), storage.createIndexSql(storage.indexName(), VectorStorage.COLUMN, dim));
+                if (dropUnused) {
+                    for (VectorStorage other : VectorStorage.values()) {
+                        // 파티션 인덱스는 DROP INDEX CONCURRENTLY 가 안 됨
+                        if (other != storage) shard.jdbc().execute("DROP INDEX IF EXISTS " + other.indexName());
+                    }
+                }
+            }
+            log.info("schema 마이그레이션 완료. shard 수: {}, vector storage: {} (drop-unused-indexes: {})",
+                    shards.all().size(), storage, dropUnused);
+            exitCode = 0;
+        } catch (RuntimeException e) {
+            log.error("schema 마이그레이션 실패 (다시 실행하면 이어서 진행)", e);
+        } finally {
+            int code = exitCode;
+            System.exit(SpringApplication.exit(context, () -> code));
+        }
+    }
+
+    /** 처음 한 번만: shard 수가 SLOTS 의 약수면 예전 해시 % N 배치와 같아서 기존 문서를 옮길 필요 없음 */
+    private void initSlots() {
+        JdbcTemplate jdbc = shards.primary().jdbc();
+        int n = shards.all().size();
+        Boolean empty = jdbc.queryForObject("SELECT NOT EXISTS (SELECT 1 FROM shard_slots)", Boolean.class);
+        if (Boolean.TRUE.equals(empty)) {
+            jdbc.update("INSERT INTO shard_slots(slot, shard) SELECT s, s % ? FROM generate_series(0, ? - 1) s ON CONFLICT DO NOTHING",
+                    n, ShardRouter.SLOTS);
+            log.info("shard 배치를 만들었습니다. slots: {}, shard 수: {}", ShardRouter.SLOTS, n);
+            if (ShardRouter.SLOTS % n != 0) {
+                log.warn("shard 수({})가 {} 의 약수가 아니라 기존 문서 일부가 배치와 다른 shard 에 있을 수 있습니다. "
+                        + "--spring.profiles.active=reshard 로 옮기세요.", n, ShardRouter.SLOTS);
+            }
+        }
+        // 설정에 없는 shard 를 가리키면 여기서 실패 (shard 제거는 지원하지 않음)
+        shards.loadSlots();
+    }
+
+    /** CREATE [UNIQUE] INDEX IF NOT EXISTS name ON table ... 를 쓰기를 막지 않는 방식으로 */
+    private void createIndex(JdbcTemplate jdbc, String sql) {
+        Matcher m = CREATE_INDEX.matcher(sql);
+        if (!m.matches()) {
+            throw new IllegalArgumentException("CREATE INDEX IF NOT EXISTS <이름> ON <테이블> 형식이 아닙니다: " + sql);
+        }
+        String unique = m.group(1) == null ? "" : "UNIQUE ";
+        String name = m.group(2);
+        String table = m.group(3);
+        String rest = m.group(4);
+
+        if (!partitioned(jdbc, table)) {
+            createConcurrently(jdbc, unique, name, table, rest);
+            return;
+        }
+
+        // 부모 인덱스는 카탈로그만 (데이터를 읽지 않음), 파티션이 다 붙기 전까지 invalid
+        jdbc.execute("CREATE %sINDEX IF NOT EXISTS %s ON ONLY %s %s".formatted(unique, name, table, rest));
+        List<String> partitions = jdbc.queryForList(
+                "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = to_regclass(?)",
+                String.class, table);
+        for (String partition : partitions) {
+            Boolean attached = jdbc.queryForObject("""
+                SELECT EXISTS (
+                    SELECT 1 FROM pg_inherits i JOIN pg_index x ON x.indexrelid = i.inhrelid
+                    WHERE i.inhparent = to_regclass(?) AND x.indrelid = to_regclass(?)
+                )
+            """, Boolean.class, name, partition);
+            if (Boolean.TRUE.equals(attached)) continue;
+
+            // 파티션 oid 를 붙여 이름 길이(63) 안에서 유일하게
+            Long oid = jdbc.queryForObject("SELECT to_regclass(?)::oid::bigint", Long.class, partition);
+            String child = name + "_p" + oid;
+            createConcurrently(jdbc, unique, child, partition, rest);
+            jdbc.execute("ALTER INDEX %s ATTACH PARTITION %s".formatted(name, child));
+        }
+    }
+
+    private void createConcurrently(JdbcTemplate jdbc, String unique, String name, String table, String rest) {
+        List<Boolean> valid = jdbc.queryForList(
+                "SELECT x.indisvalid FROM pg_index x WHERE x.indexrelid = to_regclass(?)", Boolean.class, name);
+        if (!valid.isEmpty() && Boolean.TRUE.equals(valid.get(0))) return;
+        if (!valid.isEmpty()) {
+            log.warn("중단된 CONCURRENTLY 빌드로 invalid 상태인 인덱스를 다시 만듭니다. index: {}", name);
+            jdbc.execute("DROP INDEX CONCURRENTLY IF EXISTS " + name);
+        }
+
+        long start = System.nanoTime();
+        jdbc.execute("CREATE %sINDEX CONCURRENTLY IF NOT EXISTS %s ON %s %s".formatted(unique, name, table, rest));
+        log.info("인덱스 생성. index: {}, table: {}, elapsedMs: {}", name, table, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static boolean partitioned(JdbcTemplate jdbc, String table) {
+        return Boolean.TRUE.equals(jdbc.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_class WHERE oid = to_regclass(?) AND relkind = 'p')", Boolean.class, table));
+    }
+
+    /** 주석(--) 줄을 빼고 ; 로 나눈 문장 목록 */
+    private static List<String> statements(String resource) {
+        String script;
+        try {
+            script = new ClassPathResource(resource).getContentAsString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(resource + " 를 읽지 못했습니다.", e);
+        }
+        String body = script.lines()
+                .filter(line -> !line.strip().startsWith("--"))
+                .reduce("", (a, b) -> a + b + "\n");
+        return Arrays.stream(body.split(";")).map(String::strip).filter(s -> !s.isEmpty()).toList();
+    }
+}
@@ -0,0 +1,76 @@
+package com.ai.rag.tools;
+
+import com.ai.rag.repository.EmbeddingVersions;
+import com.ai.rag.repository.ShardRouter;
+import com.ai.rag.repository.SnapshotRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * reshard: shard 를 추가한 뒤 slot 을 고르게 다시 배치하고, 옮겨진 slot 의 문서만 새 shard 로 이동
+ * 실행: java -jar rag.jar --spring.profiles.active=reshard (rag.shards.additional-urls 에 새 shard 포함, migrate 먼저)
+ *
+ * - shard_slots 를 shard 당 SLOTS / N 개로 (많이 가진 shard 의 slot 만 넘겨서 옮기는 양이 최소)
+ * - shard 마다 배치와 다른 문서를 새 shard 로 복사 후 삭제 (SnapshotRepository.relocate)
+ *   옮기는 동안 그 문서가 두 shard 에서 잠깐 같이 검색될 수 있음
+ * - 실행 중에는 ingest 를 멈춰야 함 (실행 중인 노드는 예전 배치로 씀), 끝나면 모든 노드 재시작
+ * - 재임베딩 중에는 실행하지 않음 (shadow 컬럼은 옮기지 않음)
+ * - 중간에 실패하면 그대로 다시 실행 (배치는 이미 저장됐으므로 남은 문서만 옮김)
+ */
+@Slf4j
+@Component
+@Profile("reshard")
+public class ShardRebalance implements ApplicationRunner {
+
+    private final ShardRouter shards;
+    private final SnapshotRepository snapshots;
+    private final EmbeddingVersions embeddings;
+    private final ApplicationContext context;
+    private final int batchDocuments;
+
+    public ShardRebalance(ShardRouter shards,
+                          SnapshotRepository snapshots,
+                          EmbeddingVersions embeddings,
+                          ApplicationContext context,
+                          @Value("${rag.snapshot.batch-documents:512}") int batchDocuments) {
+        this.shards = shards;
+        this.snapshots = snapshots;
+        this.embeddings = embeddings;
+        this.context = context;
+        this.batchDocuments = batchDocuments;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int exitCode = 1;
+        try {
+            if (embeddings.migrating() != null) {
+                throw new IllegalStateException("재임베딩 중에는 reshard 할 수 없습니다: " + embeddings.migrating().version());
+            }
+            int dim = embeddings.active().dim();
+            int slots = shards.rebalanceSlots();
+            log.info("shard 배치를 바꿨습니다. 옮긴 slot: {} / {}, shard 수: {}", slots, ShardRouter.SLOTS, shards.all().size());
+
+            long total = 0;
+            for (ShardRouter.Shard shard : shards.all()) {
+                long start = System.nanoTime();
+                long moved = snapshots.relocate(shard, dim, batchDocuments);
+                total += moved;
+                log.info("문서 이동 완료. shard: {}, documents: {}, elapsedMs: {}", shard.index(), moved, (System.nanoTime() - start) / 1_000_000);
+            }
+            log.info("reshard 완료. 옮긴 문서: {} (모든 노드를 재시작하세요)", total);
+            exitCode = 0;
+        } catch (RuntimeException e) {
+            log.error("reshard 실패 (다시 실행하면 남은 문서만 옮김)", e);
+        } finally {
+            int code = exitCode;
+            System.exit(SpringApplication.exit(context, () -> code));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.ai.rag.tools;
+
+import com.ai.rag.service.SnapshotService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 새 노드 부트스트랩: 기동 시 DB 가 비어 있으면 스냅샷(full + delta 들)을 적용
+ * 설정: rag.snapshot.bootstrap=full-2024-06-01,delta-2024-06-02 (rag.snapshot.dir 기준 이름, 적용 순서대로)
+ * 문서가 하나라도 있으면 건너뜀 → 재기동해도 다시 적용하지 않음
+ */
+@Slf4j
+@Component
+public class SnapshotBootstrap implements ApplicationRunner {
+
+    private final SnapshotService snapshots;
+    private final List<String> names;
+
+    public SnapshotBootstrap(SnapshotService snapshots,
+                             @Value("${rag.snapshot.bootstrap:}") String names) {
+        this.snapshots = snapshots;
+        this.names = Arrays.stream(names.split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (names.isEmpty()) return;
+        if (!snapshots.corpusEmpty()) {
+            log.info("문서가 이미 있어 스냅샷 부트스트랩을 건너뜁니다.");
+            return;
+        }
+        SnapshotService.ImportReport report = snapshots.importSnapshots(names);
+        log.info("스냅샷 부트스트랩 완료. documents: {}, chunks: {}, elapsedMs: {}, chunks/s: {}",
+                report.documents(), report.chunks(), report.elapsedMs(), String.format("%.0f", report.chunksPerSec()));
+    }
+}
@@ -0,0 +1,221 @@
+package com.ai.rag.tools;
+
+import com.ai.rag.common.TenantResolver;
+import com.ai.rag.dto.AskView;
+import com.ai.rag.model.GeminiClient;
+import com.ai.rag.repository.CentroidIndex;
+import com.ai.rag.repository.EmbeddingVersions;
+import com.ai.rag.repository.RagRepository;
+import com.ai.rag.service.RagService;
+import com.ai.rag.utils.Chunker;
+import com.ai.rag.utils.DocumentParser;
+import com.ai.rag.utils.EmbeddingSpec;
+import com.ai.rag.utils.VectorUtils;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 기동 warm-up (rag.warmup.*): readiness 전에 첫 요청이 밟는 경로를 미리 실행
+ * - ApplicationRunner 가 끝나야 ApplicationReadyEvent → readiness ACCEPTING_TRAFFIC 이므로
+ *   /actuator/health/readiness 는 warm-up 이 끝난 뒤에 UP (오토스케일된 노드가 차가운 상태로 트래픽을 받지 않음)
+ * - 파싱: 메모리에서 만든 작은 PDF/DOCX/HWPX 를 DocumentParser 로 (PDFBox/POI/XML 파서 클래스 로딩 + JIT)
+ * - centroid: CentroidIndex.refresh (2단계 검색의 1단계가 첫 요청부터 동작하도록)
+ * - 질문: RagService.warmUp 으로 ask 와 같은 경로 (guardrail, 질문 확장/재작성, 2단계 검색, 세션 후속 질문,
+ *   답변 정규화/검증) 를 Gemini 생성 없이, 응답은 AskView 세 가지 모양으로 Jackson 직렬화
+ *   근거가 있으면 /api/chunks 를 루프백 HTTP 로 한 번 (필터/디스패처/컨트롤러/메시지 컨버터/압축)
+ * - Gemini: models.get 한 번 (연결/TLS/JSON, 생성 호출은 하지 않음)
+ * - 단계별 실패는 경고만 남기고 기동은 계속, exit=true 면 실패한 단계가 있을 때 exit code 1
+ * - exit=true 면 warm-up 후 종료 (CDS 학습 실행: ./gradlew cdsArchive)
+ */
+@Slf4j
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class WarmupRunner implements ApplicationRunner {
+
+    private static final String SAMPLE = "연차 신청 절차는 사내 포털에서 진행하며 승인권자는 팀장이다. 처리 기간은 3일 이내이다.";
+    private static final String QUESTION = "연차 신청 절차는 어떻게 되나요?";
+    private static final String FOLLOW_UP = "연차 승인권자는 누구인가요?";
+
+    private final boolean enabled;
+    private final int iterations;
+    private final boolean gemini;
+    private final boolean exit;
+    private final String tenantId;
+    private final DocumentParser parser;
+    private final RagService service;
+    private final EmbeddingVersions embeddings;
+    private final CentroidIndex centroids;
+    private final GeminiClient geminiClient;
+    private final ObjectMapper objectMapper;
+    private final ApplicationContext context;
+    private final List<String> failed = new ArrayList<>();
+
+    public WarmupRunner(@Value("${rag.warmup.enabled:true}") boolean enabled,
+                        @Value("${rag.warmup.iterations:20}") int iterations,
+                        @Value("${rag.warmup.gemini:true}") boolean gemini,
+                        @Value("${rag.warmup.exit:false}") boolean exit,
+                        @Value("${rag.tenant.default:" + TenantResolver.DEFAULT_TENANT + "}") String tenantId,
+                        DocumentParser parser,
+                        RagService service,
+                        EmbeddingVersions embeddings,
+                        CentroidIndex centroids,
+                        GeminiClient geminiClient,
+                        ObjectMapper objectMapper,
+                        ApplicationContext context) {
+        this.enabled = enabled;
+        this.iterations = Math.max(1, iterations);
+        this.gemini = gemini;
+        this.exit = exit;
+        this.tenantId = tenantId;
+        this.parser = parser;
+        this.service = service;
+        this.embeddings = embeddings;
+        this.centroids = centroids;
+        this.geminiClient = geminiClient;
+        this.objectMapper = objectMapper;
+        this.context = context;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            if (!enabled) return;
+            long start = System.nanoTime();
+            step("parse", this::parse);
+            step("centroids", centroids::refresh);
+            step("ask", this::ask);
+            if (gemini) step("gemini", geminiClient::warmUp);
+            log.info("warm-up 완료. iterations: {}, elapsedMs: {}, failed: {}",
+                    iterations, (System.nanoTime() - start) / 1_000_000, failed);
+        } finally {
+            if (exit) {
+                int code = failed.isEmpty() ? 0 : 1;
+                System.exit(SpringApplication.exit(context, () -> code));
+            }
+        }
+    }
+
+    private void step(String name, Runnable body) {
+        long start = System.nanoTime();
+        try {
+            body.run();
+            log.info("warm-up {} 완료. elapsedMs: {}", name, (System.nanoTime() - start) / 1_000_000);
+        } catch (RuntimeException e) {
+            failed.add(name);
+            log.warn("warm-up {} 실패로 건너뜁니다. error: {}", name, e.toString());
+        }
+    }
+
+    private void parse() {
+        byte[] pdf = pdf();
+        byte[] docx = docx();
+        byte[] hwpx = hwpx();
+        EmbeddingSpec spec = embeddings.active();
+        for (int i = 0; i < iterations; i++) {
+            for (String text : List.of(parser.extract("warmup.pdf", pdf),
+                    parser.extract("warmup.docx", docx),
+                    parser.extract("warmup.hwpx", hwpx))) {
+                for (String chunk : Chunker.chunkByChars(text, 1200, 200)) {
+                    VectorUtils.embed(chunk, spec);
+                }
+            }
+        }
+    }
+
+    /** 새 세션의 첫 질문 → 같은 세션의 후속 질문 (세션 근거 재채점/history 경로) */
+    private void ask() {
+        RagService.AskResponse last = null;
+        for (int i = 0; i < iterations; i++) {
+            RagService.AskResponse first = service.warmUp(tenantId, QUESTION, 5, "");
+            last = service.warmUp(tenantId, FOLLOW_UP, 5, first.sessionId());
+            for (AskView.Mode mode : AskView.Mode.values()) {
+                serialize(AskView.of(first, mode));
+                serialize(AskView.of(last, mode));
+            }
+        }
+        List<RagRepository.ChunkHit> sources = last.sources();
+        Integer port = context.getEnvironment().getProperty("local.server.port", Integer.class);
+        if (!sources.isEmpty() && port != null) {
+            RagRepository.ChunkHit h = sources.get(0);
+            RestClient.create("http://localhost:" + port).get()
+                    .uri("/api/chunks/{ref}", h.documentId() + "-" + h.chunkIndex())
+                    .header(TenantResolver.HEADER, tenantId)
+                    .retrieve()
+                    .body(String.class);
+        }
+    }
+
+    private void serialize(AskView view) {
+        try {
+            objectMapper.writeValueAsBytes(view);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("warm-up 응답 직렬화 실패", e);
+        }
+    }
+
+    private static byte[] pdf() {
+        try (PDDocument doc = new PDDocument(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            PDPage page = new PDPage();
+            doc.addPage(page);
+            // 표준 14 폰트는 한글 글리프가 없으므로 ASCII 만
+            try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                cs.beginText();
+                cs.setFont(new PDType1Font(Standard14Fonts.FontName.HELVETICA), 12);
+                cs.newLineAtOffset(72, 720);
+                cs.showText("Annual leave requests are approved by the team lead within 3 days.");
+                cs.endText();
+            }
+            doc.save(out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("warm-up PDF 생성 실패", e);
+        }
+    }
+
+    private static byte[] docx() {
+        try (XWPFDocument doc = new XWPFDocument(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            doc.createParagraph().createRun().setText(SAMPLE);
+            doc.write(out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("warm-up DOCX 생성 실패", e);
+        }
+    }
+
+    private static byte[] hwpx() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out, StandardCharsets.UTF_8)) {
+            zip.putNextEntry(new ZipEntry("Contents/section0.xml"));
+            zip.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?><hs:sec xmlns:hs=\"urn:hwpx\"><hp:p xmlns:hp=\"urn:hwpx:p\"><hp:t>"
+                    + SAMPLE + "</hp:t></hp:p></hs:sec>").getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        } catch (IOException e) {
+            throw new IllegalStateException("warm-up HWPX 생성 실패", e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,94 @@
+package com.ai.rag.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * 다중 키워드 단일 패스 매칭 (Aho-Corasick)
+ * - 키워드 id = 생성 시 전달한 리스트의 인덱스
+ * - 한 번 만들면 불변이므로 여러 스레드에서 공유 가능
+ */
+public final class AhoCorasick {
+
+    private final List<Map<Character, Integer>> next = new ArrayList<>();
+    private final List<Integer> fail = new ArrayList<>();
+    private final List<int[]> outputs = new ArrayList<>();
+    private final int keywordCount;
+
+    public AhoCorasick(List<String> keywords) {
+        this.keywordCount = keywords.size();
+        newNode();
+
+        List<List<Integer>> out = new ArrayList<>();
+        out.add(new ArrayList<>());
+        for (int id = 0; id < keywords.size(); id++) {
+            String k = keywords.get(id);
+            if (k == null || k.isEmpty()) continue;
+            int node = 0;
+            for (int i = 0; i < k.length(); i++) {
+                Integer child = next.get(node).get(k.charAt(i));
+                if (child == null) {
+                    child = newNode();
+                    next.get(node).put(k.charAt(i), child);
+                    out.add(new ArrayList<>());
+                }
+                node = child;
+            }
+            out.get(node).add(id);
+        }
+
+        // BFS 로 failure link 구성 + 출력 병합
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int child : next.get(0).values()) {
+            fail.set(child, 0);
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (Map.Entry<Character, Integer> e : next.get(node).entrySet()) {
+                int child = e.getValue();
+                int f = fail.get(node);
+                while (f != 0 && !next.get(f).containsKey(e.getKey())) {
+                    f = fail.get(f);
+                }
+                Integer target = next.get(f).get(e.getKey());
+                fail.set(child, target == null || target == child ? 0 : target);
+                out.get(child).addAll(out.get(fail.get(child)));
+                queue.add(child);
+            }
+        }
+        for (List<Integer> ids : out) {
+            outputs.add(ids.stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    /** text 를 한 번 훑어 매칭된 키워드 id 집합을 반환 */
+    public BitSet matches(String text) {
+        BitSet found = new BitSet(keywordCount);
+        if (text == null || text.isEmpty()) return found;
+
+        int node = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            while (node != 0 && !next.get(node).containsKey(c)) {
+                node = fail.get(node);
+            }
+            node = next.get(node).getOrDefault(c, 0);
+            for (int id : outputs.get(node)) {
+                found.set(id);
+            }
+        }
+        return found;
+    }
+
+    private int newNode() {
+        next.add(new HashMap<>());
+        fail.add(0);
+        return next.size() - 1;
+    }
+}
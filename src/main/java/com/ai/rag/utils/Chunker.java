@@ -1,5 +1,7 @@
 package com.ai.rag.utils;
 
+import com.ai.rag.observability.RagEvents;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -11,6 +13,9 @@ public final class Chunker {
         List<String> out = new ArrayList<>();
         if (text == null || text.isBlank()) return out;
 
+        RagEvents.Chunk event = new RagEvents.Chunk();
+        event.begin();
+
         String t = text.replace("\r\n", "\n").trim();
         int i = 0;
         while (i < t.length()) {
@@ -20,6 +25,11 @@ public final class Chunker {
             if (end == t.length()) break;
             i = Math.max(0, end - overlap);
         }
+        if (event.shouldCommit()) {
+            event.chars = text.length();
+            event.chunks = out.size();
+            event.commit();
+        }
         return out;
     }
 }
@@ -1,5 +1,6 @@
 package com.ai.rag.utils;
 
+import com.ai.rag.observability.RagEvents;
 import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
@@ -14,28 +15,69 @@ import org.w3c.dom.NodeList;
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.util.Locale;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 @Component
 public class DocumentParser {
 
+    /** extract(filename, bytes) 가 처리하는 확장자 (txt/md 는 UTF-8 텍스트 그대로) */
+    public static final Set<String> SUPPORTED_EXTENSIONS = Set.of("pdf", "docx", "hwpx", "txt", "md");
+
+    private static final long MAX_HWPX_BYTES = 30L * 1024 * 1024; // 30MB
+
+    /**
+     * 파일 이름의 확장자로 파서를 골라 plain text 추출 (업로드 파일이 아닌 ZIP entry / 디렉토리 파일용)
+     * - 상태가 없어 여러 스레드에서 동시에 호출해도 됨
+     */
+    public String extract(String filename, byte[] data) {
+        if (data == null || data.length == 0) {
+            throw new IllegalArgumentException("파일이 비어있습니다: " + filename);
+        }
+        String ext = extensionOf(filename);
+        return traced(ext, data.length, () -> switch (ext) {
+            case "pdf" -> extractPdf(data, filename);
+            case "docx" -> extractDocx(data, filename);
+            case "hwpx" -> extractHwpx(data, filename);
+            case "txt", "md" -> normalize(new String(data, StandardCharsets.UTF_8));
+            default -> throw new IllegalArgumentException("Unsupported file type: " + filename);
+        });
+    }
+
+    /** 소문자 확장자, 없으면 빈 문자열 */
+    public static String extensionOf(String filename) {
+        int dot = filename.lastIndexOf('.');
+        if (dot == -1 || dot == filename.length() - 1) return "";
+        return filename.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
     /**
      * PDF -> plain text (PDFBox)
      */
     public String extractPdf(MultipartFile file) {
         requireNotEmpty(file);
 
-        try (InputStream in = file.getInputStream();
-             PDDocument doc = Loader.loadPDF(in.readAllBytes())) {
+        try (InputStream in = file.getInputStream()) {
+            byte[] data = in.readAllBytes();
+            return traced("pdf", data.length, () -> extractPdf(data, safeName(file)));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("PDF 파싱 실패: " + safeName(file), e);
+        }
+    }
+
+    private String extractPdf(byte[] data, String name) {
+        try (PDDocument doc = Loader.loadPDF(data)) {
 
             PDFTextStripper stripper = new PDFTextStripper();
             String text = stripper.getText(doc);
             return normalize(text);
 
         } catch (IOException e) {
-            throw new IllegalArgumentException("PDF 파싱 실패: " + safeName(file), e);
+            throw new IllegalArgumentException("PDF 파싱 실패: " + name, e);
         }
     }
 
@@ -45,15 +87,23 @@ public class DocumentParser {
     public String extractDocx(MultipartFile file) {
         requireNotEmpty(file);
 
-        try (InputStream in = file.getInputStream();
-             XWPFDocument doc = new XWPFDocument(in);
+        try (InputStream in = file.getInputStream()) {
+            byte[] data = in.readAllBytes();
+            return traced("docx", data.length, () -> extractDocx(data, safeName(file)));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("DOCX 파싱 실패: " + safeName(file), e);
+        }
+    }
+
+    private String extractDocx(byte[] data, String name) {
+        try (XWPFDocument doc = new XWPFDocument(new ByteArrayInputStream(data));
              XWPFWordExtractor extractor = new XWPFWordExtractor(doc)) {
 
             String text = extractor.getText();
             return normalize(text);
 
         } catch (IOException e) {
-            throw new IllegalArgumentException("DOCX 파싱 실패: " + safeName(file), e);
+            throw new IllegalArgumentException("DOCX 파싱 실패: " + name, e);
         }
     }
 
@@ -66,15 +116,28 @@ public class DocumentParser {
         requireNotEmpty(file);
 
         // 안전장치: 너무 큰 파일은 일단 제한 (원하면 조정)
-        long maxBytes = 30L * 1024 * 1024; // 30MB
-        if (file.getSize() > maxBytes) {
+        if (file.getSize() > MAX_HWPX_BYTES) {
             throw new IllegalArgumentException("HWPX 파일이 너무 큽니다(>30MB): " + safeName(file));
         }
 
+        try (InputStream in = file.getInputStream()) {
+            return traced("hwpx", file.getSize(), () -> extractHwpx(in, safeName(file)));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("HWPX ZIP 처리 실패: " + safeName(file), e);
+        }
+    }
+
+    private String extractHwpx(byte[] data, String name) {
+        if (data.length > MAX_HWPX_BYTES) {
+            throw new IllegalArgumentException("HWPX 파일이 너무 큽니다(>30MB): " + name);
+        }
+        return extractHwpx(new ByteArrayInputStream(data), name);
+    }
+
+    private String extractHwpx(InputStream in, String name) {
         StringBuilder sb = new StringBuilder(32_000);
 
-        try (InputStream in = file.getInputStream();
-             ZipInputStream zis = new ZipInputStream(in, StandardCharsets.UTF_8)) {
+        try (ZipInputStream zis = new ZipInputStream(in, StandardCharsets.UTF_8)) {
 
             ZipEntry entry;
             while ((entry = zis.getNextEntry()) != null) {
@@ -113,12 +176,12 @@ public class DocumentParser {
             text = normalize(text);
 
             if (text.isBlank()) {
-                throw new IllegalArgumentException("HWPX에서 추출된 텍스트가 없습니다: " + safeName(file));
+                throw new IllegalArgumentException("HWPX에서 추출된 텍스트가 없습니다: " + name);
             }
             return text;
 
         } catch (IOException e) {
-            throw new IllegalArgumentException("HWPX ZIP 처리 실패: " + safeName(file), e);
+            throw new IllegalArgumentException("HWPX ZIP 처리 실패: " + name, e);
         }
     }
 
@@ -126,6 +189,25 @@ public class DocumentParser {
     // Helpers
     // -------------------------
 
+    /** 추출 한 번을 JFR Parse 이벤트로 (형식, 입력 크기, 추출 글자 수, 실패 여부) */
+    private static String traced(String format, long bytes, Supplier<String> extractor) {
+        RagEvents.Parse event = new RagEvents.Parse();
+        event.begin();
+        String text = null;
+        try {
+            text = extractor.get();
+            return text;
+        } finally {
+            if (event.shouldCommit()) {
+                event.format = format;
+                event.bytes = bytes;
+                event.chars = text == null ? 0 : text.length();
+                event.failed = text == null;
+                event.commit();
+            }
+        }
+    }
+
     private void requireNotEmpty(MultipartFile file) {
         if (file == null || file.isEmpty()) {
             throw new IllegalArgumentException("업로드 파일이 비어있습니다.");
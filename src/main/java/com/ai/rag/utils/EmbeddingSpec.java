@@ -0,0 +1,30 @@
+package com.ai.rag.utils;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 로컬 해시 임베딩 버전: "hash-v{tokenizer}-{dim}"
+ * - tokenizer 1 : 공백 토큰 (기존 embedLocal)
+ * - tokenizer 2 : 공백 토큰 + 한글 토큰의 글자 bigram (조사가 붙은 어절도 겹치도록)
+ * 버전이 바뀌면 같은 텍스트라도 벡터가 달라지므로 document_chunks 는 버전별로 다시 계산해야 함
+ */
+public record EmbeddingSpec(String version, int tokenizer, int dim) {
+
+    public static final EmbeddingSpec LEGACY = new EmbeddingSpec("hash-v1-768", 1, 768);
+
+    private static final Pattern FORMAT = Pattern.compile("hash-v([12])-(\\d{2,4})");
+
+    public static EmbeddingSpec parse(String version) {
+        Matcher m = FORMAT.matcher(version == null ? "" : version.trim());
+        if (!m.matches()) {
+            throw new IllegalArgumentException("지원하지 않는 임베딩 버전입니다 (hash-v{1|2}-{dim}): " + version);
+        }
+        int dim = Integer.parseInt(m.group(2));
+        if (dim > 2000) {
+            // pgvector HNSW(vector) 최대 차원
+            throw new IllegalArgumentException("임베딩 차원은 2000 이하여야 합니다: " + version);
+        }
+        return new EmbeddingSpec(m.group(0), Integer.parseInt(m.group(1)), dim);
+    }
+}
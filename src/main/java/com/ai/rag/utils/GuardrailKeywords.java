@@ -0,0 +1,29 @@
+package com.ai.rag.utils;
+
+import java.util.List;
+
+/**
+ * InputGuardrail 키워드 클래스별 목록
+ * - 기본값은 코드에 두고, guardrail.keywords-file 로 교체(hot reload) 가능
+ */
+public record GuardrailKeywords(
+        List<String> injection,
+        List<String> selfHarm,
+        List<String> violence,
+        List<String> sexual,
+        List<String> hate
+) {
+    public static GuardrailKeywords defaults() {
+        return new GuardrailKeywords(
+                // Prompt injection-ish
+                List.of("ignore previous", "system prompt", "developer message", "system instruction",
+                        "이전 지시", "시스템 프롬프트", "시스템 지침", "개발자 메시지", "규칙을 무시",
+                        "role:", "### system", "### developer"),
+                // Harmful content (MVP 최소 키워드; 실제론 더 체계적으로)
+                List.of("자살", "자해", "죽고싶", "목숨", "극단적 선택"),
+                List.of("폭탄", "제조법", "만드는 법", "칼로", "살인", "테러"),
+                List.of("성관계", "포르노", "야동", "강간", "성폭행"),
+                List.of("혐오", "박멸", "열등", "죽여", "학살")
+        );
+    }
+}
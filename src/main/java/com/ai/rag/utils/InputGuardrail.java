@@ -1,7 +1,11 @@
 package com.ai.rag.utils;
 import com.ai.rag.dto.GuardrailResult;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public final class InputGuardrail {
@@ -10,24 +14,23 @@ public final class InputGuardrail {
     public static final int MIN_LEN = 4;
     public static final int MAX_LEN = 3000;
 
-    // PII patterns
-    private static final Pattern EMAIL = Pattern.compile("[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}");
-    private static final Pattern PHONE_KR = Pattern.compile("\\b01[016789][- ]?\\d{3,4}[- ]?\\d{4}\\b");
-    private static final Pattern RRN = Pattern.compile("\\b\\d{6}[- ]?\\d{7}\\b"); // 주민번호 형태(단순)
-    private static final Pattern CARD_CANDIDATE = Pattern.compile("\\b(?:\\d[ -]*?){13,19}\\b");
-
-    // Prompt injection-ish
-    private static final String[] INJECTION_TOKENS = {
-            "ignore previous", "system prompt", "developer message", "system instruction",
-            "이전 지시", "시스템 프롬프트", "시스템 지침", "개발자 메시지", "규칙을 무시",
-            "role:", "### system", "### developer"
-    };
-
-    // Harmful content (MVP 최소 키워드; 실제론 더 체계적으로)
-    private static final String[] SELF_HARM = {"자살", "자해", "죽고싶", "목숨", "극단적 선택"};
-    private static final String[] VIOLENCE_GUIDE = {"폭탄", "제조법", "만드는 법", "칼로", "살인", "테러"};
-    private static final String[] SEXUAL = {"성관계", "포르노", "야동", "강간", "성폭행"};
-    private static final String[] HATE = {"혐오", "박멸", "열등", "죽여", "학살"};
+    // 오탐 줄이려고 injection 키워드는 서로 다른 2개 이상 매칭일 때만 block
+    private static final int INJECTION_BLOCK_SCORE = 2;
+
+    // PII patterns: 한 번의 스캔으로 span 을 찾고 한 번에 마스킹 (앞쪽 대안이 우선)
+    private static final Pattern PII = Pattern.compile(
+            "(?<EMAIL>[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,})"
+                    + "|(?<PHONE>\\b01[016789][- ]?\\d{3,4}[- ]?\\d{4}\\b)"
+                    + "|(?<RRN>\\b\\d{6}[- ]?\\d{7}\\b)" // 주민번호 형태(단순)
+                    + "|(?<CARD>\\b(?:\\d[ -]*?){13,19}\\b)");
+    private static final String[] PII_TYPES = {"EMAIL", "PHONE", "RRN", "CARD"};
+
+    private static volatile KeywordEngine engine = new KeywordEngine(GuardrailKeywords.defaults());
+
+    /** 키워드 목록 교체 (재시작 없이 반영) */
+    public static void reload(GuardrailKeywords keywords) {
+        engine = new KeywordEngine(keywords);
+    }
 
     public static GuardrailResult validateAndSanitize(String q) {
         if (q == null) return GuardrailResult.block("question is required");
@@ -36,58 +39,100 @@ public final class InputGuardrail {
         if (trimmed.length() < MIN_LEN) return GuardrailResult.block("질문이 너무 짧습니다. 조금 더 구체적으로 입력해주세요.");
         if (trimmed.length() > MAX_LEN) return GuardrailResult.block("질문이 너무 깁니다. 핵심만 요약해서 다시 입력해주세요.");
 
+        KeywordScore score = engine.score(trimmed);
+
         // 1) Prompt injection block
-        if (looksLikePromptInjection(trimmed)) {
+        if (score.injection() >= INJECTION_BLOCK_SCORE) {
             return GuardrailResult.block("시스템 지침 변경/노출 요청은 처리할 수 없습니다. 문서 관련 질문만 입력해주세요.");
         }
 
         // 2) Harmful content block (MVP 최소)
-        if (containsAny(trimmed, SELF_HARM) || containsAny(trimmed, VIOLENCE_GUIDE)
-                || containsAny(trimmed, SEXUAL) || containsAny(trimmed, HATE)) {
+        if (score.harmful() > 0) {
             return GuardrailResult.block("유해하거나 부적절한 요청은 처리할 수 없습니다.");
         }
 
         // 3) PII sanitize (mask)
-        String sanitized = trimmed;
-        boolean redacted = false;
-
-        if (EMAIL.matcher(sanitized).find()) {
-            sanitized = EMAIL.matcher(sanitized).replaceAll("[REDACTED_EMAIL]");
-            redacted = true;
-        }
-        if (PHONE_KR.matcher(sanitized).find()) {
-            sanitized = PHONE_KR.matcher(sanitized).replaceAll("[REDACTED_PHONE]");
-            redacted = true;
-        }
-        if (RRN.matcher(sanitized).find()) {
-            sanitized = RRN.matcher(sanitized).replaceAll("[REDACTED_RRN]");
-            redacted = true;
-        }
-        if (CARD_CANDIDATE.matcher(sanitized).find()) {
-            sanitized = CARD_CANDIDATE.matcher(sanitized).replaceAll("[REDACTED_CARD]");
-            redacted = true;
+        PiiScan pii = scanPii(trimmed);
+        if (!pii.spans().isEmpty()) {
+            return GuardrailResult.redact(pii.masked(), "입력에서 민감정보를 마스킹했습니다.");
         }
+        return GuardrailResult.allow(trimmed);
+    }
+
+    /** PII span 수집 + 마스킹을 한 번의 매칭 루프로 처리 */
+    public static PiiScan scanPii(String s) {
+        Matcher m = PII.matcher(s);
+        List<PiiSpan> spans = new ArrayList<>();
+        StringBuilder sb = null;
+        int last = 0;
 
-        if (redacted) {
-            return GuardrailResult.redact(sanitized, "입력에서 민감정보를 마스킹했습니다.");
+        while (m.find()) {
+            String type = matchedType(m);
+            if (sb == null) sb = new StringBuilder(s.length());
+            sb.append(s, last, m.start()).append("[REDACTED_").append(type).append(']');
+            spans.add(new PiiSpan(type, m.start(), m.end()));
+            last = m.end();
         }
-        return GuardrailResult.allow(sanitized);
+        if (sb == null) return new PiiScan(s, List.of());
+
+        sb.append(s, last, s.length());
+        return new PiiScan(sb.toString(), spans);
     }
 
-    private static boolean looksLikePromptInjection(String s) {
-        String x = s.toLowerCase(Locale.ROOT);
-        int score = 0;
-        for (String t : INJECTION_TOKENS) {
-            if (x.contains(t.toLowerCase(Locale.ROOT))) score++;
+    private static String matchedType(Matcher m) {
+        for (String type : PII_TYPES) {
+            if (m.start(type) >= 0) return type;
         }
-        // 오탐 줄이려고 2개 이상 매칭일 때만 block
-        return score >= 2;
+        throw new IllegalStateException("unreachable: no PII group matched");
     }
 
-    private static boolean containsAny(String s, String[] tokens) {
-        for (String t : tokens) {
-            if (t != null && !t.isBlank() && s.contains(t)) return true;
+    public record PiiSpan(String type, int start, int end) {}
+
+    public record PiiScan(String masked, List<PiiSpan> spans) {}
+
+    record KeywordScore(int injection, int harmful) {}
+
+    /**
+     * 모든 키워드 클래스를 하나의 automaton 으로 컴파일
+     * - 입력은 한 번만 소문자화, 한 번만 스캔
+     * - 점수 = 클래스별로 매칭된 서로 다른 키워드 수
+     */
+    private static final class KeywordEngine {
+        private static final int INJECTION = 0;
+        private static final int HARMFUL = 1;
+
+        private final AhoCorasick automaton;
+        private final int[] classOf;
+
+        KeywordEngine(GuardrailKeywords keywords) {
+            List<String> all = new ArrayList<>();
+            List<Integer> classes = new ArrayList<>();
+            add(all, classes, keywords.injection(), INJECTION);
+            add(all, classes, keywords.selfHarm(), HARMFUL);
+            add(all, classes, keywords.violence(), HARMFUL);
+            add(all, classes, keywords.sexual(), HARMFUL);
+            add(all, classes, keywords.hate(), HARMFUL);
+
+            this.automaton = new AhoCorasick(all);
+            this.classOf = classes.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        KeywordScore score(String s) {
+            BitSet hits = automaton.matches(s.toLowerCase(Locale.ROOT));
+            int[] counts = new int[2];
+            for (int id = hits.nextSetBit(0); id >= 0; id = hits.nextSetBit(id + 1)) {
+                counts[classOf[id]]++;
+            }
+            return new KeywordScore(counts[INJECTION], counts[HARMFUL]);
+        }
+
+        private static void add(List<String> all, List<Integer> classes, List<String> tokens, int cls) {
+            if (tokens == null) return;
+            for (String t : tokens) {
+                if (t == null || t.isBlank()) continue;
+                all.add(t.toLowerCase(Locale.ROOT));
+                classes.add(cls);
+            }
         }
-        return false;
     }
 }
@@ -0,0 +1,121 @@
+package com.ai.rag.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 검색용 질문 재작성 (한국어 규칙 기반, 로컬)
+ * - 조사/질문 어미를 떼고 질문어("알려줘", "어떻게" 등)를 뺀 키워드 질의
+ * - 키워드마다 동의어로 바꾼 질의 (동의어 그룹은 양방향)
+ * 해시 임베딩은 토큰이 정확히 같아야 같은 차원에 들어가므로 "환불은"/"환불" 같은 차이를 없애는 게 recall 에 직접 도움
+ */
+public final class KoreanQueryRewriter {
+
+    private KoreanQueryRewriter() {}
+
+    /** 긴 것부터 (앞에서부터 처음 맞는 것 하나만 뗌) */
+    private static final List<String> ENDINGS = List.of(
+            "무엇인가요", "습니까", "입니까", "인가요", "있나요", "되나요", "하나요", "한가요", "인지요", "나요", "가요",
+            "에서는", "에게서", "으로는", "이라는", "에서", "에게", "한테", "으로", "부터", "까지", "처럼", "보다",
+            "이나", "이랑", "라는", "은", "는", "이", "가", "을", "를", "에", "의", "도", "만", "로", "와", "과"
+    );
+
+    private static final Set<String> QUESTION_WORDS = Set.of(
+            "무엇", "뭐", "뭐야", "뭔가요", "어떻게", "어떤", "언제", "어디", "왜", "얼마", "얼마나",
+            "알려줘", "알려주세요", "알려", "설명해줘", "설명해주세요", "대해", "대해서", "관련", "관해", "좀", "혹시"
+    );
+
+    /** 기본 동의어 그룹 (rag.expansion.synonyms-file 로 추가) */
+    public static final List<List<String>> DEFAULT_SYNONYMS = List.of(
+            List.of("환불", "반품", "환급"),
+            List.of("배송", "택배", "배달"),
+            List.of("취소", "철회"),
+            List.of("가격", "요금", "비용"),
+            List.of("비밀번호", "암호", "패스워드"),
+            List.of("회원", "사용자", "고객"),
+            List.of("결제", "지불", "납부"),
+            List.of("계약", "약정"),
+            List.of("휴가", "연차"),
+            List.of("급여", "월급", "임금")
+    );
+
+    /** 동의어 그룹 → 단어별 나머지 동의어 */
+    public static Map<String, List<String>> index(List<List<String>> groups) {
+        Map<String, List<String>> out = new HashMap<>();
+        for (List<String> group : groups) {
+            for (String w : group) {
+                List<String> others = group.stream().filter(o -> !o.equals(w)).toList();
+                out.merge(w, others, (a, b) -> {
+                    List<String> merged = new ArrayList<>(a);
+                    b.stream().filter(x -> !merged.contains(x)).forEach(merged::add);
+                    return merged;
+                });
+            }
+        }
+        return out;
+    }
+
+    /** 원문과 다른 재작성 질의 최대 max 개 (키워드 질의 먼저, 그다음 동의어 치환) */
+    public static List<String> rewrite(String question, Map<String, List<String>> synonyms, int max) {
+        if (question == null || question.isBlank() || max <= 0) return List.of();
+        String normalized = question.toLowerCase(Locale.ROOT)
+                .replaceAll("[^0-9a-zA-Z가-힣\\s]", " ")
+                .replaceAll("\\s+", " ")
+                .trim();
+        if (normalized.isEmpty()) return List.of();
+
+        List<String> tokens = new ArrayList<>();
+        for (String t : normalized.split(" ")) {
+            if (!QUESTION_WORDS.contains(t)) tokens.add(t);
+        }
+        // 끝의 서술어("하나요", "걸리나요") 는 검색어가 아님 (키워드가 하나뿐이면 유지)
+        if (tokens.size() >= 2 && isPredicate(tokens.get(tokens.size() - 1))) {
+            tokens.remove(tokens.size() - 1);
+        }
+        List<String> keywords = new ArrayList<>();
+        for (String t : tokens) {
+            String stem = stem(t);
+            if (!QUESTION_WORDS.contains(stem)) keywords.add(stem);
+        }
+        if (keywords.isEmpty()) return List.of();
+
+        Set<String> out = new LinkedHashSet<>();
+        out.add(String.join(" ", keywords));
+        for (int i = 0; i < keywords.size() && out.size() < max + 1; i++) {
+            for (String syn : synonyms.getOrDefault(keywords.get(i), List.of())) {
+                if (keywords.contains(syn)) continue;
+                List<String> replaced = new ArrayList<>(keywords);
+                replaced.set(i, syn);
+                out.add(String.join(" ", replaced));
+                if (out.size() >= max + 1) break;
+            }
+        }
+        out.remove(normalized);
+        return out.stream().limit(max).toList();
+    }
+
+    /** 한글 토큰 끝의 조사/어미 하나를 뗌, 남는 어간이 2글자 미만이면 그대로 */
+    static String stem(String token) {
+        if (token.isEmpty() || !isHangul(token.charAt(token.length() - 1))) return token;
+        for (String e : ENDINGS) {
+            if (token.endsWith(e) && token.length() - e.length() >= 2) {
+                return token.substring(0, token.length() - e.length());
+            }
+        }
+        return token;
+    }
+
+    private static boolean isPredicate(String token) {
+        char last = token.charAt(token.length() - 1);
+        return last == '요' || last == '까' || last == '니' || last == '냐' || last == '줘' || last == '죠';
+    }
+
+    private static boolean isHangul(char c) {
+        return c >= '가' && c <= '힣';
+    }
+}
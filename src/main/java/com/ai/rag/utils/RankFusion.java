@@ -0,0 +1,36 @@
+package com.ai.rag.utils;
+
+import com.ai.rag.repository.RagRepository;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reciprocal Rank Fusion: 여러 검색 결과 순위를 score = Σ 1 / (k + rank) 로 합침
+ * - 서로 다른 질의 벡터의 distance 는 직접 비교할 수 없어서 순위만 사용
+ * - 같은 chunk 는 하나로, distance/similarity 는 가장 가까웠던 leg 의 값
+ */
+public final class RankFusion {
+
+    private RankFusion() {}
+
+    public static List<RagRepository.ChunkHit> rrf(List<List<RagRepository.ChunkHit>> lists, int k) {
+        Map<String, Double> score = new HashMap<>();
+        Map<String, RagRepository.ChunkHit> best = new HashMap<>();
+        for (List<RagRepository.ChunkHit> list : lists) {
+            for (int rank = 0; rank < list.size(); rank++) {
+                RagRepository.ChunkHit h = list.get(rank);
+                String key = h.documentId() + "_" + h.chunkIndex();
+                score.merge(key, 1.0 / (k + rank + 1), Double::sum);
+                best.merge(key, h, (a, b) -> a.distance() <= b.distance() ? a : b);
+            }
+        }
+        return best.entrySet().stream()
+                .sorted(Comparator.<Map.Entry<String, RagRepository.ChunkHit>>comparingDouble(e -> -score.get(e.getKey()))
+                        .thenComparingDouble(e -> e.getValue().distance()))
+                .map(Map.Entry::getValue)
+                .toList();
+    }
+}
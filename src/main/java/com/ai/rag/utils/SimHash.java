@@ -0,0 +1,78 @@
+package com.ai.rag.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * 64bit SimHash (near-duplicate chunk 판별용)
+ * - 토큰 3-gram shingle 을 FNV-1a 64 로 해시해서 비트별 다수결
+ * - 문장 몇 단어만 다른 chunk 는 Hamming 거리가 작게 나옴
+ * - LSH: 64bit 를 16bit 밴드 4개로 나누면 거리 3 이하인 쌍은 적어도 한 밴드가 같음 (비둘기집)
+ */
+public final class SimHash {
+
+    public static final int BANDS = 4;
+    public static final int BAND_BITS = 64 / BANDS;
+
+    private static final int SHINGLE = 3;
+
+    private SimHash() {}
+
+    /** 정규화 후 토큰 수 (너무 짧은 chunk 는 서명이 불안정해서 판별에서 제외할 때 사용) */
+    public static int tokenCount(String text) {
+        String n = normalize(text);
+        return n.isEmpty() ? 0 : n.split(" ").length;
+    }
+
+    public static long of(String text) {
+        String n = normalize(text);
+        if (n.isEmpty()) return 0L;
+        String[] tokens = n.split(" ");
+
+        int[] votes = new int[64];
+        int shingles = Math.max(1, tokens.length - SHINGLE + 1);
+        for (int i = 0; i < shingles; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = i; j < Math.min(tokens.length, i + SHINGLE); j++) {
+                if (j > i) sb.append(' ');
+                sb.append(tokens[j]);
+            }
+            long h = fnv1a64(sb.toString());
+            for (int b = 0; b < 64; b++) {
+                votes[b] += ((h >>> b) & 1L) != 0 ? 1 : -1;
+            }
+        }
+
+        long out = 0L;
+        for (int b = 0; b < 64; b++) {
+            if (votes[b] > 0) out |= 1L << b;
+        }
+        return out;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /** band 0 이 최상위 16bit (SQL 의 (simhash >> 48) & 65535 와 같은 값) */
+    public static int band(long hash, int band) {
+        return (int) ((hash >>> (64 - BAND_BITS * (band + 1))) & ((1L << BAND_BITS) - 1));
+    }
+
+    private static String normalize(String text) {
+        if (text == null) return "";
+        return text.toLowerCase(Locale.ROOT)
+                .replaceAll("[^0-9a-zA-Z가-힣\\s]", " ")
+                .replaceAll("\\s+", " ")
+                .trim();
+    }
+
+    private static long fnv1a64(String s) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,505 @@
+package com.ai.rag.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * 코퍼스 스냅샷 바이너리 포맷 (노드 부트스트랩 / 야간 delta 용, SnapshotService)
+ *
+ * <pre>
+ * file     := header segment* end
+ * header   := "RAGSNAP1" | u16 formatVersion | i32 length | headerBody | i32 crc32c(headerBody)
+ *             (headerBody 는 watermark 를 나중에 덮어쓸 수 있게 0 으로 채운 고정 크기)
+ * segment  := u8 type | i32 rows | i64 length | i32 crc32c(payload) | payload
+ * end      := u8 0xFF | i32 rows(=segment 수) | i64 0 | i32 0
+ * payload  := column*           (column := i32 length | bytes, 컬럼 단위로 건너뛸 수 있음)
+ * </pre>
+ * - 모든 정수는 big-endian, 문자열은 UTF-8
+ * - 컬럼 인코딩: 고정폭 값은 행 수만큼 연속, 문자열은 i32 길이(null = -1) 배열 뒤에 바이트,
+ *   nullable 값은 presence 비트맵 뒤에 있는 값만, 벡터는 presence 비트맵 뒤에 float32 * dim
+ * - 읽기는 segment 단위로 mmap 해서 CRC 검증 후 디코딩 (파일 전체를 힙에 올리지 않음)
+ * - end segment 가 없으면 쓰다 만 파일로 보고 거부
+ */
+public final class SnapshotFormat {
+
+    /** 2: watermark 가 시각(micros) 대신 pg_snapshot 문자열 */
+    public static final int FORMAT_VERSION = 2;
+
+    public static final byte DOCUMENTS = 1;
+    public static final byte CHUNKS = 2;
+    public static final byte TOMBSTONES = 3;
+    private static final byte END = (byte) 0xFF;
+
+    private static final byte[] MAGIC = "RAGSNAP1".getBytes(StandardCharsets.US_ASCII);
+    private static final int SEGMENT_HEADER_BYTES = 1 + 4 + 8 + 4;
+    // pg_snapshot 문자열은 진행 중인 트랜잭션 수만큼 길어짐 (xid 하나에 최대 21 bytes, max_connections 수백 기준)
+    private static final int HEADER_BYTES_PER_SHARD = 16 * 1024;
+
+    private SnapshotFormat() {}
+
+    /**
+     * since: delta 면 이 pg_snapshot 에서 보이지 않던 변경분 (full 이면 null), until: export 가 읽은 snapshot = 다음 delta 의 since
+     * 커밋 순서 기준이라 export 중에 진행 중이던 트랜잭션이 늦게 커밋해도 다음 delta 에 실림 (CommitOrder)
+     * shard 마다 xid 가 다르므로 shard 단위로 기록
+     */
+    public record Watermark(int shard, String since, String until) {}
+
+    public record Header(long createdAtMillis, String embeddingVersion, int dim, List<Watermark> watermarks) {
+        public boolean delta() {
+            return watermarks.stream().anyMatch(w -> w.since() != null);
+        }
+    }
+
+    public record DocumentRow(
+            long id,
+            String tenantId,
+            String title,
+            List<String> tags,
+            String owner,
+            String sourceType,
+            long createdAtMicros,
+            String centroidVersion,
+            float[] centroid
+    ) {}
+
+    public record ChunkRow(
+            long documentId,
+            int chunkIndex,
+            String tenantId,
+            String content,
+            String embeddingVersion,
+            float[] embedding,
+            Long simhash,
+            Long canonicalDocumentId,
+            Integer canonicalChunkIndex
+    ) {}
+
+    public record Tombstone(long documentId, String tenantId) {}
+
+    public record Segment(byte type, int rows, ByteBuffer payload) {}
+
+    // =====================================================================
+    // Writer
+    // =====================================================================
+
+    public static final class Writer implements Closeable {
+
+        private final FileChannel ch;
+        private final int dim;
+        private final int headerBytes;
+        private int segments;
+
+        public Writer(Path path, Header header) throws IOException {
+            this.ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            this.dim = header.dim();
+            ByteBuffer h = encodeHeader(header, 256 + header.watermarks().size() * HEADER_BYTES_PER_SHARD);
+            this.headerBytes = h.remaining();
+            writeFully(h);
+        }
+
+        /**
+         * 헤더를 제자리에서 덮어씀 (워터마크는 본문을 다 쓴 뒤에야 정해지므로)
+         * 처음 쓸 때 shard 수만큼 자리를 잡아두고 같은 크기로 채움
+         */
+        public void header(Header header) throws IOException {
+            if (header.dim() != dim) {
+                throw new IllegalArgumentException("헤더 차원이 처음과 다릅니다: " + header.dim() + " != " + dim);
+            }
+            ByteBuffer h = encodeHeader(header, headerBytes - (MAGIC.length + 2 + 4 + 4));
+            long at = 0;
+            while (h.hasRemaining()) at += ch.write(h, at);
+        }
+
+        private static ByteBuffer encodeHeader(Header header, int bodyBytes) throws IOException {
+            Columns body = new Columns();
+            body.out.writeLong(header.createdAtMillis());
+            body.string(header.embeddingVersion());
+            body.out.writeInt(header.dim());
+            body.out.writeInt(header.watermarks().size());
+            for (Watermark w : header.watermarks()) {
+                body.out.writeInt(w.shard());
+                body.string(w.since());
+                body.string(w.until());
+            }
+            byte[] encoded = body.bytes();
+            if (encoded.length > bodyBytes) {
+                throw new IllegalStateException("스냅샷 헤더가 잡아둔 크기를 넘습니다: " + encoded.length + " > " + bodyBytes);
+            }
+            byte[] b = Arrays.copyOf(encoded, bodyBytes);
+
+            ByteBuffer buf = ByteBuffer.allocate(MAGIC.length + 2 + 4 + b.length + 4);
+            buf.put(MAGIC).putShort((short) FORMAT_VERSION).putInt(b.length).put(b).putInt(crc(ByteBuffer.wrap(b)));
+            return buf.flip();
+        }
+
+        public void documents(List<DocumentRow> rows) throws IOException {
+            if (rows.isEmpty()) return;
+            int n = rows.size();
+            Columns id = new Columns(), tenant = new Columns(), title = new Columns(), tagCount = new Columns(),
+                    tags = new Columns(), owner = new Columns(), source = new Columns(), created = new Columns(),
+                    centroidVersion = new Columns(), centroid = new Columns();
+
+            List<String> allTags = new ArrayList<>();
+            for (DocumentRow r : rows) {
+                id.out.writeLong(r.id());
+                created.out.writeLong(r.createdAtMicros());
+                tagCount.out.writeInt(r.tags().size());
+                allTags.addAll(r.tags());
+            }
+            tenant.strings(rows.stream().map(DocumentRow::tenantId).toList());
+            title.strings(rows.stream().map(DocumentRow::title).toList());
+            tags.strings(allTags);
+            owner.strings(rows.stream().map(DocumentRow::owner).toList());
+            source.strings(rows.stream().map(DocumentRow::sourceType).toList());
+            centroidVersion.strings(rows.stream().map(DocumentRow::centroidVersion).toList());
+            centroid.vectors(rows.stream().map(DocumentRow::centroid).toList(), dim);
+
+            segment(DOCUMENTS, n, id, tenant, title, tagCount, tags, owner, source, created, centroidVersion, centroid);
+        }
+
+        public void chunks(List<ChunkRow> rows) throws IOException {
+            if (rows.isEmpty()) return;
+            int n = rows.size();
+            Columns docId = new Columns(), idx = new Columns(), tenant = new Columns(), content = new Columns(),
+                    version = new Columns(), embedding = new Columns(), simhash = new Columns(),
+                    canonicalDoc = new Columns(), canonicalIdx = new Columns();
+
+            for (ChunkRow r : rows) {
+                docId.out.writeLong(r.documentId());
+                idx.out.writeInt(r.chunkIndex());
+            }
+            tenant.strings(rows.stream().map(ChunkRow::tenantId).toList());
+            content.strings(rows.stream().map(ChunkRow::content).toList());
+            version.strings(rows.stream().map(ChunkRow::embeddingVersion).toList());
+            embedding.vectors(rows.stream().map(ChunkRow::embedding).toList(), dim);
+            simhash.nullableLongs(rows.stream().map(ChunkRow::simhash).toList());
+            canonicalDoc.nullableLongs(rows.stream().map(ChunkRow::canonicalDocumentId).toList());
+            canonicalIdx.nullableLongs(rows.stream().map(r -> r.canonicalChunkIndex() == null ? null : (long) r.canonicalChunkIndex()).toList());
+
+            segment(CHUNKS, n, docId, idx, tenant, content, version, embedding, simhash, canonicalDoc, canonicalIdx);
+        }
+
+        public void tombstones(List<Tombstone> rows) throws IOException {
+            if (rows.isEmpty()) return;
+            Columns id = new Columns(), tenant = new Columns();
+            for (Tombstone t : rows) id.out.writeLong(t.documentId());
+            tenant.strings(rows.stream().map(Tombstone::tenantId).toList());
+            segment(TOMBSTONES, rows.size(), id, tenant);
+        }
+
+        private void segment(byte type, int rows, Columns... columns) throws IOException {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(payload);
+            for (Columns c : columns) {
+                byte[] b = c.bytes();
+                out.writeInt(b.length);
+                out.write(b);
+            }
+            byte[] p = payload.toByteArray();
+
+            ByteBuffer head = ByteBuffer.allocate(SEGMENT_HEADER_BYTES);
+            head.put(type).putInt(rows).putLong(p.length).putInt(crc(ByteBuffer.wrap(p)));
+            writeFully(head.flip());
+            writeFully(ByteBuffer.wrap(p));
+            segments++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                ByteBuffer end = ByteBuffer.allocate(SEGMENT_HEADER_BYTES);
+                end.put(END).putInt(segments).putLong(0).putInt(0);
+                writeFully(end.flip());
+                ch.force(true);
+            } finally {
+                ch.close();
+            }
+        }
+
+        private void writeFully(ByteBuffer buf) throws IOException {
+            while (buf.hasRemaining()) ch.write(buf);
+        }
+    }
+
+    /** 컬럼 하나를 만드는 버퍼 */
+    private static final class Columns {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        byte[] bytes() {
+            return bytes.toByteArray();
+        }
+
+        void string(String s) throws IOException {
+            strings(Collections.singletonList(s));
+        }
+
+        void strings(List<String> values) throws IOException {
+            List<byte[]> encoded = new ArrayList<>(values.size());
+            for (String v : values) {
+                byte[] b = v == null ? null : v.getBytes(StandardCharsets.UTF_8);
+                encoded.add(b);
+                out.writeInt(b == null ? -1 : b.length);
+            }
+            for (byte[] b : encoded) {
+                if (b != null) out.write(b);
+            }
+        }
+
+        void nullableLongs(List<Long> values) throws IOException {
+            presence(values.stream().map(v -> v != null).toList());
+            for (Long v : values) {
+                if (v != null) out.writeLong(v);
+            }
+        }
+
+        void vectors(List<float[]> values, int dim) throws IOException {
+            presence(values.stream().map(v -> v != null).toList());
+            for (float[] v : values) {
+                if (v == null) continue;
+                if (v.length != dim) {
+                    throw new IllegalArgumentException("벡터 차원이 스냅샷 차원과 다릅니다: " + v.length + " != " + dim);
+                }
+                for (float f : v) out.writeFloat(f);
+            }
+        }
+
+        private void presence(List<Boolean> present) throws IOException {
+            byte[] bitmap = new byte[(present.size() + 7) / 8];
+            for (int i = 0; i < present.size(); i++) {
+                if (present.get(i)) bitmap[i >>> 3] |= (byte) (1 << (i & 7));
+            }
+            out.write(bitmap);
+        }
+    }
+
+    // =====================================================================
+    // Reader
+    // =====================================================================
+
+    public static final class Reader implements Closeable {
+
+        private final Path path;
+        private final FileChannel ch;
+        private final Header header;
+        private long pos;
+        private int segments;
+
+        public Reader(Path path) throws IOException {
+            this.path = path;
+            this.ch = FileChannel.open(path, StandardOpenOption.READ);
+
+            ByteBuffer head = read(0, MAGIC.length + 2 + 4);
+            byte[] magic = new byte[MAGIC.length];
+            head.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                ch.close();
+                throw new IOException("스냅샷 파일이 아닙니다: " + path);
+            }
+            int version = Short.toUnsignedInt(head.getShort());
+            if (version != FORMAT_VERSION) {
+                ch.close();
+                throw new IOException("지원하지 않는 스냅샷 포맷 버전입니다: " + version);
+            }
+            int len = head.getInt();
+            ByteBuffer body = read(head.capacity(), len + 4);
+            ByteBuffer bodyOnly = body.slice(0, len);
+            if (crc(bodyOnly.duplicate()) != body.getInt(len)) {
+                ch.close();
+                throw new IOException("스냅샷 헤더 checksum 불일치: " + path);
+            }
+
+            long createdAt = bodyOnly.getLong();
+            String embeddingVersion = string(bodyOnly);
+            int dim = bodyOnly.getInt();
+            int n = bodyOnly.getInt();
+            List<Watermark> watermarks = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                int shard = bodyOnly.getInt();
+                String since = string(bodyOnly);
+                watermarks.add(new Watermark(shard, since, string(bodyOnly)));
+            }
+            this.header = new Header(createdAt, embeddingVersion, dim, List.copyOf(watermarks));
+            this.pos = head.capacity() + len + 4L;
+        }
+
+        public Header header() {
+            return header;
+        }
+
+        /** 다음 segment (끝이면 null). payload 는 mmap 영역이라 다음 호출 전에 디코딩해서 써야 함 */
+        public Segment next() throws IOException {
+            if (pos + SEGMENT_HEADER_BYTES > ch.size()) {
+                throw new IOException("스냅샷이 완전하지 않습니다(end segment 없음): " + path);
+            }
+            ByteBuffer head = read(pos, SEGMENT_HEADER_BYTES);
+            byte type = head.get();
+            int rows = head.getInt();
+            long len = head.getLong();
+            int crc = head.getInt();
+            if (type == END) {
+                if (rows != segments) {
+                    throw new IOException("segment 수가 맞지 않습니다: " + segments + " != " + rows);
+                }
+                return null;
+            }
+            if (len > Integer.MAX_VALUE || pos + SEGMENT_HEADER_BYTES + len > ch.size()) {
+                throw new IOException("segment 길이가 잘못되었습니다: " + len);
+            }
+
+            MappedByteBuffer payload = ch.map(FileChannel.MapMode.READ_ONLY, pos + SEGMENT_HEADER_BYTES, len);
+            if (crc(payload.duplicate()) != crc) {
+                throw new IOException("segment checksum 불일치 (offset " + pos + "): " + path);
+            }
+            pos += SEGMENT_HEADER_BYTES + len;
+            segments++;
+            return new Segment(type, rows, payload);
+        }
+
+        public List<DocumentRow> documents(Segment s) {
+            int n = s.rows();
+            ByteBuffer p = s.payload().duplicate();
+            ByteBuffer id = column(p), tenant = column(p), title = column(p), tagCount = column(p), tags = column(p),
+                    owner = column(p), source = column(p), created = column(p), centroidVersion = column(p), centroid = column(p);
+
+            List<String> tenants = strings(tenant, n), titles = strings(title, n), owners = strings(owner, n),
+                    sources = strings(source, n), versions = strings(centroidVersion, n);
+            int[] counts = new int[n];
+            int totalTags = 0;
+            for (int i = 0; i < n; i++) totalTags += counts[i] = tagCount.getInt();
+            List<String> flatTags = strings(tags, totalTags);
+            List<float[]> centroids = vectors(centroid, n, header.dim());
+
+            List<DocumentRow> out = new ArrayList<>(n);
+            int t = 0;
+            for (int i = 0; i < n; i++) {
+                List<String> docTags = flatTags.subList(t, t + counts[i]);
+                t += counts[i];
+                out.add(new DocumentRow(id.getLong(), tenants.get(i), titles.get(i), List.copyOf(docTags),
+                        owners.get(i), sources.get(i), created.getLong(), versions.get(i), centroids.get(i)));
+            }
+            return out;
+        }
+
+        public List<ChunkRow> chunks(Segment s) {
+            int n = s.rows();
+            ByteBuffer p = s.payload().duplicate();
+            ByteBuffer docId = column(p), idx = column(p), tenant = column(p), content = column(p), version = column(p),
+                    embedding = column(p), simhash = column(p), canonicalDoc = column(p), canonicalIdx = column(p);
+
+            List<String> tenants = strings(tenant, n), contents = strings(content, n), versions = strings(version, n);
+            List<float[]> vectors = vectors(embedding, n, header.dim());
+            List<Long> hashes = nullableLongs(simhash, n), canonDocs = nullableLongs(canonicalDoc, n), canonIdx = nullableLongs(canonicalIdx, n);
+
+            List<ChunkRow> out = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                out.add(new ChunkRow(docId.getLong(), idx.getInt(), tenants.get(i), contents.get(i), versions.get(i),
+                        vectors.get(i), hashes.get(i), canonDocs.get(i),
+                        canonIdx.get(i) == null ? null : canonIdx.get(i).intValue()));
+            }
+            return out;
+        }
+
+        public List<Tombstone> tombstones(Segment s) {
+            int n = s.rows();
+            ByteBuffer p = s.payload().duplicate();
+            ByteBuffer id = column(p), tenant = column(p);
+            List<String> tenants = strings(tenant, n);
+            List<Tombstone> out = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) out.add(new Tombstone(id.getLong(), tenants.get(i)));
+            return out;
+        }
+
+        @Override
+        public void close() throws IOException {
+            ch.close();
+        }
+
+        private ByteBuffer read(long at, int len) throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(len);
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, at + buf.position()) < 0) {
+                    throw new IOException("스냅샷 파일이 잘려 있습니다: " + path);
+                }
+            }
+            return buf.flip();
+        }
+
+        private static ByteBuffer column(ByteBuffer p) {
+            int len = p.getInt();
+            ByteBuffer c = p.slice(p.position(), len);
+            p.position(p.position() + len);
+            return c;
+        }
+
+        private static String string(ByteBuffer b) {
+            return strings(b, 1).get(0);
+        }
+
+        private static List<String> strings(ByteBuffer c, int n) {
+            int[] lens = new int[n];
+            for (int i = 0; i < n; i++) lens[i] = c.getInt();
+            List<String> out = new ArrayList<>(n);
+            for (int len : lens) {
+                if (len < 0) {
+                    out.add(null);
+                    continue;
+                }
+                byte[] b = new byte[len];
+                c.get(b);
+                out.add(new String(b, StandardCharsets.UTF_8));
+            }
+            return out;
+        }
+
+        private static boolean[] presence(ByteBuffer c, int n) {
+            byte[] bitmap = new byte[(n + 7) / 8];
+            c.get(bitmap);
+            boolean[] out = new boolean[n];
+            for (int i = 0; i < n; i++) out[i] = (bitmap[i >>> 3] & (1 << (i & 7))) != 0;
+            return out;
+        }
+
+        private static List<Long> nullableLongs(ByteBuffer c, int n) {
+            boolean[] present = presence(c, n);
+            List<Long> out = new ArrayList<>(n);
+            for (boolean p : present) out.add(p ? c.getLong() : null);
+            return out;
+        }
+
+        private static List<float[]> vectors(ByteBuffer c, int n, int dim) {
+            boolean[] present = presence(c, n);
+            List<float[]> out = new ArrayList<>(n);
+            for (boolean p : present) {
+                if (!p) {
+                    out.add(null);
+                    continue;
+                }
+                float[] v = new float[dim];
+                c.asFloatBuffer().get(v);
+                c.position(c.position() + dim * Float.BYTES);
+                out.add(v);
+            }
+            return out;
+        }
+    }
+
+    private static int crc(ByteBuffer buf) {
+        CRC32C crc = new CRC32C();
+        crc.update(buf);
+        return (int) crc.getValue();
+    }
+}
@@ -5,12 +5,18 @@ import java.util.Locale;
 
 public final class VectorUtils {
 
-    public static final int DIM = 768;
+    /** 기존(hash-v1-768) 차원. 현재 사용 중인 버전은 EmbeddingVersions.active() 참고 */
+    public static final int DIM = EmbeddingSpec.LEGACY.dim();
 
     private VectorUtils() {}
 
+    /** 기존 hash-v1-768 임베딩 */
     public static double[] embedLocal(String text) {
-        double[] v = new double[DIM];
+        return embed(text, EmbeddingSpec.LEGACY);
+    }
+
+    public static double[] embed(String text, EmbeddingSpec spec) {
+        double[] v = new double[spec.dim()];
         if (text == null || text.isBlank()) return v;
 
         String normalized = text.toLowerCase(Locale.ROOT)
@@ -23,8 +29,14 @@ public final class VectorUtils {
         String[] tokens = normalized.split(" ");
         for (String t : tokens) {
             if (t.isBlank()) continue;
-            int idx = positiveMod(fnv1a32(t), DIM);
+            int idx = positiveMod(fnv1a32(t), spec.dim());
             v[idx] += 1.0;
+
+            if (spec.tokenizer() >= 2 && t.length() > 2 && isHangul(t.charAt(0))) {
+                for (int i = 0; i + 2 <= t.length(); i++) {
+                    v[positiveMod(fnv1a32("#" + t.substring(i, i + 2)), spec.dim())] += 0.5;
+                }
+            }
         }
 
         double norm = 0.0;
@@ -56,6 +68,10 @@ public final class VectorUtils {
         return hash;
     }
 
+    private static boolean isHangul(char c) {
+        return c >= '가' && c <= '힣';
+    }
+
     private static int positiveMod(int x, int mod) {
         int r = x % mod;
         return r < 0 ? r + mod : r;
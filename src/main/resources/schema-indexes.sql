@@ -0,0 +1,49 @@
+-- 인덱스: SchemaMigration 이 schema.sql 다음에 모든 shard 에 CREATE INDEX CONCURRENTLY 로 생성 (쓰기를 막지 않음)
+-- 한 문장에 인덱스 하나, "CREATE [UNIQUE] INDEX IF NOT EXISTS <이름> ON <테이블> <나머지>" 형식만 (SchemaMigration 이 파싱)
+-- 파티션 테이블(document_chunks)은 부모에 ON ONLY 로 만든 뒤 파티션마다 CONCURRENTLY + ATTACH PARTITION
+-- 이후 생성되는 파티션(TenantPartitions)에는 부모 인덱스에서 자동으로 만들어짐
+-- 전체 테이블 ANN 인덱스는 rag.vector.storage 에 따라 SchemaMigration 이 같은 방식으로 생성 (full / halfvec / binary)
+
+-- ---------- tenant ----------
+CREATE INDEX IF NOT EXISTS documents_tenant_id ON documents (tenant_id);
+
+-- ---------- embedding version ----------
+CREATE UNIQUE INDEX IF NOT EXISTS embedding_versions_one_active    ON embedding_versions (state) WHERE state = 'active';
+CREATE UNIQUE INDEX IF NOT EXISTS embedding_versions_one_migrating ON embedding_versions (state) WHERE state = 'migrating';
+-- 재임베딩 버전은 migrating → dual-read 로 진행, 둘을 합쳐 하나만
+CREATE UNIQUE INDEX IF NOT EXISTS embedding_versions_one_pending   ON embedding_versions ((state IN ('migrating', 'dual-read'))) WHERE state IN ('migrating', 'dual-read');
+
+-- ---------- snapshot (SnapshotService) ----------
+CREATE INDEX IF NOT EXISTS documents_updated_at ON documents (updated_at);
+CREATE INDEX IF NOT EXISTS documents_change_xid ON documents (change_xid);
+CREATE INDEX IF NOT EXISTS document_tombstones_deleted_at ON document_tombstones (deleted_at);
+CREATE INDEX IF NOT EXISTS document_tombstones_change_xid ON document_tombstones (change_xid);
+
+-- ---------- document_chunks ----------
+-- source_type 은 값 종류가 적고 자주 단독 필터로 쓰이므로 partial ANN 인덱스
+CREATE INDEX IF NOT EXISTS document_chunks_embedding_hnsw_pdf
+    ON document_chunks USING hnsw (embedding vector_cosine_ops) WHERE source_type = 'pdf';
+CREATE INDEX IF NOT EXISTS document_chunks_embedding_hnsw_docx
+    ON document_chunks USING hnsw (embedding vector_cosine_ops) WHERE source_type = 'docx';
+CREATE INDEX IF NOT EXISTS document_chunks_embedding_hnsw_hwpx
+    ON document_chunks USING hnsw (embedding vector_cosine_ops) WHERE source_type = 'hwpx';
+
+-- 선택도가 높은 필터는 일반 인덱스로 먼저 좁힌 뒤 정확 거리 계산
+CREATE INDEX IF NOT EXISTS document_chunks_tags_gin       ON document_chunks USING gin (tags);
+CREATE INDEX IF NOT EXISTS document_chunks_owner_created  ON document_chunks (owner, created_at);
+CREATE INDEX IF NOT EXISTS document_chunks_created_at     ON document_chunks (created_at);
+CREATE INDEX IF NOT EXISTS document_chunks_document_id    ON document_chunks (document_id, chunk_index);
+CREATE INDEX IF NOT EXISTS document_chunks_tenant_id      ON document_chunks (tenant_id);
+
+-- SimHash 16bit 밴드별 식 인덱스 (canonical 만), 조회 쿼리의 식/조건과 같아야 함
+CREATE INDEX IF NOT EXISTS document_chunks_simhash_b0 ON document_chunks (((simhash >> 48) & 65535))
+    WHERE simhash IS NOT NULL AND canonical_document_id IS NULL;
+CREATE INDEX IF NOT EXISTS document_chunks_simhash_b1 ON document_chunks (((simhash >> 32) & 65535))
+    WHERE simhash IS NOT NULL AND canonical_document_id IS NULL;
+CREATE INDEX IF NOT EXISTS document_chunks_simhash_b2 ON document_chunks (((simhash >> 16) & 65535))
+    WHERE simhash IS NOT NULL AND canonical_document_id IS NULL;
+CREATE INDEX IF NOT EXISTS document_chunks_simhash_b3 ON document_chunks ((simhash & 65535))
+    WHERE simhash IS NOT NULL AND canonical_document_id IS NULL;
+-- canonical 문서 삭제 시 참조하던 중복 chunk 의 참조 정리
+CREATE INDEX IF NOT EXISTS document_chunks_canonical ON document_chunks (canonical_document_id)
+    WHERE canonical_document_id IS NOT NULL;
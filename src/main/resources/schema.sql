@@ -0,0 +1,106 @@
+-- 테이블/컬럼/함수: 배포 전에 SchemaMigration (--spring.profiles.active=migrate) 이 모든 shard 에 적용
+-- 다시 실행해도 되도록 전부 멱등(IF NOT EXISTS)으로 작성, 인덱스는 schema-indexes.sql (CONCURRENTLY 로 생성)
+
+CREATE EXTENSION IF NOT EXISTS vector;
+
+CREATE TABLE IF NOT EXISTS documents (
+    id          BIGSERIAL PRIMARY KEY,
+    title       TEXT NOT NULL
+);
+
+-- tenant 별 LIST 파티션 (DEFAULT 파티션은 SchemaMigration, tenant 파티션은 TenantPartitions 가 생성)
+-- 파티션 키가 PK 에 포함되어야 하므로 (tenant_id, id)
+CREATE TABLE IF NOT EXISTS document_chunks (
+    id          BIGSERIAL,
+    tenant_id   TEXT NOT NULL DEFAULT 'default',
+    document_id BIGINT NOT NULL REFERENCES documents(id) ON DELETE CASCADE,
+    chunk_index INT NOT NULL,
+    content     TEXT NOT NULL,
+    embedding   vector(768) NOT NULL,
+    PRIMARY KEY (tenant_id, id)
+) PARTITION BY LIST (tenant_id);
+
+-- ---------- tenant ----------
+-- 파티셔닝 이전에 만들어진 테이블은 컬럼을 추가한 뒤 SchemaMigration 이 파티션 테이블로 변환
+ALTER TABLE documents       ADD COLUMN IF NOT EXISTS tenant_id TEXT NOT NULL DEFAULT 'default';
+ALTER TABLE document_chunks ADD COLUMN IF NOT EXISTS tenant_id TEXT NOT NULL DEFAULT 'default';
+
+-- ---------- document metadata ----------
+ALTER TABLE documents ADD COLUMN IF NOT EXISTS tags        TEXT[] NOT NULL DEFAULT '{}';
+ALTER TABLE documents ADD COLUMN IF NOT EXISTS owner       TEXT;
+ALTER TABLE documents ADD COLUMN IF NOT EXISTS source_type TEXT NOT NULL DEFAULT 'text';
+ALTER TABLE documents ADD COLUMN IF NOT EXISTS created_at  TIMESTAMPTZ NOT NULL DEFAULT now();
+
+-- 필터를 ANN 쿼리와 같은 테이블의 WHERE 로 내리기 위해 chunk 에 비정규화 (insertChunk 에서 documents 값 복사)
+ALTER TABLE document_chunks ADD COLUMN IF NOT EXISTS tags        TEXT[] NOT NULL DEFAULT '{}';
+ALTER TABLE document_chunks ADD COLUMN IF NOT EXISTS owner       TEXT;
+ALTER TABLE document_chunks ADD COLUMN IF NOT EXISTS source_type TEXT NOT NULL DEFAULT 'text';
+ALTER TABLE document_chunks ADD COLUMN IF NOT EXISTS created_at  TIMESTAMPTZ NOT NULL DEFAULT now();
+
+-- ---------- embedding version ----------
+-- active 는 항상 하나, 재임베딩 중이면 migrating 또는 dual-read 하나 (ReembedService)
+CREATE TABLE IF NOT EXISTS embedding_versions (
+    version      TEXT PRIMARY KEY,
+    dim          INT NOT NULL,
+    state        TEXT NOT NULL,
+    created_at   TIMESTAMPTZ NOT NULL DEFAULT now(),
+    activated_at TIMESTAMPTZ
+);
+-- active/migrating 하나씩만 허용하는 unique 인덱스는 schema-indexes.sql
+
+-- 노드별로 마지막에 본 임베딩 상태 (EmbeddingVersions.refresh 가 기록, cutover 전에 모든 노드가 따라왔는지 확인)
+CREATE TABLE IF NOT EXISTS embedding_nodes (
+    node_id   TEXT PRIMARY KEY,
+    active    TEXT NOT NULL,
+    migrating TEXT,
+    state     TEXT,
+    seen_at   TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+-- NULL = 버전 관리 이전에 저장된 행 (hash-v1-768)
+ALTER TABLE document_chunks ADD COLUMN IF NOT EXISTS embedding_version TEXT;
+
+-- ---------- near-duplicate chunk ----------
+-- 중복 chunk 는 자기 벡터와 함께 canonical chunk 참조를 저장 (NearDuplicateIndex), 결과에서 하나로 접음
+-- 저장 절감은 없음: 필터 컬럼이 chunk 행 단위라 벡터를 canonical 하나로 합치면 필터 결과가 달라짐
+ALTER TABLE document_chunks ADD COLUMN IF NOT EXISTS simhash               BIGINT;
+ALTER TABLE document_chunks ADD COLUMN IF NOT EXISTS canonical_document_id BIGINT;
+ALTER TABLE document_chunks ADD COLUMN IF NOT EXISTS canonical_chunk_index INT;
+
+-- ---------- document centroid ----------
+-- chunk 임베딩 평균 (2단계 검색의 문서 선택용, CentroidIndex 가 메모리에 올림)
+-- 차원은 임베딩 버전에 따라 바뀌므로 typmod 없이, centroid_version 으로 어느 버전 기준인지 구분
+ALTER TABLE documents ADD COLUMN IF NOT EXISTS centroid         vector;
+ALTER TABLE documents ADD COLUMN IF NOT EXISTS centroid_version TEXT;
+
+-- ---------- snapshot (SnapshotService) ----------
+-- delta 스냅샷 기준: 문서/소속 chunk 가 바뀌면 갱신 (centroid 저장, 중복 chunk 승격)
+ALTER TABLE documents ADD COLUMN IF NOT EXISTS updated_at TIMESTAMPTZ NOT NULL DEFAULT now();
+
+-- 문서 행을 마지막으로 쓴 트랜잭션 (CommitOrder: pg_current_snapshot 기준으로 늦게 커밋된 변경분까지 읽기)
+-- 스크립트 분리기가 $$ 를 모르므로 함수 본문은 작은따옴표 문자열로
+ALTER TABLE documents ADD COLUMN IF NOT EXISTS change_xid xid8;
+CREATE OR REPLACE FUNCTION documents_set_change_xid() RETURNS trigger LANGUAGE plpgsql AS
+    'BEGIN NEW.change_xid := pg_current_xact_id(); RETURN NEW; END';
+CREATE OR REPLACE TRIGGER documents_change_xid BEFORE INSERT OR UPDATE ON documents
+    FOR EACH ROW EXECUTE FUNCTION documents_set_change_xid();
+
+-- 삭제된 문서 (delta 스냅샷에 tombstone 으로 실림)
+CREATE TABLE IF NOT EXISTS document_tombstones (
+    document_id BIGINT PRIMARY KEY,
+    tenant_id   TEXT NOT NULL,
+    deleted_at  TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+-- delta 스냅샷이 documents 와 같은 커밋 순서 기준으로 읽도록
+ALTER TABLE document_tombstones ADD COLUMN IF NOT EXISTS change_xid xid8;
+CREATE OR REPLACE TRIGGER document_tombstones_change_xid BEFORE INSERT OR UPDATE ON document_tombstones
+    FOR EACH ROW EXECUTE FUNCTION documents_set_change_xid();
+
+
+-- ---------- shard 배치 (ShardRouter) ----------
+-- document id 해시 slot → shard index, shard 0 의 것만 사용 (다른 shard 의 테이블은 비어 있음)
+-- SchemaMigration 이 비어 있을 때만 채우고 (slot % shard 수), 이후엔 ShardRebalance 만 바꿈
+CREATE TABLE IF NOT EXISTS shard_slots (
+    slot  INT PRIMARY KEY,
+    shard INT NOT NULL
+);
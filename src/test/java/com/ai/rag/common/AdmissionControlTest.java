@@ -0,0 +1,129 @@
+package com.ai.rag.common;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionControlTest {
+
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutdown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    void priorityComesFromServerConfig() {
+        AdmissionControl untrusted = control(4, 2, 8, 15_000, List.of("eval"), false);
+        AdmissionControl trusted = control(4, 2, 8, 15_000, List.of("eval"), true);
+
+        assertEquals(AdmissionControl.Priority.BATCH, untrusted.priority("eval", null));
+        assertEquals(AdmissionControl.Priority.BATCH, untrusted.priority("eval", "interactive"));
+        assertEquals(AdmissionControl.Priority.INTERACTIVE, untrusted.priority("acme", "batch"));
+        assertEquals(AdmissionControl.Priority.BATCH, trusted.priority("acme", "batch"));
+        assertEquals(AdmissionControl.Priority.INTERACTIVE, trusted.priority("acme", null));
+    }
+
+    @Test
+    void fullQueueShedsWithPriorityStatus() throws InterruptedException {
+        AdmissionControl control = control(1, 1, 0, 15_000, List.of(), false);
+        AdmissionControl.Decision first = control.acquire(AdmissionControl.Priority.INTERACTIVE);
+
+        AdmissionControl.Decision interactive = control.acquire(AdmissionControl.Priority.INTERACTIVE);
+        AdmissionControl.Decision batch = control.acquire(AdmissionControl.Priority.BATCH);
+
+        assertTrue(first.admitted());
+        assertEquals(503, interactive.status());
+        assertEquals("queue-full", interactive.reason());
+        assertEquals(429, batch.status());
+        assertTrue(batch.retryAfterSeconds() >= 1);
+    }
+
+    @Test
+    void waiterStartsWhenSlotIsReleased() throws Exception {
+        AdmissionControl control = control(1, 1, 4, 15_000, List.of(), false);
+        AdmissionControl.Decision first = control.acquire(AdmissionControl.Priority.INTERACTIVE);
+
+        Future<AdmissionControl.Decision> waiting = callers.submit(() -> control.acquire(AdmissionControl.Priority.INTERACTIVE));
+        Thread.sleep(50);
+        assertFalse(waiting.isDone());
+
+        control.release(first.ticket(), true);
+        assertTrue(waiting.get(1, TimeUnit.SECONDS).admitted());
+    }
+
+    @Test
+    void interactivePreemptsQueuedBatch() throws Exception {
+        AdmissionControl control = control(1, 1, 1, 15_000, List.of(), false);
+        AdmissionControl.Decision first = control.acquire(AdmissionControl.Priority.INTERACTIVE);
+        Future<AdmissionControl.Decision> batch = callers.submit(() -> control.acquire(AdmissionControl.Priority.BATCH));
+        Thread.sleep(50);
+
+        Future<AdmissionControl.Decision> interactive = callers.submit(() -> control.acquire(AdmissionControl.Priority.INTERACTIVE));
+
+        AdmissionControl.Decision shed = batch.get(1, TimeUnit.SECONDS);
+        assertFalse(shed.admitted());
+        assertEquals("preempted", shed.reason());
+        assertEquals(429, shed.status());
+        control.release(first.ticket(), true);
+        assertTrue(interactive.get(1, TimeUnit.SECONDS).admitted());
+    }
+
+    @Test
+    void queuedRequestGivesUpAtDeadline() throws InterruptedException {
+        AdmissionControl control = control(1, 1, 4, 100, List.of(), false);
+        control.acquire(AdmissionControl.Priority.INTERACTIVE);
+
+        long start = System.nanoTime();
+        AdmissionControl.Decision d = control.acquire(AdmissionControl.Priority.INTERACTIVE);
+
+        assertFalse(d.admitted());
+        assertEquals("timeout", d.reason());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+    }
+
+    /** 처리시간 EWMA 만으로 deadline 을 넘길 게 보이면 기다리지 않고 바로 거절 */
+    @Test
+    void predictedLateRequestIsShedOnArrival() throws InterruptedException {
+        AdmissionControl control = control(1, 1, 4, 50, List.of(), false);
+        AdmissionControl.Decision slow = control.acquire(AdmissionControl.Priority.INTERACTIVE);
+        Thread.sleep(80);
+        control.release(slow.ticket(), true);
+        control.acquire(AdmissionControl.Priority.INTERACTIVE);
+
+        long start = System.nanoTime();
+        AdmissionControl.Decision d = control.acquire(AdmissionControl.Priority.INTERACTIVE);
+
+        assertEquals("deadline", d.reason());
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(40));
+    }
+
+    @Test
+    void batchCannotTakeInteractiveSlots() throws Exception {
+        AdmissionControl control = control(2, 1, 4, 15_000, List.of(), false);
+        assertTrue(control.acquire(AdmissionControl.Priority.BATCH).admitted());
+
+        Future<AdmissionControl.Decision> secondBatch = callers.submit(() -> control.acquire(AdmissionControl.Priority.BATCH));
+        assertTrue(control.acquire(AdmissionControl.Priority.INTERACTIVE).admitted());
+        Thread.sleep(50);
+
+        assertFalse(secondBatch.isDone());
+    }
+
+    private static AdmissionControl control(int maxInFlight, int batchMaxInFlight, int maxQueue, long interactiveDeadlineMs,
+                                            List<String> batchTenants, boolean trustHeader) {
+        return new AdmissionControl(true, maxInFlight, batchMaxInFlight, maxQueue, interactiveDeadlineMs, 120_000,
+                32, 0.2, batchTenants, trustHeader, () -> 0, new SimpleMeterRegistry());
+    }
+}
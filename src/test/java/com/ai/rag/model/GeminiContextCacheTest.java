@@ -0,0 +1,202 @@
+package com.ai.rag.model;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GeminiContextCacheTest {
+
+    private static final int CHARS = 10_000;
+
+    @Test
+    void onlyNotFoundOrCachedContentErrorsCountAsMissing() {
+        assertTrue(GeminiContextCache.isMissing(HttpStatusCode.valueOf(404), ""));
+        assertTrue(GeminiContextCache.isMissing(HttpStatusCode.valueOf(400),
+                "{\"error\":{\"message\":\"CachedContent not found (or permission denied)\"}}"));
+        assertFalse(GeminiContextCache.isMissing(HttpStatusCode.valueOf(400),
+                "{\"error\":{\"message\":\"Invalid JSON payload received.\"}}"));
+        assertFalse(GeminiContextCache.isMissing(HttpStatusCode.valueOf(400), null));
+        assertFalse(GeminiContextCache.isMissing(HttpStatusCode.valueOf(403), "API key not valid"));
+        assertFalse(GeminiContextCache.isMissing(HttpStatusCode.valueOf(429), "cachedContent quota"));
+    }
+
+    @Test
+    void createsOnMinUsesFirstAttemptsAndIgnoresRetries() {
+        GeminiContextCache cache = cache(2);
+        FakeRemote remote = new FakeRemote();
+
+        assertNull(cache.acquire("k", CHARS, true, remote));
+        assertNull(cache.acquire("k", CHARS, false, remote));
+        assertEquals(0, remote.created.get());
+
+        assertEquals("cachedContents/1", cache.acquire("k", CHARS, true, remote));
+        // 이미 있는 핸들은 재시도도 사용
+        assertEquals("cachedContents/1", cache.acquire("k", CHARS, false, remote));
+        assertEquals(1, remote.created.get());
+    }
+
+    /** count-retries: 첫 시도와 재시도가 공유하는 근거 prefix 를 재시도 때 등록 */
+    @Test
+    void retryCreatesHandleWhenRetriesCount() {
+        GeminiContextCache cache = cache(2, true);
+        FakeRemote remote = new FakeRemote();
+
+        assertNull(cache.acquire("k", CHARS, true, remote));
+        assertEquals("cachedContents/1", cache.acquire("k", CHARS, false, remote));
+        assertEquals(1, remote.created.get());
+    }
+
+    @Test
+    void invalidatedHandleIsRecreatedOnNextUse() {
+        GeminiContextCache cache = cache(1);
+        FakeRemote remote = new FakeRemote();
+        String name = cache.acquire("k", CHARS, true, remote);
+
+        cache.invalidate("k", name);
+
+        assertEquals("cachedContents/2", cache.acquire("k", CHARS, true, remote));
+    }
+
+    @Test
+    void failedCreateIsNotRetriedForSamePrefix() {
+        GeminiContextCache cache = cache(1);
+        FakeRemote remote = new FakeRemote();
+        remote.fail = true;
+
+        assertNull(cache.acquire("k", CHARS, true, remote));
+        remote.fail = false;
+        assertNull(cache.acquire("k", CHARS, true, remote));
+        assertEquals(1, remote.created.get());
+    }
+
+    @Test
+    void shortPrefixIsNeverCached() {
+        FakeRemote remote = new FakeRemote();
+
+        assertNull(cache(1).acquire("k", 10, true, remote));
+        assertEquals(0, remote.created.get());
+    }
+
+    /** 핸들로 보낸 요청이 404 면 핸들을 버리고 같은 요청을 inline 으로 보냄, 다음 요청은 캐시를 새로 만듦 */
+    @Test
+    void missingCacheFallsBackToInlineRequest() throws IOException {
+        FakeGemini gemini = FakeGemini.start(404, "{\"error\":{\"code\":404,\"message\":\"not found\"}}");
+        try {
+            GeminiClient client = gemini.client(cache(1));
+
+            assertEquals("inline", client.generateAnswer("system", List.of(), "x".repeat(CHARS), "q"));
+            assertEquals(List.of("create", "cached", "inline"), gemini.calls);
+
+            gemini.calls.clear();
+            client.generateAnswer("system", List.of(), "x".repeat(CHARS), "q");
+            assertEquals(List.of("create", "cached", "inline"), gemini.calls);
+        } finally {
+            gemini.stop();
+        }
+    }
+
+    /** 캐시와 상관없는 400 은 inline 으로 다시 보내지 않고 그대로 실패 */
+    @Test
+    void unrelatedBadRequestIsNotRetriedInline() throws IOException {
+        FakeGemini gemini = FakeGemini.start(400, "{\"error\":{\"code\":400,\"message\":\"Invalid argument\"}}");
+        try {
+            GeminiClient client = gemini.client(cache(1));
+
+            assertThrows(HttpClientErrorException.class,
+                    () -> client.generateAnswer("system", List.of(), "x".repeat(CHARS), "q"));
+            assertEquals(List.of("create", "cached"), gemini.calls);
+        } finally {
+            gemini.stop();
+        }
+    }
+
+    private static GeminiContextCache cache(int minUses) {
+        return cache(minUses, false);
+    }
+
+    private static GeminiContextCache cache(int minUses, boolean countRetries) {
+        return new GeminiContextCache(true, 300, 4000, minUses, countRetries, 30, 1000, new SimpleMeterRegistry());
+    }
+
+    private static final class FakeRemote implements GeminiContextCache.Remote {
+        final AtomicInteger created = new AtomicInteger();
+        volatile boolean fail;
+
+        @Override
+        public GeminiContextCache.Handle create(Duration ttl) {
+            int n = created.incrementAndGet();
+            if (fail) throw new IllegalStateException("too few tokens");
+            return new GeminiContextCache.Handle("cachedContents/" + n, Instant.now().plus(ttl));
+        }
+
+        @Override
+        public GeminiContextCache.Handle extend(String name, Duration ttl) {
+            return new GeminiContextCache.Handle(name, Instant.now().plus(ttl));
+        }
+    }
+
+    /** cachedContents 생성은 성공, 핸들을 참조한 generateContent 는 cachedStatus 로 실패, inline 은 성공 */
+    private static final class FakeGemini {
+        final List<String> calls = new CopyOnWriteArrayList<>();
+        private final HttpServer server;
+
+        private FakeGemini(HttpServer server) {
+            this.server = server;
+        }
+
+        static FakeGemini start(int cachedStatus, String cachedBody) throws IOException {
+            HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            FakeGemini fake = new FakeGemini(server);
+            server.createContext("/v1beta/cachedContents", ex -> {
+                fake.calls.add("create");
+                respond(ex, 200, "{\"name\":\"cachedContents/abc\",\"expireTime\":\"2999-01-01T00:00:00Z\"}");
+            });
+            server.createContext("/v1beta/models/", ex -> {
+                String body = new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                if (body.contains("\"cachedContent\"")) {
+                    fake.calls.add("cached");
+                    respond(ex, cachedStatus, cachedBody);
+                } else {
+                    fake.calls.add("inline");
+                    respond(ex, 200, "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"inline\"}]}}]}");
+                }
+            });
+            server.start();
+            return fake;
+        }
+
+        GeminiClient client(GeminiContextCache cache) {
+            return new GeminiClient("key", "gemini-test", "http://127.0.0.1:" + server.getAddress().getPort(), cache);
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+
+        private static void respond(HttpExchange ex, int status, String body) throws IOException {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "application/json");
+            ex.sendResponseHeaders(status, bytes.length);
+            ex.getResponseBody().write(bytes);
+            ex.close();
+        }
+    }
+}
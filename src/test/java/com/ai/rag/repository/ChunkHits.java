@@ -0,0 +1,21 @@
+package com.ai.rag.repository;
+
+import java.util.List;
+
+/** 테스트용 ChunkHit (문서 id = chunk id, similarity = 1 - distance) */
+public final class ChunkHits {
+
+    private ChunkHits() {}
+
+    public static RagRepository.ChunkHit hit(long id, double distance) {
+        return new RagRepository.ChunkHit(id, id, 0, "chunk " + id, distance, 1.0 - distance);
+    }
+
+    public static RagRepository.ChunkHit hit(long id) {
+        return hit(id, 0.1);
+    }
+
+    public static List<Long> ids(List<RagRepository.ChunkHit> hits) {
+        return hits.stream().map(RagRepository.ChunkHit::id).toList();
+    }
+}
@@ -0,0 +1,85 @@
+package com.ai.rag.repository;
+
+import com.ai.rag.utils.SimHash;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NearDuplicateIndexTest {
+
+    private static final String A = "연차 신청 절차는 사내 포털에서 진행하며 승인권자는 팀장이다 처리 기간은 영업일 기준 3일 이내이다";
+    private static final String B = "분기별 보안 교육은 전 직원 필수 이수 과정이며 미이수 시 시스템 접근 권한이 제한될 수 있다";
+
+    private final ShardRouter shards = mock(ShardRouter.class);
+
+    private NearDuplicateIndex index(boolean enabled, int maxDistance) {
+        when(shards.all()).thenReturn(List.of());
+        return new NearDuplicateIndex(shards, enabled, maxDistance, 5);
+    }
+
+    @Test
+    void shortChunksHaveNoSignature() {
+        Long[] hashes = index(true, 3).signatures(List.of("너무 짧은 chunk", A));
+
+        assertNull(hashes[0]);
+        assertEquals(SimHash.of(A), hashes[1]);
+    }
+
+    @Test
+    void disabledSkipsSignaturesAndLookup() {
+        NearDuplicateIndex index = index(false, 3);
+        Long[] hashes = index.signatures(List.of(A, A));
+
+        assertArrayEquals(new Long[]{null, null}, hashes);
+        assertArrayEquals(new NearDuplicateIndex.ChunkRef[2], index.canonicalFor("default", 1L, new Long[]{1L, 1L}));
+        verify(shards, never()).all();
+    }
+
+    @Test
+    void repeatedChunkInSameDocumentReferencesFirst() {
+        NearDuplicateIndex index = index(true, 3);
+        Long[] hashes = index.signatures(List.of(A, B, A));
+
+        NearDuplicateIndex.ChunkRef[] refs = index.canonicalFor("default", 7L, hashes);
+
+        assertNull(refs[0]);
+        assertNull(refs[1]);
+        assertEquals(new NearDuplicateIndex.ChunkRef(7L, 0), refs[2]);
+    }
+
+    @Test
+    void everyChunkPointsAtACanonicalNotAChain() {
+        NearDuplicateIndex index = index(true, 3);
+        Long[] hashes = index.signatures(List.of(A, A, A));
+
+        NearDuplicateIndex.ChunkRef[] refs = index.canonicalFor("default", 7L, hashes);
+
+        assertNull(refs[0]);
+        assertNotNull(refs[1]);
+        assertEquals(refs[1], refs[2]);
+    }
+
+    /** 밴드 4개로 보장되는 거리보다 크게 설정하면 3 으로 줄임 */
+    @Test
+    void maxDistanceIsClampedToBands() {
+        NearDuplicateIndex index = index(true, 10);
+        long a = 0L;
+        long threeBits = 0b111L;
+        long fourBits = 0b1111L;
+
+        assertTrue(index.near(a, threeBits));
+        assertFalse(index.near(a, fourBits));
+        assertFalse(index.near(a, null));
+    }
+}
@@ -0,0 +1,43 @@
+package com.ai.rag.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.ai.rag.repository.ChunkHits.hit;
+import static com.ai.rag.repository.ChunkHits.ids;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RagRepositoryTest {
+
+    @Test
+    void mergesShardListsInDistanceOrder() {
+        List<RagRepository.ChunkHit> merged = RagRepository.mergeByDistance(List.of(
+                List.of(hit(1, 0.10), hit(4, 0.40), hit(6, 0.60)),
+                List.of(hit(2, 0.20), hit(3, 0.30)),
+                List.of(hit(5, 0.50))), 10);
+
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L), ids(merged));
+    }
+
+    @Test
+    void stopsAtK() {
+        List<RagRepository.ChunkHit> merged = RagRepository.mergeByDistance(List.of(
+                List.of(hit(1, 0.10), hit(3, 0.30)),
+                List.of(hit(2, 0.20), hit(4, 0.40))), 3);
+
+        assertEquals(List.of(1L, 2L, 3L), ids(merged));
+    }
+
+    @Test
+    void skipsEmptyShards() {
+        List<RagRepository.ChunkHit> merged = RagRepository.mergeByDistance(List.of(
+                List.of(),
+                List.of(hit(1, 0.10)),
+                List.of()), 5);
+
+        assertEquals(List.of(1L), ids(merged));
+        assertTrue(RagRepository.mergeByDistance(List.of(), 5).isEmpty());
+    }
+}
@@ -0,0 +1,59 @@
+package com.ai.rag.repository;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ShardRouterTest {
+
+    @Test
+    void addingShardMovesOnlyItsShare() {
+        int[] owners = initial(3);
+        int[] next = ShardRouter.rebalance(owners, 4);
+
+        assertEquals(ShardRouter.SLOTS / 4, moved(owners, next));
+        assertArrayEquals(new int[]{630, 630, 630, 630}, counts(next, 4));
+        for (int slot = 0; slot < owners.length; slot++) {
+            // 옮겨진 slot 은 전부 새 shard 로
+            if (next[slot] != owners[slot]) assertEquals(3, next[slot]);
+        }
+    }
+
+    @Test
+    void unevenShardCountStaysBalanced() {
+        int[] next = ShardRouter.rebalance(initial(4), 11);
+
+        int[] counts = counts(next, 11);
+        for (int c : counts) {
+            assertEquals(ShardRouter.SLOTS / 11, c, 1);
+        }
+    }
+
+    @Test
+    void balancedLayoutIsUnchanged() {
+        int[] owners = initial(5);
+
+        assertArrayEquals(owners, ShardRouter.rebalance(owners, 5));
+    }
+
+    private static int[] initial(int shards) {
+        int[] owners = new int[ShardRouter.SLOTS];
+        for (int slot = 0; slot < owners.length; slot++) owners[slot] = slot % shards;
+        return owners;
+    }
+
+    private static int moved(int[] before, int[] after) {
+        int n = 0;
+        for (int slot = 0; slot < before.length; slot++) {
+            if (before[slot] != after[slot]) n++;
+        }
+        return n;
+    }
+
+    private static int[] counts(int[] owners, int shards) {
+        int[] counts = new int[shards];
+        for (int owner : owners) counts[owner]++;
+        return counts;
+    }
+}
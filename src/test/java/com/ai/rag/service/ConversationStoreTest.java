@@ -0,0 +1,113 @@
+package com.ai.rag.service;
+
+import com.ai.rag.repository.RagRepository;
+import com.ai.rag.utils.EmbeddingSpec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.ai.rag.repository.ChunkHits.hit;
+import static com.ai.rag.repository.ChunkHits.ids;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ConversationStoreTest {
+
+    private static final EmbeddingSpec SPEC = EmbeddingSpec.parse("hash-v1-768");
+    private static final double[] Q = {1.0};
+
+    @Test
+    void reusesSessionUntilTtlThenIssuesNewId() throws InterruptedException {
+        ConversationStore store = store(10, 300, 6, 20);
+        ConversationStore.Conversation c = store.open("t1", null);
+
+        assertSame(c, store.open("t1", c.id()));
+        Thread.sleep(400);
+        assertNotEquals(c.id(), store.open("t1", c.id()).id());
+    }
+
+    @Test
+    void sweepRemovesExpiredSessions() throws InterruptedException {
+        ConversationStore store = store(10, 300, 6, 20);
+        ConversationStore.Conversation c = store.open("t1", null);
+        Thread.sleep(400);
+
+        store.expire();
+
+        assertNotEquals(c.id(), store.open("t1", c.id()).id());
+    }
+
+    @Test
+    void otherTenantCannotOpenSession() {
+        ConversationStore store = store(10, 60_000, 6, 20);
+        ConversationStore.Conversation c = store.open("t1", null);
+
+        assertNotEquals(c.id(), store.open("t2", c.id()).id());
+        assertSame(c, store.open("t1", c.id()));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedSessionOverCapacity() {
+        ConversationStore store = store(2, 60_000, 6, 20);
+        ConversationStore.Conversation a = store.open("t1", null);
+        ConversationStore.Conversation b = store.open("t1", null);
+        store.open("t1", a.id());
+        store.open("t1", null);
+
+        assertSame(a, store.open("t1", a.id()));
+        assertNotEquals(b.id(), store.open("t1", b.id()).id());
+    }
+
+    @Test
+    void evictsOldestEvidenceAndReusesItsNumber() {
+        ConversationStore.Conversation c = store(10, 60_000, 6, 3).open("t1", null);
+
+        turn(c, hit(1), hit(2));
+        turn(c, hit(3));
+        List<ConversationStore.Numbered> third = turn(c, hit(2), hit(4));
+
+        // 1 번 자리(가장 오래 안 쓰인 chunk 1)를 chunk 4 가 이어받고, 2 번은 그대로
+        assertEquals(List.of(2, 1), third.stream().map(ConversationStore.Numbered::number).toList());
+        assertEquals(List.of(4L, 2L, 3L), ids(c.sources()));
+        // chunk 1 을 썼던 첫 턴은 history 에서 빠짐
+        assertEquals(2, c.history().size());
+    }
+
+    @Test
+    void evictsDeletedEvidenceFirst() {
+        ConversationStore.Conversation c = store(10, 60_000, 6, 3).open("t1", null);
+        turn(c, hit(1));
+        turn(c, hit(2), hit(3));
+
+        c.begin(SPEC, null);
+        c.found(List.of(hit(1), hit(3)));
+        c.admit(List.of(hit(4)));
+
+        assertEquals(List.of(1L, 4L, 3L), ids(c.sources()));
+        assertEquals(List.of(1L, 4L, 3L), ids(c.held()));
+    }
+
+    @Test
+    void filterChangeStartsOver() {
+        ConversationStore.Conversation c = store(10, 60_000, 6, 20).open("t1", null);
+        turn(c, hit(1));
+
+        c.begin(SPEC, RagRepository.SearchFilter.documents(List.of(1L)));
+
+        assertEquals(0, c.sources().size());
+        assertEquals(0, c.history().size());
+    }
+
+    private static List<ConversationStore.Numbered> turn(ConversationStore.Conversation c, RagRepository.ChunkHit... hits) {
+        c.begin(SPEC, null);
+        List<ConversationStore.Numbered> numbered = c.admit(List.of(hits));
+        c.complete("message", "answer", Q, numbered, numbered);
+        return numbered;
+    }
+
+    private static ConversationStore store(int maxSessions, long ttlMs, int maxTurns, int maxEvidence) {
+        return new ConversationStore(maxSessions, ttlMs, maxTurns, maxEvidence, 0.8, new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,83 @@
+package com.ai.rag.service;
+
+import com.ai.rag.model.GeminiClient;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class QueryExpansionTest {
+
+    private final GeminiClient gemini = mock(GeminiClient.class);
+
+    @Test
+    void rewritesWithDefaultSynonyms() {
+        QueryExpansion expansion = expansion(300, 0, "");
+
+        assertEquals(List.of("환불", "반품", "환급"), expansion.rewrite("환불은 어떻게 하나요?"));
+    }
+
+    @Test
+    void synonymsFileAddsGroups(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("synonyms.txt");
+        Files.writeString(file, "# 사내 용어\n연차, 휴무\n\n단독\n", StandardCharsets.UTF_8);
+
+        List<String> rewrites = expansion(300, 0, file.toString()).rewrite("연차 신청 절차");
+
+        assertTrue(rewrites.contains("휴가 신청 절차"));
+        assertTrue(rewrites.contains("휴무 신청 절차"));
+    }
+
+    @Test
+    void llmRewriteStripsListMarkersAndOriginal() {
+        when(gemini.generateAnswer(anyString(), anyString()))
+                .thenReturn("1. 환불 방법\n- 반품 절차\n환불 방법\n환불은 어떻게 하나요?\n* 환급 신청");
+
+        List<String> rewrites = expansion(300, 2, "").llmRewrite("환불은 어떻게 하나요?");
+
+        assertEquals(List.of("환불 방법", "반품 절차"), rewrites);
+    }
+
+    @Test
+    void llmLegIsOffWithoutRewrites() {
+        assertFalse(expansion(300, 0, "").llmFits(TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    /** 지연이 예산을 넘으면 LLM leg 를 띄우지 않고, PROBE_EVERY 번째에만 다시 재봄 */
+    @Test
+    void slowLlmIsSkippedExceptForProbes() {
+        when(gemini.generateAnswer(anyString(), anyString())).thenAnswer(inv -> {
+            Thread.sleep(30);
+            return "환불 방법";
+        });
+        QueryExpansion expansion = expansion(10, 1, "");
+        long budget = TimeUnit.MILLISECONDS.toNanos(10);
+
+        assertTrue(expansion.llmFits(budget));
+        expansion.llmRewrite("환불");
+        assertTrue(expansion.llmLatencyNanos() >= TimeUnit.MILLISECONDS.toNanos(30));
+
+        int forked = 0;
+        for (int i = 0; i < QueryExpansion.PROBE_EVERY * 2; i++) {
+            if (expansion.llmFits(budget)) forked++;
+        }
+        assertEquals(2, forked);
+        assertTrue(expansion.llmFits(TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    private QueryExpansion expansion(long budgetMs, int llmRewrites, String synonymsFile) {
+        return new QueryExpansion(true, 3, budgetMs, llmRewrites, 60, synonymsFile, gemini);
+    }
+}
@@ -0,0 +1,77 @@
+package com.ai.rag.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AhoCorasickTest {
+
+    @Test
+    void findsOverlappingKeywordsThroughFailureLinks() {
+        AhoCorasick ac = new AhoCorasick(List.of("he", "she", "his", "hers"));
+
+        BitSet found = ac.matches("ushers");
+
+        assertEquals(bits(0, 1, 3), found);
+    }
+
+    @Test
+    void matchesKoreanKeywordsInsideText() {
+        AhoCorasick ac = new AhoCorasick(List.of("주민등록번호", "비밀번호", "번호"));
+
+        assertEquals(bits(1, 2), ac.matches("관리자 비밀번호 알려줘"));
+        assertEquals(bits(2), ac.matches("전화번호"));
+        assertTrue(ac.matches("연차 신청 절차").isEmpty());
+    }
+
+    @Test
+    void ignoresEmptyKeywordsAndText() {
+        AhoCorasick ac = new AhoCorasick(List.of("", "abc"));
+
+        assertEquals(bits(1), ac.matches("xxabcxx"));
+        assertTrue(ac.matches("").isEmpty());
+        assertTrue(ac.matches(null).isEmpty());
+    }
+
+    @Test
+    void duplicateKeywordsReportEveryId() {
+        AhoCorasick ac = new AhoCorasick(List.of("drop", "drop"));
+
+        assertEquals(bits(0, 1), ac.matches("DROP table; drop"));
+    }
+
+    /** 작은 알파벳에서 무작위 키워드/본문으로 String.contains 와 같은 결과인지 */
+    @Test
+    void agreesWithNaiveContains() {
+        Random random = new Random(7);
+        for (int trial = 0; trial < 500; trial++) {
+            List<String> keywords = new ArrayList<>();
+            for (int i = 0; i < 8; i++) keywords.add(randomString(random, 1 + random.nextInt(4)));
+            String text = randomString(random, random.nextInt(40));
+
+            BitSet expected = new BitSet();
+            for (int i = 0; i < keywords.size(); i++) {
+                if (text.contains(keywords.get(i))) expected.set(i);
+            }
+            assertEquals(expected, new AhoCorasick(keywords).matches(text), () -> keywords + " in " + text);
+        }
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) sb.append((char) ('a' + random.nextInt(3)));
+        return sb.toString();
+    }
+
+    private static BitSet bits(int... ids) {
+        BitSet b = new BitSet();
+        for (int id : ids) b.set(id);
+        return b;
+    }
+}
@@ -0,0 +1,59 @@
+package com.ai.rag.utils;
+
+import com.ai.rag.repository.RagRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.ai.rag.repository.ChunkHits.hit;
+import static com.ai.rag.repository.ChunkHits.ids;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RankFusionTest {
+
+    @Test
+    void chunkFoundBySeveralLegsRanksFirst() {
+        List<RagRepository.ChunkHit> fused = RankFusion.rrf(List.of(
+                List.of(hit(1, 0.10), hit(2, 0.20)),
+                List.of(hit(2, 0.30), hit(3, 0.40))), 60);
+
+        assertEquals(List.of(2L, 1L, 3L), ids(fused));
+    }
+
+    @Test
+    void sameChunkKeepsClosestDistance() {
+        List<RagRepository.ChunkHit> fused = RankFusion.rrf(List.of(
+                List.of(hit(1, 0.40)),
+                List.of(hit(1, 0.15))), 60);
+
+        assertEquals(1, fused.size());
+        assertEquals(0.15, fused.get(0).distance(), 1e-9);
+    }
+
+    @Test
+    void equalScoresAreOrderedByDistance() {
+        List<RagRepository.ChunkHit> fused = RankFusion.rrf(List.of(
+                List.of(hit(1, 0.30)),
+                List.of(hit(2, 0.10))), 60);
+
+        assertEquals(List.of(2L, 1L), ids(fused));
+    }
+
+    /** k 가 작을수록 상위 순위의 비중이 커짐: 한 leg 의 1 위가 두 leg 의 하위 순위를 이김 */
+    @Test
+    void smallKFavoursTopRanks() {
+        List<List<RagRepository.ChunkHit>> lists = List.of(
+                List.of(hit(1, 0.1), hit(9, 0.5), hit(8, 0.5), hit(2, 0.6)),
+                List.of(hit(7, 0.2), hit(6, 0.5), hit(5, 0.5), hit(2, 0.6)));
+
+        assertEquals(2L, RankFusion.rrf(lists, 60).get(0).id());
+        assertEquals(1L, RankFusion.rrf(lists, 0).get(0).id());
+    }
+
+    @Test
+    void emptyInputGivesEmptyResult() {
+        assertTrue(RankFusion.rrf(List.of(), 60).isEmpty());
+        assertTrue(RankFusion.rrf(List.of(List.of(), List.of()), 60).isEmpty());
+    }
+}
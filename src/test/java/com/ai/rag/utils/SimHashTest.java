@@ -0,0 +1,64 @@
+package com.ai.rag.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SimHashTest {
+
+    private static final String TEXT = "연차 신청 절차는 사내 포털에서 진행하며 승인권자는 팀장이다 처리 기간은 영업일 기준 3일 이내이며 "
+            + "반차는 오전 오후로 나누어 신청할 수 있고 잔여 연차는 매년 말에 정산된다";
+
+    @Test
+    void normalizesCaseAndPunctuation() {
+        assertEquals(SimHash.of("Hello, World! foo bar baz"), SimHash.of("hello world foo   bar baz"));
+        assertEquals(5, SimHash.tokenCount("Hello, World! foo bar baz"));
+        assertEquals(0, SimHash.tokenCount("  ...  "));
+    }
+
+    @Test
+    void smallEditKeepsDistanceSmall() {
+        long a = SimHash.of(TEXT);
+        long b = SimHash.of(TEXT.replace("3일", "5일"));
+        long other = SimHash.of("분기별 보안 교육은 전 직원 필수 이수 과정이며 미이수 시 시스템 접근 권한이 제한될 수 있다 "
+                + "교육은 온라인으로 진행되고 수료증은 인사 시스템에 자동 등록된다");
+
+        assertTrue(SimHash.distance(a, b) < SimHash.distance(a, other));
+        assertTrue(SimHash.distance(a, other) > 3);
+    }
+
+    @Test
+    void bandsMatchSqlShiftsAndCoverWholeHash() {
+        long h = 0x0123_4567_89AB_CDEFL;
+        assertEquals(0x0123, SimHash.band(h, 0));
+        assertEquals(0x4567, SimHash.band(h, 1));
+        assertEquals(0x89AB, SimHash.band(h, 2));
+        assertEquals(0xCDEF, SimHash.band(h, 3));
+
+        long rebuilt = 0L;
+        for (int b = 0; b < SimHash.BANDS; b++) rebuilt = (rebuilt << SimHash.BAND_BITS) | SimHash.band(h, b);
+        assertEquals(h, rebuilt);
+    }
+
+    /** 거리 BANDS-1 이하인 쌍은 적어도 한 밴드가 같아야 LSH 조회에서 빠지지 않음 */
+    @Test
+    void pairsWithinBandsMinusOneShareABand() {
+        Random random = new Random(42);
+        for (int trial = 0; trial < 10_000; trial++) {
+            long a = random.nextLong();
+            long mask = 0L;
+            int flips = random.nextInt(SimHash.BANDS);
+            for (int f = 0; f < flips; f++) mask ^= 1L << random.nextInt(64);
+            long b = a ^ mask;
+
+            boolean shared = false;
+            for (int band = 0; band < SimHash.BANDS; band++) {
+                shared |= SimHash.band(a, band) == SimHash.band(b, band);
+            }
+            assertTrue(shared, () -> Long.toHexString(a) + " / " + Long.toHexString(b));
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.ai.rag.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotFormatTest {
+
+    private static final int DIM = 3;
+    private static final int SEGMENT_HEADER_BYTES = 1 + 4 + 8 + 4;
+
+    @TempDir
+    Path dir;
+
+    private final List<SnapshotFormat.DocumentRow> docs = List.of(
+            new SnapshotFormat.DocumentRow(1L, "default", "연차 규정", List.of("hr", "policy"), "kim", "pdf",
+                    1_700_000_000_000_000L, "hash-v1-3", new float[]{0.1f, 0.2f, 0.3f}),
+            new SnapshotFormat.DocumentRow(2L, "default", "빈 문서", List.of(), null, null, 1_700_000_000_000_001L, null, null));
+    private final List<SnapshotFormat.ChunkRow> chunks = List.of(
+            new SnapshotFormat.ChunkRow(1L, 0, "default", "연차는 팀장 승인", "hash-v1-3", new float[]{1f, 0f, -1f}, 42L, null, null),
+            new SnapshotFormat.ChunkRow(1L, 1, "default", "반차\t줄바꿈\n포함", "hash-v1-3", new float[]{0f, 1f, 0f}, null, 1L, 0));
+    private final List<SnapshotFormat.Tombstone> tombstones = List.of(new SnapshotFormat.Tombstone(9L, "acme"));
+
+    @Test
+    void roundTripsHeaderAndSegments() throws IOException {
+        Path file = write();
+
+        try (SnapshotFormat.Reader reader = new SnapshotFormat.Reader(file)) {
+            SnapshotFormat.Header h = reader.header();
+            assertEquals("hash-v1-3", h.embeddingVersion());
+            assertEquals(DIM, h.dim());
+            assertTrue(h.delta());
+            assertEquals(List.of(new SnapshotFormat.Watermark(0, "100:105:101,103", "110:112:")), h.watermarks());
+
+            SnapshotFormat.Segment s = reader.next();
+            assertEquals(SnapshotFormat.DOCUMENTS, s.type());
+            List<SnapshotFormat.DocumentRow> readDocs = reader.documents(s);
+            assertEquals(2, readDocs.size());
+            assertEquals(docs.get(0).tags(), readDocs.get(0).tags());
+            assertArrayEquals(docs.get(0).centroid(), readDocs.get(0).centroid());
+            assertEquals(List.of(), readDocs.get(1).tags());
+            assertNull(readDocs.get(1).owner());
+            assertNull(readDocs.get(1).centroid());
+            assertEquals(docs.get(1).createdAtMicros(), readDocs.get(1).createdAtMicros());
+
+            s = reader.next();
+            assertEquals(SnapshotFormat.CHUNKS, s.type());
+            List<SnapshotFormat.ChunkRow> readChunks = reader.chunks(s);
+            assertEquals("반차\t줄바꿈\n포함", readChunks.get(1).content());
+            assertArrayEquals(chunks.get(0).embedding(), readChunks.get(0).embedding());
+            assertEquals(42L, readChunks.get(0).simhash());
+            assertNull(readChunks.get(0).canonicalDocumentId());
+            assertEquals(1L, readChunks.get(1).canonicalDocumentId());
+            assertEquals(0, readChunks.get(1).canonicalChunkIndex());
+
+            s = reader.next();
+            assertEquals(SnapshotFormat.TOMBSTONES, s.type());
+            assertEquals(tombstones, reader.tombstones(s));
+
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void rejectsCorruptedSegmentPayload() throws IOException {
+        Path file = write();
+        long tombstoneBytes;
+        try (SnapshotFormat.Reader reader = new SnapshotFormat.Reader(file)) {
+            reader.next();
+            reader.next();
+            tombstoneBytes = SEGMENT_HEADER_BYTES + reader.next().payload().capacity();
+        }
+        // chunk segment payload 의 마지막 바이트 (뒤에 tombstone segment 와 end segment)
+        flip(file, Files.size(file) - SEGMENT_HEADER_BYTES - tombstoneBytes - 1);
+
+        try (SnapshotFormat.Reader reader = new SnapshotFormat.Reader(file)) {
+            assertEquals(docs.size(), reader.documents(reader.next()).size());
+            IOException e = assertThrows(IOException.class, reader::next);
+            assertTrue(e.getMessage().contains("checksum"), e.getMessage());
+        }
+    }
+
+    @Test
+    void rejectsCorruptedHeader() throws IOException {
+        Path file = write();
+        flip(file, 8 + 2 + 4 + 2);
+
+        IOException e = assertThrows(IOException.class, () -> new SnapshotFormat.Reader(file));
+        assertTrue(e.getMessage().contains("checksum"), e.getMessage());
+    }
+
+    @Test
+    void rejectsFileWithoutEndSegment() throws IOException {
+        Path file = write();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.truncate(ch.size() - SEGMENT_HEADER_BYTES);
+        }
+
+        try (SnapshotFormat.Reader reader = new SnapshotFormat.Reader(file)) {
+            reader.next();
+            reader.next();
+            reader.next();
+            assertThrows(IOException.class, reader::next);
+        }
+    }
+
+    @Test
+    void headerRewriteKeepsReservedSize() throws IOException {
+        Path file = dir.resolve("long.snap");
+        String longSnapshot = "100:200:" + "123456789,".repeat(500) + "199";
+        try (SnapshotFormat.Writer writer = new SnapshotFormat.Writer(file, header(null))) {
+            writer.header(new SnapshotFormat.Header(1L, "hash-v1-3", DIM,
+                    List.of(new SnapshotFormat.Watermark(0, null, longSnapshot))));
+        }
+        try (SnapshotFormat.Reader reader = new SnapshotFormat.Reader(file)) {
+            assertEquals(longSnapshot, reader.header().watermarks().get(0).until());
+            assertNull(reader.next());
+        }
+    }
+
+    private Path write() throws IOException {
+        Path file = dir.resolve("test.snap");
+        try (SnapshotFormat.Writer writer = new SnapshotFormat.Writer(file, header(null))) {
+            writer.documents(docs);
+            writer.chunks(chunks);
+            writer.tombstones(tombstones);
+            writer.header(header("110:112:"));
+        }
+        return file;
+    }
+
+    private static SnapshotFormat.Header header(String until) {
+        return new SnapshotFormat.Header(1_700_000_000_000L, "hash-v1-3", DIM,
+                List.of(new SnapshotFormat.Watermark(0, "100:105:101,103", until)));
+    }
+
+    private static void flip(Path file, long offset) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            ch.read(b, offset);
+            b.put(0, (byte) (b.get(0) ^ 0x5A));
+            ch.write(b.rewind(), offset);
+        }
+    }
+}